@@ -0,0 +1,49 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.annotations;
+
+/**
+ * How {@code android.graphics.Bitmap} parameters and return values are encoded when sent between
+ * profiles or users.
+ *
+ * <p>Regardless of encoding, the {@code Bitmap.Config} of the bitmap is preserved where the
+ * platform supports decoding to it.
+ */
+public enum BitmapEncoding {
+  /**
+   * Send the raw pixel buffer of the bitmap, in its native config.
+   *
+   * <p>This is the fastest encoding to write and read, but sends the most bytes.
+   */
+  UNCOMPRESSED,
+
+  /** Send the bitmap compressed as a PNG. This is lossless. */
+  PNG,
+
+  /**
+   * Send the bitmap compressed as a lossless WEBP.
+   *
+   * <p>Before Android Q, where WEBP compression is always lossy, the bitmap is sent as a PNG.
+   */
+  WEBP_LOSSLESS,
+
+  /**
+   * Send the bitmap compressed as a lossy WEBP.
+   *
+   * <p>This sends the fewest bytes, but the received bitmap will not be identical to the one sent.
+   */
+  WEBP_LOSSY
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.annotations;
+
+/**
+ * The priority of asynchronous calls to another profile or user.
+ *
+ * <p>Asynchronous calls which are queued while waiting for a connection are sent in priority order,
+ * and calls of the same priority are sent in the order they were made.
+ */
+public enum CallPriority {
+  /**
+   * Use the priority of the enclosing type, or {@link #NORMAL} if the type does not specify one.
+   */
+  DEFAULT,
+
+  /** Calls which a user is waiting on. These are sent before any other queued calls. */
+  HIGH,
+
+  NORMAL,
+
+  /** Background work, such as bulk syncs. These are sent after any other queued calls. */
+  LOW
+}
@@ -74,10 +74,55 @@ public @interface CrossProfile {
    */
   boolean isStatic() default false;
 
+  /**
+   * How {@code android.graphics.Bitmap} parameters and return values are sent by this type.
+   *
+   * <p>This argument can only be passed when annotating types, not methods.
+   *
+   * <p>Defaults to {@link BitmapEncoding#UNCOMPRESSED}.
+   */
+  BitmapEncoding bitmapEncoding() default BitmapEncoding.UNCOMPRESSED;
+
   /**
    * The number of milliseconds to wait before timing out asynchronous calls to this method or type.
    *
    * <p>Defaults to {@link #DEFAULT_TIMEOUT_MILLIS}.
    */
   long timeoutMillis() default -1;
+
+  /**
+   * The priority of asynchronous calls to this method or type.
+   *
+   * <p>Defaults to the priority of the type, or {@link CallPriority#NORMAL} if neither is set.
+   */
+  CallPriority priority() default CallPriority.DEFAULT;
+
+  /**
+   * Can asynchronous calls to this method, or to all methods of this type, safely be made more than
+   * once.
+   *
+   * <p>Calls to idempotent methods which are interrupted by a temporary loss of connection are sent
+   * again once the connection is re-established, instead of failing with an {@code
+   * UnavailableProfileException}. Calls are only retried a limited number of times, and not after
+   * their timeout has passed.
+   *
+   * <p>Defaults to {@code false}.
+   */
+  boolean idempotent() default false;
+
+  /**
+   * Should repeated strings in the parameters and return value of this method, or of all methods of
+   * this type, be written once?
+   *
+   * <p>When set, each distinct string in a parameter or return value is written in full once, and
+   * later occurrences are written as a reference to it. The receiving side reads each occurrence as
+   * the same {@link String} instance. This makes payloads with many repeated strings, such as keys
+   * or account names, smaller and faster to read, at a small cost for payloads without.
+   *
+   * <p>Strings which are passed directly as parameters, and the results of asynchronous methods,
+   * are always written in full.
+   *
+   * <p>Defaults to {@code false}.
+   */
+  boolean internStrings() default false;
 }
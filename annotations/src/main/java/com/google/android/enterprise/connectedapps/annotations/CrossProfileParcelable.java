@@ -0,0 +1,43 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A class which can be passed across profiles by writing each of its properties in turn, rather
+ * than by Java serialization.
+ *
+ * <p>For an abstract class, such as an {@code AutoValue} class, each abstract method with no
+ * parameters is a property, other than a method such as {@code toBuilder()} which returns a builder
+ * nested in the class. The class must have a static method which takes every property, in order,
+ * and returns an instance.
+ *
+ * <p>For any other class, each non-static, non-transient field is a property, and the class must
+ * have a constructor which takes every property, in order. Private fields are read through a
+ * method named {@code getX()}, {@code isX()} or {@code x()}.
+ *
+ * <p>The class must not extend any class other than {@code Object}.
+ *
+ * <p>A {@code Parcelable} wrapper named {@code ClassName_ParcelableWrapper} is generated alongside
+ * the class, so the annotation processor must be run on the module which contains it.
+ */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.CLASS)
+public @interface CrossProfileParcelable {}
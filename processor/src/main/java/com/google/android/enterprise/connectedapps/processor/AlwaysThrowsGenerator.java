@@ -72,6 +72,7 @@ final class AlwaysThrowsGenerator {
 
     TypeSpec.Builder classBuilder =
         TypeSpec.classBuilder(className)
+            .addOriginatingElement(crossProfileType.crossProfileTypeElement())
             .addJavadoc(
                 "Implementation of {@link $T} which throws an {@link $T} for every call.\n",
                 singleSenderCanThrowInterface,
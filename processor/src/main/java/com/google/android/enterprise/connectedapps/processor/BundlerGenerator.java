@@ -18,20 +18,29 @@ package com.google.android.enterprise.connectedapps.processor;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.BUNDLER_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.BUNDLER_TYPE_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.PARCEL_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.STRING_TABLE_CLASSNAME;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Comparator.comparing;
 import static java.util.stream.Collectors.toList;
 
 import com.google.android.enterprise.connectedapps.annotations.CrossProfileConfiguration;
 import com.google.android.enterprise.connectedapps.processor.containers.CrossProfileTypeInfo;
 import com.google.android.enterprise.connectedapps.processor.containers.GeneratorContext;
+import com.google.android.enterprise.connectedapps.processor.containers.ParcelableWrapper.WrapperType;
 import com.google.android.enterprise.connectedapps.processor.containers.Type;
+import com.google.common.collect.ImmutableList;
 import com.squareup.javapoet.AnnotationSpec;
 import com.squareup.javapoet.ArrayTypeName;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.TypeSpec;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.type.PrimitiveType;
 import javax.lang.model.type.TypeMirror;
@@ -42,20 +51,68 @@ import javax.lang.model.type.TypeMirror;
  *
  * <p>This class is responsible for reading and writing {@code Bundle} and {@code Parcel} instances.
  *
+ * <p>When {@link ProcessorConfiguration#SHARED_BUNDLER_OPTION} is set, a single bundler is instead
+ * generated for all cross-profile types which {@link CrossProfileTypeInfo#usesSharedBundler()}.
+ * Each type is handled once, however many cross-profile types use it.
+ *
  * <p>This must only be used once. It should be used after {@link EarlyValidator} has been used to
  * validate that the annotated code is correct.
  */
 final class BundlerGenerator {
 
+  /** A type handled by the bundler, and the {@link SupportedTypes} used to generate its code. */
+  private static final class BundledType {
+    final Type type;
+    final SupportedTypes supportedTypes;
+
+    BundledType(Type type, SupportedTypes supportedTypes) {
+      this.type = type;
+      this.supportedTypes = supportedTypes;
+    }
+  }
+
   private boolean generated = false;
   private final GeneratorContext generatorContext;
   private final GeneratorUtilities generatorUtilities;
-  private final CrossProfileTypeInfo crossProfileType;
+  private final ClassName className;
+  private final List<CrossProfileTypeInfo> crossProfileTypes;
 
   BundlerGenerator(GeneratorContext generatorContext, CrossProfileTypeInfo crossProfileType) {
+    this(
+        generatorContext,
+        getBundlerClassName(generatorContext, crossProfileType),
+        ImmutableList.of(checkNotNull(crossProfileType)));
+  }
+
+  private BundlerGenerator(
+      GeneratorContext generatorContext,
+      ClassName className,
+      List<CrossProfileTypeInfo> crossProfileTypes) {
     this.generatorContext = checkNotNull(generatorContext);
     this.generatorUtilities = new GeneratorUtilities(generatorContext);
-    this.crossProfileType = checkNotNull(crossProfileType);
+    this.className = checkNotNull(className);
+    this.crossProfileTypes = checkNotNull(crossProfileTypes);
+  }
+
+  /**
+   * Create a generator for the bundler shared by all cross-profile types in {@code
+   * generatorContext} which {@link CrossProfileTypeInfo#usesSharedBundler()}.
+   *
+   * <p>This returns {@link Optional#empty()} if there are no such types.
+   */
+  static Optional<BundlerGenerator> forSharedBundler(GeneratorContext generatorContext) {
+    List<CrossProfileTypeInfo> sharedTypes =
+        generatorContext.crossProfileTypes().stream()
+            .filter(CrossProfileTypeInfo::usesSharedBundler)
+            // Sorted so that the generated code does not depend on the order types are found
+            .sorted(comparing(t -> t.className().canonicalName()))
+            .collect(toList());
+    if (sharedTypes.isEmpty()) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        new BundlerGenerator(
+            generatorContext, getSharedBundlerClassName(generatorContext), sharedTypes));
   }
 
   void generate() {
@@ -68,17 +125,27 @@ final class BundlerGenerator {
   }
 
   private void generateBundlerClass() {
-    ClassName className = getBundlerClassName(generatorContext, crossProfileType);
-
     TypeSpec.Builder classBuilder =
         TypeSpec.classBuilder(className)
-            .addJavadoc(
-                "Implementation of {@link $T} for use with {@link $T}.\n",
-                BUNDLER_CLASSNAME,
-                crossProfileType.className())
             .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
             .addSuperinterface(BUNDLER_CLASSNAME);
 
+    if (crossProfileTypes.size() == 1) {
+      classBuilder.addJavadoc(
+          "Implementation of {@link $T} for use with {@link $T}.\n",
+          BUNDLER_CLASSNAME,
+          crossProfileTypes.get(0).className());
+    } else {
+      classBuilder.addJavadoc(
+          "Implementation of {@link $T} shared by $L cross-profile types.\n",
+          BUNDLER_CLASSNAME,
+          crossProfileTypes.size());
+    }
+
+    for (CrossProfileTypeInfo crossProfileType : crossProfileTypes) {
+      classBuilder.addOriginatingElement(crossProfileType.crossProfileTypeElement());
+    }
+
     classBuilder.addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PUBLIC).build());
     classBuilder.addMethod(
         MethodSpec.constructorBuilder()
@@ -94,6 +161,26 @@ final class BundlerGenerator {
     generatorUtilities.writeClassToFile(className.packageName(), classBuilder);
   }
 
+  /**
+   * Get the types handled by this bundler which match {@code filter}.
+   *
+   * <p>Only the first type with each raw type is included, as types are matched by raw type.
+   */
+  private List<BundledType> bundledTypes(Predicate<Type> filter) {
+    Map<String, BundledType> bundledTypes = new LinkedHashMap<>();
+    for (CrossProfileTypeInfo crossProfileType : crossProfileTypes) {
+      SupportedTypes supportedTypes = crossProfileType.supportedTypes();
+      for (Type type : supportedTypes.usableTypes()) {
+        if (filter.test(type)) {
+          bundledTypes.putIfAbsent(
+              TypeUtils.getRawTypeQualifiedName(type.getTypeMirror()),
+              new BundledType(type, supportedTypes));
+        }
+      }
+    }
+    return new ArrayList<>(bundledTypes.values());
+  }
+
   private void makeParcelable(TypeSpec.Builder classBuilder, ClassName bundlerClassName) {
     classBuilder.addMethod(
         MethodSpec.methodBuilder("writeToParcel")
@@ -110,11 +197,7 @@ final class BundlerGenerator {
   private void addWriteToParcelMethod(TypeSpec.Builder classBuilder) {
     CodeBlock.Builder methodCode = CodeBlock.builder();
 
-    List<Type> types =
-        crossProfileType.supportedTypes().usableTypes().stream()
-            .filter(Type::canBeBundled)
-            .filter(t -> !t.isPrimitive())
-            .collect(toList());
+    List<BundledType> types = bundledTypes(t -> t.canBeBundled() && !t.isPrimitive());
     addWriteToParcelTypes(methodCode, types);
 
     classBuilder.addMethod(
@@ -134,14 +217,14 @@ final class BundlerGenerator {
             .build());
   }
 
-  private void addWriteToParcelTypes(CodeBlock.Builder codeBuilder, List<Type> types) {
+  private void addWriteToParcelTypes(CodeBlock.Builder codeBuilder, List<BundledType> types) {
     codeBuilder.beginControlFlow(
         "if ($S.equals(valueType.rawTypeQualifiedName()))", "java.lang.Void");
     codeBuilder.addStatement("return");
-    for (Type type : types) {
+    for (BundledType type : types) {
       codeBuilder.nextControlFlow(
           "else if ($S.equals(valueType.rawTypeQualifiedName()))",
-          TypeUtils.getRawTypeQualifiedName(type.getTypeMirror()));
+          TypeUtils.getRawTypeQualifiedName(type.type.getTypeMirror()));
       addWriteToParcelType(codeBuilder, type);
     }
     codeBuilder.endControlFlow();
@@ -152,23 +235,41 @@ final class BundlerGenerator {
         IllegalArgumentException.class);
   }
 
-  private void addWriteToParcelType(CodeBlock.Builder codeBuilder, Type type) {
+  private void addWriteToParcelType(CodeBlock.Builder codeBuilder, BundledType bundledType) {
+    Type type = bundledType.type;
+    if (internsStrings() && isString(type)) {
+      codeBuilder.addStatement("$T.writeString(parcel, (String) value)", STRING_TABLE_CLASSNAME);
+      codeBuilder.addStatement("return");
+      return;
+    }
+
+    if (isList(type)) {
+      // Lists of protos are written as a single stream rather than wrapping each proto
+      for (Type protoType : protoTypes()) {
+        codeBuilder.beginControlFlow(
+            "if ($S.equals(valueType.typeArguments().get(0).rawTypeQualifiedName()))",
+            TypeUtils.getRawTypeQualifiedName(protoType.getTypeMirror()));
+        codeBuilder.addStatement(
+            "$T.writeListToParcel(parcel, ($T) value)",
+            protoType.getParcelableWrapper().get().wrapperClassName(),
+            List.class);
+        codeBuilder.addStatement("return");
+        codeBuilder.endControlFlow();
+      }
+    }
+
     CodeBlock convertedValue =
         CodeBlock.of("($L) value", TypeUtils.getRawTypeQualifiedName(type.getTypeMirror()));
     codeBuilder.addStatement(
-        crossProfileType
-            .supportedTypes()
-            .generateWriteToParcelCode("parcel", type, convertedValue.toString()));
+        bundledType.supportedTypes.generateWriteToParcelCode(
+            "parcel", type, convertedValue.toString()));
     codeBuilder.addStatement("return");
   }
 
   private void addReadFromParcelMethod(TypeSpec.Builder classBuilder) {
     CodeBlock.Builder methodCode = CodeBlock.builder();
 
-    List<Type> types =
-        crossProfileType.supportedTypes().usableTypes().stream()
-            .filter(Type::canBeBundled)
-            .collect(toList());
+    List<BundledType> types = bundledTypes(Type::canBeBundled);
     addReadFromParcelTypes(methodCode, types);
 
     methodCode.addStatement(
@@ -191,43 +292,92 @@ final class BundlerGenerator {
             .build());
   }
 
-  private void addReadFromParcelTypes(CodeBlock.Builder codeBuilder, List<Type> types) {
+  private void addReadFromParcelTypes(CodeBlock.Builder codeBuilder, List<BundledType> types) {
     codeBuilder.beginControlFlow(
         "if ($S.equals(valueType.rawTypeQualifiedName()))", "java.lang.Void");
     codeBuilder.addStatement("return null");
-    for (Type type : types) {
+    for (BundledType type : types) {
       codeBuilder.nextControlFlow(
           "else if ($S.equals(valueType.rawTypeQualifiedName()))",
-          TypeUtils.getRawTypeQualifiedName(type.getTypeMirror()));
+          TypeUtils.getRawTypeQualifiedName(type.type.getTypeMirror()));
       addReadFromParcelType(codeBuilder, type);
     }
     codeBuilder.endControlFlow();
   }
 
-  private void addReadFromParcelType(CodeBlock.Builder codeBuilder, Type type) {
+  private void addReadFromParcelType(CodeBlock.Builder codeBuilder, BundledType bundledType) {
+    Type type = bundledType.type;
     TypeMirror objectType = type.getTypeMirror();
     if (objectType.getKind().isPrimitive()) {
       PrimitiveType primitiveType = (PrimitiveType) objectType;
       objectType = generatorContext.types().boxedClass(primitiveType).asType();
     }
 
+    if (internsStrings() && isString(type)) {
+      codeBuilder.addStatement("return $T.readString(parcel)", STRING_TABLE_CLASSNAME);
+      return;
+    }
+
+    if (isList(type)) {
+      for (Type protoType : protoTypes()) {
+        codeBuilder.beginControlFlow(
+            "if ($S.equals(valueType.typeArguments().get(0).rawTypeQualifiedName()))",
+            TypeUtils.getRawTypeQualifiedName(protoType.getTypeMirror()));
+        codeBuilder.addStatement(
+            "return $T.readListFromParcel(parcel)",
+            protoType.getParcelableWrapper().get().wrapperClassName());
+        codeBuilder.endControlFlow();
+      }
+    }
+
     codeBuilder.addStatement(
         "return ($L) $L",
         TypeUtils.getRawTypeQualifiedName(objectType),
-        crossProfileType.supportedTypes().generateReadFromParcelCode("parcel", type));
+        bundledType.supportedTypes.generateReadFromParcelCode("parcel", type));
+  }
+
+  /**
+   * Do any methods of the types handled by this bundler intern strings?
+   *
+   * <p>If so, strings are written with a {@code StringTable}. This only changes how they are
+   * written while a value of a method which interns strings is being written.
+   */
+  private boolean internsStrings() {
+    return crossProfileTypes.stream().anyMatch(CrossProfileTypeInfo::internsStrings);
+  }
+
+  private static boolean isString(Type type) {
+    return type.getQualifiedName().equals("java.lang.String");
+  }
+
+  private static boolean isList(Type type) {
+    return TypeUtils.getRawTypeQualifiedName(type.getTypeMirror()).equals("java.util.List");
+  }
+
+  private List<Type> protoTypes() {
+    return bundledTypes(
+            t ->
+                t.getParcelableWrapper().isPresent()
+                    && t.getParcelableWrapper().get().wrapperType() == WrapperType.PROTO)
+        .stream()
+        .map(t -> t.type)
+        .collect(toList());
   }
 
   private void addCreateArrayMethod(TypeSpec.Builder classBuilder) {
     CodeBlock.Builder methodCode = CodeBlock.builder();
 
     List<Type> types =
-        crossProfileType.supportedTypes().usableTypes().stream()
-            .filter(Type::canBeBundled)
-            .filter(t -> !t.isGeneric())
-            .filter(
+        bundledTypes(
                 t ->
-                    !t.isPrimitive()) // We can't return a primitive array with return type Object[]
-            .filter(t -> !t.isArray()) // We don't support multidimensional arrays
+                    t.canBeBundled()
+                        && !t.isGeneric()
+                        // We can't return a primitive array with return type Object[]
+                        && !t.isPrimitive()
+                        // We don't support multidimensional arrays
+                        && !t.isArray())
+            .stream()
+            .map(t -> t.type)
             .collect(toList());
     addCreateArrayTypes(methodCode, types);
 
@@ -265,6 +415,14 @@ final class BundlerGenerator {
 
   static ClassName getBundlerClassName(
       GeneratorContext generatorContext, CrossProfileTypeInfo crossProfileType) {
+    if (crossProfileType.usesSharedBundler()) {
+      return getSharedBundlerClassName(generatorContext);
+    }
     return GeneratorUtilities.appendToClassName(crossProfileType.profileClassName(), "_Bundler");
   }
+
+  private static ClassName getSharedBundlerClassName(GeneratorContext generatorContext) {
+    return ProcessorConfiguration.sharedBundlerClassName(
+        ProcessorConfiguration.sharedBundlerPrefix(generatorContext.processingEnv()).get());
+  }
 }
@@ -55,6 +55,7 @@ final class CodeGenerator {
     parcelableWrappersGenerator.generate();
     futureWrappersGenerator.generate();
     testCodeGenerator.generate();
+    BundlerGenerator.forSharedBundler(generatorContext).ifPresent(BundlerGenerator::generate);
 
     for (ProfileConnectorInfo connector : generatorContext.generatedProfileConnectors()) {
       new ProfileConnectorCodeGenerator(generatorContext, connector).generate();
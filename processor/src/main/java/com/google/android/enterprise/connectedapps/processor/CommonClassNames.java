@@ -26,6 +26,8 @@ import com.squareup.javapoet.ClassName;
 public class CommonClassNames {
   static final ClassName CONTEXT_CLASSNAME = ClassName.get("android.content", "Context");
   static final ClassName PARCEL_CLASSNAME = ClassName.get("android.os", "Parcel");
+  static final ClassName REMOTE_EXCEPTION_CLASSNAME =
+      ClassName.get("android.os", "RemoteException");
   static final ClassName PARCELABLE_CLASSNAME = ClassName.get("android.os", "Parcelable");
   static final ClassName CROSS_PROFILE_FUTURE_RESULT_WRITER =
       ClassName.get(
@@ -41,6 +43,8 @@ public class CommonClassNames {
   static final ClassName AVAILABILITY_RESTRICTIONS_CLASSNAME =
       ClassName.get(
           "com.google.android.enterprise.connectedapps.annotations", "AvailabilityRestrictions");
+  static final ClassName CALL_PRIORITY_CLASSNAME =
+      ClassName.get("com.google.android.enterprise.connectedapps.annotations", "CallPriority");
   static final ClassName PROFILE_RUNTIME_EXCEPTION_CLASSNAME =
       ClassName.get(
           "com.google.android.enterprise.connectedapps.exceptions", "ProfileRuntimeException");
@@ -51,6 +55,12 @@ public class CommonClassNames {
           "com.google.android.enterprise.connectedapps.internal", "BackgroundExceptionThrower");
   static final ClassName PARCEL_UTILITIES_CLASSNAME =
       ClassName.get("com.google.android.enterprise.connectedapps.internal", "ParcelUtilities");
+  static final ClassName TRACE_UTILITIES_CLASSNAME =
+      ClassName.get("com.google.android.enterprise.connectedapps.internal", "TraceUtilities");
+  static final ClassName PAYLOAD_COMPRESSION_CLASSNAME =
+      ClassName.get("com.google.android.enterprise.connectedapps.internal", "PayloadCompression");
+  static final ClassName DIRECT_PARCEL_CALLS_CLASSNAME =
+      ClassName.get("com.google.android.enterprise.connectedapps.internal", "DirectParcelCalls");
   static final ClassName METHOD_RUNNER_CLASSNAME =
       ClassName.get("com.google.android.enterprise.connectedapps.internal", "MethodRunner");
   static final ClassName BUNDLER_CLASSNAME =
@@ -67,6 +77,14 @@ public class CommonClassNames {
       ClassName.get("com.google.android.enterprise.connectedapps.ICrossProfileService", "Stub");
   static final ClassName INVALID_PROTOCOL_BUFFER_EXCEPTION_CLASSNAME =
       ClassName.get("com.google.protobuf", "InvalidProtocolBufferException");
+  static final ClassName CODED_OUTPUT_STREAM_CLASSNAME =
+      ClassName.get("com.google.protobuf", "CodedOutputStream");
+  static final ClassName SCRATCH_BUFFERS_CLASSNAME =
+      ClassName.get("com.google.android.enterprise.connectedapps.internal", "ScratchBuffers");
+  static final ClassName STRING_TABLE_CLASSNAME =
+      ClassName.get("com.google.android.enterprise.connectedapps.internal", "StringTable");
+  static final ClassName LENGTH_DELIMITED_LIST_CLASSNAME =
+      ClassName.get("com.google.android.enterprise.connectedapps.internal", "LengthDelimitedList");
   static final ClassName PROFILE_CLASSNAME =
       ClassName.get("com.google.android.enterprise.connectedapps", "Profile");
   static final ClassName LOCAL_CALLBACK_CLASSNAME =
@@ -77,14 +95,10 @@ public class CommonClassNames {
       ClassName.get(
           "com.google.android.enterprise.connectedapps.internal",
           "CrossProfileCallbackMultiMerger");
-  static final ClassName CROSS_PROFILE_CALLBACK_PARCEL_CALL_SENDER_CLASSNAME =
-      ClassName.get(
-          "com.google.android.enterprise.connectedapps.internal",
-          "CrossProfileCallbackParcelCallSender");
-  static final ClassName CROSS_PROFILE_CALLBACK_EXCEPTION_PARCEL_CALL_SENDER_CLASSNAME =
-      ClassName.get(
-          "com.google.android.enterprise.connectedapps.internal",
-          "CrossProfileCallbackExceptionParcelCallSender");
+  static final ClassName RESULT_WRITER_QUEUE_CLASSNAME =
+      ClassName.get("com.google.android.enterprise.connectedapps.internal", "ResultWriterQueue");
+  static final ClassName SERVICE_WARM_UP_CLASSNAME =
+      ClassName.get("com.google.android.enterprise.connectedapps.internal", "ServiceWarmUp");
   static final ClassName ASYNC_CALLBACK_PARAM_MULTIMERGER_COMPLETE_LISTENER_CLASSNAME =
       ClassName.get(
           "com.google.android.enterprise.connectedapps.internal.CrossProfileCallbackMultiMerger",
@@ -110,8 +124,12 @@ public class CommonClassNames {
       ClassName.get("com.google.android.enterprise.connectedapps.AbstractUserConnector", "Builder");
   public static final ClassName CONNECTION_BINDER_CLASSNAME =
       ClassName.get("com.google.android.enterprise.connectedapps", "ConnectionBinder");
+  public static final ClassName QUEUE_FULL_POLICY_CLASSNAME =
+      ClassName.get("com.google.android.enterprise.connectedapps", "QueueFullPolicy");
   public static final ClassName SCHEDULED_EXECUTOR_SERVICE_CLASSNAME =
       ClassName.get("java.util.concurrent", "ScheduledExecutorService");
+  public static final ClassName EXECUTOR_CLASSNAME =
+      ClassName.get("java.util.concurrent", "Executor");
   public static final ClassName ABSTRACT_FAKE_PROFILE_CONNECTOR_CLASSNAME =
       ClassName.get(
           "com.google.android.enterprise.connectedapps.testing", "AbstractFakeProfileConnector");
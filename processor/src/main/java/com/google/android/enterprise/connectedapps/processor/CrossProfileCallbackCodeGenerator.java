@@ -19,13 +19,12 @@ import static com.google.android.enterprise.connectedapps.processor.CommonClassN
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.ASYNC_CALLBACK_PARAM_MULTIMERGER_COMPLETE_LISTENER_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.BUNDLER_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.CROSS_PROFILE_CALLBACK_CLASSNAME;
-import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.CROSS_PROFILE_CALLBACK_EXCEPTION_PARCEL_CALL_SENDER_CLASSNAME;
-import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.CROSS_PROFILE_CALLBACK_PARCEL_CALL_SENDER_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.EXCEPTION_CALLBACK_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.LOCAL_CALLBACK_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.PARCEL_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.PARCEL_UTILITIES_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.PROFILE_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.RESULT_WRITER_QUEUE_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.UNAVAILABLE_PROFILE_EXCEPTION_CLASSNAME;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.util.stream.Collectors.joining;
@@ -90,6 +89,7 @@ public class CrossProfileCallbackCodeGenerator {
 
     TypeSpec.Builder interfaceBuilder =
         TypeSpec.interfaceBuilder(interfaceName)
+            .addOriginatingElement(callbackInterface.interfaceElement())
             .addJavadoc(
                 "Callback interface used when using a {@link $T} with multiple profiles.\n",
                 callbackInterface.interfaceElement())
@@ -116,6 +116,7 @@ public class CrossProfileCallbackCodeGenerator {
 
     TypeSpec.Builder classBuilder =
         TypeSpec.classBuilder(className)
+            .addOriginatingElement(callbackInterface.interfaceElement())
             .addJavadoc(
                 "Implementation of {@link $T} which forwards completed results to an instance of"
                     + " {@link $T}.\n",
@@ -162,6 +163,7 @@ public class CrossProfileCallbackCodeGenerator {
 
     TypeSpec.Builder classBuilder =
         TypeSpec.classBuilder(className)
+            .addOriginatingElement(callbackInterface.interfaceElement())
             .addJavadoc(
                 "Implementation of {@link $T} which passes results into an instance of {@link"
                     + " $T}.\n",
@@ -247,6 +249,7 @@ public class CrossProfileCallbackCodeGenerator {
 
     TypeSpec.Builder classBuilder =
         TypeSpec.classBuilder(className)
+            .addOriginatingElement(callbackInterface.interfaceElement())
             .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
             .addSuperinterface(ClassName.get(callbackInterface.interfaceElement()))
             .addJavadoc(
@@ -303,12 +306,7 @@ public class CrossProfileCallbackCodeGenerator {
 
     methodBuilder.beginControlFlow("try");
 
-    methodBuilder.addStatement(
-        "$1T callSender = new $1T(callback, /* methodIdentifier= */ $2L)",
-        CROSS_PROFILE_CALLBACK_PARCEL_CALL_SENDER_CLASSNAME,
-        callbackInterface.getIdentifier(method));
-
-    // parcel is recycled in this method
+    // parcel is recycled by the ResultWriterQueue once it has been sent
     methodBuilder.addStatement("$1T parcel = $1T.obtain()", PARCEL_CLASSNAME);
 
     for (VariableElement param : method.getParameters()) {
@@ -318,31 +316,18 @@ public class CrossProfileCallbackCodeGenerator {
           TypeUtils.generateBundlerType(param.asType()));
     }
 
-    methodBuilder.addStatement("callSender.makeParcelCall(parcel)", PARCEL_CLASSNAME);
-
-    methodBuilder.addStatement("parcel.recycle()");
+    methodBuilder.addStatement(
+        "$T.instance().sendResult(callback, /* methodIdentifier= */ $L, parcel)",
+        RESULT_WRITER_QUEUE_CLASSNAME,
+        callbackInterface.getIdentifier(method));
 
     methodBuilder
         .nextControlFlow("catch ($T e)", Exception.class)
-        .beginControlFlow("try")
         .addStatement(
-            "$1T unavailableProfileException = new $1T(\"Error when writing callback result\", e)",
+            "$T.instance().sendException(callback, new $T(\"Error when writing callback"
+                + " result\", e))",
+            RESULT_WRITER_QUEUE_CLASSNAME,
             UNAVAILABLE_PROFILE_EXCEPTION_CLASSNAME)
-        // parcel is recycled in this method
-        .addStatement("$1T parcel = $1T.obtain()", PARCEL_CLASSNAME)
-        .addStatement(
-            "$T.writeThrowableToParcel(parcel, unavailableProfileException)",
-            PARCEL_UTILITIES_CLASSNAME)
-        .addStatement(
-            "$1T callSender = new $1T(callback)",
-            CROSS_PROFILE_CALLBACK_EXCEPTION_PARCEL_CALL_SENDER_CLASSNAME)
-        .addStatement("callSender.makeParcelCall(parcel)", PARCEL_CLASSNAME)
-        .addStatement("parcel.recycle()")
-        .nextControlFlow("catch ($T r)", UNAVAILABLE_PROFILE_EXCEPTION_CLASSNAME)
-        .addComment(
-            "TODO: Decide what should happen if the connection is dropped between the call and"
-                + " response")
-        .endControlFlow()
         .endControlFlow();
 
     classBuilder.addMethod(methodBuilder.build());
@@ -354,6 +339,7 @@ public class CrossProfileCallbackCodeGenerator {
 
     TypeSpec.Builder classBuilder =
         TypeSpec.classBuilder(className)
+            .addOriginatingElement(callbackInterface.interfaceElement())
             .addJavadoc(
                 "Implementation of {@link $1T} which wraps an instance of {@link $2T},\n"
                     + "extracting results and exceptions in callbacks and passing them on to the"
@@ -0,0 +1,384 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.processor;
+
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.BUNDLER_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.BUNDLER_TYPE_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.PARCELABLE_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.PARCEL_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.STRING_TABLE_CLASSNAME;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.android.enterprise.connectedapps.processor.containers.CrossProfileParcelableInfo;
+import com.google.android.enterprise.connectedapps.processor.containers.CrossProfileParcelableInfo.Property;
+import com.google.android.enterprise.connectedapps.processor.containers.CrossProfileTypeInfo;
+import com.google.android.enterprise.connectedapps.processor.containers.GeneratorContext;
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import java.util.Collections;
+import java.util.Locale;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * Generate the Parcelable Wrapper for a single {@code CrossProfileParcelable} class.
+ *
+ * <p>The wrapper writes each property of the class in turn. Strings, primitives and boxed
+ * primitives are written directly to the {@code Parcel}, with a marker before each boxed primitive
+ * so that it may be null, and any other property is written using the {@code Bundler} passed to the
+ * wrapper.
+ *
+ * <p>Generated {@code Bundler} classes use the static {@code writeValueToParcel} and {@code
+ * readValueFromParcel} methods, so the {@code Bundler} is not written with each value. The wrapper
+ * itself writes its {@code Bundler} so that it remains usable as a standalone {@code Parcelable}.
+ *
+ * <p>This must only be used once. It should be used after {@link EarlyValidator} has been used to
+ * validate that the annotated code is correct.
+ */
+final class CrossProfileParcelableWrapperGenerator {
+
+  private boolean generated = false;
+  private final GeneratorContext generatorContext;
+  private final GeneratorUtilities generatorUtilities;
+  private final CrossProfileParcelableInfo crossProfileParcelable;
+  // Only used for the code to write and read types which do not need a Bundler
+  private final SupportedTypes defaultSupportedTypes;
+  private final boolean internsStrings;
+
+  CrossProfileParcelableWrapperGenerator(
+      GeneratorContext generatorContext, CrossProfileParcelableInfo crossProfileParcelable) {
+    this.generatorContext = checkNotNull(generatorContext);
+    this.generatorUtilities = new GeneratorUtilities(generatorContext);
+    this.crossProfileParcelable = checkNotNull(crossProfileParcelable);
+    this.defaultSupportedTypes =
+        SupportedTypes.createFromMethods(
+            generatorContext.types(),
+            generatorContext.elements(),
+            Collections.emptyList(),
+            Collections.emptyList(),
+            Collections.emptyList());
+    // The wrapper is shared by all methods, so strings are written with a StringTable if any
+    // method interns them
+    this.internsStrings =
+        generatorContext.crossProfileTypes().stream()
+            .anyMatch(CrossProfileTypeInfo::internsStrings);
+  }
+
+  void generate() {
+    if (generated) {
+      throw new IllegalStateException(
+          "CrossProfileParcelableWrapperGenerator#generate can only be called once");
+    }
+    generated = true;
+
+    generateCrossProfileParcelableWrapper();
+  }
+
+  private void generateCrossProfileParcelableWrapper() {
+    ClassName wrapperClassName = crossProfileParcelable.wrapperClassName();
+    ClassName parcelableClassName = ClassName.get(crossProfileParcelable.parcelableElement());
+    boolean usesBundler =
+        crossProfileParcelable.properties().stream().anyMatch(p -> !isWrittenDirectly(p.type()));
+
+    TypeSpec.Builder classBuilder =
+        TypeSpec.classBuilder(wrapperClassName)
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addSuperinterface(PARCELABLE_CLASSNAME)
+            .addJavadoc(
+                "Wrapper for reading & writing {@link $T} instances to and from {@link $T}"
+                    + " instances.",
+                parcelableClassName,
+                PARCEL_CLASSNAME);
+
+    classBuilder.addField(
+        FieldSpec.builder(int.class, "NULL")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+            .initializer("-1")
+            .build());
+    classBuilder.addField(
+        FieldSpec.builder(int.class, "NOT_NULL")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+            .initializer("1")
+            .build());
+
+    for (Property property : crossProfileParcelable.properties()) {
+      if (isWrittenDirectly(property.type())) {
+        continue;
+      }
+      classBuilder.addField(
+          FieldSpec.builder(BUNDLER_TYPE_CLASSNAME, getBundlerTypeFieldName(property))
+              .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+              .initializer(TypeUtils.generateBundlerType(property.type()))
+              .build());
+    }
+
+    if (usesBundler) {
+      classBuilder.addField(
+          FieldSpec.builder(BUNDLER_CLASSNAME, "bundler", Modifier.PRIVATE, Modifier.FINAL)
+              .build());
+    }
+    classBuilder.addField(
+        FieldSpec.builder(parcelableClassName, "value", Modifier.PRIVATE, Modifier.FINAL).build());
+
+    classBuilder.addMethod(
+        MethodSpec.methodBuilder("of")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc("Create a wrapper for the given {@link $T}.\n", parcelableClassName)
+            .returns(wrapperClassName)
+            .addParameter(BUNDLER_CLASSNAME, "bundler")
+            .addParameter(BUNDLER_TYPE_CLASSNAME, "type")
+            .addParameter(parcelableClassName, "value")
+            .addStatement(
+                usesBundler ? "return new $T(bundler, value)" : "return new $T(value)",
+                wrapperClassName)
+            .build());
+
+    classBuilder.addMethod(
+        MethodSpec.methodBuilder("get")
+            .addModifiers(Modifier.PUBLIC)
+            .returns(parcelableClassName)
+            .addStatement("return value")
+            .build());
+
+    MethodSpec.Builder constructor = MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE);
+    if (usesBundler) {
+      constructor
+          .addParameter(BUNDLER_CLASSNAME, "bundler")
+          .beginControlFlow("if (bundler == null)")
+          .addStatement("throw new $T()", NullPointerException.class)
+          .endControlFlow()
+          .addStatement("this.bundler = bundler");
+    }
+    classBuilder.addMethod(
+        constructor
+            .addParameter(parcelableClassName, "value")
+            .addStatement("this.value = value")
+            .build());
+
+    classBuilder.addMethod(createWriteValueToParcelMethod(parcelableClassName));
+    classBuilder.addMethod(createReadValueFromParcelMethod(parcelableClassName));
+    classBuilder.addMethod(createReadFromParcelConstructor(usesBundler));
+    classBuilder.addMethod(createWriteToParcelMethod(usesBundler));
+    classBuilder.addMethod(createWritePropertiesMethod(parcelableClassName));
+    classBuilder.addMethod(createReadPropertiesMethod(parcelableClassName));
+
+    generatorUtilities.addDefaultParcelableMethods(classBuilder, wrapperClassName);
+
+    generatorUtilities.writeClassToFile(wrapperClassName.packageName(), classBuilder);
+  }
+
+  private MethodSpec createWriteValueToParcelMethod(ClassName parcelableClassName) {
+    return MethodSpec.methodBuilder("writeValueToParcel")
+        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+        .addJavadoc(
+            "Write {@code value} to {@code dest}, using {@code bundler} for any properties which"
+                + " need it.\n\n<p>Unlike {@link #writeToParcel($T, int)}, this does not write"
+                + " {@code bundler}, so the value must be read with {@link"
+                + " #readValueFromParcel($T, $T)} using the same {@code bundler}.\n",
+            PARCEL_CLASSNAME,
+            BUNDLER_CLASSNAME,
+            PARCEL_CLASSNAME)
+        .addParameter(BUNDLER_CLASSNAME, "bundler")
+        .addParameter(PARCEL_CLASSNAME, "dest")
+        .addParameter(parcelableClassName, "value")
+        .addParameter(int.class, "flags")
+        .beginControlFlow("if (value == null)")
+        .addStatement("dest.writeInt(NULL)")
+        .addStatement("return")
+        .endControlFlow()
+        .addStatement("dest.writeInt(NOT_NULL)")
+        .addStatement("writeProperties(bundler, dest, value, flags)")
+        .build();
+  }
+
+  private MethodSpec createReadValueFromParcelMethod(ClassName parcelableClassName) {
+    return MethodSpec.methodBuilder("readValueFromParcel")
+        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+        .addJavadoc(
+            "Read a value written by {@link #writeValueToParcel($T, $T, $T, int)}.\n",
+            BUNDLER_CLASSNAME,
+            PARCEL_CLASSNAME,
+            parcelableClassName)
+        .returns(parcelableClassName)
+        .addParameter(BUNDLER_CLASSNAME, "bundler")
+        .addParameter(PARCEL_CLASSNAME, "in")
+        .beginControlFlow("if (in.readInt() == NULL)")
+        .addStatement("return null")
+        .endControlFlow()
+        .addStatement("return readProperties(bundler, in)")
+        .build();
+  }
+
+  private MethodSpec createReadFromParcelConstructor(boolean usesBundler) {
+    MethodSpec.Builder constructor =
+        MethodSpec.constructorBuilder()
+            .addModifiers(Modifier.PRIVATE)
+            .addParameter(PARCEL_CLASSNAME, "in")
+            .beginControlFlow("if (in.readInt() == NULL)");
+    if (usesBundler) {
+      constructor.addStatement("bundler = null");
+    }
+    constructor.addStatement("value = null").addStatement("return").endControlFlow();
+
+    if (usesBundler) {
+      constructor
+          .addStatement("bundler = in.readParcelable($T.class.getClassLoader())", BUNDLER_CLASSNAME)
+          .addStatement("value = readProperties(bundler, in)");
+    } else {
+      constructor.addStatement("value = readProperties(null, in)");
+    }
+
+    return constructor.build();
+  }
+
+  private MethodSpec createWriteToParcelMethod(boolean usesBundler) {
+    MethodSpec.Builder method =
+        MethodSpec.methodBuilder("writeToParcel")
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PUBLIC)
+            .addParameter(PARCEL_CLASSNAME, "dest")
+            .addParameter(int.class, "flags")
+            .beginControlFlow("if (value == null)")
+            .addStatement("dest.writeInt(NULL)")
+            .addStatement("return")
+            .endControlFlow()
+            .addStatement("dest.writeInt(NOT_NULL)");
+
+    if (usesBundler) {
+      method
+          .addStatement("dest.writeParcelable(bundler, flags)")
+          .addStatement("writeProperties(bundler, dest, value, flags)");
+    } else {
+      method.addStatement("writeProperties(null, dest, value, flags)");
+    }
+
+    return method.build();
+  }
+
+  private MethodSpec createReadPropertiesMethod(ClassName parcelableClassName) {
+    MethodSpec.Builder method =
+        MethodSpec.methodBuilder("readProperties")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .returns(parcelableClassName)
+            .addParameter(BUNDLER_CLASSNAME, "bundler")
+            .addParameter(PARCEL_CLASSNAME, "in");
+
+    // Properties are read as arguments, which Java evaluates from left to right
+    CodeBlock.Builder arguments = CodeBlock.builder();
+    boolean hasUncheckedCast = false;
+    for (int i = 0; i < crossProfileParcelable.properties().size(); i++) {
+      Property property = crossProfileParcelable.properties().get(i);
+      arguments.add(i == 0 ? "\n" : ",\n");
+      if (internsStrings && isString(property.type())) {
+        arguments.add("$T.readString(in)", STRING_TABLE_CLASSNAME);
+      } else if (isBoxedPrimitive(property.type())) {
+        arguments.add(
+            "in.readInt() == NULL ? null : $L",
+            defaultSupportedTypes.generateReadFromParcelCode(
+                "in", defaultSupportedTypes.getType(property.type())));
+      } else if (isWrittenDirectly(property.type())) {
+        arguments.add(
+            defaultSupportedTypes.generateReadFromParcelCode(
+                "in", defaultSupportedTypes.getType(property.type())));
+      } else {
+        hasUncheckedCast = hasUncheckedCast || TypeUtils.isGeneric(property.type());
+        arguments.add(
+            "($T) bundler.readFromParcel(in, $L)",
+            TypeName.get(property.type()).box(),
+            getBundlerTypeFieldName(property));
+      }
+    }
+    ExecutableElement creator = crossProfileParcelable.creator().get();
+    if (creator.getKind() == ElementKind.CONSTRUCTOR) {
+      method.addStatement("return new $T($L)", parcelableClassName, arguments.build());
+    } else {
+      method.addStatement(
+          "return $T.$L($L)", parcelableClassName, creator.getSimpleName(), arguments.build());
+    }
+
+    if (hasUncheckedCast) {
+      method.addAnnotation(
+          AnnotationSpec.builder(SuppressWarnings.class)
+              .addMember("value", "$S", "unchecked")
+              .build());
+    }
+
+    return method.build();
+  }
+
+  private MethodSpec createWritePropertiesMethod(ClassName parcelableClassName) {
+    MethodSpec.Builder method =
+        MethodSpec.methodBuilder("writeProperties")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .addParameter(BUNDLER_CLASSNAME, "bundler")
+            .addParameter(PARCEL_CLASSNAME, "dest")
+            .addParameter(parcelableClassName, "value")
+            .addParameter(int.class, "flags");
+
+    for (Property property : crossProfileParcelable.properties()) {
+      String valueCode = "value." + property.accessor().get();
+      if (internsStrings && isString(property.type())) {
+        method.addStatement("$T.writeString(dest, $L)", STRING_TABLE_CLASSNAME, valueCode);
+      } else if (isBoxedPrimitive(property.type())) {
+        // Boxed primitives are written as primitives, so null is marked separately
+        method
+            .beginControlFlow("if ($L == null)", valueCode)
+            .addStatement("dest.writeInt(NULL)")
+            .nextControlFlow("else")
+            .addStatement("dest.writeInt(NOT_NULL)")
+            .addStatement(
+                defaultSupportedTypes.generateWriteToParcelCode(
+                    "dest", defaultSupportedTypes.getType(property.type()), valueCode))
+            .endControlFlow();
+      } else if (isWrittenDirectly(property.type())) {
+        method.addStatement(
+            defaultSupportedTypes.generateWriteToParcelCode(
+                "dest", defaultSupportedTypes.getType(property.type()), valueCode));
+      } else {
+        method.addStatement(
+            "bundler.writeToParcel(dest, $L, $L, flags)",
+            valueCode,
+            getBundlerTypeFieldName(property));
+      }
+    }
+
+    return method.build();
+  }
+
+  private boolean isWrittenDirectly(TypeMirror type) {
+    return defaultSupportedTypes.isWrittenDirectly(type);
+  }
+
+  private static boolean isBoxedPrimitive(TypeMirror type) {
+    return TypeName.get(type).isBoxedPrimitive();
+  }
+
+  private static boolean isString(TypeMirror type) {
+    return type.toString().equals("java.lang.String");
+  }
+
+  private static String getBundlerTypeFieldName(Property property) {
+    return property.name().replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase(Locale.ROOT)
+        + "_TYPE";
+  }
+}
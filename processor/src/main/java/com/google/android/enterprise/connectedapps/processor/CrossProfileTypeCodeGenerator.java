@@ -32,6 +32,7 @@ class CrossProfileTypeCodeGenerator {
   private final DefaultProfileClassGenerator defaultProfileClassGenerator;
   private final InternalCrossProfileClassGenerator internalCrossProfileClassGenerator;
   private final BundlerGenerator bundlerGenerator;
+  private final boolean usesSharedBundler;
 
   public CrossProfileTypeCodeGenerator(
       GeneratorContext generatorContext,
@@ -51,6 +52,7 @@ class CrossProfileTypeCodeGenerator {
     this.internalCrossProfileClassGenerator =
         new InternalCrossProfileClassGenerator(generatorContext, providerClass, crossProfileType);
     this.bundlerGenerator = new BundlerGenerator(generatorContext, crossProfileType);
+    this.usesSharedBundler = crossProfileType.usesSharedBundler();
   }
 
   void generate() {
@@ -68,6 +70,9 @@ class CrossProfileTypeCodeGenerator {
     multipleProfilesGenerator.generate();
     defaultProfileClassGenerator.generate();
     internalCrossProfileClassGenerator.generate();
-    bundlerGenerator.generate();
+    if (!usesSharedBundler) {
+      // The shared bundler is generated once by CodeGenerator
+      bundlerGenerator.generate();
+    }
   }
 }
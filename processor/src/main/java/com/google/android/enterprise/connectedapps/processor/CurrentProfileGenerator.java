@@ -74,6 +74,7 @@ final class CurrentProfileGenerator {
 
     TypeSpec.Builder classBuilder =
         TypeSpec.classBuilder(className)
+            .addOriginatingElement(crossProfileType.crossProfileTypeElement())
             .addJavadoc(
                 "Implementation of {@link $T} and {@link $T} which makes calls to the current"
                     + " profile.\n\n"
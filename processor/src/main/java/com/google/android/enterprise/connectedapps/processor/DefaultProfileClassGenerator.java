@@ -88,6 +88,7 @@ final class DefaultProfileClassGenerator {
 
     TypeSpec.Builder classBuilder =
         TypeSpec.classBuilder(className)
+            .addOriginatingElement(crossProfileType.crossProfileTypeElement())
             .addJavadoc(
                 "Default implementation of {@link $T} to be used in production.\n",
                 crossProfileTypeInterfaceClassName)
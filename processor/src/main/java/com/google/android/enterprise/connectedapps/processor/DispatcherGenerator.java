@@ -20,9 +20,11 @@ import static com.google.android.enterprise.connectedapps.processor.CommonClassN
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.CONTEXT_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.CROSS_PROFILE_CALLBACK_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.CROSS_PROFILE_SENDER_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.DIRECT_PARCEL_CALLS_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.PARCEL_CALL_RECEIVER_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.PARCEL_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.PARCEL_UTILITIES_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.SERVICE_WARM_UP_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.ServiceGenerator.getConnectedAppsServiceClassName;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.util.stream.Collectors.joining;
@@ -78,6 +80,7 @@ final class DispatcherGenerator {
 
     TypeSpec.Builder classBuilder =
         TypeSpec.classBuilder(className)
+            .addOriginatingElement(configuration.configurationElement())
             .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
             .addJavadoc(
                 "Class for dispatching calls to appropriate providers.\n\n"
@@ -86,13 +89,24 @@ final class DispatcherGenerator {
                     + "to a provider.\n",
                 PARCEL_CALL_RECEIVER_CLASSNAME);
 
+    // The dispatcher routes calls to every provider, so depends on all of them
+    for (ProviderClassInfo provider : configuration.providers()) {
+      classBuilder.addOriginatingElement(provider.providerClassElement());
+    }
+
     classBuilder.addField(
         FieldSpec.builder(PARCEL_CALL_RECEIVER_CLASSNAME, "parcelCallReceiver")
             .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
             .initializer("new $T()", PARCEL_CALL_RECEIVER_CLASSNAME)
             .build());
 
-    addCallMethod(classBuilder);
+    generatorUtilities.maybeEnableSdkTracing(classBuilder);
+    generatorUtilities.maybeEnableSdkCompression(classBuilder);
+    generatorUtilities.maybeEnableResultWriterQueue(classBuilder);
+
+    addWarmUpMethod(classBuilder);
+    addCallMethod(classBuilder, className);
+    addCallDirectMethod(classBuilder, className);
     addPrepareCallMethod(classBuilder);
     addFetchResponseMethod(classBuilder);
 
@@ -144,29 +158,86 @@ final class DispatcherGenerator {
             .addJavadoc(
                 "Fetch a response block if a previous call to\n {@link #call(Context, long, int,"
                     + " long, int, byte[], ICrossProfileCallback)} returned a\n byte array with"
-                    + " 1 as the first byte.\n\n"
+                    + " 1 as the first byte, or if a call made after negotiating features, or this"
+                    + "\n method, returned a block of exactly {@link $2T#MAX_BYTES_PER_BLOCK}"
+                    + " bytes.\n\n"
                     + "@param callId should be the same callId used with\n    {@link #call(Context,"
                     + " long, int, long, int, byte[], ICrossProfileCallback)}\n"
                     + "@param blockId The (zero indexed) number of the block to fetch.\n\n"
                     + "@see $1T#getPreparedResponse(long, int)\n",
-                PARCEL_CALL_RECEIVER_CLASSNAME)
+                PARCEL_CALL_RECEIVER_CLASSNAME,
+                CROSS_PROFILE_SENDER_CLASSNAME)
             .build();
     classBuilder.addMethod(prepareCallMethod);
   }
 
-  private void addCallMethod(TypeSpec.Builder classBuilder) {
+  private void addWarmUpMethod(TypeSpec.Builder classBuilder) {
+    CodeBlock.Builder methodCode = CodeBlock.builder();
+
+    methodCode.addStatement(
+        "$T applicationContext = context.getApplicationContext()", CONTEXT_CLASSNAME);
+    for (ProviderClassInfo provider : configuration.providers()) {
+      methodCode.addStatement(
+          "$T.instance().warmUp(applicationContext)",
+          InternalProviderClassGenerator.getInternalProviderClassName(generatorContext, provider));
+    }
+
+    classBuilder.addMethod(
+        MethodSpec.methodBuilder("warmUp")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addParameter(CONTEXT_CLASSNAME, "context")
+            .addCode(methodCode.build())
+            .addJavadoc(
+                "Construct all providers and load the classes used to dispatch calls to them.\n\n"
+                    + "<p>This can be called on a background thread before the first call is"
+                    + " received, so that\nthe first call does not need to do this.\n")
+            .build());
+  }
+
+  /**
+   * Wrap {@code method} so that, if it handles the first call received by this process, the time
+   * taken is recorded by {@code ServiceWarmUp}.
+   *
+   * <p>This is only done when warm-up is enabled, so that other dispatchers do not pay for it.
+   */
+  private MethodSpec maybeRecordFirstCallLatency(MethodSpec method) {
+    if (!ProcessorConfiguration.isWarmUpEnabled(generatorContext.processingEnv())) {
+      return method;
+    }
+    return MethodSpec.methodBuilder(method.name)
+        .addJavadoc(method.javadoc)
+        .addAnnotations(method.annotations)
+        .addModifiers(method.modifiers)
+        .returns(method.returnType)
+        .addParameters(method.parameters)
+        .addStatement("boolean firstCall = $T.instance().isFirstCall()", SERVICE_WARM_UP_CLASSNAME)
+        .addStatement("long firstCallStartNanos = firstCall ? System.nanoTime() : 0")
+        .beginControlFlow("try")
+        .addCode(method.code)
+        .nextControlFlow("finally")
+        .beginControlFlow("if (firstCall)")
+        .addStatement(
+            "$T.instance().recordFirstCall(System.nanoTime() - firstCallStartNanos)",
+            SERVICE_WARM_UP_CLASSNAME)
+        .endControlFlow()
+        .endControlFlow()
+        .build();
+  }
+
+  private void addCallMethod(TypeSpec.Builder classBuilder, ClassName className) {
     CodeBlock.Builder methodCode = CodeBlock.builder();
 
     methodCode.beginControlFlow("try");
 
     methodCode.addStatement(
-        "$1T parcel = parcelCallReceiver.getPreparedCall(callId, blockId, paramBytes)",
+        "$1T parcel = parcelCallReceiver.getPreparedCall(callId, blockId, paramBytes,"
+            + " paramBytesCompressed)",
         PARCEL_CLASSNAME);
 
     List<ProviderClassInfo> providers = configuration.providers().asList();
 
     if (!providers.isEmpty()) {
-      addProviderDispatch(methodCode, providers);
+      addProviderDispatch(methodCode, providers, /* direct= */ false);
     }
 
     methodCode.addStatement(
@@ -180,7 +251,8 @@ final class DispatcherGenerator {
     methodCode.addStatement(
         "$T.writeThrowableToParcel(throwableParcel, e)", PARCEL_UTILITIES_CLASSNAME);
     methodCode.addStatement(
-        "$1T throwableBytes = parcelCallReceiver.prepareResponse(callId, throwableParcel)",
+        "$1T throwableBytes = parcelCallReceiver.prepareResponse(callId, throwableParcel,"
+            + " negotiatedResponse)",
         ArrayTypeName.of(byte.class));
     methodCode.addStatement("throwableParcel.recycle()");
 
@@ -189,9 +261,9 @@ final class DispatcherGenerator {
     methodCode.addStatement("return throwableBytes");
     methodCode.endControlFlow();
 
-    MethodSpec callMethod =
+    MethodSpec callImplementationMethod =
         MethodSpec.methodBuilder("call")
-            .addModifiers(Modifier.PUBLIC)
+            .addModifiers(Modifier.PRIVATE)
             .returns(ArrayTypeName.of(byte.class))
             .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class)
                 // Allow catching of RuntimeException
@@ -203,8 +275,27 @@ final class DispatcherGenerator {
             .addParameter(long.class, "crossProfileTypeIdentifier")
             .addParameter(int.class, "methodIdentifier")
             .addParameter(ArrayTypeName.of(byte.class), "paramBytes")
+            .addParameter(boolean.class, "paramBytesCompressed")
             .addParameter(CROSS_PROFILE_CALLBACK_CLASSNAME, "callback")
+            .addParameter(boolean.class, "negotiatedResponse")
             .addCode(methodCode.build())
+            .build();
+
+    MethodSpec callMethod =
+        MethodSpec.methodBuilder("call")
+            .addModifiers(Modifier.PUBLIC)
+            .returns(ArrayTypeName.of(byte.class))
+            .addParameter(CONTEXT_CLASSNAME, "context")
+            .addParameter(long.class, "callId")
+            .addParameter(int.class, "blockId")
+            .addParameter(long.class, "crossProfileTypeIdentifier")
+            .addParameter(int.class, "methodIdentifier")
+            .addParameter(ArrayTypeName.of(byte.class), "paramBytes")
+            .addParameter(CROSS_PROFILE_CALLBACK_CLASSNAME, "callback")
+            .addStatement(
+                "return call(context, callId, blockId, crossProfileTypeIdentifier,"
+                    + " methodIdentifier, paramBytes, /* paramBytesCompressed= */ false, callback,"
+                    + " /* negotiatedResponse= */ false)")
             .addJavadoc(
                 "Make a call, which will execute some annotated method and return a response.\n\n"
                     + "<p>The parameters to the call should be contained in a {@link $1T}"
@@ -248,17 +339,151 @@ final class DispatcherGenerator {
                 PARCEL_CALL_RECEIVER_CLASSNAME)
             .build();
 
+    MethodSpec callWithCompressionMethod =
+        MethodSpec.methodBuilder("callWithCompression")
+            .addModifiers(Modifier.PUBLIC)
+            .returns(ArrayTypeName.of(byte.class))
+            .addParameter(CONTEXT_CLASSNAME, "context")
+            .addParameter(long.class, "callId")
+            .addParameter(int.class, "blockId")
+            .addParameter(long.class, "crossProfileTypeIdentifier")
+            .addParameter(int.class, "methodIdentifier")
+            .addParameter(ArrayTypeName.of(byte.class), "paramBytes")
+            .addParameter(boolean.class, "paramBytesCompressed")
+            .addParameter(CROSS_PROFILE_CALLBACK_CLASSNAME, "callback")
+            .addStatement(
+                "return call(context, callId, blockId, crossProfileTypeIdentifier,"
+                    + " methodIdentifier, paramBytes, paramBytesCompressed, callback,"
+                    + " /* negotiatedResponse= */ true)")
+            .addJavadoc(
+                "Make a call, as with\n"
+                    + "{@link #call(Context, long, int, long, int, byte[], ICrossProfileCallback)},"
+                    + " where the caller\nsupports compression or headerless responses.\n\n"
+                    + "<p>If {@code paramBytesCompressed} is {@code true} then the parameters"
+                    + " (including any\nblocks passed to"
+                    + " {@link #prepareCall(Context, long, int, int, byte[])}) are compressed.\n\n"
+                    + "<p>The response has no status header. If it contains fewer than"
+                    + " {@link $3T#MAX_BYTES_PER_BLOCK}\nbytes then it is the complete return"
+                    + " value, otherwise {@link #fetchResponse(Context, long, int)}\nshould be"
+                    + " used to fetch further blocks until a shorter block is returned.\n\n"
+                    + "<p>If the response is compressed then {@code null} is returned, and all"
+                    + " blocks of the response\nshould be fetched using"
+                    + " {@link #fetchResponse(Context, long, int)}, starting with block 0.\n\n"
+                    + "@see $1T#getPreparedCall(long, int, byte[], boolean)\n"
+                    + "@see $1T#prepareResponse(long, $2T, boolean)\n",
+                PARCEL_CALL_RECEIVER_CLASSNAME,
+                PARCEL_CLASSNAME,
+                CROSS_PROFILE_SENDER_CLASSNAME)
+            .build();
+
     classBuilder.addMethod(callMethod);
+    classBuilder.addMethod(callWithCompressionMethod);
+    // The callId is included so this section can be matched to the section recorded by the sender
+    classBuilder.addMethod(
+        generatorUtilities.maybeAddTraceSection(
+            maybeRecordFirstCallLatency(callImplementationMethod),
+            CodeBlock.of(
+                "$S + crossProfileTypeIdentifier + \":\" + methodIdentifier + \" \" + callId",
+                className.simpleName() + "#call ")));
+  }
+
+  private void addCallDirectMethod(TypeSpec.Builder classBuilder, ClassName className) {
+    CodeBlock.Builder methodCode = CodeBlock.builder();
+
+    methodCode.beginControlFlow("try");
+
+    List<ProviderClassInfo> providers = configuration.providers().asList();
+
+    if (!providers.isEmpty()) {
+      addProviderDispatch(methodCode, providers, /* direct= */ true);
+    }
+
+    methodCode.addStatement(
+        "throw new $T(\"Unknown type identifier \" + crossProfileTypeIdentifier)",
+        IllegalArgumentException.class);
+
+    methodCode.nextControlFlow("catch ($T e)", RuntimeException.class);
+    methodCode.addStatement("$1T throwableParcel = $1T.obtain()", PARCEL_CLASSNAME);
+    methodCode.add("throwableParcel.writeInt(1); //errors\n");
+    methodCode.addStatement(
+        "$T.writeThrowableToParcel(throwableParcel, e)", PARCEL_UTILITIES_CLASSNAME);
+    methodCode.addStatement(
+        "$T.writeResponse(reply, callId, throwableParcel, parcelCallReceiver)",
+        DIRECT_PARCEL_CALLS_CLASSNAME);
+    methodCode.addStatement("throwableParcel.recycle()");
+
+    methodCode.addStatement("$T.throwInBackground(e)", BACKGROUND_EXCEPTION_THROWER_CLASSNAME);
+    methodCode.endControlFlow();
+
+    MethodSpec callDirectImplementationMethod =
+        MethodSpec.methodBuilder("callDirect")
+            .addModifiers(Modifier.PRIVATE)
+            .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class)
+                // Allow catching of RuntimeException
+                .addMember("value", "\"CatchSpecificExceptionsChecker\"")
+                .build())
+            .addParameter(CONTEXT_CLASSNAME, "context")
+            .addParameter(long.class, "callId")
+            .addParameter(long.class, "crossProfileTypeIdentifier")
+            .addParameter(int.class, "methodIdentifier")
+            .addParameter(CROSS_PROFILE_CALLBACK_CLASSNAME, "callback")
+            // The remainder of the transaction data, which is read in place
+            .addParameter(PARCEL_CLASSNAME, "parcel")
+            .addParameter(PARCEL_CLASSNAME, "reply")
+            .addCode(methodCode.build())
+            .build();
+
+    MethodSpec callDirectMethod =
+        MethodSpec.methodBuilder("callDirect")
+            .addModifiers(Modifier.PUBLIC)
+            .addParameter(CONTEXT_CLASSNAME, "context")
+            .addParameter(PARCEL_CLASSNAME, "data")
+            .addParameter(PARCEL_CLASSNAME, "reply")
+            .addStatement("data.enforceInterface($T.DESCRIPTOR)", DIRECT_PARCEL_CALLS_CLASSNAME)
+            .addStatement("long callId = data.readLong()")
+            .addStatement("long crossProfileTypeIdentifier = data.readLong()")
+            .addStatement("int methodIdentifier = data.readInt()")
+            .addStatement(
+                "$1T callback = $1T.Stub.asInterface(data.readStrongBinder())",
+                CROSS_PROFILE_CALLBACK_CLASSNAME)
+            .addStatement(
+                "callDirect(context, callId, crossProfileTypeIdentifier, methodIdentifier,"
+                    + " callback, data, reply)")
+            .addJavadoc(
+                "Make a call sent as a single transaction, as described in {@link $1T}.\n\n"
+                    + "<p>{@code data} contains the header written by\n"
+                    + "{@link $1T#writeCallHeader} followed by the parameters, which are read"
+                    + " directly from it.\nThe response is written to {@code reply} using\n"
+                    + "{@link $1T#writeResponse}.\n",
+                DIRECT_PARCEL_CALLS_CLASSNAME)
+            .build();
+
+    classBuilder.addMethod(callDirectMethod);
+    // The callId is included so this section can be matched to the section recorded by the sender
+    classBuilder.addMethod(
+        generatorUtilities.maybeAddTraceSection(
+            maybeRecordFirstCallLatency(callDirectImplementationMethod),
+            CodeBlock.of(
+                "$S + crossProfileTypeIdentifier + \":\" + methodIdentifier + \" \" + callId",
+                className.simpleName() + "#callDirect ")));
   }
 
   private void addProviderDispatch(
-      CodeBlock.Builder methodCode, List<ProviderClassInfo> providers) {
+      CodeBlock.Builder methodCode, List<ProviderClassInfo> providers, boolean direct) {
     for (ProviderClassInfo provider : providers) {
-      addProviderDispatchInner(methodCode, provider);
+      addProviderDispatchInner(methodCode, provider, direct);
     }
   }
 
-  private void addProviderDispatchInner(CodeBlock.Builder methodCode, ProviderClassInfo provider) {
+  /**
+   * Add the dispatch of a call to {@code provider}.
+   *
+   * <p>If {@code direct} is {@code true} the response is written to {@code reply} and {@code
+   * parcel} is not recycled, as it is owned by the binder transaction. Otherwise the response is
+   * prepared and returned.
+   */
+  private void addProviderDispatchInner(
+      CodeBlock.Builder methodCode, ProviderClassInfo provider, boolean direct) {
     String condition =
         provider.allCrossProfileTypes().stream()
             .map(
@@ -276,8 +501,18 @@ final class DispatcherGenerator {
             + " crossProfileTypeIdentifier, methodIdentifier, parcel, callback)",
         PARCEL_CLASSNAME,
         InternalProviderClassGenerator.getInternalProviderClassName(generatorContext, provider));
+    if (direct) {
+      methodCode.addStatement(
+          "$T.writeResponse(reply, callId, returnParcel, parcelCallReceiver)",
+          DIRECT_PARCEL_CALLS_CLASSNAME);
+      methodCode.addStatement("returnParcel.recycle()");
+      methodCode.addStatement("return");
+      methodCode.endControlFlow();
+      return;
+    }
     methodCode.addStatement(
-        "$1T returnBytes = parcelCallReceiver.prepareResponse(callId, returnParcel)",
+        "$1T returnBytes = parcelCallReceiver.prepareResponse(callId, returnParcel,"
+            + " negotiatedResponse)",
         ArrayTypeName.of(byte.class));
     methodCode.addStatement("parcel.recycle()");
     methodCode.addStatement("returnParcel.recycle()");
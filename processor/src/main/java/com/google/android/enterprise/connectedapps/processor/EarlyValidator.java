@@ -35,6 +35,7 @@ import com.google.android.enterprise.connectedapps.processor.annotationdiscovery
 import com.google.android.enterprise.connectedapps.processor.containers.CrossProfileAnnotationInfo;
 import com.google.android.enterprise.connectedapps.processor.containers.CrossProfileCallbackAnnotationInfo;
 import com.google.android.enterprise.connectedapps.processor.containers.CrossProfileMethodInfo;
+import com.google.android.enterprise.connectedapps.processor.containers.CrossProfileParcelableInfo;
 import com.google.android.enterprise.connectedapps.processor.containers.CrossProfileProviderAnnotationInfo;
 import com.google.android.enterprise.connectedapps.processor.containers.FutureWrapperAnnotationInfo;
 import com.google.android.enterprise.connectedapps.processor.containers.ParcelableWrapperAnnotationInfo;
@@ -149,6 +150,8 @@ public final class EarlyValidator {
       "@CROSS_PROFILE_ANNOTATION annotations on methods can not specify a connector";
   private static final String METHOD_PARCELABLE_WRAPPERS_ERROR =
       "@CROSS_PROFILE_ANNOTATION annotations on methods can not specify parcelable wrappers";
+  private static final String METHOD_BITMAP_ENCODING_ERROR =
+      "@CROSS_PROFILE_ANNOTATION annotations on methods can not specify a bitmap encoding";
   private static final String METHOD_CLASSNAME_ERROR =
       "@CROSS_PROFILE_ANNOTATION annotations on methods can not specify a profile class name";
   private static final String INVALID_TIMEOUT_MILLIS = "timeoutMillis must be positive";
@@ -202,6 +205,23 @@ public final class EarlyValidator {
   private static final String NOT_STATIC_ERROR =
       "Types annotated @CROSS_PROFILE_ANNOTATION(isStatic=true) must not contain any non-static"
           + " methods annotated @CROSS_PROFILE_ANNOTATION";
+  private static final String CROSS_PROFILE_PARCELABLE_NOT_CLASS_ERROR =
+      "Only classes may be annotated @CrossProfileParcelable";
+  private static final String CROSS_PROFILE_PARCELABLE_DEFAULT_PACKAGE_ERROR =
+      "Classes annotated @CrossProfileParcelable must not be in the default package";
+  private static final String CROSS_PROFILE_PARCELABLE_NOT_ACCESSIBLE_ERROR =
+      "Classes annotated @CrossProfileParcelable must not be private, and must be static if nested";
+  private static final String CROSS_PROFILE_PARCELABLE_HAS_SUPERCLASS_ERROR =
+      "Classes annotated @CrossProfileParcelable must not extend any class other than Object, as"
+          + " properties declared in a superclass would not be written";
+  private static final String GENERIC_CROSS_PROFILE_PARCELABLE_ERROR =
+      "Classes annotated @CrossProfileParcelable can not be generic";
+  private static final String CROSS_PROFILE_PARCELABLE_NO_ACCESSOR_ERROR =
+      "Private fields of classes annotated @CrossProfileParcelable must have a non-private getX(),"
+          + " isX() or x() method";
+  private static final String CROSS_PROFILE_PARCELABLE_NO_CREATOR_ERROR =
+      "Classes annotated @CrossProfileParcelable must have a non-private constructor, or if"
+          + " abstract a static method, which takes each property in order: %s";
   private static final String METHOD_STATICTYPES_ERROR =
       "@CROSS_PROFILE_PROVIDER_ANNOTATION annotations on methods can not specify staticTypes";
 
@@ -282,7 +302,9 @@ public final class EarlyValidator {
                 validatorContext.newCrossProfileCallbackInterfaces()),
             validateCrossProfileTests(validatorContext.newCrossProfileTests()),
             validateCustomParcelableWrappers(validatorContext.newCustomParcelableWrappers()),
-            validateCustomFutureWrappers(validatorContext.newCustomFutureWrappers()))
+            validateCustomFutureWrappers(validatorContext.newCustomFutureWrappers()),
+            validateCrossProfileParcelableTypes(
+                validatorContext.newCrossProfileParcelableTypes()))
         .allMatch(b -> b);
   }
 
@@ -757,6 +779,11 @@ public final class EarlyValidator {
       isValid = false;
     }
 
+    if (!crossProfileAnnotation.isBitmapEncodingDefault()) {
+      showError(METHOD_BITMAP_ENCODING_ERROR, crossProfileMethod);
+      isValid = false;
+    }
+
     isValid =
         isValid
             && validateReturnType(crossProfileType, crossProfileMethod)
@@ -1052,6 +1079,78 @@ public final class EarlyValidator {
     return isValid;
   }
 
+  private boolean validateCrossProfileParcelableTypes(
+      Collection<TypeElement> crossProfileParcelableTypes) {
+    boolean isValid = true;
+
+    for (TypeElement crossProfileParcelableType : crossProfileParcelableTypes) {
+      isValid = validateCrossProfileParcelableType(crossProfileParcelableType) && isValid;
+    }
+
+    return isValid;
+  }
+
+  private boolean validateCrossProfileParcelableType(TypeElement crossProfileParcelableType) {
+    if (crossProfileParcelableType.getKind() != ElementKind.CLASS) {
+      showError(CROSS_PROFILE_PARCELABLE_NOT_CLASS_ERROR, crossProfileParcelableType);
+      return false;
+    }
+
+    boolean isValid = true;
+
+    if (validatorContext
+        .elements()
+        .getPackageOf(crossProfileParcelableType)
+        .getQualifiedName()
+        .toString()
+        .isEmpty()) {
+      showError(CROSS_PROFILE_PARCELABLE_DEFAULT_PACKAGE_ERROR, crossProfileParcelableType);
+      isValid = false;
+    }
+
+    if (crossProfileParcelableType.getModifiers().contains(Modifier.PRIVATE)
+        || (crossProfileParcelableType.getEnclosingElement().getKind() != ElementKind.PACKAGE
+            && !crossProfileParcelableType.getModifiers().contains(Modifier.STATIC))) {
+      showError(CROSS_PROFILE_PARCELABLE_NOT_ACCESSIBLE_ERROR, crossProfileParcelableType);
+      isValid = false;
+    }
+
+    if (!crossProfileParcelableType.getTypeParameters().isEmpty()) {
+      showError(GENERIC_CROSS_PROFILE_PARCELABLE_ERROR, crossProfileParcelableType);
+      return false;
+    }
+
+    if (!validatorContext
+        .types()
+        .isSameType(
+            crossProfileParcelableType.getSuperclass(),
+            validatorContext.elements().getTypeElement("java.lang.Object").asType())) {
+      showError(CROSS_PROFILE_PARCELABLE_HAS_SUPERCLASS_ERROR, crossProfileParcelableType);
+      return false;
+    }
+
+    CrossProfileParcelableInfo crossProfileParcelable =
+        CrossProfileParcelableInfo.create(validatorContext.types(), crossProfileParcelableType);
+
+    for (CrossProfileParcelableInfo.Property property : crossProfileParcelable.properties()) {
+      if (!property.accessor().isPresent()) {
+        showError(CROSS_PROFILE_PARCELABLE_NO_ACCESSOR_ERROR, property.element());
+        isValid = false;
+      }
+    }
+
+    if (!crossProfileParcelable.creator().isPresent()) {
+      showError(
+          String.format(
+              CROSS_PROFILE_PARCELABLE_NO_CREATOR_ERROR,
+              crossProfileParcelable.describeProperties()),
+          crossProfileParcelableType);
+      isValid = false;
+    }
+
+    return isValid;
+  }
+
   private boolean ofMethodHasExpectedArguments(
       ClassName wrappedParamRawType, ExecutableElement ofMethod) {
     List<? extends VariableElement> parameters = ofMethod.getParameters();
@@ -78,6 +78,7 @@ class FakeCrossProfileTypeGenerator {
 
     TypeSpec.Builder classBuilder =
         TypeSpec.classBuilder(className)
+            .addOriginatingElement(crossProfileType.crossProfileTypeElement())
             .addJavadoc(
                 "Fake implementation of {@link $T} for use during tests.\n\n"
                     + "<p>This should be injected into your code under test and the {@link $T}\n"
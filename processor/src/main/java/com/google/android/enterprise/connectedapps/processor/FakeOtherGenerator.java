@@ -81,6 +81,7 @@ final class FakeOtherGenerator {
 
     TypeSpec.Builder classBuilder =
         TypeSpec.classBuilder(className)
+            .addOriginatingElement(crossProfileType.crossProfileTypeElement())
             .addJavadoc(
                 "Fake implementation of {@link $T} for use during tests.\n\n"
                     + "<p>This acts based on the state of the passed in {@link $T} and acts as if"
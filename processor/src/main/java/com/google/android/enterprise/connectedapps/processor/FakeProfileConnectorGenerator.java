@@ -53,6 +53,7 @@ class FakeProfileConnectorGenerator {
 
     TypeSpec.Builder classBuilder =
         TypeSpec.classBuilder(className)
+            .addOriginatingElement(connector.connectorElement())
             .addJavadoc(
                 "Fake Profile Connector for {@link $1T}.\n\n"
                     + "<p>All functionality is implemented by {@link $2T}, this class is just used"
@@ -17,6 +17,9 @@ package com.google.android.enterprise.connectedapps.processor;
 
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.PARCELABLE_CREATOR_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.PARCEL_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.PAYLOAD_COMPRESSION_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.RESULT_WRITER_QUEUE_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.TRACE_UTILITIES_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.containers.CrossProfileMethodInfo.AutomaticallyResolvedParameterFilterBehaviour.LEAVE_AUTOMATICALLY_RESOLVED_PARAMETERS;
 import static com.google.android.enterprise.connectedapps.processor.containers.CrossProfileMethodInfo.AutomaticallyResolvedParameterFilterBehaviour.REMOVE_AUTOMATICALLY_RESOLVED_PARAMETERS;
 import static com.google.android.enterprise.connectedapps.processor.containers.CrossProfileMethodInfo.AutomaticallyResolvedParameterFilterBehaviour.REPLACE_AUTOMATICALLY_RESOLVED_PARAMETERS;
@@ -164,7 +167,11 @@ public final class GeneratorUtilities {
     JavaFile javaFile = JavaFile.builder(packageName, clazz).build();
     try {
       JavaFileObject builderFile =
-          context.processingEnv().getFiler().createSourceFile(qualifiedClassName);
+          context
+              .processingEnv()
+              .getFiler()
+              .createSourceFile(
+                  qualifiedClassName, clazz.originatingElements.toArray(new Element[0]));
       try (PrintWriter out = new PrintWriter(builderFile.openWriter())) {
         javaFile.writeTo(out);
       }
@@ -173,6 +180,84 @@ public final class GeneratorUtilities {
     }
   }
 
+  /** Returns {@code true} if {@link ProcessorConfiguration#TRACING_OPTION} is set. */
+  boolean isTracingEnabled() {
+    return ProcessorConfiguration.isTracingEnabled(context.processingEnv());
+  }
+
+  /**
+   * If tracing is enabled, add a static initializer to the class which enables tracing within the
+   * SDK.
+   *
+   * <p>This should be added to generated classes which are entry points into the SDK.
+   */
+  void maybeEnableSdkTracing(TypeSpec.Builder classBuilder) {
+    if (!isTracingEnabled()) {
+      return;
+    }
+    classBuilder.addStaticBlock(CodeBlock.of("$T.enable();\n", TRACE_UTILITIES_CLASSNAME));
+  }
+
+  /**
+   * If {@link ProcessorConfiguration#COMPRESSION_THRESHOLD_OPTION} is set, add a static initializer
+   * to the class which enables compression within the SDK.
+   *
+   * <p>This should be added to generated classes which are entry points into the SDK.
+   */
+  void maybeEnableSdkCompression(TypeSpec.Builder classBuilder) {
+    int compressionThresholdBytes =
+        ProcessorConfiguration.compressionThresholdBytes(context.processingEnv());
+    if (compressionThresholdBytes <= 0) {
+      return;
+    }
+    classBuilder.addStaticBlock(
+        CodeBlock.of("$T.enable($L);\n", PAYLOAD_COMPRESSION_CLASSNAME, compressionThresholdBytes));
+  }
+
+  /**
+   * If {@link ProcessorConfiguration#RESULT_WRITER_THREADS_OPTION} is set, add a static
+   * initializer to the class which enables the result writer queue within the SDK.
+   *
+   * <p>This should be added to generated classes which receive cross-profile calls.
+   */
+  void maybeEnableResultWriterQueue(TypeSpec.Builder classBuilder) {
+    int resultWriterThreads = ProcessorConfiguration.resultWriterThreads(context.processingEnv());
+    if (resultWriterThreads <= 0) {
+      return;
+    }
+    classBuilder.addStaticBlock(
+        CodeBlock.of("$T.enable($L);\n", RESULT_WRITER_QUEUE_CLASSNAME, resultWriterThreads));
+  }
+
+  /**
+   * If tracing is enabled, return a copy of {@code method} with the body wrapped in a trace
+   * section. Otherwise return {@code method}.
+   *
+   * @param sectionName an expression evaluating to the {@link String} name of the section
+   */
+  MethodSpec maybeAddTraceSection(MethodSpec method, CodeBlock sectionName) {
+    if (!isTracingEnabled()) {
+      return method;
+    }
+
+    return MethodSpec.methodBuilder(method.name)
+        .addJavadoc(method.javadoc)
+        .addAnnotations(method.annotations)
+        .addModifiers(method.modifiers)
+        .addTypeVariables(method.typeVariables)
+        .returns(method.returnType)
+        .addParameters(method.parameters)
+        .varargs(method.varargs)
+        .addExceptions(method.exceptions)
+        .addStatement("$T.beginSection($L)", TRACE_UTILITIES_CLASSNAME, sectionName)
+        .beginControlFlow("try")
+        .addCode(method.code)
+        .nextControlFlow("finally")
+        .addStatement("$T.endSection()", TRACE_UTILITIES_CLASSNAME)
+        .endControlFlow()
+        .build();
+  }
+
   /**
    * Take the parameters of an {@link ExecutableElement} and return {@link ParameterSpec} instances
    * ready to be used with a generated method.
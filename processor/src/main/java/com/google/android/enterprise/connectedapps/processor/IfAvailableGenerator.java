@@ -71,6 +71,7 @@ final class IfAvailableGenerator {
             generatorContext, crossProfileType);
     TypeSpec.Builder classBuilder =
         TypeSpec.classBuilder(className)
+            .addOriginatingElement(crossProfileType.crossProfileTypeElement())
             .addJavadoc(
                 "Wrapper of {@link $T} which will replace\n{@link $T} with default values.\n",
                 singleSenderCanThrowInterface,
@@ -82,6 +82,7 @@ final class InterfaceGenerator {
 
     TypeSpec.Builder interfaceBuilder =
         TypeSpec.interfaceBuilder(interfaceName)
+            .addOriginatingElement(crossProfileType.crossProfileTypeElement())
             .addJavadoc(
                 "Entry point for cross-profile calls to {@link $T}.\n",
                 crossProfileType.className())
@@ -273,6 +274,7 @@ final class InterfaceGenerator {
 
     TypeSpec.Builder interfaceBuilder =
         TypeSpec.interfaceBuilder(interfaceName)
+            .addOriginatingElement(crossProfileType.crossProfileTypeElement())
             .addModifiers(Modifier.PUBLIC)
             .addJavadoc(
                 "Interface used for interacting with an instance of {@link $T} on a given"
@@ -329,6 +331,7 @@ final class InterfaceGenerator {
 
     TypeSpec.Builder interfaceBuilder =
         TypeSpec.interfaceBuilder(interfaceName)
+            .addOriginatingElement(crossProfileType.crossProfileTypeElement())
             .addModifiers(Modifier.PUBLIC)
             .addJavadoc(
                 "Interface used for interacting with a {@link $T} on a given profile.\n",
@@ -437,6 +440,7 @@ final class InterfaceGenerator {
 
     TypeSpec.Builder interfaceBuilder =
         TypeSpec.interfaceBuilder(interfaceName)
+            .addOriginatingElement(crossProfileType.crossProfileTypeElement())
             .addModifiers(Modifier.PUBLIC)
             .addJavadoc(
                 "Interface used for interacting with a {@link $T} on multiple profiles.\n\n",
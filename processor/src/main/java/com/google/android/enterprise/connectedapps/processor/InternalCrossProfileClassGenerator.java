@@ -16,15 +16,18 @@
 package com.google.android.enterprise.connectedapps.processor;
 
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.BUNDLER_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.BUNDLER_TYPE_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.CONTEXT_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.CROSS_PROFILE_CALLBACK_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.CROSS_PROFILE_FUTURE_RESULT_WRITER;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.METHOD_RUNNER_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.PARCEL_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.PARCEL_UTILITIES_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.STRING_TABLE_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.containers.CrossProfileMethodInfo.AutomaticallyResolvedParameterFilterBehaviour.REPLACE_AUTOMATICALLY_RESOLVED_PARAMETERS;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
 
 import com.google.android.enterprise.connectedapps.annotations.CrossProfile;
 import com.google.android.enterprise.connectedapps.processor.containers.CrossProfileCallbackInterfaceInfo;
@@ -40,6 +43,7 @@ import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
+import java.util.List;
 import java.util.Optional;
 import java.util.stream.IntStream;
 import javax.lang.model.element.ExecutableElement;
@@ -87,7 +91,9 @@ final class InternalCrossProfileClassGenerator {
     ClassName className = getInternalCrossProfileClassName(generatorContext, crossProfileType);
 
     TypeSpec.Builder classBuilder =
-        TypeSpec.classBuilder(className).addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+        TypeSpec.classBuilder(className)
+            .addOriginatingElement(crossProfileType.crossProfileTypeElement())
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
 
     classBuilder.addJavadoc(
         "Internal class for {@link $T}.\n\n"
@@ -170,6 +176,8 @@ final class InternalCrossProfileClassGenerator {
   private void addCrossProfileTypeMethods(
       TypeSpec.Builder classBuilder, CrossProfileTypeInfo crossProfileType) {
     for (CrossProfileMethodInfo method : crossProfileType.crossProfileMethods()) {
+      addWriteParametersMethod(classBuilder, method);
+
       if (method.isBlocking(generatorContext, crossProfileType)) {
         addBlockingCrossProfileTypeMethod(classBuilder, method);
       } else if (method.isCrossProfileCallback(generatorContext)) {
@@ -210,8 +218,12 @@ final class InternalCrossProfileClassGenerator {
       methodCode.addStatement(methodCall);
       methodCode.add("returnParcel.writeInt(0); // No errors\n");
       methodCode.addStatement(
-          "bundler.writeToParcel(returnParcel, returnValue, $L, /* flags= */ 0)",
-          TypeUtils.generateBundlerType(method.returnType()));
+          generateWriteWithBundlerCode(
+              method,
+              "bundler",
+              "returnParcel",
+              "returnValue",
+              TypeUtils.generateBundlerType(method.returnType())));
     }
 
     if (!method.thrownExceptions().isEmpty()) {
@@ -227,19 +239,21 @@ final class InternalCrossProfileClassGenerator {
     methodCode.addStatement("return returnParcel");
 
     classBuilder.addMethod(
-        MethodSpec.methodBuilder("method" + method.identifier())
-            .addModifiers(Modifier.PRIVATE)
-            .returns(PARCEL_CLASSNAME)
-            .addParameter(CONTEXT_CLASSNAME, "context")
-            .addParameter(PARCEL_CLASSNAME, "params")
-            .addParameter(CROSS_PROFILE_CALLBACK_CLASSNAME, "callback")
-            .addCode(methodCode.build())
-            .addJavadoc(
-                "Call $1L and return a {@link $2T} containing the return value.\n\n"
-                    + "<p>The {@link $2T} must be recycled after use.\n",
-                GeneratorUtilities.methodJavadocReference(method.methodElement()),
-                PARCEL_CLASSNAME)
-            .build());
+        generatorUtilities.maybeAddTraceSection(
+            MethodSpec.methodBuilder("method" + method.identifier())
+                .addModifiers(Modifier.PRIVATE)
+                .returns(PARCEL_CLASSNAME)
+                .addParameter(CONTEXT_CLASSNAME, "context")
+                .addParameter(PARCEL_CLASSNAME, "params")
+                .addParameter(CROSS_PROFILE_CALLBACK_CLASSNAME, "callback")
+                .addCode(methodCode.build())
+                .addJavadoc(
+                    "Call $1L and return a {@link $2T} containing the return value.\n\n"
+                        + "<p>The {@link $2T} must be recycled after use.\n",
+                    GeneratorUtilities.methodJavadocReference(method.methodElement()),
+                    PARCEL_CLASSNAME)
+                .build(),
+            traceSectionName(method)));
   }
 
   private void addCrossProfileCallbackCrossProfileTypeMethod(
@@ -275,20 +289,22 @@ final class InternalCrossProfileClassGenerator {
     methodCode.addStatement("return returnParcel");
 
     classBuilder.addMethod(
-        MethodSpec.methodBuilder("method" + method.identifier())
-            .addModifiers(Modifier.PRIVATE)
-            .returns(PARCEL_CLASSNAME)
-            .addParameter(CONTEXT_CLASSNAME, "context")
-            .addParameter(PARCEL_CLASSNAME, "params")
-            // TODO: This should be renamed to "callback" once we prefix unpacked parameter names
-            //  (without doing this, a param named "callback" will cause a compile error)
-            .addParameter(CROSS_PROFILE_CALLBACK_CLASSNAME, "crossProfileCallback")
-            .addCode(methodCode.build())
-            .addJavadoc(
-                "Call $1L, and link the callback to {@code crossProfileCallback}.\n\n"
-                    + "@return An empty parcel. This must be recycled after use.\n",
-                GeneratorUtilities.methodJavadocReference(method.methodElement()))
-            .build());
+        generatorUtilities.maybeAddTraceSection(
+            MethodSpec.methodBuilder("method" + method.identifier())
+                .addModifiers(Modifier.PRIVATE)
+                .returns(PARCEL_CLASSNAME)
+                .addParameter(CONTEXT_CLASSNAME, "context")
+                .addParameter(PARCEL_CLASSNAME, "params")
+                // TODO: This should be renamed to "callback" once we prefix unpacked parameter names
+                //  (without doing this, a param named "callback" will cause a compile error)
+                .addParameter(CROSS_PROFILE_CALLBACK_CLASSNAME, "crossProfileCallback")
+                .addCode(methodCode.build())
+                .addJavadoc(
+                    "Call $1L, and link the callback to {@code crossProfileCallback}.\n\n"
+                        + "@return An empty parcel. This must be recycled after use.\n",
+                    GeneratorUtilities.methodJavadocReference(method.methodElement()))
+                .build(),
+            traceSectionName(method)));
   }
 
   private void addFutureCrossProfileTypeMethod(
@@ -327,18 +343,20 @@ final class InternalCrossProfileClassGenerator {
     methodCode.addStatement("return returnParcel");
 
     classBuilder.addMethod(
-        MethodSpec.methodBuilder("method" + method.identifier())
-            .addModifiers(Modifier.PRIVATE)
-            .returns(PARCEL_CLASSNAME)
-            .addParameter(CONTEXT_CLASSNAME, "context")
-            .addParameter(PARCEL_CLASSNAME, "params")
-            .addParameter(CROSS_PROFILE_CALLBACK_CLASSNAME, "callback")
-            .addCode(methodCode.build())
-            .addJavadoc(
-                "Call $1L, and link the returned future to {@code crossProfileCallback}.\n\n"
-                    + "@return An empty parcel. This must be recycled after use.\n",
-                GeneratorUtilities.methodJavadocReference(method.methodElement()))
-            .build());
+        generatorUtilities.maybeAddTraceSection(
+            MethodSpec.methodBuilder("method" + method.identifier())
+                .addModifiers(Modifier.PRIVATE)
+                .returns(PARCEL_CLASSNAME)
+                .addParameter(CONTEXT_CLASSNAME, "context")
+                .addParameter(PARCEL_CLASSNAME, "params")
+                .addParameter(CROSS_PROFILE_CALLBACK_CLASSNAME, "callback")
+                .addCode(methodCode.build())
+                .addJavadoc(
+                    "Call $1L, and link the returned future to {@code crossProfileCallback}.\n\n"
+                        + "@return An empty parcel. This must be recycled after use.\n",
+                    GeneratorUtilities.methodJavadocReference(method.methodElement()))
+                .build(),
+            traceSectionName(method)));
   }
 
   private void createCrossProfileCallbackParameter(
@@ -359,30 +377,169 @@ final class InternalCrossProfileClassGenerator {
             generatorContext, callbackInterface));
   }
 
+  private CodeBlock traceSectionName(CrossProfileMethodInfo method) {
+    return CodeBlock.of(
+        "$S",
+        crossProfileType.crossProfileTypeElement().getSimpleName() + "#" + method.simpleName());
+  }
+
   private static boolean isPrimitiveOrObjectVoid(TypeMirror typeMirror) {
     return typeMirror.getKind().equals(TypeKind.VOID)
         || typeMirror.toString().equals("java.lang.Void");
   }
 
-  private void addExtractParametersCode(CodeBlock.Builder code, CrossProfileMethodInfo method) {
-    Optional<VariableElement> callbackParameter =
-        method.getCrossProfileCallbackParam(generatorContext);
-    for (VariableElement parameter : method.methodElement().getParameters()) {
-      if (callbackParameter.isPresent()
-          && callbackParameter.get().getSimpleName().equals(parameter.getSimpleName())) {
-        continue; // Don't extract a callback parameter
+  /**
+   * Add a method which writes the parameters of {@code method} to a {@code Parcel}, to be read by
+   * {@link #addExtractParametersCode(CodeBlock.Builder, CrossProfileMethodInfo)}.
+   *
+   * <p>Parameters which can be written directly are written without a {@code Bundler}, so they are
+   * not boxed and their type is not looked up. Other parameters are written by the bundler, using a
+   * {@code BundlerType} constant rather than constructing one for each call.
+   */
+  private void addWriteParametersMethod(
+      TypeSpec.Builder classBuilder, CrossProfileMethodInfo method) {
+    List<VariableElement> parameters =
+        writtenParameters(generatorContext, crossProfileType, method);
+    if (parameters.isEmpty()) {
+      return;
+    }
+
+    MethodSpec.Builder methodBuilder =
+        MethodSpec.methodBuilder(getWriteParametersMethodName(method))
+            .addModifiers(Modifier.STATIC)
+            .addParameter(PARCEL_CLASSNAME, "params")
+            .addJavadoc(
+                "Write the parameters of $L to {@code params}.\n",
+                GeneratorUtilities.methodJavadocReference(method.methodElement()));
+
+    for (VariableElement parameter : parameters) {
+      methodBuilder.addParameter(
+          TypeName.get(parameter.asType()), parameter.getSimpleName().toString());
+
+      if (crossProfileType.supportedTypes().isWrittenDirectly(parameter.asType())) {
+        methodBuilder.addStatement(
+            crossProfileType
+                .supportedTypes()
+                .generateWriteToParcelCode(
+                    "params",
+                    crossProfileType.supportedTypes().getType(parameter.asType()),
+                    parameter.getSimpleName().toString()));
+        continue;
       }
-      if (crossProfileType.supportedTypes().isAutomaticallyResolved(parameter.asType())) {
+
+      String bundlerTypeField = getBundlerTypeFieldName(method, parameter);
+      classBuilder.addField(
+          FieldSpec.builder(BUNDLER_TYPE_CLASSNAME, bundlerTypeField)
+              .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+              .initializer(TypeUtils.generateBundlerType(parameter.asType()))
+              .build());
+      methodBuilder.addStatement(
+          generateWriteWithBundlerCode(
+              method,
+              "bundler",
+              "params",
+              parameter.getSimpleName().toString(),
+              CodeBlock.of("$L", bundlerTypeField)));
+    }
+
+    classBuilder.addMethod(methodBuilder.build());
+  }
+
+  private void addExtractParametersCode(CodeBlock.Builder code, CrossProfileMethodInfo method) {
+    for (VariableElement parameter :
+        writtenParameters(generatorContext, crossProfileType, method)) {
+      if (crossProfileType.supportedTypes().isWrittenDirectly(parameter.asType())) {
+        code.addStatement(
+            "$T $L = $L",
+            parameter.asType(),
+            parameter.getSimpleName().toString(),
+            crossProfileType
+                .supportedTypes()
+                .generateReadFromParcelCode(
+                    "params", crossProfileType.supportedTypes().getType(parameter.asType())));
         continue;
       }
+
       code.addStatement(
-          "@SuppressWarnings(\"unchecked\") $1T $2L = ($1T) bundler.readFromParcel(params, $3L)",
+          "@SuppressWarnings(\"unchecked\") $1T $2L = ($1T) $3L",
           parameter.asType(),
           parameter.getSimpleName().toString(),
-          TypeUtils.generateBundlerType(parameter.asType()));
+          generateReadWithBundlerCode(
+              method,
+              "bundler",
+              "params",
+              CodeBlock.of("$L", getBundlerTypeFieldName(method, parameter))));
     }
   }
 
+  /**
+   * Generate code which writes {@code value} to {@code parcel} using {@code bundler}.
+   *
+   * <p>If {@code method} interns strings, the value is written with a {@code StringTable}.
+   */
+  static CodeBlock generateWriteWithBundlerCode(
+      CrossProfileMethodInfo method,
+      String bundler,
+      String parcel,
+      String value,
+      CodeBlock bundlerType) {
+    if (method.internsStrings()) {
+      return CodeBlock.of(
+          "$T.writeToParcel($L, $L, $L, $L, /* flags= */ 0)",
+          STRING_TABLE_CLASSNAME,
+          bundler,
+          parcel,
+          value,
+          bundlerType);
+    }
+    return CodeBlock.of(
+        "$L.writeToParcel($L, $L, $L, /* flags= */ 0)", bundler, parcel, value, bundlerType);
+  }
+
+  /**
+   * Generate code which reads a value written by {@link #generateWriteWithBundlerCode} from {@code
+   * parcel}.
+   */
+  static CodeBlock generateReadWithBundlerCode(
+      CrossProfileMethodInfo method, String bundler, String parcel, CodeBlock bundlerType) {
+    if (method.internsStrings()) {
+      return CodeBlock.of(
+          "$T.readFromParcel($L, $L, $L)", STRING_TABLE_CLASSNAME, bundler, parcel, bundlerType);
+    }
+    return CodeBlock.of("$L.readFromParcel($L, $L)", bundler, parcel, bundlerType);
+  }
+
+  /**
+   * Get the parameters of {@code method} which are written to the params {@code Parcel}.
+   *
+   * <p>Automatically resolved parameters and the cross-profile callback are not written.
+   */
+  static List<VariableElement> writtenParameters(
+      GeneratorContext generatorContext,
+      CrossProfileTypeInfo crossProfileType,
+      CrossProfileMethodInfo method) {
+    Optional<VariableElement> callbackParameter =
+        method.getCrossProfileCallbackParam(generatorContext);
+    return method.methodElement().getParameters().stream()
+        .filter(
+            p ->
+                !callbackParameter.isPresent()
+                    || !callbackParameter.get().getSimpleName().equals(p.getSimpleName()))
+        .filter(p -> !crossProfileType.supportedTypes().isAutomaticallyResolved(p.asType()))
+        .collect(toList());
+  }
+
+  static String getWriteParametersMethodName(CrossProfileMethodInfo method) {
+    return "writeParameters" + method.identifier();
+  }
+
+  private static String getBundlerTypeFieldName(
+      CrossProfileMethodInfo method, VariableElement parameter) {
+    return String.format(
+        "METHOD%d_PARAMETER%d_TYPE",
+        method.identifier(), method.methodElement().getParameters().indexOf(parameter));
+  }
+
   private static void addCallMethod(TypeSpec.Builder classBuilder) {
     classBuilder.addMethod(
         MethodSpec.methodBuilder("call")
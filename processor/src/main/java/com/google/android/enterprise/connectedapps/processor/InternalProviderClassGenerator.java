@@ -65,7 +65,9 @@ final class InternalProviderClassGenerator {
     ClassName className = getInternalProviderClassName(generatorContext, providerClass);
 
     TypeSpec.Builder classBuilder =
-        TypeSpec.classBuilder(className).addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+        TypeSpec.classBuilder(className)
+            .addOriginatingElement(providerClass.providerClassElement())
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
 
     classBuilder.addJavadoc(
         "Internal provider class for $L\n",
@@ -127,11 +129,37 @@ final class InternalProviderClassGenerator {
             .addStatement("return providerClass")
             .build());
 
+    addWarmUpMethod(classBuilder);
     addCallMethod(classBuilder);
 
     generatorUtilities.writeClassToFile(className.packageName(), classBuilder);
   }
 
+  private void addWarmUpMethod(TypeSpec.Builder classBuilder) {
+    CodeBlock.Builder methodCode = CodeBlock.builder();
+
+    if (!providerClass.nonStaticTypes().isEmpty()) {
+      methodCode.addStatement("providerClass(context)");
+    }
+    for (CrossProfileTypeInfo crossProfileType : providerClass.allCrossProfileTypes()) {
+      // Loads the internal class and its bundler
+      methodCode.addStatement(
+          "$T.instance()",
+          InternalCrossProfileClassGenerator.getInternalCrossProfileClassName(
+              generatorContext, crossProfileType));
+    }
+
+    classBuilder.addMethod(
+        MethodSpec.methodBuilder("warmUp")
+            .addModifiers(Modifier.PUBLIC)
+            .addParameter(CONTEXT_CLASSNAME, "context")
+            .addCode(methodCode.build())
+            .addJavadoc(
+                "Construct the provider class and load the classes used to dispatch calls to it, so"
+                    + " that this\nis not done during the first call.\n")
+            .build());
+  }
+
   private void addCallMethod(TypeSpec.Builder classBuilder) {
     CodeBlock.Builder methodCode = CodeBlock.builder();
 
@@ -86,6 +86,7 @@ final class MultipleProfilesGenerator {
 
     TypeSpec.Builder classBuilder =
         TypeSpec.classBuilder(className)
+            .addOriginatingElement(crossProfileType.crossProfileTypeElement())
             .addJavadoc(
                 "Default implementation of {@link $T}.\n\n"
                     + "<p>Wraps a number of {@link $T} instances and merges their return"
@@ -15,6 +15,7 @@
  */
 package com.google.android.enterprise.connectedapps.processor;
 
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.CALL_PRIORITY_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.EXCEPTION_CALLBACK_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.LOCAL_CALLBACK_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.PARCEL_CLASSNAME;
@@ -22,6 +23,7 @@ import static com.google.android.enterprise.connectedapps.processor.CommonClassN
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.UNAVAILABLE_PROFILE_EXCEPTION_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.containers.CrossProfileMethodInfo.AutomaticallyResolvedParameterFilterBehaviour.REMOVE_AUTOMATICALLY_RESOLVED_PARAMETERS;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.stream.Collectors.joining;
 
 import com.google.android.enterprise.connectedapps.processor.annotationdiscovery.interfaces.CrossProfileAnnotation;
 import com.google.android.enterprise.connectedapps.processor.containers.CrossProfileCallbackInterfaceInfo;
@@ -36,6 +38,7 @@ import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
+import java.util.List;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
@@ -79,6 +82,7 @@ final class OtherProfileGenerator {
 
     TypeSpec.Builder classBuilder =
         TypeSpec.classBuilder(className)
+            .addOriginatingElement(crossProfileType.crossProfileTypeElement())
             .addJavadoc(
                 "Implementation of {@link $T} used when interacting with the other profile.\n",
                 singleSenderCanThrowInterface)
@@ -90,6 +94,9 @@ final class OtherProfileGenerator {
             ? crossProfileType.profileConnector().get().connectorClassName()
             : PROFILE_CONNECTOR_CLASSNAME;
 
+    generatorUtilities.maybeEnableSdkTracing(classBuilder);
+    generatorUtilities.maybeEnableSdkCompression(classBuilder);
+
     classBuilder.addField(connectorClassName, "connector", Modifier.PRIVATE, Modifier.FINAL);
 
     classBuilder.addMethod(
@@ -178,15 +185,7 @@ final class OtherProfileGenerator {
 
     // parcel is recycled in this method
     methodBuilder.addStatement("$1T params = $1T.obtain()", PARCEL_CLASSNAME);
-    for (VariableElement param : method.methodElement().getParameters()) {
-      if (crossProfileType.supportedTypes().isAutomaticallyResolved(param.asType())) {
-        continue;
-      }
-      methodBuilder.addStatement(
-          "internalCrossProfileClass.bundler().writeToParcel(params, $1L, $2L, /* flags= */ 0)",
-          param.getSimpleName(),
-          TypeUtils.generateBundlerType(param.asType()));
-    }
+    addWriteParametersCode(methodBuilder, method, crossProfileType);
 
     if (method.thrownExceptions().isEmpty()) {
       methodBuilder.addStatement(
@@ -220,18 +219,41 @@ final class OtherProfileGenerator {
     if (!method.returnType().getKind().equals(TypeKind.VOID)) {
       methodBuilder.addStatement(
           CodeBlock.of(
-              "@SuppressWarnings(\"unchecked\") $1T returnValue = ($1T)"
-                  + " internalCrossProfileClass.bundler().readFromParcel(returnParcel,"
-                  + " $2L)",
+              "@SuppressWarnings(\"unchecked\") $1T returnValue = ($1T) $2L",
               method.returnType(),
-              TypeUtils.generateBundlerType(method.returnType())));
+              InternalCrossProfileClassGenerator.generateReadWithBundlerCode(
+                  method,
+                  "internalCrossProfileClass.bundler()",
+                  "returnParcel",
+                  TypeUtils.generateBundlerType(method.returnType()))));
       methodBuilder.addStatement("returnParcel.recycle()");
       methodBuilder.addStatement("return returnValue");
     } else {
       methodBuilder.addStatement("returnParcel.recycle()");
     }
 
-    classBuilder.addMethod(methodBuilder.build());
+    classBuilder.addMethod(
+        generatorUtilities.maybeAddTraceSection(
+            methodBuilder.build(), traceSectionName(method, crossProfileType)));
+  }
+
+  private void addWriteParametersCode(
+      MethodSpec.Builder methodBuilder,
+      CrossProfileMethodInfo method,
+      CrossProfileTypeInfo crossProfileType) {
+    List<VariableElement> parameters =
+        InternalCrossProfileClassGenerator.writtenParameters(
+            generatorContext, crossProfileType, method);
+    if (parameters.isEmpty()) {
+      return;
+    }
+
+    methodBuilder.addStatement(
+        "$T.$L(params, $L)",
+        InternalCrossProfileClassGenerator.getInternalCrossProfileClassName(
+            generatorContext, crossProfileType),
+        InternalCrossProfileClassGenerator.getWriteParametersMethodName(method),
+        parameters.stream().map(p -> p.getSimpleName().toString()).collect(joining(", ")));
   }
 
   private void generateCrossProfileCallbackMethodOnOtherProfileClass(
@@ -264,18 +286,7 @@ final class OtherProfileGenerator {
     // parcel is passed into callAsync where it will be cached and recycled afterwards
     methodBuilder.addStatement("$1T params = $1T.obtain()", PARCEL_CLASSNAME);
 
-    for (VariableElement param : method.methodElement().getParameters()) {
-      if (crossProfileType.supportedTypes().isAutomaticallyResolved(param.asType())) {
-        continue;
-      }
-      if (param.getSimpleName().equals(callbackParameter.getSimpleName())) {
-        continue;
-      }
-      methodBuilder.addStatement(
-          "internalCrossProfileClass.bundler().writeToParcel(params, $1L, $2L, /* flags= */ 0)",
-          param.getSimpleName(),
-          TypeUtils.generateBundlerType(param.asType()));
-    }
+    addWriteParametersCode(methodBuilder, method, crossProfileType);
 
     methodBuilder.addStatement(
         "$1T sender = new $2T($3L, exceptionCallback, internalCrossProfileClass.bundler())",
@@ -291,17 +302,22 @@ final class OtherProfileGenerator {
             .build());
     methodBuilder.addStatement(
         "connector.crossProfileSender().callAsync($1LL, $2L, params, sender, timeout =="
-            + " $3L ? $4L : timeout)",
+            + " $3L ? $4L : timeout, $5T.$6L$7L)",
         crossProfileType.identifier(),
         method.identifier(),
         CrossProfileAnnotation.TIMEOUT_MILLIS_NOT_SET,
-        method.timeoutMillis());
+        method.timeoutMillis(),
+        CALL_PRIORITY_CLASSNAME,
+        method.priority().name(),
+        retryOnReconnectArgument(method));
 
     methodBuilder.addComment(
         "We don't recycle the params as they will be stored for the async call and recycled"
             + " afterwards");
 
-    classBuilder.addMethod(methodBuilder.build());
+    classBuilder.addMethod(
+        generatorUtilities.maybeAddTraceSection(
+            methodBuilder.build(), traceSectionName(method, crossProfileType)));
   }
 
   private void generateFutureMethodOnOtherProfileClass(
@@ -327,15 +343,7 @@ final class OtherProfileGenerator {
 
     // parcel is passed into callAsync where it will be cached and recycled afterwards
     methodBuilder.addStatement("$1T params = $1T.obtain()", PARCEL_CLASSNAME);
-    for (VariableElement param : method.methodElement().getParameters()) {
-      if (crossProfileType.supportedTypes().isAutomaticallyResolved(param.asType())) {
-        continue;
-      }
-      methodBuilder.addStatement(
-          "internalCrossProfileClass.bundler().writeToParcel(params, $1L, $2L, /* flags= */ 0)",
-          param.getSimpleName(),
-          TypeUtils.generateBundlerType(param.asType()));
-    }
+    addWriteParametersCode(methodBuilder, method, crossProfileType);
 
     TypeMirror rawFutureType = TypeUtils.removeTypeArguments(method.returnType());
 
@@ -356,11 +364,14 @@ final class OtherProfileGenerator {
             .build());
     methodBuilder.addStatement(
         "connector.crossProfileSender().callAsync($1LL, $2L, params, futureWrapper,"
-            + " timeout == $3L ? $4L : timeout)",
+            + " timeout == $3L ? $4L : timeout, $5T.$6L$7L)",
         crossProfileType.identifier(),
         method.identifier(),
         CrossProfileAnnotation.TIMEOUT_MILLIS_NOT_SET,
-        method.timeoutMillis());
+        method.timeoutMillis(),
+        CALL_PRIORITY_CLASSNAME,
+        method.priority().name(),
+        retryOnReconnectArgument(method));
 
     methodBuilder.addComment(
         "We don't recycle the params as they will be stored for the async call and recycled"
@@ -368,7 +379,23 @@ final class OtherProfileGenerator {
 
     methodBuilder.addStatement("return futureWrapper.getFuture()");
 
-    classBuilder.addMethod(methodBuilder.build());
+    classBuilder.addMethod(
+        generatorUtilities.maybeAddTraceSection(
+            methodBuilder.build(), traceSectionName(method, crossProfileType)));
+  }
+
+  private CodeBlock traceSectionName(
+      CrossProfileMethodInfo method, CrossProfileTypeInfo crossProfileType) {
+    return CodeBlock.of(
+        "$S",
+        getOtherProfileClassName(generatorContext, crossProfileType).simpleName()
+            + "#"
+            + method.simpleName());
+  }
+
+  /** The optional final argument to {@code callAsync}, which is only passed for idempotent methods. */
+  private static String retryOnReconnectArgument(CrossProfileMethodInfo method) {
+    return method.isIdempotent() ? ", /* retryOnReconnect= */ true" : "";
   }
 
   static ClassName getOtherProfileClassName(
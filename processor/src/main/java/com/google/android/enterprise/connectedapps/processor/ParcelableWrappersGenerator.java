@@ -19,11 +19,14 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toSet;
 
+import com.google.android.enterprise.connectedapps.annotations.BitmapEncoding;
+import com.google.android.enterprise.connectedapps.processor.containers.CrossProfileParcelableInfo;
 import com.google.android.enterprise.connectedapps.processor.containers.CrossProfileTypeInfo;
 import com.google.android.enterprise.connectedapps.processor.containers.GeneratorContext;
 import com.google.android.enterprise.connectedapps.processor.containers.ParcelableWrapper;
 import com.google.android.enterprise.connectedapps.processor.containers.ParcelableWrapper.WrapperType;
 import com.google.android.enterprise.connectedapps.processor.containers.Type;
+import com.squareup.javapoet.ClassName;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
@@ -31,7 +34,11 @@ import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.nio.charset.Charset;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import javax.tools.JavaFileObject;
 
 /**
@@ -44,8 +51,13 @@ import javax.tools.JavaFileObject;
  */
 final class ParcelableWrappersGenerator {
 
+  /** Followed by the name of a {@link BitmapEncoding} in the {@code ParcelableBitmap} resource. */
+  private static final String BITMAP_WRITE_ENCODING_PREFIX = "WRITE_ENCODING = ENCODING_";
+
   private boolean generated = false;
   private final GeneratorContext generatorContext;
+  // Default wrappers are generated for each cross-profile type, so are only read once
+  private final Map<String, String> wrapperTemplates = new HashMap<>();
 
   ParcelableWrappersGenerator(GeneratorContext generatorContext) {
     this.generatorContext = checkNotNull(generatorContext);
@@ -64,50 +76,55 @@ final class ParcelableWrappersGenerator {
   private void generateParcelableWrappers() {
     Collection<ParcelableWrapper> parcelableWrappersToGenerate =
         generatorContext.crossProfileTypes().stream()
-            .map(CrossProfileTypeInfo::supportedTypes)
-            .flatMap(s -> s.usableTypes().stream())
-            .filter(s -> s.getParcelableWrapper().isPresent())
-            .map(Type::getParcelableWrapper)
-            .map(Optional::get)
+            .flatMap(t -> parcelableWrappers(t).stream())
             .collect(toSet());
 
-    generateDefaultParcelableWrappers(parcelableWrappersToGenerate);
+    generateDefaultParcelableWrappers();
     generateProtoParcelableWrappers(parcelableWrappersToGenerate);
+    generateCrossProfileParcelableWrappers();
   }
 
-  private void generateDefaultParcelableWrappers(Collection<ParcelableWrapper> parcelableWrappers) {
-    Collection<ParcelableWrapper> defaultParcelableWrappersToGenerate =
-        parcelableWrappers.stream()
-            .filter(f -> f.wrapperType() == WrapperType.DEFAULT)
-            .collect(toSet());
+  private static Collection<ParcelableWrapper> parcelableWrappers(
+      CrossProfileTypeInfo crossProfileType) {
+    return crossProfileType.supportedTypes().usableTypes().stream()
+        .filter(s -> s.getParcelableWrapper().isPresent())
+        .map(Type::getParcelableWrapper)
+        .map(Optional::get)
+        .collect(toSet());
+  }
 
-    for (ParcelableWrapper parcelableWrapper : defaultParcelableWrappersToGenerate) {
-      if (generatorContext
-              .elements()
-              .getTypeElement(parcelableWrapper.wrapperClassName().toString())
-          != null) {
-        // We don't generate things which already exist
-        return;
+  private void generateDefaultParcelableWrappers() {
+    // Default wrappers are generated per cross-profile type so that type-level options such as
+    // the bitmap encoding can be applied to them
+    Set<ClassName> generatedWrapperClassNames = new HashSet<>();
+
+    for (CrossProfileTypeInfo crossProfileType : generatorContext.crossProfileTypes()) {
+      Collection<ParcelableWrapper> defaultParcelableWrappersToGenerate =
+          parcelableWrappers(crossProfileType).stream()
+              .filter(f -> f.wrapperType() == WrapperType.DEFAULT)
+              .collect(toSet());
+
+      for (ParcelableWrapper parcelableWrapper : defaultParcelableWrappersToGenerate) {
+        if (generatorContext
+                .elements()
+                .getTypeElement(parcelableWrapper.wrapperClassName().toString())
+            != null) {
+          // We don't generate things which already exist
+          continue;
+        }
+        if (generatedWrapperClassNames.add(parcelableWrapper.wrapperClassName())) {
+          generateDefaultParcelableWrapper(parcelableWrapper, crossProfileType.bitmapEncoding());
+        }
       }
-      generateDefaultParcelableWrapper(parcelableWrapper);
     }
   }
 
-  private void generateDefaultParcelableWrapper(ParcelableWrapper parcelableWrapper) {
+  private void generateDefaultParcelableWrapper(
+      ParcelableWrapper parcelableWrapper, BitmapEncoding bitmapEncoding) {
     String parcelableWrapperSimpleName = parcelableWrapper.defaultWrapperClassName().simpleName();
 
-    String contents;
-    InputStream in =
-        ParcelableWrappersGenerator.class.getResourceAsStream(
-            "/parcelablewrappers/" + parcelableWrapperSimpleName + ".java");
-
-    try (BufferedReader br =
-        new BufferedReader(new InputStreamReader(in, Charset.defaultCharset()))) {
-      contents = br.lines().collect(joining(System.lineSeparator()));
-    } catch (IOException e) {
-      throw new IllegalStateException(
-          "Could not read parcelablewrapper file for " + parcelableWrapperSimpleName, e);
-    }
+    String contents =
+        wrapperTemplates.computeIfAbsent(parcelableWrapperSimpleName, this::readWrapperTemplate);
 
     contents =
         contents.replace(
@@ -117,6 +134,10 @@ final class ParcelableWrappersGenerator {
         contents.replace(
             parcelableWrapper.defaultWrapperClassName().simpleName(),
             parcelableWrapper.wrapperClassName().simpleName());
+    contents =
+        contents.replace(
+            BITMAP_WRITE_ENCODING_PREFIX + BitmapEncoding.UNCOMPRESSED,
+            BITMAP_WRITE_ENCODING_PREFIX + bitmapEncoding);
 
     JavaFileObject builderFile;
     try {
@@ -141,6 +162,20 @@ final class ParcelableWrappersGenerator {
     }
   }
 
+  private String readWrapperTemplate(String parcelableWrapperSimpleName) {
+    InputStream in =
+        ParcelableWrappersGenerator.class.getResourceAsStream(
+            "/parcelablewrappers/" + parcelableWrapperSimpleName + ".java");
+
+    try (BufferedReader br =
+        new BufferedReader(new InputStreamReader(in, Charset.defaultCharset()))) {
+      return br.lines().collect(joining(System.lineSeparator()));
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          "Could not read parcelablewrapper file for " + parcelableWrapperSimpleName, e);
+    }
+  }
+
   private void generateProtoParcelableWrappers(Collection<ParcelableWrapper> parcelableWrappers) {
     Collection<ParcelableWrapper> protoParcelableWrappersToGenerate =
         parcelableWrappers.stream()
@@ -151,4 +186,14 @@ final class ParcelableWrappersGenerator {
       new ProtoParcelableWrapperGenerator(generatorContext, parcelableWrapper).generate();
     }
   }
+
+  private void generateCrossProfileParcelableWrappers() {
+    // These are generated alongside the annotated class, rather than where they are used, so that
+    // each is only generated once
+    for (CrossProfileParcelableInfo crossProfileParcelable :
+        generatorContext.crossProfileParcelableTypes()) {
+      new CrossProfileParcelableWrapperGenerator(generatorContext, crossProfileParcelable)
+          .generate();
+    }
+  }
 }
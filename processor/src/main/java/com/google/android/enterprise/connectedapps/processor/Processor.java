@@ -24,6 +24,7 @@ import static com.google.android.enterprise.connectedapps.processor.annotationdi
 import static com.google.android.enterprise.connectedapps.processor.annotationdiscovery.AnnotationFinder.hasCrossProfileProviderAnnotation;
 import static java.util.stream.Collectors.toSet;
 
+import com.google.android.enterprise.connectedapps.annotations.CrossProfileParcelable;
 import com.google.android.enterprise.connectedapps.annotations.CustomFutureWrapper;
 import com.google.android.enterprise.connectedapps.annotations.CustomParcelableWrapper;
 import com.google.android.enterprise.connectedapps.annotations.CustomProfileConnector;
@@ -50,6 +51,7 @@ import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
@@ -77,7 +79,16 @@ import javax.lang.model.util.Types;
   "com.google.android.enterprise.connectedapps.annotations.CustomUserConnector",
   "com.google.android.enterprise.connectedapps.annotations.GeneratedUserConnector",
   "com.google.android.enterprise.connectedapps.annotations.CustomParcelableWrapper",
-  "com.google.android.enterprise.connectedapps.annotations.CustomFutureWrapper"
+  "com.google.android.enterprise.connectedapps.annotations.CustomFutureWrapper",
+  "com.google.android.enterprise.connectedapps.annotations.CrossProfileParcelable"
+})
+@SupportedOptions({
+  ProcessorConfiguration.TRACING_OPTION,
+  ProcessorConfiguration.COMPRESSION_THRESHOLD_OPTION,
+  ProcessorConfiguration.RESULT_WRITER_THREADS_OPTION,
+  ProcessorConfiguration.LAZY_PROTO_LISTS_OPTION,
+  ProcessorConfiguration.SHARED_BUNDLER_OPTION,
+  ProcessorConfiguration.WARM_UP_OPTION
 })
 @AutoService(javax.annotation.processing.Processor.class)
 public final class Processor extends AbstractProcessor {
@@ -89,8 +100,19 @@ public final class Processor extends AbstractProcessor {
     return SourceVersion.latest();
   }
 
+  @Override
+  public synchronized void init(ProcessingEnvironment processingEnv) {
+    super.init(processingEnv);
+    ProcessorConfiguration.warnIfSharedBundlerPrefixInvalid(processingEnv);
+  }
+
   @Override
   public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    if (annotations.isEmpty()) {
+      // Nothing new to process, including in the final round
+      return false;
+    }
+
     Elements elements = processingEnv.getElementUtils();
     types = processingEnv.getTypeUtils();
 
@@ -130,6 +152,8 @@ public final class Processor extends AbstractProcessor {
 
     Collection<TypeElement> newCustomParcelableWrappers = findNewParcelableWrappers(roundEnv);
     Collection<TypeElement> newCustomFutureWrappers = findNewFutureWrappers(roundEnv);
+    Collection<TypeElement> newCrossProfileParcelableTypes =
+        findNewCrossProfileParcelableTypes(roundEnv);
 
     Collection<FutureWrapper> globalFutureWrappers =
         FutureWrapper.createGlobalFutureWrappers(elements);
@@ -166,6 +190,7 @@ public final class Processor extends AbstractProcessor {
             .setNewCrossProfileTests(newCrossProfileTests)
             .setNewCustomParcelableWrappers(newCustomParcelableWrappers)
             .setNewCustomFutureWrappers(newCustomFutureWrappers)
+            .setNewCrossProfileParcelableTypes(newCrossProfileParcelableTypes)
             .build();
 
     boolean isValid = new EarlyValidator(validatorContext).validate();
@@ -412,4 +437,10 @@ public final class Processor extends AbstractProcessor {
         .map(m -> (TypeElement) m)
         .collect(toSet());
   }
+
+  private Collection<TypeElement> findNewCrossProfileParcelableTypes(RoundEnvironment roundEnv) {
+    return roundEnv.getElementsAnnotatedWith(CrossProfileParcelable.class).stream()
+        .map(m -> (TypeElement) m)
+        .collect(toSet());
+  }
 }
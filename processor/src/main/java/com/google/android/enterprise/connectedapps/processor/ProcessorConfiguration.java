@@ -15,6 +15,12 @@
  */
 package com.google.android.enterprise.connectedapps.processor;
 
+import com.squareup.javapoet.ClassName;
+import java.util.Optional;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.tools.Diagnostic.Kind;
+
 /** General configuration. */
 public final class ProcessorConfiguration {
   private ProcessorConfiguration() {}
@@ -27,4 +33,148 @@ public final class ProcessorConfiguration {
    * generated in separate targets.
    */
   public static final boolean GENERATE_TYPE_SPECIFIC_WRAPPERS = true;
+
+  /**
+   * Processor option which, when set to {@code true}, adds {@code android.os.Trace} sections to
+   * generated code and enables tracing within the SDK.
+   *
+   * <p>For example, {@code -Aconnectedapps.tracing=true}. When this is not set no tracing code is
+   * generated.
+   */
+  public static final String TRACING_OPTION = "connectedapps.tracing";
+
+  static boolean isTracingEnabled(ProcessingEnvironment processingEnv) {
+    return Boolean.parseBoolean(processingEnv.getOptions().get(TRACING_OPTION));
+  }
+
+  /**
+   * Processor option which sets the size, in bytes, above which marshalled parameters and responses
+   * are compressed before being sent cross-profile.
+   *
+   * <p>For example, {@code -Aconnectedapps.compressionThresholdBytes=262144}. Compression is only
+   * used when the other side of the connection also supports it. When this is not set, or is not a
+   * positive integer, nothing is compressed.
+   */
+  public static final String COMPRESSION_THRESHOLD_OPTION =
+      "connectedapps.compressionThresholdBytes";
+
+  /** Returns the value of {@link #COMPRESSION_THRESHOLD_OPTION}, or 0 if it is not valid. */
+  static int compressionThresholdBytes(ProcessingEnvironment processingEnv) {
+    String option = processingEnv.getOptions().get(COMPRESSION_THRESHOLD_OPTION);
+    if (option == null) {
+      return 0;
+    }
+    try {
+      return Math.max(0, Integer.parseInt(option.trim()));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Processor option which sets the number of threads used to send the results of asynchronous
+   * calls back to the caller.
+   *
+   * <p>For example, {@code -Aconnectedapps.resultWriterThreads=2}. When this is not set, or is not
+   * a positive integer, results are sent on the thread which completes the provider's future or
+   * calls the provider's callback.
+   */
+  public static final String RESULT_WRITER_THREADS_OPTION = "connectedapps.resultWriterThreads";
+
+  /** Returns the value of {@link #RESULT_WRITER_THREADS_OPTION}, or 0 if it is not valid. */
+  static int resultWriterThreads(ProcessingEnvironment processingEnv) {
+    String option = processingEnv.getOptions().get(RESULT_WRITER_THREADS_OPTION);
+    if (option == null) {
+      return 0;
+    }
+    try {
+      return Math.max(0, Integer.parseInt(option.trim()));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Processor option which, when set to {@code true}, makes lists of protos received cross-profile
+   * parse each proto when it is first accessed rather than all at once.
+   *
+   * <p>For example, {@code -Aconnectedapps.lazyProtoLists=true}. Lists received in this mode can
+   * not be modified.
+   */
+  public static final String LAZY_PROTO_LISTS_OPTION = "connectedapps.lazyProtoLists";
+
+  static boolean isLazyProtoListsEnabled(ProcessingEnvironment processingEnv) {
+    return Boolean.parseBoolean(processingEnv.getOptions().get(LAZY_PROTO_LISTS_OPTION));
+  }
+
+  /**
+   * Processor option which, when set to {@code true}, makes the generated service construct
+   * providers and load the classes used to dispatch calls on a background thread when it is
+   * created, rather than during the first call. The generated dispatcher also records the latency of
+   * the first call it handles.
+   *
+   * <p>For example, {@code -Aconnectedapps.warmUp=true}. Services which are not generated can call
+   * the generated {@code _Dispatcher#warmUp} method themselves.
+   */
+  public static final String WARM_UP_OPTION = "connectedapps.warmUp";
+
+  static boolean isWarmUpEnabled(ProcessingEnvironment processingEnv) {
+    return Boolean.parseBoolean(processingEnv.getOptions().get(WARM_UP_OPTION));
+  }
+
+  /**
+   * Processor option which sets a class name prefix for a single bundler, and a single copy of each
+   * parcelable and future wrapper, shared by all cross-profile types processed together.
+   *
+   * <p>For example, {@code -Aconnectedapps.sharedBundler=com.example.MyApp} generates {@code
+   * com.example.MyApp_Bundler} and wrappers such as {@code com.example.MyApp_ParcelableList}. The
+   * prefix must be different for each module so that the generated classes do not conflict.
+   *
+   * <p>Cross-profile types which use custom wrappers or a non-default bitmap encoding, or which are
+   * processed after the shared bundler has been generated, have their own bundler and wrappers as
+   * usual. When this is not set every cross-profile type has its own bundler and wrappers, and the
+   * same is true, with a warning reported by {@link Processor}, if it is not a valid qualified class
+   * name.
+   */
+  public static final String SHARED_BUNDLER_OPTION = "connectedapps.sharedBundler";
+
+  /** Returns the value of {@link #SHARED_BUNDLER_OPTION}, if it is set and valid. */
+  public static Optional<ClassName> sharedBundlerPrefix(ProcessingEnvironment processingEnv) {
+    String option = processingEnv.getOptions().get(SHARED_BUNDLER_OPTION);
+    if (option == null || !SourceVersion.isName(option.trim())) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(ClassName.bestGuess(option.trim()));
+    } catch (IllegalArgumentException e) {
+      // The name does not include a class name, such as "com.example"
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Reports a warning if {@link #SHARED_BUNDLER_OPTION} is set but is not a valid qualified class
+   * name, so it will be ignored.
+   */
+  static void warnIfSharedBundlerPrefixInvalid(ProcessingEnvironment processingEnv) {
+    String option = processingEnv.getOptions().get(SHARED_BUNDLER_OPTION);
+    if (option == null || sharedBundlerPrefix(processingEnv).isPresent()) {
+      return;
+    }
+    processingEnv
+        .getMessager()
+        .printMessage(
+            Kind.WARNING,
+            "Ignoring -A"
+                + SHARED_BUNDLER_OPTION
+                + "="
+                + option
+                + " as it is not a qualified class name, such as com.example.MyApp. Each"
+                + " cross-profile type will have its own bundler.");
+  }
+
+  /** Returns the name of the bundler shared by types using {@code prefix}. */
+  public static ClassName sharedBundlerClassName(ClassName prefix) {
+    return ClassName.get(prefix.packageName(), prefix.simpleName() + "_Bundler");
+  }
 }
@@ -20,6 +20,8 @@ import static com.google.android.enterprise.connectedapps.processor.CommonClassN
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.AVAILABILITY_RESTRICTIONS_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.CONNECTION_BINDER_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.CONTEXT_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.EXECUTOR_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.QUEUE_FULL_POLICY_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.SCHEDULED_EXECUTOR_SERVICE_CLASSNAME;
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -71,6 +73,7 @@ class ProfileConnectorCodeGenerator {
 
     TypeSpec.Builder classBuilder =
         TypeSpec.classBuilder(className)
+            .addOriginatingElement(connector.connectorElement())
             .addJavadoc(
                 "Generated implementation of {@link $T}.\n\n"
                     + "<p>All logic is implemented by {@link $T}.\n",
@@ -160,6 +163,39 @@ class ProfileConnectorCodeGenerator {
             .addStatement("return this")
             .build());
 
+    classBuilder.addMethod(
+        MethodSpec.methodBuilder("setMaxQueuedAsyncCalls")
+            .addModifiers(Modifier.PUBLIC)
+            .addParameter(int.class, "maxQueuedAsyncCalls")
+            .addParameter(QUEUE_FULL_POLICY_CLASSNAME, "queueFullPolicy")
+            .returns(builderClassName)
+            .addStatement(
+                "profileConnectorBuilder.setMaxQueuedAsyncCalls(maxQueuedAsyncCalls,"
+                    + " queueFullPolicy)")
+            .addStatement("return this")
+            .build());
+
+    classBuilder.addMethod(
+        MethodSpec.methodBuilder("setAsyncSendExecutor")
+            .addModifiers(Modifier.PUBLIC)
+            .addParameter(EXECUTOR_CLASSNAME, "asyncSendExecutor")
+            .addParameter(int.class, "maxParallelAsyncSends")
+            .returns(builderClassName)
+            .addStatement(
+                "profileConnectorBuilder.setAsyncSendExecutor(asyncSendExecutor,"
+                    + " maxParallelAsyncSends)")
+            .addStatement("return this")
+            .build());
+
+    classBuilder.addMethod(
+        MethodSpec.methodBuilder("setCallbackExecutor")
+            .addModifiers(Modifier.PUBLIC)
+            .addParameter(EXECUTOR_CLASSNAME, "callbackExecutor")
+            .returns(builderClassName)
+            .addStatement("profileConnectorBuilder.setCallbackExecutor(callbackExecutor)")
+            .addStatement("return this")
+            .build());
+
     classBuilder.addMethod(
         MethodSpec.methodBuilder("build")
             .addModifiers(Modifier.PUBLIC)
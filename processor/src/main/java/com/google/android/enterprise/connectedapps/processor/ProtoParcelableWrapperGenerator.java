@@ -17,9 +17,12 @@ package com.google.android.enterprise.connectedapps.processor;
 
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.BUNDLER_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.BUNDLER_TYPE_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.CODED_OUTPUT_STREAM_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.INVALID_PROTOCOL_BUFFER_EXCEPTION_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.LENGTH_DELIMITED_LIST_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.PARCELABLE_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.PARCEL_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.SCRATCH_BUFFERS_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.containers.ParcelableWrapper.PARCELABLE_WRAPPER_PACKAGE;
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -28,7 +31,11 @@ import com.google.android.enterprise.connectedapps.processor.containers.Parcelab
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
+import java.io.IOException;
+import java.util.List;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.type.TypeMirror;
 
@@ -95,6 +102,8 @@ public final class ProtoParcelableWrapperGenerator {
             .initializer("-1")
             .build());
 
+    addElementParserField(classBuilder);
+
     classBuilder.addMethod(
         MethodSpec.methodBuilder("of")
             .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
@@ -128,13 +137,11 @@ public final class ProtoParcelableWrapperGenerator {
         MethodSpec.constructorBuilder()
             .addModifiers(Modifier.PRIVATE)
             .addParameter(PARCEL_CLASSNAME, "in")
-            .addStatement("int size = in.readInt()")
-            .beginControlFlow("if (size == NULL_SIZE)")
+            .addStatement("byte[] protoBytes = in.createByteArray()")
+            .beginControlFlow("if (protoBytes == null)")
             .addStatement("proto = null")
             .addStatement("return")
             .endControlFlow()
-            .addStatement("byte[] protoBytes = new byte[size]")
-            .addStatement("in.readByteArray(protoBytes)")
             .beginControlFlow("try")
             .addStatement("proto = $T.parseFrom(protoBytes)", parcelableWrapper.wrappedType())
             .nextControlFlow("catch ($T e)", INVALID_PROTOCOL_BUFFER_EXCEPTION_CLASSNAME)
@@ -149,14 +156,28 @@ public final class ProtoParcelableWrapperGenerator {
             .addParameter(PARCEL_CLASSNAME, "dest")
             .addParameter(int.class, "flags")
             .beginControlFlow("if (proto == null)")
-            .addStatement("dest.writeInt(NULL_SIZE)")
+            .addStatement("dest.writeByteArray(null)")
             .addStatement("return")
             .endControlFlow()
-            .addStatement("byte[] protoBytes = proto.toByteArray()")
-            .addStatement("dest.writeInt(protoBytes.length)")
-            .addStatement("dest.writeByteArray(protoBytes)")
+            // Serialize into a reused buffer rather than allocating with toByteArray()
+            .addStatement("int size = proto.getSerializedSize()")
+            .addStatement("byte[] buffer = $T.get(size)", SCRATCH_BUFFERS_CLASSNAME)
+            .addStatement(
+                "$T output = $T.newInstance(buffer, 0, size)",
+                CODED_OUTPUT_STREAM_CLASSNAME,
+                CODED_OUTPUT_STREAM_CLASSNAME)
+            .beginControlFlow("try")
+            .addStatement("proto.writeTo(output)")
+            .addStatement("output.checkNoSpaceLeft()")
+            .nextControlFlow("catch ($T e)", IOException.class)
+            .addStatement("throw new $T(\"Could not write proto\", e)", IllegalStateException.class)
+            .endControlFlow()
+            .addStatement("dest.writeByteArray(buffer, 0, size)")
             .build());
 
+    addWriteListToParcelMethod(classBuilder);
+    addReadListFromParcelMethod(classBuilder);
+
     generatorUtilities.addDefaultParcelableMethods(
         classBuilder, parcelableWrapper.wrapperClassName());
 
@@ -164,6 +185,113 @@ public final class ProtoParcelableWrapperGenerator {
         parcelableWrapper.wrapperClassName().packageName(), classBuilder);
   }
 
+  private void addElementParserField(TypeSpec.Builder classBuilder) {
+    TypeName protoType = ClassName.get(parcelableWrapper.wrappedType());
+    TypeName elementParserType =
+        ParameterizedTypeName.get(
+            LENGTH_DELIMITED_LIST_CLASSNAME.nestedClass("ElementParser"), protoType);
+
+    TypeSpec elementParser =
+        TypeSpec.anonymousClassBuilder("")
+            .addSuperinterface(elementParserType)
+            .addMethod(
+                MethodSpec.methodBuilder("parse")
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(protoType)
+                    .addParameter(byte[].class, "bytes")
+                    .addParameter(int.class, "offset")
+                    .addParameter(int.class, "length")
+                    .addException(INVALID_PROTOCOL_BUFFER_EXCEPTION_CLASSNAME)
+                    .addStatement("return $T.parser().parseFrom(bytes, offset, length)", protoType)
+                    .build())
+            .build();
+
+    classBuilder.addField(
+        FieldSpec.builder(elementParserType, "ELEMENT_PARSER")
+            .addModifiers(Modifier.PRIVATE, Modifier.FINAL, Modifier.STATIC)
+            .initializer("$L", elementParser)
+            .build());
+  }
+
+  private void addWriteListToParcelMethod(TypeSpec.Builder classBuilder) {
+    TypeName protoType = ClassName.get(parcelableWrapper.wrappedType());
+
+    classBuilder.addMethod(
+        MethodSpec.methodBuilder("writeListToParcel")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc(
+                "Write a list of {@link $T} to a {@link $T} as a single length-delimited stream.\n",
+                protoType,
+                PARCEL_CLASSNAME)
+            .addParameter(PARCEL_CLASSNAME, "dest")
+            .addParameter(ParameterizedTypeName.get(ClassName.get(List.class), protoType), "protos")
+            .beginControlFlow("if (protos == null)")
+            .addStatement("dest.writeInt(NULL_SIZE)")
+            .addStatement("return")
+            .endControlFlow()
+            .addComment("Each proto is preceded by its size + 1, so that null can be encoded as 0")
+            .addStatement("int size = 0")
+            .beginControlFlow("for ($T proto : protos)", protoType)
+            .addStatement(
+                "size += proto == null"
+                    + " ? 1"
+                    + " : $T.computeUInt32SizeNoTag(proto.getSerializedSize() + 1)"
+                    + " + proto.getSerializedSize()",
+                CODED_OUTPUT_STREAM_CLASSNAME)
+            .endControlFlow()
+            .addStatement("byte[] buffer = $T.get(size)", SCRATCH_BUFFERS_CLASSNAME)
+            .addStatement(
+                "$T output = $T.newInstance(buffer, 0, size)",
+                CODED_OUTPUT_STREAM_CLASSNAME,
+                CODED_OUTPUT_STREAM_CLASSNAME)
+            .beginControlFlow("try")
+            .beginControlFlow("for ($T proto : protos)", protoType)
+            .beginControlFlow("if (proto == null)")
+            .addStatement("output.writeUInt32NoTag(0)")
+            .nextControlFlow("else")
+            .addStatement("output.writeUInt32NoTag(proto.getSerializedSize() + 1)")
+            .addStatement("proto.writeTo(output)")
+            .endControlFlow()
+            .endControlFlow()
+            .addStatement("output.checkNoSpaceLeft()")
+            .nextControlFlow("catch ($T e)", IOException.class)
+            .addStatement(
+                "throw new $T(\"Could not write protos\", e)", IllegalStateException.class)
+            .endControlFlow()
+            .addStatement("dest.writeInt(protos.size())")
+            .addStatement("dest.writeByteArray(buffer, 0, size)")
+            .build());
+  }
+
+  private void addReadListFromParcelMethod(TypeSpec.Builder classBuilder) {
+    TypeName protoType = ClassName.get(parcelableWrapper.wrappedType());
+
+    MethodSpec.Builder methodBuilder =
+        MethodSpec.methodBuilder("readListFromParcel")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addJavadoc(
+                "Read a list of {@link $T} written by {@link #writeListToParcel}.\n", protoType)
+            .returns(ParameterizedTypeName.get(ClassName.get(List.class), protoType))
+            .addParameter(PARCEL_CLASSNAME, "in")
+            .addStatement("int size = in.readInt()")
+            .beginControlFlow("if (size == NULL_SIZE)")
+            .addStatement("return null")
+            .endControlFlow();
+
+    if (ProcessorConfiguration.isLazyProtoListsEnabled(generatorContext.processingEnv())) {
+      methodBuilder.addStatement(
+          "return $T.lazilyParse(in.createByteArray(), size, ELEMENT_PARSER)",
+          LENGTH_DELIMITED_LIST_CLASSNAME);
+    } else {
+      methodBuilder.addStatement(
+          "return $T.parse(in.createByteArray(), size, ELEMENT_PARSER)",
+          LENGTH_DELIMITED_LIST_CLASSNAME);
+    }
+
+    classBuilder.addMethod(methodBuilder.build());
+  }
+
   public static ClassName getGeneratedProtoWrapperClassName(TypeMirror type) {
     String simpleName = type.toString().substring(type.toString().lastIndexOf(".") + 1);
     return ClassName.get(GENERATED_PARCELABLE_WRAPPER_PACKAGE, simpleName + "Wrapper");
@@ -18,7 +18,12 @@ package com.google.android.enterprise.connectedapps.processor;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.BINDER_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.CROSSPROFILESERVICE_STUB_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.CROSS_PROFILE_CALLBACK_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.DIRECT_PARCEL_CALLS_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.INTENT_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.PARCEL_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.PAYLOAD_COMPRESSION_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.REMOTE_EXCEPTION_CLASSNAME;
+import static com.google.android.enterprise.connectedapps.processor.CommonClassNames.SERVICE_WARM_UP_CLASSNAME;
 import static com.google.android.enterprise.connectedapps.processor.DispatcherGenerator.getDispatcherClassName;
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -73,6 +78,7 @@ final class ServiceGenerator {
 
     TypeSpec.Builder classBuilder =
         TypeSpec.classBuilder(className)
+            .addOriginatingElement(configuration.configurationElement())
             .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
             .superclass(configuration.serviceSuperclass())
             .addJavadoc(
@@ -86,6 +92,7 @@ final class ServiceGenerator {
                 getDispatcherClassName(generatorContext, configuration));
 
     addBinder(classBuilder);
+    maybeAddWarmUp(classBuilder);
 
     classBuilder.addMethod(
         MethodSpec.methodBuilder("onBind")
@@ -99,6 +106,24 @@ final class ServiceGenerator {
     generatorUtilities.writeClassToFile(className.packageName(), classBuilder);
   }
 
+  private void maybeAddWarmUp(TypeSpec.Builder classBuilder) {
+    if (!ProcessorConfiguration.isWarmUpEnabled(generatorContext.processingEnv())) {
+      return;
+    }
+
+    // onCreate is always called before onBind, so warm-up starts before the first call can arrive
+    classBuilder.addMethod(
+        MethodSpec.methodBuilder("onCreate")
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PUBLIC)
+            .addStatement("super.onCreate()")
+            .addStatement(
+                "$1T.instance().start($2T.class, () -> $2T.warmUp(getApplicationContext()))",
+                SERVICE_WARM_UP_CLASSNAME,
+                getDispatcherClassName(generatorContext, configuration))
+            .build());
+  }
+
   private void addBinder(TypeSpec.Builder classBuilder) {
     TypeSpec.Builder binderBuilder =
         TypeSpec.anonymousClassBuilder("")
@@ -114,6 +139,9 @@ final class ServiceGenerator {
     addPrepareCallMethod(binderBuilder);
     addCallMethod(binderBuilder);
     addFetchResponseMethod(binderBuilder);
+    addGetSupportedFeaturesMethod(binderBuilder);
+    addCallWithCompressionMethod(binderBuilder);
+    addOnTransactMethod(binderBuilder);
 
     classBuilder.addField(
         FieldSpec.builder(CROSSPROFILESERVICE_STUB_CLASSNAME, "binder", Modifier.PRIVATE)
@@ -171,6 +199,58 @@ final class ServiceGenerator {
     classBuilder.addMethod(prepareCallMethod);
   }
 
+  private static void addGetSupportedFeaturesMethod(TypeSpec.Builder classBuilder) {
+    MethodSpec getSupportedFeaturesMethod =
+        MethodSpec.methodBuilder("getSupportedFeatures")
+            .addModifiers(Modifier.PUBLIC)
+            .addAnnotation(Override.class)
+            .returns(int.class)
+            .addStatement("return $T.SUPPORTED_FEATURES", PAYLOAD_COMPRESSION_CLASSNAME)
+            .build();
+    classBuilder.addMethod(getSupportedFeaturesMethod);
+  }
+
+  private static void addCallWithCompressionMethod(TypeSpec.Builder classBuilder) {
+    MethodSpec callWithCompressionMethod =
+        MethodSpec.methodBuilder("callWithCompression")
+            .addModifiers(Modifier.PUBLIC)
+            .addAnnotation(Override.class)
+            .returns(ArrayTypeName.of(byte.class))
+            .addParameter(long.class, "callId")
+            .addParameter(int.class, "blockId")
+            .addParameter(long.class, "crossProfileTypeIdentifier")
+            .addParameter(int.class, "methodIdentifier")
+            .addParameter(ArrayTypeName.of(byte.class), "paramBytes")
+            .addParameter(boolean.class, "paramBytesCompressed")
+            .addParameter(CROSS_PROFILE_CALLBACK_CLASSNAME, "callback")
+            .addStatement(
+                "return dispatcher.callWithCompression(getApplicationContext(), callId, blockId,"
+                    + " crossProfileTypeIdentifier, methodIdentifier, paramBytes,"
+                    + " paramBytesCompressed, callback)")
+            .build();
+    classBuilder.addMethod(callWithCompressionMethod);
+  }
+
+  private static void addOnTransactMethod(TypeSpec.Builder classBuilder) {
+    MethodSpec onTransactMethod =
+        MethodSpec.methodBuilder("onTransact")
+            .addModifiers(Modifier.PUBLIC)
+            .addAnnotation(Override.class)
+            .returns(boolean.class)
+            .addParameter(int.class, "code")
+            .addParameter(PARCEL_CLASSNAME, "data")
+            .addParameter(PARCEL_CLASSNAME, "reply")
+            .addParameter(int.class, "flags")
+            .addException(REMOTE_EXCEPTION_CLASSNAME)
+            .beginControlFlow("if (code == $T.TRANSACTION_CALL)", DIRECT_PARCEL_CALLS_CLASSNAME)
+            .addStatement("dispatcher.callDirect(getApplicationContext(), data, reply)")
+            .addStatement("return true")
+            .endControlFlow()
+            .addStatement("return super.onTransact(code, data, reply, flags)")
+            .build();
+    classBuilder.addMethod(onTransactMethod);
+  }
+
   static ClassName getConnectedAppsServiceClassName(
       GeneratorContext generatorContext, CrossProfileConfigurationInfo configuration) {
     return configuration.profileConnector().serviceName();
@@ -17,8 +17,10 @@ package com.google.android.enterprise.connectedapps.processor;
 
 import static com.google.android.enterprise.connectedapps.processor.annotationdiscovery.AnnotationFinder.hasCrossProfileCallbackAnnotation;
 
+import com.google.android.enterprise.connectedapps.annotations.CrossProfileParcelable;
 import com.google.android.enterprise.connectedapps.processor.containers.CrossProfileCallbackInterfaceInfo;
 import com.google.android.enterprise.connectedapps.processor.containers.CrossProfileMethodInfo;
+import com.google.android.enterprise.connectedapps.processor.containers.CrossProfileParcelableInfo;
 import com.google.android.enterprise.connectedapps.processor.containers.FutureWrapper;
 import com.google.android.enterprise.connectedapps.processor.containers.ParcelableWrapper;
 import com.google.android.enterprise.connectedapps.processor.containers.Type;
@@ -30,14 +32,20 @@ import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
 import javax.lang.model.util.Elements;
 import javax.lang.model.util.Types;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -108,13 +116,22 @@ public final class SupportedTypes {
 
   private final ImmutableMap<String, Type> usableTypes;
 
+  // The same types are checked for many methods, so results are memoized by canonical type name.
+  // This is safe as the supported types never change once created.
+  private final Map<String, Boolean> validReturnTypes = new HashMap<>();
+  private final Map<String, Boolean> validParameterTypes = new HashMap<>();
+  // Cross-profile parcelable types whose properties are being checked, as a property may refer
+  // back to the type which contains it
+  private final Set<String> parcelableTypesBeingChecked = new HashSet<>();
+
   public boolean isFuture(TypeMirror type) {
     Type supportedType = get(type);
     return supportedType != null && supportedType.isFuture();
   }
 
   boolean isValidReturnType(TypeMirror type) {
-    return isValidReturnType(type, TypeCheckContext.create());
+    return validReturnTypes.computeIfAbsent(
+        type.toString(), t -> isValidReturnType(type, TypeCheckContext.create()));
   }
 
   private boolean isValidReturnType(TypeMirror type, TypeCheckContext context) {
@@ -134,7 +151,7 @@ public final class SupportedTypes {
 
     return TypeUtils.isGeneric(type)
         ? isValidGenericReturnType(type, context)
-        : isValidReturnType(get(type), context);
+        : isValidReturnType(get(type), context) && hasValidProperties(get(type));
   }
 
   private static boolean isValidReturnType(@Nullable Type supportedType, TypeCheckContext context) {
@@ -187,7 +204,8 @@ public final class SupportedTypes {
   }
 
   boolean isValidParameterType(TypeMirror type) {
-    return isValidParameterType(type, TypeCheckContext.create());
+    return validParameterTypes.computeIfAbsent(
+        type.toString(), t -> isValidParameterType(type, TypeCheckContext.create()));
   }
 
   boolean isValidParameterType(TypeMirror type, TypeCheckContext context) {
@@ -220,7 +238,7 @@ public final class SupportedTypes {
 
     return TypeUtils.isGeneric(type)
         ? isValidGenericParameterType(type, context)
-        : isValidParameterType(get(type));
+        : isValidParameterType(get(type)) && hasValidProperties(get(type));
   }
 
   private static boolean isValidParameterType(Type supportedType) {
@@ -247,10 +265,52 @@ public final class SupportedTypes {
     return isValidParameterType(supportedType);
   }
 
+  /**
+   * Returns true if every property of a {@link CrossProfileParcelable} type can be both written and
+   * read, or if {@code supportedType} is not a {@link CrossProfileParcelable} type.
+   */
+  private boolean hasValidProperties(@Nullable Type supportedType) {
+    if (supportedType == null || !supportedType.isCrossProfileParcelable()) {
+      return true;
+    }
+
+    if (!parcelableTypesBeingChecked.add(supportedType.getQualifiedName())) {
+      // This is already being checked further up the stack
+      return true;
+    }
+
+    try {
+      TypeCheckContext context = TypeCheckContext.create().toBuilder().setWrapped(true).build();
+      for (TypeMirror propertyType :
+          supportedType.getCrossProfileParcelable().get().propertyTypes()) {
+        if (!isValidParameterType(propertyType, context)
+            || !isValidReturnType(propertyType, context)) {
+          return false;
+        }
+      }
+      return true;
+    } finally {
+      parcelableTypesBeingChecked.remove(supportedType.getQualifiedName());
+    }
+  }
+
   ImmutableCollection<Type> usableTypes() {
     return usableTypes.values();
   }
 
+  /** {@code true} if any usable type is wrapped by a custom parcelable or future wrapper. */
+  public boolean usesCustomWrappers() {
+    return usableTypes.values().stream()
+        .anyMatch(
+            t ->
+                (t.getParcelableWrapper().isPresent()
+                        && t.getParcelableWrapper().get().wrapperType()
+                            == ParcelableWrapper.WrapperType.CUSTOM)
+                    || (t.getFutureWrapper().isPresent()
+                        && t.getFutureWrapper().get().wrapperType()
+                            == FutureWrapper.WrapperType.CUSTOM));
+  }
+
   private Type get(TypeMirror type) {
     return usableTypes.getOrDefault(type.toString(), null);
   }
@@ -273,6 +333,17 @@ public final class SupportedTypes {
         String.format("%s can not read from parcel", type.getQualifiedName()));
   }
 
+  /**
+   * Returns {@code true} if generated code can write and read {@code type} using its own code,
+   * rather than through a {@code Bundler}.
+   *
+   * @see Type#isWrittenDirectly()
+   */
+  boolean isWrittenDirectly(TypeMirror type) {
+    Type supportedType = get(type);
+    return supportedType != null && supportedType.isWrittenDirectly();
+  }
+
   public Type getType(TypeMirror type) {
     String typeName = type.toString();
     if (!usableTypes.containsKey(typeName)) {
@@ -307,19 +378,31 @@ public final class SupportedTypes {
       Elements elements,
       Map<String, Type> usableTypes,
       Collection<ExecutableElement> methods) {
+    // Most types are used by many methods, but only need adding once
+    Set<String> visitedTypes = new HashSet<>();
+
     for (ExecutableElement method : methods) {
-      addSupportForUsedType(types, elements, usableTypes, method.getReturnType());
+      addSupportForUsedType(types, elements, usableTypes, visitedTypes, method.getReturnType());
 
       for (VariableElement parameter : method.getParameters()) {
-        addSupportForUsedType(types, elements, usableTypes, parameter.asType());
+        addSupportForUsedType(types, elements, usableTypes, visitedTypes, parameter.asType());
       }
     }
   }
 
   private static void addSupportForUsedType(
-      Types types, Elements elements, Map<String, Type> usableTypes, TypeMirror type) {
+      Types types,
+      Elements elements,
+      Map<String, Type> usableTypes,
+      Set<String> visitedTypes,
+      TypeMirror type) {
+    if (!visitedTypes.add(type.toString())) {
+      return;
+    }
+
     if (TypeUtils.isArray(type)) {
-      addSupportForUsedType(types, elements, usableTypes, TypeUtils.extractTypeFromArray(type));
+      addSupportForUsedType(
+          types, elements, usableTypes, visitedTypes, TypeUtils.extractTypeFromArray(type));
       if (!TypeUtils.extractTypeFromArray(type).getKind().isPrimitive()) {
         type = types.getArrayType(elements.getTypeElement("java.lang.Object").asType());
       }
@@ -327,7 +410,7 @@ public final class SupportedTypes {
 
 
     if (TypeUtils.isGeneric(type)) {
-      addSupportForGenericUsedType(types, elements, usableTypes, type);
+      addSupportForGenericUsedType(types, elements, usableTypes, visitedTypes, type);
       return;
     }
     Optional<Type> optionalSupportedType = getSupportedType(types, elements, usableTypes, type);
@@ -342,7 +425,14 @@ public final class SupportedTypes {
     if (supportedType.isCrossProfileCallbackInterface()) {
       for (TypeMirror typeMirror :
           supportedType.getCrossProfileCallbackInterface().get().argumentTypes()) {
-        addSupportForUsedType(types, elements, usableTypes, typeMirror);
+        addSupportForUsedType(types, elements, usableTypes, visitedTypes, typeMirror);
+      }
+    }
+
+    if (supportedType.isCrossProfileParcelable()) {
+      for (TypeMirror typeMirror :
+          supportedType.getCrossProfileParcelable().get().propertyTypes()) {
+        addSupportForUsedType(types, elements, usableTypes, visitedTypes, typeMirror);
       }
     }
 
@@ -350,7 +440,11 @@ public final class SupportedTypes {
   }
 
   private static void addSupportForGenericUsedType(
-      Types types, Elements elements, Map<String, Type> usableTypes, TypeMirror type) {
+      Types types,
+      Elements elements,
+      Map<String, Type> usableTypes,
+      Set<String> visitedTypes,
+      TypeMirror type) {
     TypeMirror genericType = TypeUtils.removeTypeArguments(type);
 
     Optional<Type> optionalSupportedType =
@@ -366,7 +460,7 @@ public final class SupportedTypes {
 
     if (!supportedType.isSupportedWithAnyGenericType()) {
       for (TypeMirror typeArgument : TypeUtils.extractTypeArguments(type)) {
-        addSupportForUsedType(types, elements, usableTypes, typeArgument);
+        addSupportForUsedType(types, elements, usableTypes, visitedTypes, typeArgument);
       }
     }
   }
@@ -377,9 +471,16 @@ public final class SupportedTypes {
       return Optional.of(usableTypes.get(type.toString()));
     }
 
+    TypeElement element = elements.getTypeElement(type.toString());
+
+    // Checked first as these may also be Serializable, but can be written more efficiently
+    if (element != null && element.getAnnotation(CrossProfileParcelable.class) != null) {
+      return Optional.of(createCrossProfileParcelableType(types, element));
+    }
+
     TypeMirror parcelable = elements.getTypeElement("android.os.Parcelable").asType();
     if (types.isAssignable(type, parcelable)) {
-      return Optional.of(createParcelableType(type));
+      return Optional.of(createParcelableType(types, type));
     }
 
     TypeMirror serializable = elements.getTypeElement("java.io.Serializable").asType();
@@ -387,8 +488,6 @@ public final class SupportedTypes {
       return Optional.of(createSerializableType(type));
     }
 
-    TypeElement element = elements.getTypeElement(type.toString());
-
     if (element != null && hasCrossProfileCallbackAnnotation(element)) {
       return Optional.of(createCrossProfileCallbackType(element));
     }
@@ -408,18 +507,72 @@ public final class SupportedTypes {
         .build();
   }
 
-  private static Type createParcelableType(TypeMirror typeMirror) {
+  private static Type createCrossProfileParcelableType(Types types, TypeElement type) {
+    ClassName wrapperClassName = CrossProfileParcelableInfo.getWrapperClassName(type);
+    // "this" will be a Bundler as this code is only run within a Bundler, so it is passed to the
+    // wrapper rather than written with each value
     return Type.builder()
-        .setTypeMirror(typeMirror)
+        .setTypeMirror(type.asType())
         .setAcceptableReturnType(true)
         .setAcceptableParameterType(true)
+        .setWriteToParcelCode(wrapperClassName + ".writeValueToParcel(this, $L, $L, flags)")
+        .setReadFromParcelCode(wrapperClassName + ".readValueFromParcel(this, $L)")
+        .setCrossProfileParcelable(CrossProfileParcelableInfo.create(types, type))
+        .build();
+  }
+
+  private static Type createParcelableType(Types types, TypeMirror typeMirror) {
+    Type.Builder builder =
+        Type.builder()
+            .setTypeMirror(typeMirror)
+            .setAcceptableReturnType(true)
+            .setAcceptableParameterType(true)
+            // Parcelables must take care of their own generic types
+            .setSupportedWithAnyGenericType(true);
+
+    if (hasExactCreator(types, typeMirror)) {
+      // The class of the value is known, so its CREATOR can be used directly rather than writing
+      // the class name and looking up the CREATOR by reflection when reading
+      return builder
+          .setWriteToParcelCode("$L.writeTypedObject($L, flags)")
+          .setReadFromParcelCode(
+              "$L.readTypedObject(" + TypeUtils.getRawTypeQualifiedName(typeMirror) + ".CREATOR)")
+          .build();
+    }
+
+    return builder
         .setWriteToParcelCode("$L.writeParcelable($L, flags)")
         .setReadFromParcelCode("$L.readParcelable(Bundler.class.getClassLoader())")
-        // Parcelables must take care of their own generic types
-        .setSupportedWithAnyGenericType(true)
         .build();
   }
 
+  /**
+   * Is every value of {@code typeMirror} created by a {@code CREATOR} declared on that type?
+   *
+   * <p>This is true for final classes and enums which declare a public static {@code CREATOR}.
+   * Values of other types may be subclasses, so the class of each value must be written.
+   */
+  private static boolean hasExactCreator(Types types, TypeMirror typeMirror) {
+    Element element = types.asElement(typeMirror);
+    if (element == null) {
+      return false;
+    }
+    if (element.getKind() != ElementKind.ENUM
+        && !(element.getKind() == ElementKind.CLASS
+            && element.getModifiers().contains(Modifier.FINAL))) {
+      return false;
+    }
+
+    for (VariableElement field : ElementFilter.fieldsIn(element.getEnclosedElements())) {
+      if (field.getSimpleName().contentEquals("CREATOR")
+          && field.getModifiers().contains(Modifier.PUBLIC)
+          && field.getModifiers().contains(Modifier.STATIC)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private static Type createSerializableType(TypeMirror typeMirror) {
     return Type.builder()
         .setTypeMirror(typeMirror)
@@ -434,7 +587,7 @@ public final class SupportedTypes {
 
   /** Create a {@link Builder} to create a new {@link SupportedTypes} with modified entries. */
   public Builder asBuilder() {
-    return new Builder(usableTypes);
+    return new Builder(this);
   }
 
   private static void addDefaultTypes(
@@ -461,6 +614,7 @@ public final class SupportedTypes {
             .setAcceptableParameterType(true)
             .setWriteToParcelCode("$L.writeString($L)")
             .setReadFromParcelCode("$L.readString()")
+            .setWrittenDirectly(true)
             .build());
     addUsableType(
         usableTypes,
@@ -470,6 +624,7 @@ public final class SupportedTypes {
             .setAcceptableParameterType(true)
             .setWriteToParcelCode("$L.writeByte($L)")
             .setReadFromParcelCode("$L.readByte()")
+            .setWrittenDirectly(true)
             .build());
     addUsableType(
         usableTypes,
@@ -479,6 +634,7 @@ public final class SupportedTypes {
             .setAcceptableParameterType(true)
             .setWriteToParcelCode("$L.writeByte($L)")
             .setReadFromParcelCode("$L.readByte()")
+            .setWrittenDirectly(true)
             .build());
     addUsableType(
         usableTypes,
@@ -488,6 +644,7 @@ public final class SupportedTypes {
             .setAcceptableParameterType(true)
             .setWriteToParcelCode("$L.writeInt($L)")
             .setReadFromParcelCode("(short)$L.readInt()")
+            .setWrittenDirectly(true)
             .build());
     addUsableType(
         usableTypes,
@@ -497,6 +654,7 @@ public final class SupportedTypes {
             .setAcceptableParameterType(true)
             .setWriteToParcelCode("$L.writeInt($L)")
             .setReadFromParcelCode("(short)$L.readInt()")
+            .setWrittenDirectly(true)
             .build());
     addUsableType(
         usableTypes,
@@ -506,6 +664,7 @@ public final class SupportedTypes {
             .setAcceptableParameterType(true)
             .setWriteToParcelCode("$L.writeInt($L)")
             .setReadFromParcelCode("$L.readInt()")
+            .setWrittenDirectly(true)
             .build());
     addUsableType(
         usableTypes,
@@ -515,6 +674,7 @@ public final class SupportedTypes {
             .setAcceptableParameterType(true)
             .setWriteToParcelCode("$L.writeInt($L)")
             .setReadFromParcelCode("$L.readInt()")
+            .setWrittenDirectly(true)
             .build());
     addUsableType(
         usableTypes,
@@ -524,6 +684,7 @@ public final class SupportedTypes {
             .setAcceptableParameterType(true)
             .setWriteToParcelCode("$L.writeLong($L)")
             .setReadFromParcelCode("$L.readLong()")
+            .setWrittenDirectly(true)
             .build());
     addUsableType(
         usableTypes,
@@ -533,6 +694,7 @@ public final class SupportedTypes {
             .setAcceptableParameterType(true)
             .setWriteToParcelCode("$L.writeLong($L)")
             .setReadFromParcelCode("$L.readLong()")
+            .setWrittenDirectly(true)
             .build());
     addUsableType(
         usableTypes,
@@ -542,6 +704,7 @@ public final class SupportedTypes {
             .setAcceptableParameterType(true)
             .setWriteToParcelCode("$L.writeFloat($L)")
             .setReadFromParcelCode("$L.readFloat()")
+            .setWrittenDirectly(true)
             .build());
     addUsableType(
         usableTypes,
@@ -551,6 +714,7 @@ public final class SupportedTypes {
             .setAcceptableParameterType(true)
             .setWriteToParcelCode("$L.writeFloat($L)")
             .setReadFromParcelCode("$L.readFloat()")
+            .setWrittenDirectly(true)
             .build());
     addUsableType(
         usableTypes,
@@ -560,6 +724,7 @@ public final class SupportedTypes {
             .setAcceptableParameterType(true)
             .setWriteToParcelCode("$L.writeDouble($L)")
             .setReadFromParcelCode("$L.readDouble()")
+            .setWrittenDirectly(true)
             .build());
     addUsableType(
         usableTypes,
@@ -569,6 +734,7 @@ public final class SupportedTypes {
             .setAcceptableParameterType(true)
             .setWriteToParcelCode("$L.writeDouble($L)")
             .setReadFromParcelCode("$L.readDouble()")
+            .setWrittenDirectly(true)
             .build());
     addUsableType(
         usableTypes,
@@ -578,6 +744,7 @@ public final class SupportedTypes {
             .setAcceptableParameterType(true)
             .setWriteToParcelCode("$L.writeInt($L)")
             .setReadFromParcelCode("(char)$L.readInt()")
+            .setWrittenDirectly(true)
             .build());
     addUsableType(
         usableTypes,
@@ -587,6 +754,7 @@ public final class SupportedTypes {
             .setAcceptableParameterType(true)
             .setWriteToParcelCode("$L.writeInt($L)")
             .setReadFromParcelCode("(char)$L.readInt()")
+            .setWrittenDirectly(true)
             .build());
     addUsableType(
         usableTypes,
@@ -596,6 +764,7 @@ public final class SupportedTypes {
             .setAcceptableParameterType(true)
             .setWriteToParcelCode("$L.writeInt($L ? 1 : 0)")
             .setReadFromParcelCode("($L.readInt() == 1)")
+            .setWrittenDirectly(true)
             .build());
     addUsableType(
         usableTypes,
@@ -605,6 +774,7 @@ public final class SupportedTypes {
             .setAcceptableParameterType(true)
             .setWriteToParcelCode("$L.writeInt($L ? 1 : 0)")
             .setReadFromParcelCode("($L.readInt() == 1)")
+            .setWrittenDirectly(true)
             .build());
     addUsableType(
         usableTypes,
@@ -634,17 +804,28 @@ public final class SupportedTypes {
     String createParcelableCode = parcelableWrapper.wrapperClassName() + ".of(this, valueType, $L)";
     // "this" will be a Bundler as this code is only run within a Bundler
 
+    String writeCode;
+    String readCode;
+    if (parcelableWrapper.wrapperType().equals(ParcelableWrapper.WrapperType.CUSTOM)) {
+      // A custom wrapper's of method may return a subclass, so the class must be written
+      writeCode = "$L.writeParcelable(" + createParcelableCode + ", flags)";
+      readCode =
+          "(("
+              + parcelableWrapper.wrapperClassName()
+              + ") $L.readParcelable(Bundler.class.getClassLoader())).get()";
+    } else {
+      writeCode = "$L.writeTypedObject(" + createParcelableCode + ", flags)";
+      readCode = "$L.readTypedObject(" + parcelableWrapper.wrapperClassName() + ".CREATOR).get()";
+    }
+
     addUsableType(
         usableTypes,
         Type.builder()
             .setTypeMirror(parcelableWrapper.wrappedType())
             .setAcceptableReturnType(true)
             .setAcceptableParameterType(true)
-            .setWriteToParcelCode("$L.writeParcelable(" + createParcelableCode + ", flags)")
-            .setReadFromParcelCode(
-                "(("
-                    + parcelableWrapper.wrapperClassName()
-                    + ") $L.readParcelable(Bundler.class.getClassLoader())).get()")
+            .setWriteToParcelCode(writeCode)
+            .setReadFromParcelCode(readCode)
             .setParcelableWrapper(parcelableWrapper)
             .build());
   }
@@ -670,10 +851,12 @@ public final class SupportedTypes {
 
   public static final class Builder {
 
+    private final SupportedTypes original;
     private Map<String, Type> usableTypes;
 
-    private Builder(Map<String, Type> usableTypes) {
-      this.usableTypes = usableTypes;
+    private Builder(SupportedTypes original) {
+      this.original = original;
+      this.usableTypes = original.usableTypes;
     }
 
     /** Filtering to only include used types. */
@@ -728,6 +911,16 @@ public final class SupportedTypes {
         }
       }
 
+      if (supportedType.isCrossProfileParcelable()
+          && !usedTypes.containsKey(supportedType.getQualifiedName())) {
+        // Added before its properties, as a property may refer back to this type
+        copySupportedType(usedTypes, supportedType);
+        for (TypeMirror typeMirror :
+            supportedType.getCrossProfileParcelable().get().propertyTypes()) {
+          copySupportedType(context, usedTypes, typeMirror);
+        }
+      }
+
       copySupportedType(usedTypes, supportedType);
     }
 
@@ -755,6 +948,10 @@ public final class SupportedTypes {
 
     /** Add additianal parcelable wrappers. */
     public Builder addParcelableWrappers(Collection<ParcelableWrapper> parcelableWrappers) {
+      if (parcelableWrappers.isEmpty()) {
+        return this;
+      }
+
       Map<String, Type> newUsableTypes = new HashMap<>(usableTypes);
 
       addParcelableWrapperTypes(newUsableTypes, parcelableWrappers);
@@ -766,6 +963,10 @@ public final class SupportedTypes {
 
     /** Add additianal future wrappers. */
     public Builder addFutureWrappers(Collection<FutureWrapper> futureWrappers) {
+      if (futureWrappers.isEmpty()) {
+        return this;
+      }
+
       Map<String, Type> newUsableTypes = new HashMap<>(usableTypes);
 
       addFutureWrapperTypes(newUsableTypes, futureWrappers);
@@ -838,6 +1039,10 @@ public final class SupportedTypes {
 
     /** Build a new {@link SupportedTypes}. */
     public SupportedTypes build() {
+      if (usableTypes == original.usableTypes) {
+        // Nothing has changed, so share the original and anything it has memoized
+        return original;
+      }
       return new SupportedTypes(usableTypes);
     }
   }
@@ -43,6 +43,7 @@ import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Stream;
 import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.TypeElement;
@@ -223,7 +224,20 @@ public final class AnnotationFinder {
 
   private static boolean hasAnyAnnotations(
       Element element, Set<Class<? extends Annotation>> annotations) {
-    return annotations.stream().anyMatch(annotation -> element.getAnnotation(annotation) != null);
+    // Comparing names avoids Element#getAnnotation, which creates a proxy with every value of the
+    // annotation. None of the annotations are @Inherited so the mirrors are sufficient.
+    for (AnnotationMirror annotationMirror : element.getAnnotationMirrors()) {
+      String annotationName =
+          ((TypeElement) annotationMirror.getAnnotationType().asElement())
+              .getQualifiedName()
+              .toString();
+      for (Class<? extends Annotation> annotation : annotations) {
+        if (annotation.getCanonicalName().equals(annotationName)) {
+          return true;
+        }
+      }
+    }
+    return false;
   }
 
   public static Stream<? extends Element> elementsAnnotatedWithCrossProfile(
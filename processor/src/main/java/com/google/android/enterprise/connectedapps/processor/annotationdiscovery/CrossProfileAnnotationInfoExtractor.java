@@ -15,6 +15,8 @@
  */
 package com.google.android.enterprise.connectedapps.processor.annotationdiscovery;
 
+import com.google.android.enterprise.connectedapps.annotations.BitmapEncoding;
+import com.google.android.enterprise.connectedapps.annotations.CallPriority;
 import com.google.android.enterprise.connectedapps.processor.GeneratorUtilities;
 import com.google.android.enterprise.connectedapps.processor.annotationdiscovery.interfaces.CrossProfileAnnotation;
 import com.google.android.enterprise.connectedapps.processor.containers.CrossProfileAnnotationInfo;
@@ -52,7 +54,10 @@ final class CrossProfileAnnotationInfoExtractor
                 ImmutableSet.copyOf(
                     GeneratorUtilities.extractClassesFromAnnotation(
                         types, annotation::futureWrappers)))
-            .setIsStatic(annotation.isStatic());
+            .setIsStatic(annotation.isStatic())
+            .setIsIdempotent(annotation.idempotent())
+            .setInternsStrings(annotation.internStrings())
+            .setBitmapEncoding(annotation.bitmapEncoding());
 
     long timeoutMillis = annotation.timeoutMillis();
 
@@ -60,6 +65,10 @@ final class CrossProfileAnnotationInfoExtractor
       builder.setTimeoutMillis(timeoutMillis);
     }
 
+    if (annotation.priority() != CallPriority.DEFAULT) {
+      builder.setPriority(annotation.priority());
+    }
+
     return builder.build();
   }
 
@@ -73,6 +82,9 @@ final class CrossProfileAnnotationInfoExtractor
         .setParcelableWrapperClasses(ImmutableSet.of())
         .setFutureWrapperClasses(ImmutableSet.of())
         .setIsStatic(false)
+        .setIsIdempotent(false)
+        .setInternsStrings(false)
+        .setBitmapEncoding(BitmapEncoding.UNCOMPRESSED)
         .build();
   }
 }
@@ -15,6 +15,9 @@
  */
 package com.google.android.enterprise.connectedapps.processor.annotationdiscovery.interfaces;
 
+import com.google.android.enterprise.connectedapps.annotations.BitmapEncoding;
+import com.google.android.enterprise.connectedapps.annotations.CallPriority;
+
 /** Elements that can be populated on annotations of type CrossProfile. */
 public interface CrossProfileAnnotation {
 
@@ -32,5 +35,13 @@ public interface CrossProfileAnnotation {
 
   boolean isStatic();
 
+  BitmapEncoding bitmapEncoding();
+
   long timeoutMillis();
+
+  CallPriority priority();
+
+  boolean idempotent();
+
+  boolean internStrings();
 }
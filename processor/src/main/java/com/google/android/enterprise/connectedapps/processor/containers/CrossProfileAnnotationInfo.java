@@ -15,6 +15,8 @@
  */
 package com.google.android.enterprise.connectedapps.processor.containers;
 
+import com.google.android.enterprise.connectedapps.annotations.BitmapEncoding;
+import com.google.android.enterprise.connectedapps.annotations.CallPriority;
 import com.google.android.enterprise.connectedapps.annotations.CrossProfile;
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableCollection;
@@ -34,12 +36,20 @@ public abstract class CrossProfileAnnotationInfo {
 
   public abstract Optional<Long> timeoutMillis();
 
+  public abstract Optional<CallPriority> priority();
+
   public abstract ImmutableCollection<TypeElement> parcelableWrapperClasses();
 
   public abstract ImmutableCollection<TypeElement> futureWrapperClasses();
 
   public abstract boolean isStatic();
 
+  public abstract boolean isIdempotent();
+
+  public abstract boolean internsStrings();
+
+  public abstract BitmapEncoding bitmapEncoding();
+
   public boolean connectorIsDefault() {
     return connectorClass().asType().toString().equals(DEFAULT_CONNECTOR_NAME);
   }
@@ -48,6 +58,10 @@ public abstract class CrossProfileAnnotationInfo {
     return profileClassName().isEmpty();
   }
 
+  public boolean isBitmapEncodingDefault() {
+    return bitmapEncoding() == BitmapEncoding.UNCOMPRESSED;
+  }
+
   public static Builder builder() {
     return new AutoValue_CrossProfileAnnotationInfo.Builder();
   }
@@ -61,12 +75,20 @@ public abstract class CrossProfileAnnotationInfo {
 
     public abstract Builder setTimeoutMillis(Long value);
 
+    public abstract Builder setPriority(CallPriority value);
+
     public abstract Builder setParcelableWrapperClasses(ImmutableCollection<TypeElement> value);
 
     public abstract Builder setFutureWrapperClasses(ImmutableCollection<TypeElement> value);
 
     public abstract Builder setIsStatic(boolean value);
 
+    public abstract Builder setIsIdempotent(boolean value);
+
+    public abstract Builder setInternsStrings(boolean value);
+
+    public abstract Builder setBitmapEncoding(BitmapEncoding value);
+
     public abstract CrossProfileAnnotationInfo build();
   }
 }
@@ -20,6 +20,7 @@ import static com.google.android.enterprise.connectedapps.processor.annotationdi
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toSet;
 
+import com.google.android.enterprise.connectedapps.annotations.CallPriority;
 import com.google.android.enterprise.connectedapps.annotations.CrossProfile;
 import com.google.android.enterprise.connectedapps.annotations.CrossProfileCallback;
 import com.google.android.enterprise.connectedapps.processor.SupportedTypes;
@@ -80,6 +81,24 @@ public abstract class CrossProfileMethodInfo {
    */
   public abstract long timeoutMillis();
 
+  /**
+   * The priority of async calls. This is either set on the method, the type, or defaults to {@link
+   * CallPriority#NORMAL}.
+   */
+  public abstract CallPriority priority();
+
+  /**
+   * True if async calls can be retried after a loss of connection. This is true if either the method
+   * or the type is marked as idempotent.
+   */
+  public abstract boolean isIdempotent();
+
+  /**
+   * True if repeated strings in parameters and return values are written once. This is true if
+   * either the method or the type is marked as interning strings.
+   */
+  public abstract boolean internsStrings();
+
   /**
    * Specify behaviour when encountering parameters of a type which is automatically resolved by the
    * SDK.
@@ -209,23 +228,46 @@ public abstract class CrossProfileMethodInfo {
       ValidatorCrossProfileTypeInfo type,
       ExecutableElement methodElement,
       Context context) {
+    // Extracting annotation values is relatively expensive so only do it once per method
+    Optional<CrossProfileAnnotationInfo> annotationInfo =
+        hasCrossProfileAnnotation(methodElement)
+            ? Optional.of(
+                AnnotationFinder.extractCrossProfileAnnotationInfo(
+                    methodElement, context.types(), context.elements()))
+            : Optional.empty();
+
     return new AutoValue_CrossProfileMethodInfo(
         methodElement,
         identifier,
         methodElement.getModifiers().contains(Modifier.STATIC),
-        findTimeoutMillis(type, methodElement, context));
+        findTimeoutMillis(type, annotationInfo),
+        findPriority(type, annotationInfo),
+        isIdempotent(type, annotationInfo),
+        internsStrings(type, annotationInfo));
   }
 
   private static long findTimeoutMillis(
-      ValidatorCrossProfileTypeInfo type, ExecutableElement methodElement, Context context) {
-    if (hasCrossProfileAnnotation(methodElement)) {
-      return AnnotationFinder.extractCrossProfileAnnotationInfo(
-              methodElement, context.types(), context.elements())
-          .timeoutMillis()
-          .filter(timeout -> timeout > 0)
-          .orElse(type.timeoutMillis());
-    }
+      ValidatorCrossProfileTypeInfo type, Optional<CrossProfileAnnotationInfo> annotationInfo) {
+    return annotationInfo
+        .flatMap(CrossProfileAnnotationInfo::timeoutMillis)
+        .filter(timeout -> timeout > 0)
+        .orElse(type.timeoutMillis());
+  }
+
+  private static CallPriority findPriority(
+      ValidatorCrossProfileTypeInfo type, Optional<CrossProfileAnnotationInfo> annotationInfo) {
+    return annotationInfo.flatMap(CrossProfileAnnotationInfo::priority).orElse(type.priority());
+  }
+
+  private static boolean isIdempotent(
+      ValidatorCrossProfileTypeInfo type, Optional<CrossProfileAnnotationInfo> annotationInfo) {
+    return type.isIdempotent()
+        || annotationInfo.map(CrossProfileAnnotationInfo::isIdempotent).orElse(false);
+  }
 
-    return type.timeoutMillis();
+  private static boolean internsStrings(
+      ValidatorCrossProfileTypeInfo type, Optional<CrossProfileAnnotationInfo> annotationInfo) {
+    return type.internsStrings()
+        || annotationInfo.map(CrossProfileAnnotationInfo::internsStrings).orElse(false);
   }
 }
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.processor.containers;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+import com.google.android.enterprise.connectedapps.annotations.CrossProfileParcelable;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.squareup.javapoet.ClassName;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+
+/** Wrapper of a {@link CrossProfileParcelable} annotated class. */
+@AutoValue
+public abstract class CrossProfileParcelableInfo {
+
+  private static final String WRAPPER_SUFFIX = "_ParcelableWrapper";
+
+  /** A single value which is written when parcelling a {@link CrossProfileParcelable} class. */
+  @AutoValue
+  public abstract static class Property {
+
+    /** The field or method which declares this property. */
+    public abstract Element element();
+
+    public abstract TypeMirror type();
+
+    /**
+     * Code which reads this property from an instance, to be appended to the instance, such as
+     * {@code name} or {@code getName()}.
+     *
+     * <p>This is empty if a private field has no accessor method.
+     */
+    public abstract Optional<String> accessor();
+
+    public String name() {
+      return element().getSimpleName().toString();
+    }
+
+    static Property create(Element element, TypeMirror type, Optional<String> accessor) {
+      return new AutoValue_CrossProfileParcelableInfo_Property(element, type, accessor);
+    }
+  }
+
+  public abstract TypeElement parcelableElement();
+
+  /** The properties of the class, in the order they are written and passed to the creator. */
+  public abstract ImmutableList<Property> properties();
+
+  /**
+   * The constructor, or for an abstract class the static method, which creates an instance from
+   * every property.
+   *
+   * <p>This is empty if there is no such constructor or method.
+   */
+  public abstract Optional<ExecutableElement> creator();
+
+  public boolean isAbstract() {
+    return isAbstract(parcelableElement());
+  }
+
+  public List<TypeMirror> propertyTypes() {
+    return properties().stream().map(Property::type).collect(toList());
+  }
+
+  /** The generated {@code Parcelable} which writes and reads instances of this class. */
+  public ClassName wrapperClassName() {
+    return getWrapperClassName(parcelableElement());
+  }
+
+  public static ClassName getWrapperClassName(TypeElement parcelableElement) {
+    ClassName className = ClassName.get(parcelableElement);
+    return ClassName.get(
+        className.packageName(), String.join("_", className.simpleNames()) + WRAPPER_SUFFIX);
+  }
+
+  public static CrossProfileParcelableInfo create(Types types, TypeElement parcelableElement) {
+    ImmutableList<Property> properties =
+        isAbstract(parcelableElement)
+            ? abstractProperties(types, parcelableElement)
+            : fieldProperties(parcelableElement);
+
+    return new AutoValue_CrossProfileParcelableInfo(
+        parcelableElement, properties, findCreator(types, parcelableElement, properties));
+  }
+
+  private static boolean isAbstract(TypeElement parcelableElement) {
+    return parcelableElement.getModifiers().contains(Modifier.ABSTRACT);
+  }
+
+  private static ImmutableList<Property> abstractProperties(
+      Types types, TypeElement parcelableElement) {
+    return ElementFilter.methodsIn(parcelableElement.getEnclosedElements()).stream()
+        .filter(m -> m.getModifiers().contains(Modifier.ABSTRACT))
+        .filter(m -> m.getParameters().isEmpty())
+        .filter(m -> m.getReturnType().getKind() != TypeKind.VOID)
+        .filter(m -> !isOwnBuilder(types, parcelableElement, m.getReturnType()))
+        .map(m -> Property.create(m, m.getReturnType(), Optional.of(m.getSimpleName() + "()")))
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  /**
+   * Returns {@code true} if {@code type} is a builder nested in {@code parcelableElement}, such as
+   * the type returned by an {@code AutoValue} class's {@code toBuilder()} method.
+   */
+  private static boolean isOwnBuilder(
+      Types types, TypeElement parcelableElement, TypeMirror type) {
+    if (type.getKind() != TypeKind.DECLARED) {
+      return false;
+    }
+    Element element = types.asElement(type);
+    if (!element.getEnclosingElement().equals(parcelableElement)) {
+      return false;
+    }
+    return ElementFilter.methodsIn(element.getEnclosedElements()).stream()
+        .anyMatch(
+            m ->
+                m.getParameters().isEmpty()
+                    && types.isSameType(m.getReturnType(), parcelableElement.asType()));
+  }
+
+  private static ImmutableList<Property> fieldProperties(TypeElement parcelableElement) {
+    List<ExecutableElement> methods =
+        ElementFilter.methodsIn(parcelableElement.getEnclosedElements());
+
+    return ElementFilter.fieldsIn(parcelableElement.getEnclosedElements()).stream()
+        .filter(f -> !f.getModifiers().contains(Modifier.STATIC))
+        .filter(f -> !f.getModifiers().contains(Modifier.TRANSIENT))
+        .map(f -> Property.create(f, f.asType(), findAccessor(f, methods)))
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  private static Optional<String> findAccessor(
+      VariableElement field, Collection<ExecutableElement> methods) {
+    String name = field.getSimpleName().toString();
+    if (!field.getModifiers().contains(Modifier.PRIVATE)) {
+      return Optional.of(name);
+    }
+
+    String capitalizedName = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    List<String> accessorNames = new ArrayList<>();
+    accessorNames.add("get" + capitalizedName);
+    if (field.asType().getKind() == TypeKind.BOOLEAN) {
+      accessorNames.add("is" + capitalizedName);
+    }
+    accessorNames.add(name);
+
+    for (String accessorName : accessorNames) {
+      for (ExecutableElement method : methods) {
+        if (method.getSimpleName().contentEquals(accessorName)
+            && method.getParameters().isEmpty()
+            && !method.getModifiers().contains(Modifier.PRIVATE)
+            && !method.getModifiers().contains(Modifier.STATIC)
+            && method.getReturnType().toString().equals(field.asType().toString())) {
+          return Optional.of(accessorName + "()");
+        }
+      }
+    }
+
+    return Optional.empty();
+  }
+
+  private static Optional<ExecutableElement> findCreator(
+      Types types, TypeElement parcelableElement, List<Property> properties) {
+    Collection<ExecutableElement> candidates =
+        isAbstract(parcelableElement)
+            ? ElementFilter.methodsIn(parcelableElement.getEnclosedElements()).stream()
+                .filter(m -> m.getModifiers().contains(Modifier.STATIC))
+                .filter(m -> types.isSameType(m.getReturnType(), parcelableElement.asType()))
+                .collect(toList())
+            : ElementFilter.constructorsIn(parcelableElement.getEnclosedElements());
+
+    return candidates.stream()
+        .filter(c -> !c.getModifiers().contains(Modifier.PRIVATE))
+        .filter(c -> takesProperties(types, c, properties))
+        .findFirst();
+  }
+
+  private static boolean takesProperties(
+      Types types, ExecutableElement creator, List<Property> properties) {
+    if (creator.getParameters().size() != properties.size()) {
+      return false;
+    }
+
+    for (int i = 0; i < properties.size(); i++) {
+      if (!types.isSameType(creator.getParameters().get(i).asType(), properties.get(i).type())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** A description of the properties, for use in error messages. */
+  public String describeProperties() {
+    return properties().stream()
+        .map(p -> p.type() + " " + p.name())
+        .collect(joining(", ", "(", ")"));
+  }
+}
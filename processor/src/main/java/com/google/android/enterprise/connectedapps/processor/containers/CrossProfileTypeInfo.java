@@ -18,6 +18,8 @@ package com.google.android.enterprise.connectedapps.processor.containers;
 import static com.google.android.enterprise.connectedapps.processor.annotationdiscovery.AnnotationFinder.hasCrossProfileAnnotation;
 import static java.util.stream.Collectors.toSet;
 
+import com.google.android.enterprise.connectedapps.annotations.BitmapEncoding;
+import com.google.android.enterprise.connectedapps.annotations.CallPriority;
 import com.google.android.enterprise.connectedapps.annotations.CrossProfile;
 import com.google.android.enterprise.connectedapps.processor.ProcessorConfiguration;
 import com.google.android.enterprise.connectedapps.processor.SupportedTypes;
@@ -60,6 +62,19 @@ public abstract class CrossProfileTypeInfo {
    */
   public abstract long timeoutMillis();
 
+  /** The specified priority for async calls, or {@link CallPriority#NORMAL} if unspecified. */
+  public abstract CallPriority priority();
+
+  /** The encoding used for {@code android.graphics.Bitmap} instances sent by this type. */
+  public abstract BitmapEncoding bitmapEncoding();
+
+  /**
+   * {@code true} if this type uses the bundler and wrappers shared by all types processed together.
+   *
+   * <p>See {@link ProcessorConfiguration#SHARED_BUNDLER_OPTION}.
+   */
+  public abstract boolean usesSharedBundler();
+
   public String simpleName() {
     return crossProfileTypeElement().getSimpleName().toString();
   }
@@ -72,6 +87,11 @@ public abstract class CrossProfileTypeInfo {
     return crossProfileMethods().stream().allMatch(CrossProfileMethodInfo::isStatic);
   }
 
+  /** True if any method of this type writes repeated strings once. */
+  public boolean internsStrings() {
+    return crossProfileMethods().stream().anyMatch(CrossProfileMethodInfo::internsStrings);
+  }
+
   /**
    * Get a numeric identifier for the cross-profile type.
    *
@@ -101,8 +121,15 @@ public abstract class CrossProfileTypeInfo {
     SupportedTypes.Builder supportedTypesBuilder = crossProfileType.supportedTypes().asBuilder();
 
     supportedTypesBuilder.filterUsed(context, crossProfileMethods);
+    SupportedTypes usedTypes = supportedTypesBuilder.build();
+    supportedTypesBuilder = usedTypes.asBuilder();
 
-    if (ProcessorConfiguration.GENERATE_TYPE_SPECIFIC_WRAPPERS) {
+    Optional<ClassName> sharedBundlerPrefix =
+        findSharedBundlerPrefix(context, crossProfileType, usedTypes);
+
+    if (sharedBundlerPrefix.isPresent()) {
+      supportedTypesBuilder.replaceWrapperPrefix(sharedBundlerPrefix.get());
+    } else if (ProcessorConfiguration.GENERATE_TYPE_SPECIFIC_WRAPPERS) {
       supportedTypesBuilder.replaceWrapperPrefix(
           ClassName.bestGuess(
               crossProfileType.crossProfileTypeElement().getQualifiedName().toString()));
@@ -114,7 +141,39 @@ public abstract class CrossProfileTypeInfo {
         supportedTypesBuilder.build(),
         crossProfileType.profileConnector(),
         findProfileClassName(context, crossProfileTypeElement, crossProfileType),
-        crossProfileType.timeoutMillis());
+        crossProfileType.timeoutMillis(),
+        crossProfileType.priority(),
+        crossProfileType.bitmapEncoding(),
+        sharedBundlerPrefix.isPresent());
+  }
+
+  private static Optional<ClassName> findSharedBundlerPrefix(
+      ValidatorContext context,
+      ValidatorCrossProfileTypeInfo crossProfileType,
+      SupportedTypes usedTypes) {
+    Optional<ClassName> prefix = ProcessorConfiguration.sharedBundlerPrefix(context.processingEnv());
+    if (!prefix.isPresent()) {
+      return Optional.empty();
+    }
+
+    String sharedBundlerName =
+        ProcessorConfiguration.sharedBundlerClassName(prefix.get()).canonicalName();
+    if (context.elements().getTypeElement(sharedBundlerName) != null) {
+      // Generated in an earlier round, so it can't include this type
+      return Optional.empty();
+    }
+
+    if (crossProfileType.bitmapEncoding() != BitmapEncoding.UNCOMPRESSED) {
+      // The bitmap encoding is applied to the wrapper, so it can't be shared
+      return Optional.empty();
+    }
+
+    if (usedTypes.usesCustomWrappers()) {
+      // Another type could use a different custom wrapper for the same type
+      return Optional.empty();
+    }
+
+    return prefix;
   }
 
   private static ClassName findProfileClassName(
@@ -42,7 +42,7 @@ public abstract class GeneratorContext extends Context {
 
     Collection<CrossProfileTypeInfo> crossProfileTypes =
         validatorContext.newCrossProfileTypes().stream()
-            .map(m -> CrossProfileTypeInfo.create(validatorContext, m))
+            .map(m -> validatorContext.crossProfileType(m.crossProfileTypeElement()))
             .collect(toSet());
 
     Collection<CrossProfileCallbackInterfaceInfo> crossProfileCallbackInterfaces =
@@ -75,6 +75,11 @@ public abstract class GeneratorContext extends Context {
             .map(t -> CrossProfileTestInfo.create(validatorContext, t))
             .collect(toSet());
 
+    Collection<CrossProfileParcelableInfo> crossProfileParcelableTypes =
+        validatorContext.newCrossProfileParcelableTypes().stream()
+            .map(t -> CrossProfileParcelableInfo.create(validatorContext.types(), t))
+            .collect(toSet());
+
     return GeneratorContext.builder()
         .setProcessingEnv(validatorContext.processingEnv())
         .setElements(validatorContext.elements())
@@ -87,6 +92,7 @@ public abstract class GeneratorContext extends Context {
         .setCrossProfileMethods(validatorContext.newCrossProfileMethods())
         .setCrossProfileCallbackInterfaces(crossProfileCallbackInterfaces)
         .setCrossProfileTests(crossProfileTests)
+        .setCrossProfileParcelableTypes(crossProfileParcelableTypes)
         .build();
   }
 
@@ -110,6 +116,8 @@ public abstract class GeneratorContext extends Context {
 
   public abstract ImmutableSet<CrossProfileTestInfo> crossProfileTests();
 
+  public abstract ImmutableSet<CrossProfileParcelableInfo> crossProfileParcelableTypes();
+
   @AutoValue.Builder
   abstract static class Builder {
     abstract Builder setProcessingEnv(ProcessingEnvironment processingEnv);
@@ -137,6 +145,9 @@ public abstract class GeneratorContext extends Context {
 
     abstract Builder setCrossProfileTests(Collection<CrossProfileTestInfo> crossProfileTests);
 
+    abstract Builder setCrossProfileParcelableTypes(
+        Collection<CrossProfileParcelableInfo> crossProfileParcelableTypes);
+
     abstract GeneratorContext build();
   }
 }
@@ -95,25 +95,11 @@ public abstract class ProviderClassInfo {
         extractCrossProfileTypeElementsFromReturnValues(
                 context.elements(), provider.providerClassElement())
             .stream()
-            .map(
-                crossProfileTypeElement ->
-                    ValidatorCrossProfileTypeInfo.create(
-                        context.processingEnv(),
-                        crossProfileTypeElement,
-                        context.globalSupportedTypes()))
-            .map(crossProfileType -> CrossProfileTypeInfo.create(context, crossProfileType))
+            .map(context::crossProfileType)
             .collect(toSet());
 
     Set<CrossProfileTypeInfo> staticTypes =
-        provider.staticTypes().stream()
-            .map(
-                crossProfileTypeElement ->
-                    ValidatorCrossProfileTypeInfo.create(
-                        context.processingEnv(),
-                        crossProfileTypeElement,
-                        context.globalSupportedTypes()))
-            .map(crossProfileType -> CrossProfileTypeInfo.create(context, crossProfileType))
-            .collect(toSet());
+        provider.staticTypes().stream().map(context::crossProfileType).collect(toSet());
 
     return new AutoValue_ProviderClassInfo(
         provider.providerClassElement(),
@@ -29,7 +29,8 @@ public abstract class Type {
         .setAcceptableReturnType(false)
         .setSupportedWithAnyGenericType(false)
         .setSupportedInsideWrapper(true)
-        .setSupportedInsideCrossProfileCallback(true);
+        .setSupportedInsideCrossProfileCallback(true)
+        .setWrittenDirectly(false);
   }
 
   public abstract Builder toBuilder();
@@ -92,6 +93,12 @@ public abstract class Type {
     return getCrossProfileCallbackInterface().isPresent();
   }
 
+  public abstract Optional<CrossProfileParcelableInfo> getCrossProfileParcelable();
+
+  public boolean isCrossProfileParcelable() {
+    return getCrossProfileParcelable().isPresent();
+  }
+
   // If this is a generated Parcelable Wrapper then this will be set to the simple name
   // (e.g. ParcelableList)
   public abstract Optional<ParcelableWrapper> getParcelableWrapper();
@@ -100,6 +107,15 @@ public abstract class Type {
 
   public abstract Optional<String> getReadFromParcelCode();
 
+  /**
+   * Can generated code use the write and read code of this type directly, rather than through a
+   * {@code Bundler}?
+   *
+   * <p>This is only true for types whose code uses nothing but the {@code Parcel}, so it can be
+   * used outside of a {@code Bundler} without boxing or looking up the type.
+   */
+  public abstract boolean isWrittenDirectly();
+
   /** A builder for {@link Type}. */
   @AutoValue.Builder
   public abstract static class Builder {
@@ -125,12 +141,17 @@ public abstract class Type {
     public abstract Builder setCrossProfileCallbackInterface(
         CrossProfileCallbackInterfaceInfo crossProfileCallbackInterface);
 
+    public abstract Builder setCrossProfileParcelable(
+        CrossProfileParcelableInfo crossProfileParcelable);
+
     public abstract Builder setWriteToParcelCode(String writeToParcelCode);
 
     public abstract Builder setReadFromParcelCode(String readFromParcelCode);
 
     public abstract Builder setParcelableWrapper(ParcelableWrapper parcelableWrapper);
 
+    public abstract Builder setWrittenDirectly(boolean writtenDirectly);
+
     public abstract Type build();
   }
 }
@@ -19,6 +19,8 @@ import com.google.android.enterprise.connectedapps.processor.SupportedTypes;
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableSet;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.TypeElement;
@@ -34,10 +36,51 @@ import javax.lang.model.util.Types;
 @AutoValue
 public abstract class ValidatorContext extends Context {
 
+  // Cross-profile types are referenced by the processor, providers and configurations, so these are
+  // memoized to avoid analysing each type more than once per round. They are not part of equality.
+  private final Map<String, CrossProfileTypeInfo> crossProfileTypes = new HashMap<>();
+  private Map<String, ValidatorCrossProfileTypeInfo> newCrossProfileTypesByName;
+
   public static Builder builder() {
     return new AutoValue_ValidatorContext.Builder();
   }
 
+  /**
+   * Returns the {@link CrossProfileTypeInfo} for {@code crossProfileTypeElement}.
+   *
+   * <p>This is created the first time it is requested and reused after that.
+   */
+  public CrossProfileTypeInfo crossProfileType(TypeElement crossProfileTypeElement) {
+    String qualifiedName = crossProfileTypeElement.getQualifiedName().toString();
+    CrossProfileTypeInfo crossProfileType = crossProfileTypes.get(qualifiedName);
+    if (crossProfileType == null) {
+      crossProfileType =
+          CrossProfileTypeInfo.create(this, validatorCrossProfileType(crossProfileTypeElement));
+      crossProfileTypes.put(qualifiedName, crossProfileType);
+    }
+    return crossProfileType;
+  }
+
+  private ValidatorCrossProfileTypeInfo validatorCrossProfileType(
+      TypeElement crossProfileTypeElement) {
+    if (newCrossProfileTypesByName == null) {
+      newCrossProfileTypesByName = new HashMap<>();
+      for (ValidatorCrossProfileTypeInfo crossProfileType : newCrossProfileTypes()) {
+        newCrossProfileTypesByName.put(
+            crossProfileType.crossProfileTypeElement().getQualifiedName().toString(),
+            crossProfileType);
+      }
+    }
+
+    ValidatorCrossProfileTypeInfo crossProfileType =
+        newCrossProfileTypesByName.get(crossProfileTypeElement.getQualifiedName().toString());
+    if (crossProfileType != null) {
+      return crossProfileType;
+    }
+    return ValidatorCrossProfileTypeInfo.create(
+        processingEnv(), crossProfileTypeElement, globalSupportedTypes());
+  }
+
   public abstract SupportedTypes globalSupportedTypes();
 
   public abstract ImmutableSet<ProfileConnectorInfo> newProfileConnectorInterfaces();
@@ -66,6 +109,8 @@ public abstract class ValidatorContext extends Context {
 
   public abstract ImmutableSet<TypeElement> newCustomFutureWrappers();
 
+  public abstract ImmutableSet<TypeElement> newCrossProfileParcelableTypes();
+
   /** A builder for {@link ValidatorContext}. */
   @AutoValue.Builder
   public abstract static class Builder {
@@ -115,6 +160,9 @@ public abstract class ValidatorContext extends Context {
     public abstract Builder setNewCustomFutureWrappers(
         Collection<TypeElement> newCustomFutureWrappers);
 
+    public abstract Builder setNewCrossProfileParcelableTypes(
+        Collection<TypeElement> newCrossProfileParcelableTypes);
+
     public abstract ValidatorContext build();
   }
 }
@@ -18,6 +18,8 @@ package com.google.android.enterprise.connectedapps.processor.containers;
 import static com.google.android.enterprise.connectedapps.processor.GeneratorUtilities.findCrossProfileMethodsInClass;
 import static java.util.stream.Collectors.toList;
 
+import com.google.android.enterprise.connectedapps.annotations.BitmapEncoding;
+import com.google.android.enterprise.connectedapps.annotations.CallPriority;
 import com.google.android.enterprise.connectedapps.annotations.CrossProfile;
 import com.google.android.enterprise.connectedapps.processor.SupportedTypes;
 import com.google.android.enterprise.connectedapps.processor.annotationdiscovery.AnnotationFinder;
@@ -52,12 +54,23 @@ public abstract class ValidatorCrossProfileTypeInfo {
 
   public abstract boolean isStatic();
 
+  public abstract BitmapEncoding bitmapEncoding();
+
   /**
    * The specified timeout for async calls, or {@link CrossProfileAnnotation#DEFAULT_TIMEOUT_MILLIS}
    * if unspecified.
    */
   public abstract long timeoutMillis();
 
+  /** The specified priority for async calls, or {@link CallPriority#NORMAL} if unspecified. */
+  public abstract CallPriority priority();
+
+  /** True if all async calls to this type can be retried after a loss of connection. */
+  public abstract boolean isIdempotent();
+
+  /** True if all methods of this type write repeated strings once. */
+  public abstract boolean internsStrings();
+
   public static ValidatorCrossProfileTypeInfo create(
       ProcessingEnvironment processingEnv,
       TypeElement crossProfileTypeElement,
@@ -107,9 +120,13 @@ public abstract class ValidatorCrossProfileTypeInfo {
         annotationInfo.futureWrapperClasses(),
         annotationInfo.profileClassName(),
         annotationInfo.isStatic(),
+        annotationInfo.bitmapEncoding(),
         annotationInfo
             .timeoutMillis()
             .filter(value -> value != CrossProfileAnnotation.TIMEOUT_MILLIS_NOT_SET)
-            .orElse(CrossProfileAnnotation.DEFAULT_TIMEOUT_MILLIS));
+            .orElse(CrossProfileAnnotation.DEFAULT_TIMEOUT_MILLIS),
+        annotationInfo.priority().orElse(CallPriority.NORMAL),
+        annotationInfo.isIdempotent(),
+        annotationInfo.internsStrings());
   }
 }
@@ -61,7 +61,7 @@ public class ParcelableArray<E> implements Parcelable {
       return;
     }
 
-    type = in.readParcelable(Bundler.class.getClassLoader());
+    type = in.readTypedObject(BundlerType.CREATOR);
     BundlerType valueType = type.typeArguments().get(0);
 
     @SuppressWarnings("unchecked")
@@ -87,7 +87,7 @@ public class ParcelableArray<E> implements Parcelable {
     }
 
     dest.writeInt(array.length);
-    dest.writeParcelable(type, flags);
+    dest.writeTypedObject(type, flags);
     if (array.length > 0) {
       BundlerType valueType = type.typeArguments().get(0);
 
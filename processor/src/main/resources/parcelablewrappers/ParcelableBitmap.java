@@ -16,15 +16,35 @@
 package com.google.android.enterprise.connectedapps.parcelablewrappers;
 
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
 import android.os.Parcel;
 import android.os.Parcelable;
 import com.google.android.enterprise.connectedapps.internal.Bundler;
 import com.google.android.enterprise.connectedapps.internal.BundlerType;
+import com.google.android.enterprise.connectedapps.internal.ScratchBuffers;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 
 /** Wrapper for reading & writing {@link Bitmap} instances from and to {@link Parcel} instances. */
 // Though Bitmap is itself Parcelable, in some circumstances the Parcelling process can fail (see
-// b/159895007).
+// b/159895007). Bitmap#writeToParcel may also use ashmem, which can't be marshalled into the byte
+// arrays used to send calls, so the pixels are always written inline.
 public class ParcelableBitmap implements Parcelable {
+  private static final int NULL = -1;
+  private static final int ENCODING_UNCOMPRESSED = 0;
+  private static final int ENCODING_PNG = 1;
+  private static final int ENCODING_WEBP_LOSSLESS = 2;
+  private static final int ENCODING_WEBP_LOSSY = 3;
+
+  /** The encoding used when writing. This is replaced when the wrapper is generated. */
+  private static final int WRITE_ENCODING = ENCODING_UNCOMPRESSED;
+
+  private static final int WEBP_LOSSY_QUALITY = 90;
+
+  private static final Bitmap.Config[] CONFIGS = Bitmap.Config.values();
+
   private final Bitmap bitmap;
 
   /** Create a wrapper for a given bitmap. */
@@ -37,38 +57,136 @@ public class ParcelableBitmap implements Parcelable {
   }
 
   private ParcelableBitmap(Parcel in) {
-    String configKey = in.readString();
+    int encoding = in.readInt();
 
-    if (configKey == null) {
+    if (encoding == NULL) {
       bitmap = null;
       return;
     }
 
-    Bitmap.Config config = Bitmap.Config.valueOf(configKey);
+    Bitmap.Config config = configFromOrdinal(in.readInt());
+    int density = in.readInt();
+
+    Bitmap readBitmap =
+        encoding == ENCODING_UNCOMPRESSED
+            ? readUncompressedBitmap(in, config)
+            : readCompressedBitmap(in, config);
+    readBitmap.setDensity(density);
+    bitmap = readBitmap;
+  }
+
+  /** Returns {@code null} if the config is unknown, in which case the decoder will choose one. */
+  private static Bitmap.Config configFromOrdinal(int configOrdinal) {
+    return configOrdinal >= 0 && configOrdinal < CONFIGS.length ? CONFIGS[configOrdinal] : null;
+  }
+
+  private static Bitmap readUncompressedBitmap(Parcel in, Bitmap.Config config) {
+    if (config == null) {
+      // The pixels can't be interpreted without knowing their layout
+      throw new IllegalArgumentException("Uncompressed bitmap has an unknown config");
+    }
     int width = in.readInt();
     int height = in.readInt();
-    int[] colors = new int[width * height];
-    in.readIntArray(colors);
+    boolean hasAlpha = in.readInt() == 1;
+    boolean isPremultiplied = in.readInt() == 1;
+    byte[] pixels = in.createByteArray();
+
+    // Hardware bitmaps can't be written to directly, so are written via an ARGB_8888 copy
+    boolean isHardware = config == Bitmap.Config.HARDWARE;
+    Bitmap bitmap =
+        Bitmap.createBitmap(width, height, isHardware ? Bitmap.Config.ARGB_8888 : config);
+    bitmap.setHasAlpha(hasAlpha);
+    bitmap.setPremultiplied(isPremultiplied);
+    bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(pixels));
+
+    return isHardware ? bitmap.copy(Bitmap.Config.HARDWARE, /* isMutable= */ false) : bitmap;
+  }
+
+  private static Bitmap readCompressedBitmap(Parcel in, Bitmap.Config config) {
+    byte[] compressed = in.createByteArray();
 
-    bitmap = Bitmap.createBitmap(colors, width, height, config);
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    if (config != null) {
+      options.inPreferredConfig = config;
+    }
+    Bitmap bitmap = BitmapFactory.decodeByteArray(compressed, 0, compressed.length, options);
+
+    if (config != null && bitmap.getConfig() != config) {
+      // The decoder may ignore the preferred config
+      Bitmap converted = bitmap.copy(config, /* isMutable= */ false);
+      if (converted != null) {
+        return converted;
+      }
+    }
+    return bitmap;
   }
 
   @Override
   public void writeToParcel(Parcel out, int flags) {
     if (bitmap == null) {
-      out.writeString(null);
+      out.writeInt(NULL);
       return;
     }
 
     Bitmap.Config config = bitmap.getConfig();
-    int width = bitmap.getWidth();
-    int height = bitmap.getHeight();
-    int[] colors = bitmapToPixelArray(bitmap);
-
-    out.writeString(config.toString());
-    out.writeInt(width);
-    out.writeInt(height);
-    out.writeIntArray(colors);
+
+    out.writeInt(WRITE_ENCODING);
+
+    if (WRITE_ENCODING == ENCODING_UNCOMPRESSED) {
+      writeUncompressedBitmap(out, bitmap, config);
+    } else {
+      out.writeInt(config == null ? NULL : config.ordinal());
+      out.writeInt(bitmap.getDensity());
+      writeCompressedBitmap(out, bitmap);
+    }
+  }
+
+  private static void writeUncompressedBitmap(Parcel out, Bitmap bitmap, Bitmap.Config config) {
+    Bitmap readableBitmap =
+        (config == null || config == Bitmap.Config.HARDWARE)
+            ? bitmap.copy(Bitmap.Config.ARGB_8888, /* isMutable= */ false)
+            : bitmap;
+
+    // Hardware bitmaps are sent as HARDWARE so they are copied back to hardware once read. Others
+    // are sent with the config of the pixels actually written.
+    Bitmap.Config sentConfig =
+        config == Bitmap.Config.HARDWARE ? config : readableBitmap.getConfig();
+    out.writeInt(sentConfig.ordinal());
+    out.writeInt(bitmap.getDensity());
+    out.writeInt(readableBitmap.getWidth());
+    out.writeInt(readableBitmap.getHeight());
+    out.writeInt(readableBitmap.hasAlpha() ? 1 : 0);
+    out.writeInt(readableBitmap.isPremultiplied() ? 1 : 0);
+
+    // The pixels are copied into a reused buffer, and from there into the parcel
+    int byteCount = readableBitmap.getByteCount();
+    byte[] pixels = ScratchBuffers.get(byteCount);
+    readableBitmap.copyPixelsToBuffer(ByteBuffer.wrap(pixels, 0, byteCount));
+    out.writeByteArray(pixels, 0, byteCount);
+  }
+
+  private static void writeCompressedBitmap(Parcel out, Bitmap bitmap) {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    if (WRITE_ENCODING == ENCODING_PNG
+        || (WRITE_ENCODING == ENCODING_WEBP_LOSSLESS && VERSION.SDK_INT < VERSION_CODES.Q)) {
+      // Before Q, WEBP is always lossy, so lossless bitmaps are sent as PNG. The reader detects the
+      // format so does not need to know which was used.
+      bitmap.compress(Bitmap.CompressFormat.PNG, /* quality= */ 100, compressed);
+    } else if (VERSION.SDK_INT >= VERSION_CODES.R) {
+      bitmap.compress(
+          WRITE_ENCODING == ENCODING_WEBP_LOSSLESS
+              ? Bitmap.CompressFormat.WEBP_LOSSLESS
+              : Bitmap.CompressFormat.WEBP_LOSSY,
+          WRITE_ENCODING == ENCODING_WEBP_LOSSLESS ? 100 : WEBP_LOSSY_QUALITY,
+          compressed);
+    } else {
+      // From Q until WEBP_LOSSLESS was added in R, WEBP with a quality of 100 is lossless
+      bitmap.compress(
+          Bitmap.CompressFormat.WEBP,
+          WRITE_ENCODING == ENCODING_WEBP_LOSSLESS ? 100 : WEBP_LOSSY_QUALITY,
+          compressed);
+    }
+    out.writeByteArray(compressed.toByteArray());
   }
 
   @Override
@@ -92,10 +210,4 @@ public class ParcelableBitmap implements Parcelable {
           return new ParcelableBitmap[size];
         }
       };
-
-  private static int[] bitmapToPixelArray(Bitmap bitmap) {
-    int[] pixels = new int[bitmap.getHeight() * bitmap.getWidth()];
-    bitmap.getPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
-    return pixels;
-  }
 }
@@ -66,7 +66,7 @@ public class ParcelableCollection<E> implements Parcelable {
     }
 
     collection = new ArrayList<>();
-    type = (BundlerType) in.readParcelable(Bundler.class.getClassLoader());
+    type = in.readTypedObject(BundlerType.CREATOR);
     if (size > 0) {
       BundlerType valueType = type.typeArguments().get(0);
       for (int i = 0; i < size; i++) {
@@ -87,7 +87,7 @@ public class ParcelableCollection<E> implements Parcelable {
     }
 
     dest.writeInt(collection.size());
-    dest.writeParcelable(type, flags);
+    dest.writeTypedObject(type, flags);
     if (!collection.isEmpty()) {
       BundlerType valueType = type.typeArguments().get(0);
       for (E value : collection) {
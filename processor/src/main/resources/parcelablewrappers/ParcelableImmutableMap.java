@@ -70,7 +70,7 @@ public class ParcelableImmutableMap<E, F> implements Parcelable {
 
     ImmutableMap.Builder<E, F> mapBuilder = ImmutableMap.builder();
 
-    type = (BundlerType) in.readParcelable(Bundler.class.getClassLoader());
+    type = in.readTypedObject(BundlerType.CREATOR);
     if (size > 0) {
       BundlerType keyType = type.typeArguments().get(KEY_TYPE_INDEX);
       BundlerType valueType = type.typeArguments().get(VALUE_TYPE_INDEX);
@@ -96,7 +96,7 @@ public class ParcelableImmutableMap<E, F> implements Parcelable {
     }
 
     dest.writeInt(map.size());
-    dest.writeParcelable(type, flags);
+    dest.writeTypedObject(type, flags);
     if (!map.isEmpty()) {
       BundlerType keyType = type.typeArguments().get(0);
       BundlerType valueType = type.typeArguments().get(1);
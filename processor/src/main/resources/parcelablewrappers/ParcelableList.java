@@ -65,7 +65,7 @@ public class ParcelableList<E> implements Parcelable {
     }
 
     list = new ArrayList<>();
-    type = (BundlerType) in.readParcelable(Bundler.class.getClassLoader());
+    type = in.readTypedObject(BundlerType.CREATOR);
     if (size > 0) {
       BundlerType valueType = type.typeArguments().get(0);
       for (int i = 0; i < size; i++) {
@@ -86,7 +86,7 @@ public class ParcelableList<E> implements Parcelable {
     }
 
     dest.writeInt(list.size());
-    dest.writeParcelable(type, flags);
+    dest.writeTypedObject(type, flags);
     if (!list.isEmpty()) {
       BundlerType valueType = type.typeArguments().get(0);
 
@@ -64,7 +64,7 @@ public class ParcelableMap<E, F> implements Parcelable {
     }
 
     map = new HashMap<>();
-    type = (BundlerType) in.readParcelable(Bundler.class.getClassLoader());
+    type = in.readTypedObject(BundlerType.CREATOR);
     if (size > 0) {
       BundlerType keyType = type.typeArguments().get(0);
       BundlerType valueType = type.typeArguments().get(1);
@@ -88,7 +88,7 @@ public class ParcelableMap<E, F> implements Parcelable {
     }
 
     dest.writeInt(map.size());
-    dest.writeParcelable(type, flags);
+    dest.writeTypedObject(type, flags);
     if (!map.isEmpty()) {
       BundlerType keyType = type.typeArguments().get(0);
       BundlerType valueType = type.typeArguments().get(1);
@@ -69,7 +69,7 @@ public class ParcelableOptional<E> implements Parcelable {
     }
 
     boolean isPresent = presentValue == PRESENT;
-    type = (BundlerType) in.readParcelable(Bundler.class.getClassLoader());
+    type = in.readTypedObject(BundlerType.CREATOR);
     if (isPresent) {
       BundlerType valueType = type.typeArguments().get(0);
 
@@ -92,7 +92,7 @@ public class ParcelableOptional<E> implements Parcelable {
     }
 
     dest.writeInt(optional.isPresent() ? PRESENT : ABSENT);
-    dest.writeParcelable(type, flags);
+    dest.writeTypedObject(type, flags);
     if (optional.isPresent()) {
       BundlerType valueType = type.typeArguments().get(0);
       bundler.writeToParcel(dest, optional.get(), valueType, flags);
@@ -63,7 +63,7 @@ public class ParcelablePair<F, S> implements Parcelable {
       return;
     }
 
-    type = (BundlerType) in.readParcelable(Bundler.class.getClassLoader());
+    type = in.readTypedObject(BundlerType.CREATOR);
     BundlerType fType = type.typeArguments().get(0);
     BundlerType sType = type.typeArguments().get(1);
 
@@ -85,7 +85,7 @@ public class ParcelablePair<F, S> implements Parcelable {
     }
 
     dest.writeInt(NOT_NULL);
-    dest.writeParcelable(type, flags);
+    dest.writeTypedObject(type, flags);
 
     BundlerType fType = type.typeArguments().get(0);
     BundlerType sType = type.typeArguments().get(1);
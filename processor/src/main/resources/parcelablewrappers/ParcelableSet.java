@@ -64,7 +64,7 @@ public class ParcelableSet<E> implements Parcelable {
     }
 
     set = new HashSet<>();
-    type = (BundlerType) in.readParcelable(Bundler.class.getClassLoader());
+    type = in.readTypedObject(BundlerType.CREATOR);
     if (size > 0) {
       BundlerType valueType = type.typeArguments().get(0);
       for (int i = 0; i < size; i++) {
@@ -85,7 +85,7 @@ public class ParcelableSet<E> implements Parcelable {
     }
 
     dest.writeInt(set.size());
-    dest.writeParcelable(type, flags);
+    dest.writeTypedObject(type, flags);
     if (!set.isEmpty()) {
       BundlerType valueType = type.typeArguments().get(0);
 
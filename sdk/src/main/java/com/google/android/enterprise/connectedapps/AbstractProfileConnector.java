@@ -24,6 +24,7 @@ import com.google.android.enterprise.connectedapps.exceptions.UnavailableProfile
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -42,6 +43,12 @@ public abstract class AbstractProfileConnector
   private final String serviceClassName;
   private final @Nullable ProfileType primaryProfileType;
   private final AvailabilityRestrictions availabilityRestrictions;
+  private final int maxQueuedAsyncCalls;
+  private final QueueFullPolicy queueFullPolicy;
+  private final Executor asyncSendExecutor;
+  private final int maxParallelAsyncSends;
+  private final @Nullable Executor callbackExecutor;
+  private final Executor resultExecutor;
 
   public AbstractProfileConnector(
       Class<? extends ProfileConnector> profileConnectorClass, Builder builder) {
@@ -54,6 +61,26 @@ public abstract class AbstractProfileConnector
       scheduledExecutorService = builder.scheduledExecutorService;
     }
 
+    if (builder.asyncSendExecutor != null) {
+      asyncSendExecutor = builder.asyncSendExecutor;
+      maxParallelAsyncSends = builder.maxParallelAsyncSends;
+    } else if (builder.scheduledExecutorService == null) {
+      asyncSendExecutor = CrossProfileSender.createDefaultAsyncSendExecutor();
+      maxParallelAsyncSends = CrossProfileSender.DEFAULT_MAX_PARALLEL_ASYNC_SENDS;
+    } else {
+      // Keep everything on the executor which was passed in
+      asyncSendExecutor = scheduledExecutorService;
+      maxParallelAsyncSends = 1;
+    }
+    callbackExecutor = builder.callbackExecutor;
+    if (callbackExecutor != null) {
+      resultExecutor = callbackExecutor;
+    } else if (builder.scheduledExecutorService == null) {
+      resultExecutor = CrossProfileSender.createDefaultResultExecutor();
+    } else {
+      resultExecutor = scheduledExecutorService;
+    }
+
     if (builder.binder == null) {
       binder = new DefaultProfileBinder();
     } else {
@@ -68,6 +95,8 @@ public abstract class AbstractProfileConnector
     }
     serviceClassName = builder.serviceClassName;
     primaryProfileType = builder.primaryProfileType;
+    maxQueuedAsyncCalls = builder.maxQueuedAsyncCalls;
+    queueFullPolicy = builder.queueFullPolicy;
   }
 
   @Override
@@ -109,7 +138,13 @@ public abstract class AbstractProfileConnector
               /* connectionListener= */ this,
               /* availabilityListener= */ this,
               scheduledExecutorService,
-              availabilityRestrictions);
+              availabilityRestrictions,
+              maxQueuedAsyncCalls,
+              queueFullPolicy,
+              asyncSendExecutor,
+              maxParallelAsyncSends,
+              callbackExecutor,
+              resultExecutor);
       crossProfileSender.beginMonitoringAvailabilityChanges();
     }
     return crossProfileSender;
@@ -215,6 +250,11 @@ public abstract class AbstractProfileConnector
     @Nullable ConnectionBinder binder;
     @Nullable ProfileType primaryProfileType;
     @Nullable AvailabilityRestrictions availabilityRestrictions;
+    int maxQueuedAsyncCalls = Integer.MAX_VALUE;
+    QueueFullPolicy queueFullPolicy = QueueFullPolicy.REJECT_NEW_CALL;
+    @Nullable Executor asyncSendExecutor;
+    int maxParallelAsyncSends;
+    @Nullable Executor callbackExecutor;
     Context context;
     String serviceClassName;
 
@@ -247,5 +287,42 @@ public abstract class AbstractProfileConnector
       this.availabilityRestrictions = availabilityRestrictions;
       return this;
     }
+
+    public Builder setMaxQueuedAsyncCalls(
+        int maxQueuedAsyncCalls, QueueFullPolicy queueFullPolicy) {
+      if (queueFullPolicy == null) {
+        throw new NullPointerException();
+      }
+      if (maxQueuedAsyncCalls <= 0) {
+        throw new IllegalArgumentException("maxQueuedAsyncCalls must be positive");
+      }
+      this.maxQueuedAsyncCalls = maxQueuedAsyncCalls;
+      this.queueFullPolicy = queueFullPolicy;
+      return this;
+    }
+
+    /**
+     * Send asynchronous calls on {@code asyncSendExecutor}, with up to {@code
+     * maxParallelAsyncSends} at the same time.
+     *
+     * <p>Calls with the same priority are only guaranteed to be sent in the order they were made if
+     * {@code maxParallelAsyncSends} is 1.
+     */
+    public Builder setAsyncSendExecutor(Executor asyncSendExecutor, int maxParallelAsyncSends) {
+      if (asyncSendExecutor == null) {
+        throw new NullPointerException();
+      }
+      if (maxParallelAsyncSends <= 0) {
+        throw new IllegalArgumentException("maxParallelAsyncSends must be positive");
+      }
+      this.asyncSendExecutor = asyncSendExecutor;
+      this.maxParallelAsyncSends = maxParallelAsyncSends;
+      return this;
+    }
+
+    public Builder setCallbackExecutor(Executor callbackExecutor) {
+      this.callbackExecutor = callbackExecutor;
+      return this;
+    }
   }
 }
@@ -15,84 +15,518 @@
  */
 package com.google.android.enterprise.connectedapps;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.os.Looper;
 import android.os.UserHandle;
+import android.util.Log;
 import com.google.android.enterprise.connectedapps.annotations.AvailabilityRestrictions;
 import com.google.android.enterprise.connectedapps.exceptions.UnavailableProfileException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
-/** Standard implementation of {@link UserConnector}. */
+/**
+ * Standard implementation of {@link UserConnector}.
+ *
+ * <p>A {@link CrossProfileSender} is created for each user when it is first needed. All senders
+ * share a single {@link ScheduledExecutorService} and a single receiver for availability changes,
+ * so connecting to many users does not require a thread per user.
+ *
+ * <p>Senders which are not connected, have no calls in progress, and have no registered listeners
+ * are discarded after {@link #IDLE_CONNECTION_EVICTION_SECONDS} seconds without being used. Once
+ * every sender has been discarded, the availability receiver is unregistered.
+ */
 public abstract class AbstractUserConnector
     implements UserConnector, ConnectionListener, AvailabilityListener {
 
+  /** A call made to a single user as part of {@link #callEachUser(Collection, UserCall)}. */
+  public interface UserCall<R> {
+    R call(UserHandle userHandle) throws UnavailableProfileException;
+  }
+
+  private static final String LOG_TAG = "AbstractUserConnector";
+
+  static final long IDLE_CONNECTION_EVICTION_SECONDS = 60;
+
+  /**
+   * The maximum number of threads used by {@link #callEachUser(Collection, UserCall)} in addition
+   * to the calling thread.
+   */
+  static final int MAX_PARALLEL_USER_CALLS = 4;
+
+  private final ConcurrentMap<UserHandle, UserConnection> userConnections =
+      new ConcurrentHashMap<>();
+  private final Object evictionLock = new Object();
+  // Guarded by evictionLock
+  private boolean isMonitoringAvailabilityChanges = false;
+  @Nullable private ScheduledFuture<?> scheduledEviction;
+
+  private final Context context;
+  private final ScheduledExecutorService scheduledExecutorService;
+  private final ConnectionBinder binder;
+  private final String serviceClassName;
+  private final AvailabilityRestrictions availabilityRestrictions;
+  private final int maxQueuedAsyncCalls;
+  private final QueueFullPolicy queueFullPolicy;
+  private final Executor asyncSendExecutor;
+  private final int maxParallelAsyncSends;
+  @Nullable private final Executor callbackExecutor;
+  private final Executor resultExecutor;
+  private final Executor userCallExecutor =
+      CrossProfileSender.createIdleTimeoutExecutor(MAX_PARALLEL_USER_CALLS);
+
+  private final BroadcastReceiver userAvailabilityReceiver =
+      new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+          availabilityChanged();
+        }
+      };
+
   public AbstractUserConnector(Class<? extends UserConnector> userConnectorClass, Builder builder) {
     if (userConnectorClass == null || builder == null || builder.context == null) {
       throw new NullPointerException();
     }
+    if (builder.scheduledExecutorService == null) {
+      scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+    } else {
+      scheduledExecutorService = builder.scheduledExecutorService;
+    }
+
+    if (builder.asyncSendExecutor != null) {
+      asyncSendExecutor = builder.asyncSendExecutor;
+      maxParallelAsyncSends = builder.maxParallelAsyncSends;
+    } else if (builder.scheduledExecutorService == null) {
+      asyncSendExecutor = CrossProfileSender.createDefaultAsyncSendExecutor();
+      maxParallelAsyncSends = CrossProfileSender.DEFAULT_MAX_PARALLEL_ASYNC_SENDS;
+    } else {
+      // Keep everything on the executor which was passed in
+      asyncSendExecutor = scheduledExecutorService;
+      maxParallelAsyncSends = 1;
+    }
+    callbackExecutor = builder.callbackExecutor;
+    if (callbackExecutor != null) {
+      resultExecutor = callbackExecutor;
+    } else if (builder.scheduledExecutorService == null) {
+      resultExecutor = CrossProfileSender.createDefaultResultExecutor();
+    } else {
+      resultExecutor = scheduledExecutorService;
+    }
+
+    if (builder.binder == null) {
+      binder = new DefaultProfileBinder();
+    } else {
+      binder = builder.binder;
+    }
+
+    context = builder.context.getApplicationContext();
+
+    if (builder.availabilityRestrictions == null) {
+      availabilityRestrictions = AvailabilityRestrictions.DEFAULT;
+    } else {
+      availabilityRestrictions = builder.availabilityRestrictions;
+    }
+
+    if (builder.serviceClassName == null) {
+      throw new NullPointerException("serviceClassName must be specified");
+    }
+    serviceClassName = builder.serviceClassName;
+    maxQueuedAsyncCalls = builder.maxQueuedAsyncCalls;
+    queueFullPolicy = builder.queueFullPolicy;
+  }
+
+  /** The connection to a single user, and the listeners registered for that user. */
+  private final class UserConnection implements ConnectionListener, AvailabilityListener {
+    private final CrossProfileSender crossProfileSender;
+    private final Set<ConnectionListener> connectionListeners = new CopyOnWriteArraySet<>();
+    private final Set<AvailabilityListener> availabilityListeners = new CopyOnWriteArraySet<>();
+    private final AtomicBoolean recentlyUsed = new AtomicBoolean(true);
+
+    UserConnection(UserHandle userHandle) {
+      crossProfileSender =
+          new CrossProfileSender(
+              context,
+              serviceClassName,
+              new UserBinder(userHandle, binder),
+              /* connectionListener= */ this,
+              /* availabilityListener= */ this,
+              scheduledExecutorService,
+              availabilityRestrictions,
+              maxQueuedAsyncCalls,
+              queueFullPolicy,
+              asyncSendExecutor,
+              maxParallelAsyncSends,
+              callbackExecutor,
+              resultExecutor);
+    }
+
+    /**
+     * Return true if this connection has not been used since the last call, and is not needed.
+     */
+    boolean canBeEvicted() {
+      return !recentlyUsed.getAndSet(false)
+          && crossProfileSender.isIdle()
+          && connectionListeners.isEmpty()
+          && availabilityListeners.isEmpty();
+    }
+
+    @Override
+    public void connectionChanged() {
+      for (ConnectionListener listener : connectionListeners) {
+        listener.connectionChanged();
+      }
+    }
+
+    @Override
+    public void availabilityChanged() {
+      for (AvailabilityListener listener : availabilityListeners) {
+        listener.availabilityChanged();
+      }
+    }
+  }
+
+  private UserConnection userConnection(UserHandle userHandle) {
+    if (userHandle == null) {
+      throw new NullPointerException();
+    }
+    // recentlyUsed is set while the entry is locked, so an eviction cannot remove a connection
+    // between it being looked up and being marked as used
+    UserConnection userConnection =
+        userConnections.computeIfPresent(userHandle, AbstractUserConnector::markUsed);
+    if (userConnection != null) {
+      return userConnection;
+    }
+    userConnection =
+        userConnections.compute(
+            userHandle,
+            (handle, existing) ->
+                existing == null ? new UserConnection(handle) : markUsed(handle, existing));
+    beginMonitoringConnections();
+    return userConnection;
+  }
+
+  private static UserConnection markUsed(UserHandle userHandle, UserConnection userConnection) {
+    userConnection.recentlyUsed.set(true);
+    return userConnection;
+  }
+
+  /**
+   * Register for availability changes and schedule eviction, if not already done.
+   *
+   * <p>Both are undone by {@link #evictIdleConnections()} once every connection has been evicted.
+   */
+  private void beginMonitoringConnections() {
+    synchronized (evictionLock) {
+      if (!isMonitoringAvailabilityChanges) {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_USER_UNLOCKED);
+        filter.addAction(Intent.ACTION_USER_FOREGROUND);
+        filter.addAction(Intent.ACTION_USER_BACKGROUND);
+        filter.addAction(Intent.ACTION_MANAGED_PROFILE_UNLOCKED);
+        filter.addAction(Intent.ACTION_MANAGED_PROFILE_AVAILABLE);
+        filter.addAction(Intent.ACTION_MANAGED_PROFILE_UNAVAILABLE);
+        context.registerReceiver(userAvailabilityReceiver, filter);
+        isMonitoringAvailabilityChanges = true;
+      }
+      if (scheduledEviction == null) {
+        scheduledEviction =
+            scheduledExecutorService.schedule(
+                this::evictIdleConnections, IDLE_CONNECTION_EVICTION_SECONDS, TimeUnit.SECONDS);
+      }
+    }
   }
 
+  private void evictIdleConnections() {
+    for (UserHandle userHandle : userConnections.keySet()) {
+      userConnections.computeIfPresent(
+          userHandle,
+          (handle, userConnection) -> userConnection.canBeEvicted() ? null : userConnection);
+    }
+
+    synchronized (evictionLock) {
+      scheduledEviction = null;
+      // Connections are added before beginMonitoringConnections takes this lock, so if the map is
+      // empty here then any connection added later will register the receiver again
+      if (userConnections.isEmpty()) {
+        if (isMonitoringAvailabilityChanges) {
+          context.unregisterReceiver(userAvailabilityReceiver);
+          isMonitoringAvailabilityChanges = false;
+        }
+      } else {
+        beginMonitoringConnections();
+      }
+    }
+  }
+
+  /** Check the availability of every user which has a connection. */
   @Override
-  public void availabilityChanged() {}
+  public void availabilityChanged() {
+    for (UserConnection userConnection : userConnections.values()) {
+      userConnection.crossProfileSender.checkAvailability();
+    }
+  }
 
+  /**
+   * Connection changes are reported for each user to listeners registered with {@link
+   * #registerConnectionListener(UserHandle, ConnectionListener)}.
+   */
   @Override
   public void connectionChanged() {}
 
   @Override
-  public void startConnecting(UserHandle userHandle) {}
+  public void startConnecting(UserHandle userHandle) {
+    if (VERSION.SDK_INT < VERSION_CODES.O) {
+      return;
+    }
+    crossProfileSender(userHandle).startManuallyBinding();
+  }
+
+  /**
+   * Call {@link #startConnecting(UserHandle)} for each of {@code userHandles}.
+   *
+   * <p>Bindings are attempted concurrently.
+   */
+  public void startConnecting(Collection<UserHandle> userHandles) {
+    for (UserHandle userHandle : userHandles) {
+      startConnecting(userHandle);
+    }
+  }
 
   @Override
-  public void connect(UserHandle userHandle) throws UnavailableProfileException {}
+  public void connect(UserHandle userHandle) throws UnavailableProfileException {
+    if (VERSION.SDK_INT < VERSION_CODES.O) {
+      throw new UnavailableProfileException(
+          "Cross-user calls are not supported on this version of Android");
+    }
+    crossProfileSender(userHandle).manuallyBind();
+  }
+
+  /**
+   * Attempt to connect to each of {@code userHandles} and start manually managing those
+   * connections.
+   *
+   * <p>All bindings are started before blocking, so this takes about as long as the slowest
+   * single connection rather than the sum of them.
+   *
+   * <p>This must not be called from the main thread.
+   *
+   * @return the users which were connected. Users which could not be connected to are not
+   *     manually managed when this returns.
+   */
+  public Set<UserHandle> connect(Collection<UserHandle> userHandles) {
+    if (VERSION.SDK_INT < VERSION_CODES.O) {
+      return Collections.emptySet();
+    }
+    if (Looper.myLooper() == Looper.getMainLooper()) {
+      throw new IllegalStateException("connect() cannot be called from UI thread");
+    }
+
+    for (UserHandle userHandle : userHandles) {
+      crossProfileSender(userHandle).startManuallyBinding();
+    }
+
+    Set<UserHandle> connectedUsers = new HashSet<>();
+    for (UserHandle userHandle : userHandles) {
+      CrossProfileSender crossProfileSender = crossProfileSender(userHandle);
+      try {
+        crossProfileSender.manuallyBind();
+        connectedUsers.add(userHandle);
+      } catch (UnavailableProfileException e) {
+        Log.i(LOG_TAG, "Could not connect to user " + userHandle, e);
+        crossProfileSender.stopManualConnectionManagement();
+        crossProfileSender.unbind();
+      }
+    }
+    return connectedUsers;
+  }
 
   @Override
-  public void stopManualConnectionManagement(UserHandle userHandle) {}
+  public void stopManualConnectionManagement(UserHandle userHandle) {
+    if (VERSION.SDK_INT < VERSION_CODES.O) {
+      return;
+    }
+    crossProfileSender(userHandle).stopManualConnectionManagement();
+  }
+
+  /** Call {@link #stopManualConnectionManagement(UserHandle)} for each of {@code userHandles}. */
+  public void stopManualConnectionManagement(Collection<UserHandle> userHandles) {
+    for (UserHandle userHandle : userHandles) {
+      stopManualConnectionManagement(userHandle);
+    }
+  }
+
+  /**
+   * Make {@code call} for each of {@code userHandles} which is connected.
+   *
+   * <p>Calls to different users are made concurrently, one on the calling thread and the rest on up
+   * to {@link #MAX_PARALLEL_USER_CALLS} other threads, so this takes about as long as the slowest
+   * single call rather than the sum of them. This blocks until every call has completed.
+   *
+   * <p>Users which are not connected, or which disconnect during the call, are skipped. If a call
+   * throws a {@link RuntimeException}, it is rethrown once every call has completed.
+   *
+   * @return the result of the call for each user it succeeded for
+   */
+  public <R> Map<UserHandle, R> callEachUser(
+      Collection<UserHandle> userHandles, UserCall<R> call) {
+    List<UserHandle> connectedUsers = new ArrayList<>();
+    for (UserHandle userHandle : userHandles) {
+      if (isConnected(userHandle)) {
+        connectedUsers.add(userHandle);
+      }
+    }
+    if (connectedUsers.isEmpty()) {
+      return new HashMap<>();
+    }
+
+    Map<UserHandle, R> results = Collections.synchronizedMap(new HashMap<>());
+    AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    CountDownLatch remainingCalls = new CountDownLatch(connectedUsers.size() - 1);
+    for (UserHandle userHandle : connectedUsers.subList(1, connectedUsers.size())) {
+      userCallExecutor.execute(
+          () -> {
+            try {
+              callUser(userHandle, call, results, failure);
+            } finally {
+              remainingCalls.countDown();
+            }
+          });
+    }
+    callUser(connectedUsers.get(0), call, results, failure);
+
+    try {
+      remainingCalls.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      Log.w(LOG_TAG, "Interrupted while waiting for calls to complete", e);
+    }
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+    synchronized (results) {
+      return new HashMap<>(results);
+    }
+  }
+
+  private static <R> void callUser(
+      UserHandle userHandle,
+      UserCall<R> call,
+      Map<UserHandle, R> results,
+      AtomicReference<RuntimeException> failure) {
+    try {
+      results.put(userHandle, call.call(userHandle));
+    } catch (UnavailableProfileException e) {
+      Log.i(LOG_TAG, "User " + userHandle + " became unavailable during call", e);
+    } catch (RuntimeException e) {
+      failure.compareAndSet(null, e);
+    }
+  }
+
+  /** Return the users which are currently connected. */
+  public Set<UserHandle> connectedUsers() {
+    Set<UserHandle> connectedUsers = new HashSet<>();
+    for (Map.Entry<UserHandle, UserConnection> entry : userConnections.entrySet()) {
+      if (entry.getValue().crossProfileSender.isBound()) {
+        connectedUsers.add(entry.getKey());
+      }
+    }
+    return connectedUsers;
+  }
 
   @Override
   public CrossProfileSender crossProfileSender(UserHandle userHandle) {
-    return null;
+    if (VERSION.SDK_INT < VERSION_CODES.O) {
+      return null;
+    }
+    return userConnection(userHandle).crossProfileSender;
   }
 
   @Override
-  public void registerConnectionListener(UserHandle userHandle, ConnectionListener listener) {}
+  public void registerConnectionListener(UserHandle userHandle, ConnectionListener listener) {
+    userConnection(userHandle).connectionListeners.add(listener);
+  }
 
   @Override
-  public void unregisterConnectionListener(UserHandle userHandle, ConnectionListener listener) {}
+  public void unregisterConnectionListener(UserHandle userHandle, ConnectionListener listener) {
+    UserConnection userConnection = userConnections.get(userHandle);
+    if (userConnection != null) {
+      userConnection.connectionListeners.remove(listener);
+    }
+  }
 
   @Override
-  public void registerAvailabilityListener(UserHandle userHandle, AvailabilityListener listener) {}
+  public void registerAvailabilityListener(UserHandle userHandle, AvailabilityListener listener) {
+    userConnection(userHandle).availabilityListeners.add(listener);
+  }
 
   @Override
   public void unregisterAvailabilityListener(
-      UserHandle userHandle, AvailabilityListener listener) {}
+      UserHandle userHandle, AvailabilityListener listener) {
+    UserConnection userConnection = userConnections.get(userHandle);
+    if (userConnection != null) {
+      userConnection.availabilityListeners.remove(listener);
+    }
+  }
 
   @Override
   public boolean isAvailable(UserHandle userHandle) {
-    return false;
+    if (VERSION.SDK_INT < VERSION_CODES.O) {
+      return false;
+    }
+    return crossProfileSender(userHandle).isBindingPossible();
   }
 
   @Override
   public boolean isConnected(UserHandle userHandle) {
-    return false;
+    if (VERSION.SDK_INT < VERSION_CODES.O) {
+      return false;
+    }
+    UserConnection userConnection = userConnections.get(userHandle);
+    return userConnection != null && userConnection.crossProfileSender.isBound();
   }
 
   @Override
   public ConnectedAppsUtils utils(UserHandle userHandle) {
-    return null;
+    return new ConnectedAppsUtilsImpl(context);
   }
 
   @Override
   public Permissions permissions(UserHandle userHandle) {
-    return null;
+    return new PermissionsImpl(context, new UserBinder(userHandle, binder));
   }
 
   @Override
   public Context applicationContext(UserHandle userHandle) {
-    return null;
+    return context;
   }
 
   @Override
   public boolean isManuallyManagingConnection(UserHandle userHandle) {
-    return false;
+    UserConnection userConnection = userConnections.get(userHandle);
+    return userConnection != null
+        && userConnection.crossProfileSender.isManuallyManagingConnection();
   }
 
   /** A builder for an {@link AbstractUserConnector}. */
@@ -100,6 +534,11 @@ public abstract class AbstractUserConnector
     @Nullable ScheduledExecutorService scheduledExecutorService;
     @Nullable ConnectionBinder binder;
     @Nullable AvailabilityRestrictions availabilityRestrictions;
+    int maxQueuedAsyncCalls = Integer.MAX_VALUE;
+    QueueFullPolicy queueFullPolicy = QueueFullPolicy.REJECT_NEW_CALL;
+    @Nullable Executor asyncSendExecutor;
+    int maxParallelAsyncSends;
+    @Nullable Executor callbackExecutor;
     Context context;
     String serviceClassName;
 
@@ -113,6 +552,11 @@ public abstract class AbstractUserConnector
       return this;
     }
 
+    /**
+     * Specify the {@link ConnectionBinder} used to check for permission to bind.
+     *
+     * <p>Bindings are always made to the specific user being connected to.
+     */
     public Builder setBinder(ConnectionBinder binder) {
       this.binder = binder;
       return this;
@@ -127,5 +571,42 @@ public abstract class AbstractUserConnector
       this.availabilityRestrictions = availabilityRestrictions;
       return this;
     }
+
+    public Builder setMaxQueuedAsyncCalls(
+        int maxQueuedAsyncCalls, QueueFullPolicy queueFullPolicy) {
+      if (queueFullPolicy == null) {
+        throw new NullPointerException();
+      }
+      if (maxQueuedAsyncCalls <= 0) {
+        throw new IllegalArgumentException("maxQueuedAsyncCalls must be positive");
+      }
+      this.maxQueuedAsyncCalls = maxQueuedAsyncCalls;
+      this.queueFullPolicy = queueFullPolicy;
+      return this;
+    }
+
+    /**
+     * Send asynchronous calls on {@code asyncSendExecutor}, with up to {@code
+     * maxParallelAsyncSends} at the same time.
+     *
+     * <p>Calls with the same priority are only guaranteed to be sent in the order they were made if
+     * {@code maxParallelAsyncSends} is 1.
+     */
+    public Builder setAsyncSendExecutor(Executor asyncSendExecutor, int maxParallelAsyncSends) {
+      if (asyncSendExecutor == null) {
+        throw new NullPointerException();
+      }
+      if (maxParallelAsyncSends <= 0) {
+        throw new IllegalArgumentException("maxParallelAsyncSends must be positive");
+      }
+      this.asyncSendExecutor = asyncSendExecutor;
+      this.maxParallelAsyncSends = maxParallelAsyncSends;
+      return this;
+    }
+
+    public Builder setCallbackExecutor(Executor callbackExecutor) {
+      this.callbackExecutor = callbackExecutor;
+      return this;
+    }
   }
 }
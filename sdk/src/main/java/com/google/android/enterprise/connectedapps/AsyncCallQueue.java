@@ -0,0 +1,130 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps;
+
+import com.google.android.enterprise.connectedapps.annotations.CallPriority;
+import java.util.ArrayDeque;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A bounded queue with a FIFO lane for each {@link CallPriority}.
+ *
+ * <p>Elements are removed from the highest priority lane which is not empty.
+ */
+final class AsyncCallQueue<E> {
+
+  private static final int NUMBER_OF_LANES = 3;
+
+  private final ArrayDeque<E>[] lanes;
+  private final int maxSize;
+  private final QueueFullPolicy queueFullPolicy;
+  private int size = 0;
+
+  @SuppressWarnings("unchecked")
+  AsyncCallQueue(int maxSize, QueueFullPolicy queueFullPolicy) {
+    if (queueFullPolicy == null) {
+      throw new NullPointerException();
+    }
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be positive");
+    }
+    this.maxSize = maxSize;
+    this.queueFullPolicy = queueFullPolicy;
+    lanes = new ArrayDeque[NUMBER_OF_LANES];
+    for (int i = 0; i < lanes.length; i++) {
+      lanes[i] = new ArrayDeque<>();
+    }
+  }
+
+  /**
+   * Add {@code element} to the back of its lane.
+   *
+   * <p>If the queue is full, an element is removed according to the {@link QueueFullPolicy}.
+   *
+   * @return the element which was not queued, or {@code null} if there was space
+   */
+  @Nullable
+  synchronized E add(E element, CallPriority priority) {
+    int lane = laneIndex(priority);
+    if (size < maxSize) {
+      lanes[lane].addLast(element);
+      size++;
+      return null;
+    }
+
+    if (queueFullPolicy == QueueFullPolicy.SHED_LOWEST_PRIORITY_CALL) {
+      for (int i = lanes.length - 1; i > lane; i--) {
+        if (!lanes[i].isEmpty()) {
+          E shed = lanes[i].pollFirst();
+          lanes[lane].addLast(element);
+          return shed;
+        }
+      }
+    }
+    return element;
+  }
+
+  /**
+   * Return {@code element} to the front of its lane, regardless of the maximum size.
+   *
+   * <p>This is used when an element was removed but could not be processed.
+   */
+  synchronized void addFirst(E element, CallPriority priority) {
+    lanes[laneIndex(priority)].addFirst(element);
+    size++;
+  }
+
+  /** Remove the oldest element of the highest priority, or return {@code null} if empty. */
+  @Nullable
+  synchronized E poll() {
+    for (ArrayDeque<E> lane : lanes) {
+      E element = lane.pollFirst();
+      if (element != null) {
+        size--;
+        return element;
+      }
+    }
+    return null;
+  }
+
+  synchronized boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** The number of elements queued across all priorities. */
+  synchronized int size() {
+    return size;
+  }
+
+  /** The number of elements queued with the given priority. */
+  synchronized int size(CallPriority priority) {
+    return lanes[laneIndex(priority)].size();
+  }
+
+  /** Lanes are drained in order of their index. */
+  private static int laneIndex(CallPriority priority) {
+    switch (priority) {
+      case HIGH:
+        return 0;
+      case LOW:
+        return 2;
+      case DEFAULT:
+      case NORMAL:
+      default:
+        return 1;
+    }
+  }
+}
@@ -30,25 +30,43 @@ import android.os.Build.VERSION_CODES;
 import android.os.IBinder;
 import android.os.Looper;
 import android.os.Parcel;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.os.TransactionTooLargeException;
 import android.os.UserHandle;
 import android.os.UserManager;
 import android.util.Log;
 import com.google.android.enterprise.connectedapps.annotations.AvailabilityRestrictions;
+import com.google.android.enterprise.connectedapps.annotations.CallPriority;
 import com.google.android.enterprise.connectedapps.exceptions.MissingApiException;
 import com.google.android.enterprise.connectedapps.exceptions.ProfileRuntimeException;
 import com.google.android.enterprise.connectedapps.exceptions.UnavailableProfileException;
 import com.google.android.enterprise.connectedapps.internal.CrossProfileParcelCallSender;
+import com.google.android.enterprise.connectedapps.internal.DirectParcelCalls;
 import com.google.android.enterprise.connectedapps.internal.ParcelCallReceiver;
 import com.google.android.enterprise.connectedapps.internal.ParcelUtilities;
+import com.google.android.enterprise.connectedapps.internal.PayloadCompression;
+import com.google.android.enterprise.connectedapps.internal.TraceUtilities;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
@@ -61,14 +79,23 @@ public class CrossProfileSender {
     private final Parcel params;
     private final LocalCallback callback;
     private final long timeoutMillis;
+    private final CallPriority priority;
+    private final boolean retryOnReconnect;
+    // The number of times this call has been sent, only tracked if retryOnReconnect is true
+    private int attempts = 0;
+    // The time by which this call must complete, set when it is first sent if retryOnReconnect is
+    // true
+    private long deadlineMillis = NO_DEADLINE;
 
     CrossProfileCall(
         long crossProfileTypeIdentifier,
         int methodIdentifier,
         Parcel params,
         LocalCallback callback,
-        long timeoutMillis) {
-      if (params == null || callback == null) {
+        long timeoutMillis,
+        CallPriority priority,
+        boolean retryOnReconnect) {
+      if (params == null || callback == null || priority == null) {
         throw new NullPointerException();
       }
       this.crossProfileTypeIdentifier = crossProfileTypeIdentifier;
@@ -76,6 +103,8 @@ public class CrossProfileSender {
       this.params = params;
       this.callback = callback;
       this.timeoutMillis = timeoutMillis;
+      this.priority = priority;
+      this.retryOnReconnect = retryOnReconnect;
     }
 
     void recycle() {
@@ -95,44 +124,90 @@ public class CrossProfileSender {
           && methodIdentifier == that.methodIdentifier
           && params.equals(that.params)
           && callback.equals(that.callback)
-          && timeoutMillis == that.timeoutMillis;
+          && timeoutMillis == that.timeoutMillis
+          && priority == that.priority
+          && retryOnReconnect == that.retryOnReconnect;
     }
 
     @Override
     public int hashCode() {
       return Objects.hash(
-          crossProfileTypeIdentifier, methodIdentifier, params, callback, timeoutMillis);
+          crossProfileTypeIdentifier,
+          methodIdentifier,
+          params,
+          callback,
+          timeoutMillis,
+          priority,
+          retryOnReconnect);
     }
   }
 
   private static final class OngoingCrossProfileCall extends ICrossProfileCallback.Stub {
 
     private final CrossProfileSender sender;
+    private final long id;
     private final LocalCallback originalCallback;
     private final AtomicBoolean complete = new AtomicBoolean(false);
-    private ScheduledFuture<?> timeoutFuture;
+    private volatile TimeoutScheduler.Timeout timeout;
     private final long timeoutMillis;
     private final ParcelCallReceiver parcelCallReceiver = new ParcelCallReceiver();
+    // The call being made, kept so that it can be sent again, or null if it cannot be retried
+    @Nullable private final CrossProfileCall retryableCall;
 
     private OngoingCrossProfileCall(
-        CrossProfileSender sender, LocalCallback originalCallback, long timeoutMillis) {
+        CrossProfileSender sender,
+        long id,
+        LocalCallback originalCallback,
+        long timeoutMillis,
+        @Nullable CrossProfileCall retryableCall) {
       if (sender == null || originalCallback == null) {
         throw new NullPointerException();
       }
       this.sender = sender;
+      this.id = id;
       this.originalCallback = originalCallback;
       this.timeoutMillis = timeoutMillis;
+      this.retryableCall = retryableCall;
     }
 
-    void scheduleTimeout(ScheduledExecutorService timeoutExecutor) {
-      if (this.timeoutFuture != null) {
+    /**
+     * Stop waiting for a result without notifying the callback, so that the call can be sent again.
+     *
+     * <p>Returns false if the call has already completed.
+     */
+    boolean abandonForRetry() {
+      if (complete.getAndSet(true)) {
+        return false;
+      }
+      cancelTimeout();
+      return true;
+    }
+
+    private void releaseRetryableCall() {
+      if (retryableCall != null) {
+        retryableCall.recycle();
+      }
+    }
+
+    void scheduleTimeout(TimeoutScheduler timeoutScheduler) {
+      if (this.timeout != null) {
         throw new IllegalStateException("Each call can only have a single timeout scheduled.");
       }
       if (complete.get()) {
         return;
       }
-      this.timeoutFuture =
-          timeoutExecutor.schedule(this::onTimeout, timeoutMillis, TimeUnit.MILLISECONDS);
+      this.timeout = timeoutScheduler.schedule(this::onTimeout, timeoutMillis);
+      if (complete.get()) {
+        // The call completed while the timeout was being scheduled
+        timeout.cancel();
+      }
+    }
+
+    private void cancelTimeout() {
+      TimeoutScheduler.Timeout timeout = this.timeout;
+      if (timeout != null) {
+        timeout.cancel();
+      }
     }
 
     private void onTimeout() {
@@ -150,46 +225,74 @@ public class CrossProfileSender {
 
     @Override
     public void prepareResult(long callId, int blockId, int numBytes, byte[] params) {
-      parcelCallReceiver.prepareCall(callId, blockId, numBytes, params);
+      try {
+        parcelCallReceiver.prepareCall(callId, blockId, numBytes, params);
+      } catch (IllegalStateException e) {
+        Log.e(LOG_TAG, "Invalid block of result received", e);
+      }
     }
 
     @Override
     public void onResult(long callId, int blockId, int methodIdentifier, byte[] paramsBytes) {
-      if (complete.getAndSet(true)) {
+      Parcel parcel = getPreparedResult(callId, blockId, paramsBytes);
+      if (parcel == null) {
         return;
       }
-      if (timeoutFuture != null) {
-        timeoutFuture.cancel(/* mayInterruptIfRunning= */ true);
+      if (complete.getAndSet(true)) {
+        parcel.recycle();
+        return;
       }
+      cancelTimeout();
       sender.ongoingCallComplete(this);
 
-      Parcel parcel = parcelCallReceiver.getPreparedCall(callId, blockId, paramsBytes);
-
       originalCallback.onResult(methodIdentifier, parcel);
       parcel.recycle();
+      releaseRetryableCall();
 
       sender.maybeScheduleAutomaticDisconnection();
     }
 
     @Override
     public void onException(long callId, int blockId, byte[] paramsBytes) {
-      Parcel parcel = parcelCallReceiver.getPreparedCall(callId, blockId, paramsBytes);
+      Parcel parcel = getPreparedResult(callId, blockId, paramsBytes);
+      if (parcel == null) {
+        return;
+      }
 
       onException(parcel);
 
       parcel.recycle();
     }
 
+    /**
+     * Reassemble a result from the blocks received so far.
+     *
+     * <p>Results are received by oneway calls, so if any block is missing the sender cannot be
+     * told. Instead the call fails with an {@link UnavailableProfileException} and {@code null} is
+     * returned.
+     */
+    private @Nullable Parcel getPreparedResult(long callId, int blockId, byte[] paramsBytes) {
+      try {
+        return parcelCallReceiver.getPreparedCall(callId, blockId, paramsBytes);
+      } catch (IllegalStateException e) {
+        Parcel throwableParcel =
+            createThrowableParcel(
+                new UnavailableProfileException("Incomplete result received", e));
+        onException(throwableParcel);
+        throwableParcel.recycle();
+        return null;
+      }
+    }
+
     public void onException(Parcel exception) {
       if (complete.getAndSet(true)) {
         return;
       }
-      if (timeoutFuture != null) {
-        timeoutFuture.cancel(/* mayInterruptIfRunning= */ true);
-      }
+      cancelTimeout();
       sender.ongoingCallComplete(this);
 
       originalCallback.onException(exception);
+      releaseRetryableCall();
 
       sender.maybeScheduleAutomaticDisconnection();
     }
@@ -204,27 +307,126 @@ public class CrossProfileSender {
       }
       OngoingCrossProfileCall that = (OngoingCrossProfileCall) o;
       return sender.equals(that.sender)
-          && originalCallback.equals(that.originalCallback)
-          && complete.equals(that.complete);
+          && id == that.id
+          && originalCallback.equals(that.originalCallback);
     }
 
     @Override
     public int hashCode() {
-      return Objects.hash(sender, originalCallback, complete);
+      return Objects.hash(sender, id, originalCallback);
+    }
+  }
+
+  /**
+   * Wraps a {@link LocalCallback} in an async trace section which lasts from the call being queued
+   * until the result or exception is delivered.
+   */
+  private static final class TracedLocalCallback implements LocalCallback {
+
+    private final LocalCallback callback;
+    private final String sectionName;
+    private final int cookie;
+
+    private TracedLocalCallback(LocalCallback callback, String sectionName) {
+      if (callback == null || sectionName == null) {
+        throw new NullPointerException();
+      }
+      this.callback = callback;
+      this.sectionName = sectionName;
+      this.cookie = TraceUtilities.newCookie();
+      TraceUtilities.beginAsyncSection(sectionName, cookie);
+    }
+
+    @Override
+    public void onResult(int methodIdentifier, Parcel params) {
+      TraceUtilities.endAsyncSection(sectionName, cookie);
+      callback.onResult(methodIdentifier, params);
+    }
+
+    @Override
+    public void onException(Parcel exception) {
+      TraceUtilities.endAsyncSection(sectionName, cookie);
+      callback.onException(exception);
+    }
+  }
+
+  /**
+   * Wraps a {@link LocalCallback} so that results and exceptions are delivered on an {@link
+   * Executor}.
+   *
+   * <p>The {@link Parcel} passed to the wrapped callback is a copy, as the original is recycled as
+   * soon as the callback returns.
+   */
+  private static final class ExecutorLocalCallback implements LocalCallback {
+
+    private final LocalCallback callback;
+    private final Executor executor;
+
+    private ExecutorLocalCallback(LocalCallback callback, Executor executor) {
+      if (callback == null || executor == null) {
+        throw new NullPointerException();
+      }
+      this.callback = callback;
+      this.executor = executor;
+    }
+
+    @Override
+    public void onResult(int methodIdentifier, Parcel params) {
+      Parcel paramsCopy = copyRemaining(params);
+      executor.execute(
+          () -> {
+            callback.onResult(methodIdentifier, paramsCopy);
+            paramsCopy.recycle();
+          });
+    }
+
+    @Override
+    public void onException(Parcel exception) {
+      Parcel exceptionCopy = copyRemaining(exception);
+      executor.execute(
+          () -> {
+            callback.onException(exceptionCopy);
+            exceptionCopy.recycle();
+          });
+    }
+
+    private static Parcel copyRemaining(Parcel parcel) {
+      Parcel copy = Parcel.obtain();
+      copy.appendFrom(parcel, parcel.dataPosition(), parcel.dataAvail());
+      copy.setDataPosition(0);
+      return copy;
     }
   }
 
   private void ongoingCallComplete(OngoingCrossProfileCall call) {
-    ongoingCrossProfileCalls.removeFirstOccurrence(call);
+    ongoingCrossProfileCalls.remove(call.id);
   }
 
   public static final int MAX_BYTES_PER_BLOCK = 250000;
 
   private static final String LOG_TAG = "CrossProfileSender";
+  private static final int UNKNOWN_SUPPORTED_FEATURES = -1;
   private static final long INITIAL_BIND_RETRY_DELAY_MS = 500;
   private static final int DEFAULT_AUTOMATIC_DISCONNECTION_TIMEOUT_SECONDS = 30;
-
+  // Sending calls in parallel means that calls with the same priority are not always sent in the
+  // order they were made. Connectors created with a maximum of 1 keep that order.
+  static final int DEFAULT_MAX_PARALLEL_ASYNC_SENDS = 4;
+  private static final long NO_DEADLINE = -1;
+  private static final long NO_RETRY = -1;
+  static final int MAX_ASYNC_CALL_ATTEMPTS = 3;
+  static final long RETRY_BASE_DELAY_MILLIS = 100;
+  static final int DEFAULT_RESULT_THREADS = 4;
+  private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 30;
+
+  // Used for binding, connection state, and timeouts
   private final ScheduledExecutorService scheduledExecutorService;
+  private final Executor asyncSendExecutor;
+  private final int maxParallelAsyncSends;
+  private final AtomicInteger parallelAsyncSends = new AtomicInteger();
+  // Used for listeners, or null if listeners should be notified on the scheduledExecutorService
+  @Nullable private final Executor callbackExecutor;
+  // Used to deliver results, so that user code never runs on the binder thread which receives them
+  private final Executor resultExecutor;
   private final Context context;
   private final ComponentName bindToService;
   private boolean canUseReflectedApis;
@@ -232,6 +434,9 @@ public class CrossProfileSender {
   private AtomicBoolean isBinding = new AtomicBoolean(false);
   private final AtomicReference<ICrossProfileService> iCrossProfileService =
       new AtomicReference<>();
+  // The result of ICrossProfileService#getSupportedFeatures for the bound service, fetched when
+  // first needed
+  private volatile int serviceSupportedFeatures = UNKNOWN_SUPPORTED_FEATURES;
   private final ConnectionListener connectionListener;
   private final AvailabilityListener availabilityListener;
   private final ConnectionBinder binder;
@@ -239,9 +444,17 @@ public class CrossProfileSender {
   private final AvailabilityRestrictions availabilityRestrictions;
 
   private boolean isManuallyManagingConnection = false;
-  private ConcurrentLinkedDeque<OngoingCrossProfileCall> ongoingCrossProfileCalls =
-      new ConcurrentLinkedDeque<>();
-  private ConcurrentLinkedDeque<CrossProfileCall> asyncCallQueue = new ConcurrentLinkedDeque<>();
+  // Calls which have been sent and are waiting for a result, indexed by OngoingCrossProfileCall#id
+  private final ConcurrentMap<Long, OngoingCrossProfileCall> ongoingCrossProfileCalls =
+      new ConcurrentHashMap<>();
+  private final AtomicLong nextOngoingCallId = new AtomicLong();
+  private final TimeoutScheduler timeoutScheduler;
+  // Calls which lost their connection and are waiting to be queued again
+  private final AtomicInteger pendingAsyncCallRetries = new AtomicInteger();
+  // Calls which lost their connection, and whose retry delay starts once it is re-established.
+  // Each is also counted in pendingAsyncCallRetries
+  private final Queue<CrossProfileCall> callsAwaitingReconnection = new ConcurrentLinkedQueue<>();
+  private final AsyncCallQueue<CrossProfileCall> asyncCallQueue;
 
   private static final int NONE = 0;
   private static final int UNAVAILABLE = 1;
@@ -251,6 +464,12 @@ public class CrossProfileSender {
 
   private ScheduledFuture<?> scheduledTryBind;
 
+  @Nullable private volatile ServiceDeathRecipient serviceDeathRecipient;
+  // True if the service has died and the resulting onServiceDisconnected has not been received
+  private volatile boolean serviceDeathHandled = false;
+  private final AtomicInteger serviceDeathCount = new AtomicInteger();
+  private volatile long lastServiceDeathHandlingMillis = -1;
+
   private int lastReportedAvailabilityStatus = NONE;
   private int lastReportedConnectedStatus = NONE;
 
@@ -262,21 +481,62 @@ public class CrossProfileSender {
       AvailabilityListener availabilityListener,
       ScheduledExecutorService scheduledExecutorService,
       AvailabilityRestrictions availabilityRestrictions) {
+    this(
+        context,
+        connectedAppsServiceClassName,
+        binder,
+        connectionListener,
+        availabilityListener,
+        scheduledExecutorService,
+        availabilityRestrictions,
+        /* maxQueuedAsyncCalls= */ Integer.MAX_VALUE,
+        QueueFullPolicy.REJECT_NEW_CALL,
+        /* asyncSendExecutor= */ scheduledExecutorService,
+        /* maxParallelAsyncSends= */ 1,
+        /* callbackExecutor= */ null,
+        /* resultExecutor= */ scheduledExecutorService);
+  }
+
+  CrossProfileSender(
+      Context context,
+      String connectedAppsServiceClassName,
+      ConnectionBinder binder,
+      ConnectionListener connectionListener,
+      AvailabilityListener availabilityListener,
+      ScheduledExecutorService scheduledExecutorService,
+      AvailabilityRestrictions availabilityRestrictions,
+      int maxQueuedAsyncCalls,
+      QueueFullPolicy queueFullPolicy,
+      Executor asyncSendExecutor,
+      int maxParallelAsyncSends,
+      @Nullable Executor callbackExecutor,
+      Executor resultExecutor) {
     this.context = context.getApplicationContext();
     if (connectionListener == null
         || availabilityListener == null
         || availabilityRestrictions == null
         || binder == null
-        || scheduledExecutorService == null) {
+        || scheduledExecutorService == null
+        || asyncSendExecutor == null
+        || resultExecutor == null) {
       throw new NullPointerException();
     }
+    if (maxParallelAsyncSends <= 0) {
+      throw new IllegalArgumentException("maxParallelAsyncSends must be positive");
+    }
     this.binder = binder;
     this.connectionListener = connectionListener;
     this.availabilityListener = availabilityListener;
     bindToService = new ComponentName(context.getPackageName(), connectedAppsServiceClassName);
     canUseReflectedApis = ReflectionUtilities.canUseReflectedApis();
     this.scheduledExecutorService = scheduledExecutorService;
+    this.timeoutScheduler = new TimeoutScheduler(scheduledExecutorService);
+    this.asyncSendExecutor = asyncSendExecutor;
+    this.maxParallelAsyncSends = maxParallelAsyncSends;
+    this.callbackExecutor = callbackExecutor;
+    this.resultExecutor = resultExecutor;
     this.availabilityRestrictions = availabilityRestrictions;
+    asyncCallQueue = new AsyncCallQueue<>(maxQueuedAsyncCalls, queueFullPolicy);
   }
 
   private final BroadcastReceiver profileAvailabilityReceiver =
@@ -298,8 +558,12 @@ public class CrossProfileSender {
                   unbind();
                   return;
                 }
+                serviceSupportedFeatures = UNKNOWN_SUPPORTED_FEATURES;
+                serviceDeathHandled = false;
                 iCrossProfileService.set(ICrossProfileService.Stub.asInterface(service));
+                linkToServiceDeath(service);
 
+                scheduleCallsAwaitingReconnection();
                 tryMakeAsyncCalls();
                 checkConnected();
                 onBindingAttemptSucceeded();
@@ -311,11 +575,19 @@ public class CrossProfileSender {
         public void onServiceDisconnected(ComponentName className) {
           scheduledExecutorService.execute(
               () -> {
+                if (serviceDeathHandled) {
+                  // This disconnection has already been handled by the death recipient
+                  serviceDeathHandled = false;
+                  return;
+                }
+                unlinkFromServiceDeath();
                 Log.e(LOG_TAG, "Unexpected disconnection");
                 if (!asyncCallQueue.isEmpty() || !ongoingCrossProfileCalls.isEmpty()) {
                   Log.d(LOG_TAG, "Found in progress calls");
-                  throwExceptionForAsyncCalls(
-                      new UnavailableProfileException("Lost connection to other profile"));
+                  UnavailableProfileException exception =
+                      new UnavailableProfileException("Lost connection to other profile");
+                  failQueuedAsyncCallsWhichCannotBeRetried(exception);
+                  retryOrFailOngoingAsyncCalls(exception);
                   // These disconnections can be temporary - so to avoid an exception on an async
                   // call leading to bad user experience - we send the availability update again
                   // to prompt a retry/refresh
@@ -329,6 +601,78 @@ public class CrossProfileSender {
         }
       };
 
+  /**
+   * Notified when the process hosting the bound service dies.
+   *
+   * <p>This is usually delivered before {@link ServiceConnection#onServiceDisconnected(ComponentName)}
+   * as it does not depend on the main thread.
+   */
+  private final class ServiceDeathRecipient implements IBinder.DeathRecipient {
+    private final IBinder service;
+
+    private ServiceDeathRecipient(IBinder service) {
+      this.service = service;
+    }
+
+    @Override
+    public void binderDied() {
+      long diedAtMillis = SystemClock.elapsedRealtime();
+      scheduledExecutorService.execute(() -> onServiceDied(this, diedAtMillis));
+    }
+  }
+
+  private void linkToServiceDeath(@Nullable IBinder service) {
+    if (service == null) {
+      return;
+    }
+    ServiceDeathRecipient deathRecipient = new ServiceDeathRecipient(service);
+    serviceDeathRecipient = deathRecipient;
+    try {
+      service.linkToDeath(deathRecipient, /* flags= */ 0);
+    } catch (RemoteException e) {
+      // The service has already died
+      deathRecipient.binderDied();
+    }
+  }
+
+  private void unlinkFromServiceDeath() {
+    ServiceDeathRecipient deathRecipient = serviceDeathRecipient;
+    if (deathRecipient == null) {
+      return;
+    }
+    serviceDeathRecipient = null;
+    try {
+      deathRecipient.service.unlinkToDeath(deathRecipient, /* flags= */ 0);
+    } catch (NoSuchElementException e) {
+      // The service has already died
+    }
+  }
+
+  /**
+   * Fail calls which were sent to a service which has died, and start binding again.
+   *
+   * <p>Calls which have not been sent yet, and sent calls which can be retried, will be sent once
+   * the binding is re-established.
+   */
+  private void onServiceDied(ServiceDeathRecipient deathRecipient, long diedAtMillis) {
+    if (serviceDeathRecipient != deathRecipient) {
+      // This binding has already been replaced or unbound
+      return;
+    }
+    serviceDeathRecipient = null;
+    serviceDeathHandled = true;
+    Log.e(LOG_TAG, "Other profile's process died");
+
+    iCrossProfileService.set(null);
+    retryOrFailOngoingAsyncCalls(new UnavailableProfileException("Other profile's process died"));
+    checkConnected();
+    cancelAutomaticDisconnection();
+    startTryBinding();
+
+    lastServiceDeathHandlingMillis = SystemClock.elapsedRealtime() - diedAtMillis;
+    serviceDeathCount.incrementAndGet();
+  }
+
   private final Object automaticDisconnectionFutureLock = new Object();
 
   private void cancelAutomaticDisconnection() {
@@ -344,8 +688,7 @@ public class CrossProfileSender {
 
   private void maybeScheduleAutomaticDisconnection() {
     if (!isManuallyManagingConnection
-        && asyncCallQueue.isEmpty()
-        && ongoingCrossProfileCalls.isEmpty()
+        && !hasAsyncCalls()
         && isBound()
         && automaticDisconnectionFuture == null) {
       synchronized (automaticDisconnectionFutureLock) {
@@ -362,8 +705,7 @@ public class CrossProfileSender {
 
   private Void automaticallyDisconnect() {
     if (!isManuallyManagingConnection
-        && asyncCallQueue.isEmpty()
-        && ongoingCrossProfileCalls.isEmpty()
+        && !hasAsyncCalls()
         && isBound()) {
       unbind();
     }
@@ -512,6 +854,7 @@ public class CrossProfileSender {
     throwExceptionForAsyncCalls(new UnavailableProfileException("No profile available"));
     isBinding.set(false);
     if (isBound()) {
+      unlinkFromServiceDeath();
       context.unbindService(connection);
       iCrossProfileService.set(null);
       checkConnected();
@@ -614,7 +957,21 @@ public class CrossProfileSender {
    */
   public Parcel callWithExceptions(
       long crossProfileTypeIdentifier, int methodIdentifier, Parcel params) throws Throwable {
+    if (!TraceUtilities.isEnabled()) {
+      return callWithExceptionsInner(crossProfileTypeIdentifier, methodIdentifier, params);
+    }
+
+    TraceUtilities.beginSection(
+        "CrossProfileSender#call " + crossProfileTypeIdentifier + ":" + methodIdentifier);
+    try {
+      return callWithExceptionsInner(crossProfileTypeIdentifier, methodIdentifier, params);
+    } finally {
+      TraceUtilities.endSection();
+    }
+  }
 
+  private Parcel callWithExceptionsInner(
+      long crossProfileTypeIdentifier, int methodIdentifier, Parcel params) throws Throwable {
     if (!isBound()) {
       throw new UnavailableProfileException("Could not access other profile");
     }
@@ -624,12 +981,16 @@ public class CrossProfileSender {
           "Synchronous calls can only be used when manually connected");
     }
 
+    ICrossProfileService service = iCrossProfileService.get();
     CrossProfileParcelCallSender callSender =
         new CrossProfileParcelCallSender(
-            iCrossProfileService.get(),
+            service,
             crossProfileTypeIdentifier,
             methodIdentifier,
-            /* callback= */ null);
+            /* callback= */ null,
+            serviceSupportsCompression(service),
+            serviceSupportsDirectCalls(service),
+            serviceSupportsHeaderlessResponses(service));
     Parcel parcel = callSender.makeParcelCall(params); // Recycled by caller
     boolean hasError = parcel.readInt() == 1;
 
@@ -644,6 +1005,56 @@ public class CrossProfileSender {
     return parcel;
   }
 
+  /** Returns {@code true} if compression is enabled and {@code service} supports it. */
+  private boolean serviceSupportsCompression(ICrossProfileService service)
+      throws UnavailableProfileException {
+    return PayloadCompression.isEnabled()
+        && (serviceSupportedFeatures(service) & PayloadCompression.FEATURE_COMPRESSION) != 0;
+  }
+
+  /** Returns {@code true} if {@code service} accepts calls made using {@link DirectParcelCalls}. */
+  private boolean serviceSupportsDirectCalls(ICrossProfileService service)
+      throws UnavailableProfileException {
+    return (serviceSupportedFeatures(service) & DirectParcelCalls.FEATURE_DIRECT_PARCEL_CALLS) != 0;
+  }
+
+  /**
+   * Returns {@code true} if {@code service} returns responses to {@code
+   * ICrossProfileService#callWithCompression} without a status header, whether or not compression
+   * is enabled.
+   */
+  private boolean serviceSupportsHeaderlessResponses(ICrossProfileService service)
+      throws UnavailableProfileException {
+    return (serviceSupportedFeatures(service) & ParcelCallReceiver.FEATURE_HEADERLESS_RESPONSES)
+        != 0;
+  }
+
+  /**
+   * Returns the optional features supported by {@code service}.
+   *
+   * <p>The first time this is called for a connection it will make a synchronous call to {@code
+   * service} to find which features it supports.
+   *
+   * @throws UnavailableProfileException if {@code service} could not be reached
+   */
+  private int serviceSupportedFeatures(ICrossProfileService service)
+      throws UnavailableProfileException {
+    int supportedFeatures = serviceSupportedFeatures;
+    if (supportedFeatures == UNKNOWN_SUPPORTED_FEATURES) {
+      try {
+        // Services generated by older versions of the SDK will return 0
+        supportedFeatures = service.getSupportedFeatures();
+      } catch (TransactionTooLargeException e) {
+        // This is temporary, so use no optional features for this call and ask again next time
+        return 0;
+      } catch (RemoteException e) {
+        throw new UnavailableProfileException("Could not access other profile", e);
+      }
+      serviceSupportedFeatures = supportedFeatures;
+    }
+    return supportedFeatures;
+  }
+
   /**
    * Make an asynchronous cross-profile call.
    *
@@ -655,12 +1066,95 @@ public class CrossProfileSender {
       Parcel params,
       LocalCallback callback,
       long timeoutMillis) {
+    callAsync(
+        crossProfileTypeIdentifier,
+        methodIdentifier,
+        params,
+        callback,
+        timeoutMillis,
+        CallPriority.NORMAL);
+  }
+
+  /**
+   * Make an asynchronous cross-profile call.
+   *
+   * <p>Calls which are queued waiting for a connection are sent in order of {@code priority}. If
+   * too many calls are queued, either this call or a lower priority call will fail with an {@link
+   * UnavailableProfileException}.
+   *
+   * <p>Calls with the same priority are sent in the order they were made, but if more than one call
+   * may be sent at a time, they may be received in a different order.
+   */
+  public void callAsync(
+      long crossProfileTypeIdentifier,
+      int methodIdentifier,
+      Parcel params,
+      LocalCallback callback,
+      long timeoutMillis,
+      CallPriority priority) {
+    callAsync(
+        crossProfileTypeIdentifier,
+        methodIdentifier,
+        params,
+        callback,
+        timeoutMillis,
+        priority,
+        /* retryOnReconnect= */ false);
+  }
+
+  /**
+   * Make an asynchronous cross-profile call.
+   *
+   * <p>If {@code retryOnReconnect} is true, the call must be safe to make more than once. If the
+   * connection is lost after the call is sent it will be sent again once reconnected, up to {@link
+   * #MAX_ASYNC_CALL_ATTEMPTS} times and only within {@code timeoutMillis} of it first being sent.
+   * The callback receives exactly one result or exception.
+   *
+   * <p>If sending fails while the connection stays up, a call with {@code retryOnReconnect} is sent
+   * again after a short delay on the same terms, and any other call fails with an {@link
+   * UnavailableProfileException}.
+   */
+  public void callAsync(
+      long crossProfileTypeIdentifier,
+      int methodIdentifier,
+      Parcel params,
+      LocalCallback callback,
+      long timeoutMillis,
+      CallPriority priority,
+      boolean retryOnReconnect) {
 
     cancelAutomaticDisconnection();
 
-    asyncCallQueue.add(
+    if (TraceUtilities.isEnabled()) {
+      callback =
+          new TracedLocalCallback(
+              callback,
+              "CrossProfileSender#callAsync " + crossProfileTypeIdentifier + ":" + methodIdentifier);
+    }
+    // Results are received by a oneway binder call, so the binder thread only reassembles them and
+    // hands them over
+    callback = new ExecutorLocalCallback(callback, resultExecutor);
+
+    enqueueAsyncCall(
         new CrossProfileCall(
-            crossProfileTypeIdentifier, methodIdentifier, params, callback, timeoutMillis));
+            crossProfileTypeIdentifier,
+            methodIdentifier,
+            params,
+            callback,
+            timeoutMillis,
+            priority,
+            retryOnReconnect));
+  }
+
+  private void enqueueAsyncCall(CrossProfileCall call) {
+    CrossProfileCall rejectedCall = asyncCallQueue.add(call, call.priority);
+    if (rejectedCall != null) {
+      Parcel throwableParcel =
+          createThrowableParcel(new UnavailableProfileException("Too many calls queued"));
+      rejectedCall.callback.onException(throwableParcel);
+      throwableParcel.recycle();
+      rejectedCall.recycle();
+    }
 
     tryMakeAsyncCalls();
     if (isManuallyManagingConnection) {
@@ -676,7 +1170,7 @@ public class CrossProfileSender {
     Parcel throwableParcel = createThrowableParcel(throwable);
 
     while (true) {
-      CrossProfileCall call = asyncCallQueue.pollFirst();
+      CrossProfileCall call = asyncCallQueue.poll();
       if (call == null) {
         break;
       }
@@ -687,62 +1181,323 @@ public class CrossProfileSender {
     }
 
     while (true) {
-      OngoingCrossProfileCall call = ongoingCrossProfileCalls.pollFirst();
+      CrossProfileCall call = callsAwaitingReconnection.poll();
       if (call == null) {
         break;
       }
+      pendingAsyncCallRetries.decrementAndGet();
 
-      call.onException(throwableParcel);
+      call.callback.onException(throwableParcel);
       throwableParcel.setDataPosition(0);
+      call.recycle();
     }
 
+    failOngoingAsyncCalls(throwableParcel);
+
     throwableParcel.recycle();
   }
 
-  private void tryMakeAsyncCalls() {
-    if (!isBound()) {
-      return;
+  /**
+   * Fail queued async calls after the connection has been lost, except for calls which can be
+   * retried, which stay queued.
+   */
+  private void failQueuedAsyncCallsWhichCannotBeRetried(Throwable throwable) {
+    List<CrossProfileCall> queuedCalls = new ArrayList<>();
+    while (true) {
+      CrossProfileCall call = asyncCallQueue.poll();
+      if (call == null) {
+        break;
+      }
+      queuedCalls.add(call);
+    }
+
+    Parcel throwableParcel = createThrowableParcel(throwable);
+    for (CrossProfileCall call : queuedCalls) {
+      if (call.retryOnReconnect && asyncCallQueue.add(call, call.priority) == null) {
+        continue;
+      }
+      call.callback.onException(throwableParcel);
+      throwableParcel.setDataPosition(0);
+      call.recycle();
+    }
+    throwableParcel.recycle();
+  }
+
+  /**
+   * Fail ongoing async calls after the connection has been lost, except for calls which can be
+   * retried, which are queued again after a random delay once the connection is re-established.
+   */
+  private void retryOrFailOngoingAsyncCalls(Throwable throwable) {
+    Parcel throwableParcel = createThrowableParcel(throwable);
+
+    Iterator<OngoingCrossProfileCall> ongoingCalls = ongoingCrossProfileCalls.values().iterator();
+    while (ongoingCalls.hasNext()) {
+      OngoingCrossProfileCall ongoingCall = ongoingCalls.next();
+      ongoingCalls.remove();
+
+      CrossProfileCall call = ongoingCall.retryableCall;
+      if (call != null && canRetry(call) && ongoingCall.abandonForRetry()) {
+        // Rebinding takes longer than any retry delay, so if the delay started now every retry
+        // would be sent at once when the connection is re-established
+        pendingAsyncCallRetries.incrementAndGet();
+        callsAwaitingReconnection.add(call);
+        continue;
+      }
+
+      ongoingCall.onException(throwableParcel);
+      throwableParcel.setDataPosition(0);
+    }
+
+    throwableParcel.recycle();
+  }
+
+  /**
+   * Schedule the retry of each call which lost its connection, now that the connection has been
+   * re-established, or fail it if it can no longer complete before its deadline.
+   */
+  private void scheduleCallsAwaitingReconnection() {
+    while (true) {
+      CrossProfileCall call = callsAwaitingReconnection.poll();
+      if (call == null) {
+        return;
+      }
+      long retryDelayMillis = retryDelayMillis(call);
+      if (retryDelayMillis == NO_RETRY) {
+        failTimedOutCall(call);
+      } else {
+        scheduleRetry(call, retryDelayMillis);
+      }
+      // Decremented after the retry is counted so that the sender never briefly appears idle
+      pendingAsyncCallRetries.decrementAndGet();
     }
+  }
+
+  private boolean canRetry(CrossProfileCall call) {
+    return call.attempts < MAX_ASYNC_CALL_ATTEMPTS
+        && SystemClock.elapsedRealtime() < call.deadlineMillis;
+  }
+
+  private static void failTimedOutCall(CrossProfileCall call) {
+    Parcel throwableParcel =
+        createThrowableParcel(
+            new UnavailableProfileException(
+                "The call timed out after " + call.timeoutMillis + " milliseconds"));
+    call.callback.onException(throwableParcel);
+    throwableParcel.recycle();
+    call.recycle();
+  }
+
+  /**
+   * Returns how long to wait before queueing {@code call} again, or {@link #NO_RETRY} if it has
+   * used all of its attempts or would pass its deadline.
+   *
+   * <p>The delay is random, up to a limit which doubles with each attempt, so that calls which lost
+   * their connection at the same time are not all sent at once.
+   */
+  private long retryDelayMillis(CrossProfileCall call) {
+    if (call.attempts >= MAX_ASYNC_CALL_ATTEMPTS) {
+      return NO_RETRY;
+    }
+    long maxDelayMillis = RETRY_BASE_DELAY_MILLIS << (call.attempts - 1);
+    long retryDelayMillis = (long) (ThreadLocalRandom.current().nextDouble() * maxDelayMillis);
+    if (SystemClock.elapsedRealtime() + retryDelayMillis >= call.deadlineMillis) {
+      return NO_RETRY;
+    }
+    return retryDelayMillis;
+  }
 
-    scheduledExecutorService.execute(this::drainAsyncQueue);
+  private boolean isConnectionLost(@Nullable ICrossProfileService service) {
+    return service == null
+        || iCrossProfileService.get() != service
+        || !service.asBinder().isBinderAlive();
+  }
+
+  /**
+   * Retry or fail an async call which could not be sent even though the connection has not been
+   * lost, for example because of a {@link android.os.TransactionTooLargeException}.
+   */
+  private void retryOrFailUnsentAsyncCall(CrossProfileCall call, Throwable throwable) {
+    if (call.retryOnReconnect) {
+      long retryDelayMillis = retryDelayMillis(call);
+      if (retryDelayMillis != NO_RETRY) {
+        scheduleRetry(call, retryDelayMillis);
+        return;
+      }
+    }
+
+    Parcel throwableParcel = createThrowableParcel(throwable);
+    call.callback.onException(throwableParcel);
+    throwableParcel.recycle();
+    call.recycle();
+  }
+
+  private void scheduleRetry(CrossProfileCall call, long retryDelayMillis) {
+    pendingAsyncCallRetries.incrementAndGet();
+    scheduledExecutorService.schedule(
+        () -> {
+          pendingAsyncCallRetries.decrementAndGet();
+          enqueueAsyncCall(call);
+        },
+        retryDelayMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  private boolean hasAsyncCalls() {
+    return !asyncCallQueue.isEmpty()
+        || !ongoingCrossProfileCalls.isEmpty()
+        || pendingAsyncCallRetries.get() > 0;
+  }
+
+  private void failOngoingAsyncCalls(Parcel throwableParcel) {
+    Iterator<OngoingCrossProfileCall> ongoingCalls = ongoingCrossProfileCalls.values().iterator();
+    while (ongoingCalls.hasNext()) {
+      OngoingCrossProfileCall call = ongoingCalls.next();
+      ongoingCalls.remove();
+
+      call.onException(throwableParcel);
+      throwableParcel.setDataPosition(0);
+    }
+  }
+
+  /**
+   * Start draining the async call queue on the async send executor, using up to {@link
+   * #maxParallelAsyncSends} tasks and no more tasks than there are queued calls.
+   */
+  private void tryMakeAsyncCalls() {
+    // Stops once the binder has died, as calls requeued because the connection was lost would
+    // otherwise be sent again straight away, before the death is handled
+    while (!isConnectionLost(iCrossProfileService.get())) {
+      int currentParallelAsyncSends = parallelAsyncSends.get();
+      if (currentParallelAsyncSends >= maxParallelAsyncSends
+          || currentParallelAsyncSends >= asyncCallQueue.size()) {
+        return;
+      }
+      if (parallelAsyncSends.compareAndSet(
+          currentParallelAsyncSends, currentParallelAsyncSends + 1)) {
+        asyncSendExecutor.execute(this::drainAsyncQueue);
+      }
+    }
   }
 
   private void drainAsyncQueue() {
+    boolean drained = false;
+    try {
+      drained = sendQueuedAsyncCalls();
+    } finally {
+      parallelAsyncSends.decrementAndGet();
+    }
+    if (drained) {
+      // Calls may have been queued after the queue was found to be empty but before this task
+      // stopped counting towards maxParallelAsyncSends
+      tryMakeAsyncCalls();
+    }
+  }
+
+  /**
+   * Send calls until the queue is empty.
+   *
+   * <p>Returns false if sending stopped early because the other profile became unavailable.
+   */
+  private boolean sendQueuedAsyncCalls() {
     while (true) {
-      CrossProfileCall call = asyncCallQueue.pollFirst();
+      CrossProfileCall call = asyncCallQueue.poll();
       if (call == null) {
-        break;
+        return true;
+      }
+      long attemptTimeoutMillis = call.timeoutMillis;
+      boolean isFirstAttempt = call.deadlineMillis == NO_DEADLINE;
+      if (call.retryOnReconnect) {
+        if (isFirstAttempt) {
+          call.deadlineMillis = SystemClock.elapsedRealtime() + call.timeoutMillis;
+        } else {
+          attemptTimeoutMillis = call.deadlineMillis - SystemClock.elapsedRealtime();
+          if (attemptTimeoutMillis <= 0) {
+            // The retry waited past the deadline, so it could only time out once sent
+            failTimedOutCall(call);
+            continue;
+          }
+        }
+        call.attempts++;
       }
       OngoingCrossProfileCall ongoingCall =
-          new OngoingCrossProfileCall(this, call.callback, call.timeoutMillis);
-      ongoingCrossProfileCalls.add(ongoingCall);
-
+          new OngoingCrossProfileCall(
+              this,
+              nextOngoingCallId.getAndIncrement(),
+              call.callback,
+              attemptTimeoutMillis,
+              call.retryOnReconnect ? call : null);
+      ongoingCrossProfileCalls.put(ongoingCall.id, ongoingCall);
+
+      // Read once so that tracing being enabled during the send cannot end a section never begun
+      boolean tracing = TraceUtilities.isEnabled();
+      if (tracing) {
+        TraceUtilities.beginSection(
+            "CrossProfileSender#sendAsync "
+                + call.crossProfileTypeIdentifier
+                + ":"
+                + call.methodIdentifier);
+      }
+      ICrossProfileService service = iCrossProfileService.get();
       try {
         CrossProfileParcelCallSender callSender =
             new CrossProfileParcelCallSender(
-                iCrossProfileService.get(),
+                service,
                 call.crossProfileTypeIdentifier,
                 call.methodIdentifier,
-                ongoingCall);
+                ongoingCall,
+                serviceSupportsCompression(service),
+                serviceSupportsDirectCalls(service),
+                serviceSupportsHeaderlessResponses(service));
         Parcel p = callSender.makeParcelCall(call.params);
 
         boolean hasError = p.readInt() == 1;
-        call.recycle();
+        if (!call.retryOnReconnect) {
+          // Retryable calls are recycled once they complete
+          call.recycle();
+        }
 
         if (hasError) {
           RuntimeException exception =
               (RuntimeException) ParcelUtilities.readThrowableFromParcel(p);
           p.recycle();
-          ongoingCrossProfileCalls.remove(ongoingCall);
+          ongoingCrossProfileCalls.remove(ongoingCall.id);
+          if (call.retryOnReconnect) {
+            call.recycle();
+          }
           throw new ProfileRuntimeException(exception);
         }
 
         p.recycle();
-        ongoingCall.scheduleTimeout(scheduledExecutorService);
+        ongoingCall.scheduleTimeout(timeoutScheduler);
       } catch (UnavailableProfileException e) {
-        ongoingCrossProfileCalls.remove(ongoingCall);
-        asyncCallQueue.add(call);
-        return;
+        if (ongoingCrossProfileCalls.remove(ongoingCall.id) == null) {
+          // The connection was lost during the send, and the call was already retried or failed
+          // along with the other ongoing calls
+          if (!call.retryOnReconnect) {
+            call.recycle();
+          }
+          return false;
+        }
+        if (isConnectionLost(service)) {
+          // The call never reached the other profile, so it does not use up an attempt, and its
+          // deadline starts again when it is next sent
+          if (call.retryOnReconnect) {
+            call.attempts--;
+            if (isFirstAttempt) {
+              call.deadlineMillis = NO_DEADLINE;
+            }
+          }
+          // The call will be sent again once the connection is re-established
+          asyncCallQueue.addFirst(call, call.priority);
+          return false;
+        }
+        // Only this transaction failed, so nothing would cause the call to be sent again
+        retryOrFailUnsentAsyncCall(
+            call, new UnavailableProfileException("Could not send call to other profile"));
+      } finally {
+        if (tracing) {
+          TraceUtilities.endSection();
+        }
       }
     }
   }
@@ -756,24 +1511,91 @@ public class CrossProfileSender {
   }
 
   void updateAvailability() {
-    scheduledExecutorService.execute(availabilityListener::availabilityChanged);
+    listenerExecutor().execute(availabilityListener::availabilityChanged);
     lastReportedAvailabilityStatus = isBindingPossible() ? AVAILABLE : UNAVAILABLE;
   }
 
   void checkConnected() {
     if (isBound() && lastReportedConnectedStatus != CONNECTED) {
-      scheduledExecutorService.execute(connectionListener::connectionChanged);
+      listenerExecutor().execute(connectionListener::connectionChanged);
       lastReportedConnectedStatus = CONNECTED;
     } else if (!isBound() && lastReportedConnectedStatus != DISCONNECTED) {
-      scheduledExecutorService.execute(connectionListener::connectionChanged);
+      listenerExecutor().execute(connectionListener::connectionChanged);
       lastReportedConnectedStatus = DISCONNECTED;
     }
   }
 
+  private Executor listenerExecutor() {
+    return callbackExecutor == null ? scheduledExecutorService : callbackExecutor;
+  }
+
   boolean isManuallyManagingConnection() {
     return isManuallyManagingConnection;
   }
 
+  /**
+   * Create the {@link Executor} used for sending asynchronous calls when none is specified.
+   *
+   * <p>Threads are only kept alive while calls are being sent.
+   */
+  static Executor createDefaultAsyncSendExecutor() {
+    return createIdleTimeoutExecutor(DEFAULT_MAX_PARALLEL_ASYNC_SENDS);
+  }
+
+  /**
+   * Create the {@link Executor} used for delivering results of asynchronous calls when neither a
+   * callback executor nor a {@link ScheduledExecutorService} is specified.
+   *
+   * <p>Threads are only kept alive while results are being delivered.
+   */
+  static Executor createDefaultResultExecutor() {
+    return createIdleTimeoutExecutor(DEFAULT_RESULT_THREADS);
+  }
+
+  /** Create an {@link Executor} using up to {@code threads} threads, which time out when idle. */
+  static Executor createIdleTimeoutExecutor(int threads) {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            IDLE_THREAD_KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /** Return the number of times the process hosting the bound service has died. */
+  public int getServiceDeathCount() {
+    return serviceDeathCount.get();
+  }
+
+  /**
+   * Return the number of milliseconds between the most recent death of the process hosting the
+   * bound service being detected, and its ongoing calls being failed and binding being restarted.
+   *
+   * <p>Returns -1 if the service has not died.
+   */
+  public long getLastServiceDeathHandlingMillis() {
+    return lastServiceDeathHandlingMillis;
+  }
+
+  /** Return the number of asynchronous calls with {@code priority} waiting for a connection. */
+  public int getQueuedAsyncCallCount(CallPriority priority) {
+    return asyncCallQueue.size(priority);
+  }
+
+  /**
+   * Return true if this sender is not connected, is not trying to connect, and has no calls in
+   * progress.
+   */
+  boolean isIdle() {
+    return !isManuallyManagingConnection
+        && !isBinding.get()
+        && !isBound()
+        && !hasAsyncCalls();
+  }
+
   /**
    * Create a {@link Parcel} containing a {@link Throwable}.
    *
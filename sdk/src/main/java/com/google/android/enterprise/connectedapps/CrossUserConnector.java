@@ -19,6 +19,7 @@ import android.content.Context;
 import com.google.android.enterprise.connectedapps.annotations.AvailabilityRestrictions;
 import com.google.android.enterprise.connectedapps.annotations.CrossUser;
 import com.google.android.enterprise.connectedapps.annotations.CustomUserConnector;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
@@ -41,6 +42,10 @@ public interface CrossUserConnector extends UserConnector {
     /**
      * Use an alternative {@link ScheduledExecutorService}.
      *
+     * <p>This is used for binding, tracking the connection state, and timeouts. If no executor is
+     * set using {@link #setAsyncSendExecutor(Executor, int)}, it is also used to send asynchronous
+     * calls one at a time.
+     *
      * <p>Defaults to {@link Executors#newSingleThreadScheduledExecutor()}.
      */
     public Builder setScheduledExecutorService(ScheduledExecutorService scheduledExecutorService) {
@@ -49,7 +54,9 @@ public interface CrossUserConnector extends UserConnector {
     }
 
     /**
-     * Specify an alternative {@link ConnectionBinder} for managing the connection.
+     * Specify an alternative {@link ConnectionBinder} for checking permission to bind.
+     *
+     * <p>Bindings are always made to the specific user being connected to.
      *
      * <p>Defaults to {@link DefaultProfileBinder}.
      */
@@ -69,6 +76,51 @@ public interface CrossUserConnector extends UserConnector {
       return this;
     }
 
+    /**
+     * Limit the number of asynchronous calls which can be queued while waiting for a connection.
+     *
+     * <p>When the limit is reached, calls are failed according to {@code queueFullPolicy}.
+     *
+     * <p>Defaults to no limit.
+     */
+    public Builder setMaxQueuedAsyncCalls(
+        int maxQueuedAsyncCalls, QueueFullPolicy queueFullPolicy) {
+      implBuilder.setMaxQueuedAsyncCalls(maxQueuedAsyncCalls, queueFullPolicy);
+      return this;
+    }
+
+    /**
+     * Use an alternative {@link Executor} for sending asynchronous calls.
+     *
+     * <p>Up to {@code maxParallelAsyncSends} calls will be sent at the same time, so one slow call
+     * does not delay the others. Calls are taken from the queue in order of priority, but when more
+     * than one is sent at a time, calls with the same priority may be received in a different order
+     * from the one in which they were made. Set {@code maxParallelAsyncSends} to 1 to keep them in
+     * order.
+     *
+     * <p>Defaults to a pool of 4 threads, which does not keep calls in order, or to sending one
+     * call at a time on the executor passed to {@link
+     * #setScheduledExecutorService(ScheduledExecutorService)} if one was set.
+     */
+    public Builder setAsyncSendExecutor(Executor asyncSendExecutor, int maxParallelAsyncSends) {
+      implBuilder.setAsyncSendExecutor(asyncSendExecutor, maxParallelAsyncSends);
+      return this;
+    }
+
+    /**
+     * Use an {@link Executor} for delivering results of asynchronous calls and notifying connection
+     * and availability listeners.
+     *
+     * <p>Results are never delivered on the binder thread which receives them. By default, they
+     * are delivered on a pool of 4 threads, or on the executor passed to {@link
+     * #setScheduledExecutorService(ScheduledExecutorService)} if one was set. Listeners are
+     * notified on the {@link ScheduledExecutorService}.
+     */
+    public Builder setCallbackExecutor(Executor callbackExecutor) {
+      implBuilder.setCallbackExecutor(callbackExecutor);
+      return this;
+    }
+
     /** Instantiate the {@link CrossProfileConnector} for the given settings. */
     public CrossUserConnector build() {
       return new CrossUserConnectorImpl(implBuilder);
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps;
+
+import com.google.android.enterprise.connectedapps.annotations.CallPriority;
+import com.google.android.enterprise.connectedapps.exceptions.UnavailableProfileException;
+
+/**
+ * What to do with a new asynchronous call when the maximum number of calls are already queued
+ * waiting for a connection.
+ *
+ * <p>Calls which are not queued complete immediately with an {@link UnavailableProfileException}.
+ */
+public enum QueueFullPolicy {
+  /** Fail the new call. */
+  REJECT_NEW_CALL,
+
+  /**
+   * Fail the oldest queued call with the lowest {@link CallPriority}, if it has a lower priority
+   * than the new call. Otherwise fail the new call.
+   */
+  SHED_LOWEST_PRIORITY_CALL
+}
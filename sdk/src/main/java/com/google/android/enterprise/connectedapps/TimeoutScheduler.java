@@ -0,0 +1,201 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps;
+
+import android.os.SystemClock;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Schedules timeouts in buckets on a {@link ScheduledExecutorService}.
+ *
+ * <p>Timeouts whose deadlines round up to the same multiple of the granularity share a single
+ * scheduled task, so a burst of calls only adds a few entries to the executor's queue. Scheduling
+ * and cancelling are both O(1). When the last timeout in a bucket is cancelled, the bucket's task
+ * is cancelled so it does no work at its deadline. Whether the cancelled task is also removed from
+ * the executor's queue straight away depends on the executor, for example {@link
+ * java.util.concurrent.ScheduledThreadPoolExecutor#setRemoveOnCancelPolicy(boolean)}.
+ *
+ * <p>A timeout will run up to one granularity after its delay has passed. Timeouts in a bucket run
+ * in the order they were scheduled, and an exception thrown by one is logged rather than stopping
+ * the others.
+ */
+final class TimeoutScheduler {
+
+  private static final String LOG_TAG = "TimeoutScheduler";
+
+  /**
+   * The default granularity, which is how late a timeout is allowed to run.
+   *
+   * <p>Call timeouts are measured in seconds, so running up to 100ms late is not noticeable, while
+   * every call started within the same 100ms shares a single scheduled task.
+   */
+  static final long DEFAULT_GRANULARITY_MILLIS = 100;
+
+  /** A scheduled timeout. */
+  static final class Timeout {
+    private final Runnable task;
+    private volatile Bucket bucket;
+
+    private Timeout(Runnable task) {
+      this.task = task;
+    }
+
+    /** Stop the timeout from running. This has no effect if it has already run. */
+    void cancel() {
+      bucket.remove(this);
+    }
+  }
+
+  /** All timeouts with the same rounded deadline. */
+  private final class Bucket {
+    private final long deadlineMillis;
+    // Guarded by this
+    private final Set<Timeout> timeouts = new LinkedHashSet<>();
+    // Set once the bucket has run, or has been emptied by cancellation. Guarded by this
+    private boolean isClosed = false;
+    // Guarded by this
+    @Nullable private ScheduledFuture<?> scheduledTask;
+
+    private Bucket(long deadlineMillis) {
+      this.deadlineMillis = deadlineMillis;
+    }
+
+    /** Add {@code timeout}, or return false if this bucket has already run or been cancelled. */
+    synchronized boolean add(Timeout timeout) {
+      if (isClosed) {
+        return false;
+      }
+      timeouts.add(timeout);
+      return true;
+    }
+
+    synchronized void setScheduledTask(ScheduledFuture<?> scheduledTask) {
+      if (isClosed) {
+        // Every timeout was cancelled before the task was scheduled
+        scheduledTask.cancel(/* mayInterruptIfRunning= */ false);
+        return;
+      }
+      this.scheduledTask = scheduledTask;
+    }
+
+    /** Remove {@code timeout}, and cancel this bucket's task if no timeouts are left. */
+    void remove(Timeout timeout) {
+      synchronized (this) {
+        if (!timeouts.remove(timeout) || !timeouts.isEmpty()) {
+          return;
+        }
+        isClosed = true;
+        if (scheduledTask != null) {
+          scheduledTask.cancel(/* mayInterruptIfRunning= */ false);
+        }
+      }
+      buckets.remove(deadlineMillis, this);
+    }
+
+    void run() {
+      buckets.remove(deadlineMillis, this);
+
+      List<Timeout> expiredTimeouts;
+      synchronized (this) {
+        isClosed = true;
+        expiredTimeouts = new ArrayList<>(timeouts);
+        timeouts.clear();
+      }
+
+      // A task which throws must not stop the other timeouts in the bucket from running, as their
+      // calls would otherwise never complete
+      for (Timeout timeout : expiredTimeouts) {
+        try {
+          timeout.task.run();
+        } catch (RuntimeException e) {
+          Log.e(LOG_TAG, "Exception thrown by timeout", e);
+        }
+      }
+    }
+  }
+
+  private final ScheduledExecutorService scheduledExecutorService;
+  private final long granularityMillis;
+  private final ConcurrentMap<Long, Bucket> buckets = new ConcurrentHashMap<>();
+
+  TimeoutScheduler(ScheduledExecutorService scheduledExecutorService) {
+    this(scheduledExecutorService, DEFAULT_GRANULARITY_MILLIS);
+  }
+
+  TimeoutScheduler(ScheduledExecutorService scheduledExecutorService, long granularityMillis) {
+    if (scheduledExecutorService == null) {
+      throw new NullPointerException();
+    }
+    if (granularityMillis <= 0) {
+      throw new IllegalArgumentException("granularityMillis must be positive");
+    }
+    this.scheduledExecutorService = scheduledExecutorService;
+    this.granularityMillis = granularityMillis;
+  }
+
+  /** Run {@code task} on the executor once {@code delayMillis} has passed. */
+  Timeout schedule(Runnable task, long delayMillis) {
+    if (task == null) {
+      throw new NullPointerException();
+    }
+    long nowMillis = SystemClock.elapsedRealtime();
+    long deadlineMillis =
+        ((nowMillis + Math.max(delayMillis, 0) + granularityMillis - 1) / granularityMillis)
+            * granularityMillis;
+    Timeout timeout = new Timeout(task);
+
+    while (true) {
+      boolean isNewBucket = false;
+      Bucket bucket = buckets.get(deadlineMillis);
+      if (bucket == null) {
+        Bucket newBucket = new Bucket(deadlineMillis);
+        bucket = buckets.putIfAbsent(deadlineMillis, newBucket);
+        if (bucket == null) {
+          bucket = newBucket;
+          isNewBucket = true;
+        }
+      }
+
+      timeout.bucket = bucket;
+      if (bucket.add(timeout)) {
+        if (isNewBucket) {
+          // Scheduled once a timeout is in the bucket, so the bucket cannot run or close empty
+          bucket.setScheduledTask(
+              scheduledExecutorService.schedule(
+                  bucket::run, deadlineMillis - nowMillis, TimeUnit.MILLISECONDS));
+        }
+        return timeout;
+      }
+      // The bucket ran or was cancelled between being fetched and the timeout being added
+      buckets.remove(deadlineMillis, bucket);
+    }
+  }
+
+  /** The number of scheduled tasks currently waiting on the executor. */
+  int scheduledBucketCount() {
+    return buckets.size();
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps;
+
+import static com.google.android.enterprise.connectedapps.CrossProfileSDKUtilities.filterUsersByAvailabilityRestrictions;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.UserHandle;
+import com.google.android.enterprise.connectedapps.annotations.AvailabilityRestrictions;
+import com.google.android.enterprise.connectedapps.exceptions.MissingApiException;
+import java.util.Collections;
+
+/**
+ * {@link ConnectionBinder} which binds to a single, specific user.
+ *
+ * <p>Permission checks are delegated to another {@link ConnectionBinder}.
+ */
+final class UserBinder implements ConnectionBinder {
+
+  private final UserHandle userHandle;
+  private final ConnectionBinder permissionBinder;
+
+  UserBinder(UserHandle userHandle, ConnectionBinder permissionBinder) {
+    if (userHandle == null || permissionBinder == null) {
+      throw new NullPointerException();
+    }
+    this.userHandle = userHandle;
+    this.permissionBinder = permissionBinder;
+  }
+
+  @Override
+  public boolean tryBind(
+      Context context,
+      ComponentName bindToService,
+      ServiceConnection connection,
+      AvailabilityRestrictions availabilityRestrictions)
+      throws MissingApiException {
+    if (!bindingIsPossible(context, availabilityRestrictions)) {
+      // The user is not available but might be later
+      return false;
+    }
+
+    Intent bindIntent = new Intent();
+    bindIntent.setComponent(bindToService);
+
+    boolean hasBound =
+        ReflectionUtilities.bindServiceAsUser(context, bindIntent, connection, userHandle);
+    if (!hasBound) {
+      context.unbindService(connection);
+    }
+    return hasBound;
+  }
+
+  @Override
+  public boolean bindingIsPossible(
+      Context context, AvailabilityRestrictions availabilityRestrictions) {
+    return !filterUsersByAvailabilityRestrictions(
+            context, Collections.singletonList(userHandle), availabilityRestrictions)
+        .isEmpty();
+  }
+
+  @Override
+  public boolean hasPermissionToBind(Context context) {
+    return permissionBinder.hasPermissionToBind(context);
+  }
+}
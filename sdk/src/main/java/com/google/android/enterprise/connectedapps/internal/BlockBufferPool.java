@@ -0,0 +1,67 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.internal;
+
+import static com.google.android.enterprise.connectedapps.CrossProfileSender.MAX_BYTES_PER_BLOCK;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A pool of {@code MAX_BYTES_PER_BLOCK} sized buffers used when splitting a large call into blocks.
+ *
+ * <p>Buffers must only be released once nothing holds a reference to them. Blocks passed to a
+ * binder call are copied before the call returns, so a buffer can be released as soon as the last
+ * call using it has returned.
+ */
+final class BlockBufferPool {
+
+  /** The number of buffers kept for reuse. Any further buffers released will be dropped. */
+  private static final int MAX_POOLED_BUFFERS = 2;
+
+  private static final BlockBufferPool instance = new BlockBufferPool();
+
+  private final Deque<byte[]> buffers = new ArrayDeque<>();
+
+  static BlockBufferPool instance() {
+    return instance;
+  }
+
+  BlockBufferPool() {}
+
+  /** Get a buffer of {@code MAX_BYTES_PER_BLOCK} bytes. The contents are undefined. */
+  byte[] acquire() {
+    synchronized (buffers) {
+      byte[] buffer = buffers.poll();
+      if (buffer != null) {
+        return buffer;
+      }
+    }
+    return new byte[MAX_BYTES_PER_BLOCK];
+  }
+
+  /** Return a buffer previously returned by {@link #acquire()} to the pool. */
+  void release(byte[] buffer) {
+    if (buffer.length != MAX_BYTES_PER_BLOCK) {
+      throw new IllegalArgumentException("Buffer was not acquired from this pool");
+    }
+    synchronized (buffers) {
+      if (buffers.size() < MAX_POOLED_BUFFERS) {
+        buffers.push(buffer);
+      }
+    }
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.internal;
+
+import android.os.Parcel;
+import android.os.RemoteException;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Implemented by a {@link ParcelCallSender} whose receiver may accept compressed calls, or return
+ * responses without a status header.
+ *
+ * <p>Where a sender implements this, {@link ParcelCallSender#makeParcelCall(Parcel)} will use
+ * {@link #callWithCompression(long, int, byte[], boolean)} in place of {@link
+ * ParcelCallSender#call(long, int, byte[])} if {@link #supportsHeaderlessResponses()} returns
+ * {@code true}, or if {@link #supportsCompression()} returns {@code true} and compression is
+ * enabled.
+ */
+interface CompressingParcelCallSender {
+
+  /**
+   * Returns {@code true} if the receiver accepts compressed parameters passed to {@link
+   * #callWithCompression(long, int, byte[], boolean)}.
+   */
+  boolean supportsCompression();
+
+  /**
+   * Returns {@code true} if the receiver supports {@link #callWithCompression(long, int, byte[],
+   * boolean)} with uncompressed parameters, returning a response without a status header.
+   */
+  boolean supportsHeaderlessResponses();
+
+  /**
+   * The arguments passed to this should be passed to {@link
+   * ParcelCallReceiver#getPreparedCall(long, int, byte[], boolean)} and used to complete the call,
+   * with the response prepared using {@link ParcelCallReceiver#prepareResponse(long, Parcel,
+   * boolean)}.
+   *
+   * <p>This will only be called if {@link #supportsHeaderlessResponses()} or {@link
+   * #supportsCompression()} returns {@code true}, and {@code bytesCompressed} will only be {@code
+   * true} if {@link #supportsCompression()} returns {@code true}.
+   */
+  byte @Nullable [] callWithCompression(
+      long callId, int blockId, byte[] bytes, boolean bytesCompressed) throws RemoteException;
+}
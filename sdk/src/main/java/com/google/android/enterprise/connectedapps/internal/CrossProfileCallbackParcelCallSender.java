@@ -42,7 +42,8 @@ public class CrossProfileCallbackParcelCallSender extends ParcelCallSender {
   /**
    * Relays to {@link ICrossProfileCallback#onResult(long, int, int, byte[])}.
    *
-   * <p>Always returns empty byte array.
+   * <p>This is a oneway call, so it returns without waiting for the result to be handled. Always
+   * returns empty byte array.
    */
   @Override
   byte[] call(long callId, int blockId, byte[] bytes) throws RemoteException {
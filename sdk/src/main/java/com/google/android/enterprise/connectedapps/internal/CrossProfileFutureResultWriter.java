@@ -16,13 +16,15 @@
 package com.google.android.enterprise.connectedapps.internal;
 
 import android.os.Parcel;
-import android.util.Log;
 import com.google.android.enterprise.connectedapps.ICrossProfileCallback;
 import com.google.android.enterprise.connectedapps.exceptions.UnavailableProfileException;
 
 /**
  * Implementation of {@link FutureResultWriter} used for writing results to a {@link
  * ICrossProfileCallback}.
+ *
+ * <p>Results are marshalled on the thread which completes the future, and sent by the {@link
+ * ResultWriterQueue}.
  */
 public class CrossProfileFutureResultWriter<E> implements FutureResultWriter<E> {
 
@@ -42,35 +44,20 @@ public class CrossProfileFutureResultWriter<E> implements FutureResultWriter<E>
 
   @Override
   public void onSuccess(E result) {
-    Parcel parcel = Parcel.obtain(); // Recycled in this method
-    bundler.writeToParcel(parcel, result, bundlerType, /* flags= */ 0);
-
+    Parcel parcel = Parcel.obtain(); // Recycled by ResultWriterQueue, or in this method
     try {
-      CrossProfileCallbackParcelCallSender parcelCallSender =
-          new CrossProfileCallbackParcelCallSender(callback, /* methodIdentifier= */ 0);
-      parcelCallSender.makeParcelCall(parcel);
-    } catch (UnavailableProfileException e) {
-      Log.e("FutureResult", "Connection was dropped before response");
+      bundler.writeToParcel(parcel, result, bundlerType, /* flags= */ 0);
     } catch (RuntimeException e) {
-      onFailure(new UnavailableProfileException("Error when writing result of future", e));
-    } finally {
       parcel.recycle();
+      onFailure(new UnavailableProfileException("Error when writing result of future", e));
+      return;
     }
+
+    ResultWriterQueue.instance().sendResult(callback, /* methodIdentifier= */ 0, parcel);
   }
 
   @Override
   public void onFailure(Throwable throwable) {
-    Parcel parcel = Parcel.obtain(); // Recycled in this method
-    ParcelUtilities.writeThrowableToParcel(parcel, throwable);
-
-    try {
-      CrossProfileCallbackExceptionParcelCallSender parcelCallSender =
-          new CrossProfileCallbackExceptionParcelCallSender(callback);
-      parcelCallSender.makeParcelCall(parcel);
-    } catch (UnavailableProfileException e) {
-      Log.e("FutureResult", "Connection was dropped before response");
-    } finally {
-      parcel.recycle();
-    }
+    ResultWriterQueue.instance().sendException(callback, throwable);
   }
 }
@@ -15,6 +15,7 @@
  */
 package com.google.android.enterprise.connectedapps.internal;
 
+import android.os.Parcel;
 import android.os.RemoteException;
 import com.google.android.enterprise.connectedapps.ICrossProfileCallback;
 import com.google.android.enterprise.connectedapps.ICrossProfileService;
@@ -24,18 +25,94 @@ import org.checkerframework.checker.nullness.qual.Nullable;
  * Implementation of {@link ParcelCallSender} used when making synchronous or asynchronous
  * cross-profile calls.
  */
-public final class CrossProfileParcelCallSender extends ParcelCallSender {
+public final class CrossProfileParcelCallSender extends ParcelCallSender
+    implements CompressingParcelCallSender, DirectParcelCallSender {
 
   private final ICrossProfileService wrappedService;
   private final long crossProfileTypeIdentifier;
   private final int methodIdentifier;
   private final @Nullable ICrossProfileCallback callback;
+  private final boolean serviceSupportsCompression;
+  private final boolean serviceSupportsDirectCalls;
+  private final boolean serviceSupportsHeaderlessResponses;
 
   public CrossProfileParcelCallSender(
       ICrossProfileService service,
       long crossProfileTypeIdentifier,
       int methodIdentifier,
       @Nullable ICrossProfileCallback callback) {
+    this(
+        service,
+        crossProfileTypeIdentifier,
+        methodIdentifier,
+        callback,
+        /* serviceSupportsCompression= */ false);
+  }
+
+  /**
+   * @param serviceSupportsCompression {@code true} if {@code service} reported {@link
+   *     PayloadCompression#FEATURE_COMPRESSION} from {@link
+   *     ICrossProfileService#getSupportedFeatures()}
+   */
+  public CrossProfileParcelCallSender(
+      ICrossProfileService service,
+      long crossProfileTypeIdentifier,
+      int methodIdentifier,
+      @Nullable ICrossProfileCallback callback,
+      boolean serviceSupportsCompression) {
+    this(
+        service,
+        crossProfileTypeIdentifier,
+        methodIdentifier,
+        callback,
+        serviceSupportsCompression,
+        /* serviceSupportsDirectCalls= */ false);
+  }
+
+  /**
+   * @param serviceSupportsCompression {@code true} if {@code service} reported {@link
+   *     PayloadCompression#FEATURE_COMPRESSION} from {@link
+   *     ICrossProfileService#getSupportedFeatures()}
+   * @param serviceSupportsDirectCalls {@code true} if {@code service} reported {@link
+   *     DirectParcelCalls#FEATURE_DIRECT_PARCEL_CALLS} from {@link
+   *     ICrossProfileService#getSupportedFeatures()}
+   */
+  public CrossProfileParcelCallSender(
+      ICrossProfileService service,
+      long crossProfileTypeIdentifier,
+      int methodIdentifier,
+      @Nullable ICrossProfileCallback callback,
+      boolean serviceSupportsCompression,
+      boolean serviceSupportsDirectCalls) {
+    this(
+        service,
+        crossProfileTypeIdentifier,
+        methodIdentifier,
+        callback,
+        serviceSupportsCompression,
+        serviceSupportsDirectCalls,
+        /* serviceSupportsHeaderlessResponses= */ false);
+  }
+
+  /**
+   * @param serviceSupportsCompression {@code true} if {@code service} reported {@link
+   *     PayloadCompression#FEATURE_COMPRESSION} from {@link
+   *     ICrossProfileService#getSupportedFeatures()}
+   * @param serviceSupportsDirectCalls {@code true} if {@code service} reported {@link
+   *     DirectParcelCalls#FEATURE_DIRECT_PARCEL_CALLS} from {@link
+   *     ICrossProfileService#getSupportedFeatures()}
+   * @param serviceSupportsHeaderlessResponses {@code true} if {@code service} reported {@link
+   *     ParcelCallReceiver#FEATURE_HEADERLESS_RESPONSES} from {@link
+   *     ICrossProfileService#getSupportedFeatures()}
+   */
+  public CrossProfileParcelCallSender(
+      ICrossProfileService service,
+      long crossProfileTypeIdentifier,
+      int methodIdentifier,
+      @Nullable ICrossProfileCallback callback,
+      boolean serviceSupportsCompression,
+      boolean serviceSupportsDirectCalls,
+      boolean serviceSupportsHeaderlessResponses) {
     if (service == null) {
       throw new NullPointerException("service must not be null");
     }
@@ -44,6 +121,9 @@ public final class CrossProfileParcelCallSender extends ParcelCallSender {
     this.crossProfileTypeIdentifier = crossProfileTypeIdentifier;
     this.methodIdentifier = methodIdentifier;
     this.callback = callback;
+    this.serviceSupportsCompression = serviceSupportsCompression;
+    this.serviceSupportsDirectCalls = serviceSupportsDirectCalls;
+    this.serviceSupportsHeaderlessResponses = serviceSupportsHeaderlessResponses;
   }
 
   @Override
@@ -57,6 +137,49 @@ public final class CrossProfileParcelCallSender extends ParcelCallSender {
         callId, blockId, crossProfileTypeIdentifier, methodIdentifier, params, callback);
   }
 
+  @Override
+  public boolean supportsCompression() {
+    return serviceSupportsCompression;
+  }
+
+  @Override
+  public boolean supportsHeaderlessResponses() {
+    return serviceSupportsHeaderlessResponses;
+  }
+
+  @Override
+  public byte @Nullable [] callWithCompression(
+      long callId, int blockId, byte[] params, boolean paramsCompressed) throws RemoteException {
+    return wrappedService.callWithCompression(
+        callId,
+        blockId,
+        crossProfileTypeIdentifier,
+        methodIdentifier,
+        params,
+        paramsCompressed,
+        callback);
+  }
+
+  @Override
+  public boolean supportsDirectCalls() {
+    return serviceSupportsDirectCalls;
+  }
+
+  @Override
+  public boolean callDirect(long callId, Parcel params, Parcel reply) throws RemoteException {
+    Parcel data = Parcel.obtain();
+    try {
+      DirectParcelCalls.writeCallHeader(
+          data, callId, crossProfileTypeIdentifier, methodIdentifier, callback);
+      data.appendFrom(params, /* offset= */ 0, params.dataSize());
+      return wrappedService
+          .asBinder()
+          .transact(DirectParcelCalls.TRANSACTION_CALL, data, reply, /* flags= */ 0);
+    } finally {
+      data.recycle();
+    }
+  }
+
   @Override
   byte[] fetchResponse(long callId, int blockId) throws RemoteException {
     return wrappedService.fetchResponse(callId, blockId);
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.internal;
+
+import android.os.Parcel;
+import android.os.RemoteException;
+
+/**
+ * Implemented by a {@link ParcelCallSender} whose receiver may accept calls made using {@link
+ * DirectParcelCalls}.
+ *
+ * <p>Where a sender implements this, {@link ParcelCallSender#makeParcelCall(Parcel)} will send
+ * parameters which fit in a single block using {@link #callDirect(long, Parcel, Parcel)} if {@link
+ * #supportsDirectCalls()} returns {@code true}.
+ */
+interface DirectParcelCallSender {
+
+  /** Returns {@code true} if the receiver supports {@link #callDirect(long, Parcel, Parcel)}. */
+  boolean supportsDirectCalls();
+
+  /**
+   * Send {@code params} as a single transaction, as described in {@link DirectParcelCalls}, with
+   * the reply written to {@code reply}.
+   *
+   * <p>This will only be called if {@link #supportsDirectCalls()} returns {@code true}, and {@link
+   * DirectParcelCalls#canCallDirectly(Parcel)} returns {@code true} for {@code params}.
+   *
+   * <p>Returns {@code false} if the receiver did not recognise the transaction.
+   */
+  boolean callDirect(long callId, Parcel params, Parcel reply) throws RemoteException;
+}
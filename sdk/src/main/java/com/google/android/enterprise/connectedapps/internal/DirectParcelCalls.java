@@ -0,0 +1,145 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.internal;
+
+import static com.google.android.enterprise.connectedapps.CrossProfileSender.MAX_BYTES_PER_BLOCK;
+
+import android.os.IBinder;
+import android.os.IInterface;
+import android.os.Parcel;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Calls whose parameters are appended directly to a single binder transaction.
+ *
+ * <p>Calls made through {@code ICrossProfileService#call} marshall the parameters into a {@code
+ * byte[]}, which AIDL copies into the transaction, and which the receiver copies out and
+ * unmarshalls into another {@link Parcel}. Responses take the same route back. For calls whose
+ * parameters fit in a single block, a direct call instead sends a custom transaction, {@link
+ * #TRANSACTION_CALL}, handled in the generated service's {@code onTransact}:
+ *
+ * <ul>
+ *   <li>The transaction data is the interface token {@link #DESCRIPTOR}, then the call ID, cross
+ *       profile type identifier, method identifier, and callback binder, as written by {@link
+ *       #writeCallHeader(Parcel, long, long, int, IInterface)}, followed by the parameters
+ *       appended with {@link Parcel#appendFrom(Parcel, int, int)}. The receiver reads the
+ *       parameters directly from the transaction data.
+ *   <li>The reply is written by {@link #writeResponse(Parcel, long, Parcel, ParcelCallReceiver)}.
+ *       Responses smaller than a block are appended directly after a status of {@link
+ *       #RESPONSE_INLINE}. Larger responses are prepared in blocks, exactly as for {@code
+ *       ICrossProfileService#call}, and the status is {@link #RESPONSE_IN_BLOCKS} followed by the
+ *       first block, or {@link #RESPONSE_COMPRESSED} if all blocks must be fetched.
+ * </ul>
+ *
+ * <p>Direct calls are only made to services which report {@link #FEATURE_DIRECT_PARCEL_CALLS} so
+ * that services generated by older versions of the SDK continue to work.
+ *
+ * <p>This class is only for internal use by the SDK.
+ */
+public final class DirectParcelCalls {
+
+  /**
+   * Flag returned by {@code ICrossProfileService#getSupportedFeatures()} when the service handles
+   * {@link #TRANSACTION_CALL}.
+   */
+  public static final int FEATURE_DIRECT_PARCEL_CALLS = 2;
+
+  /**
+   * The transaction code for a direct call.
+   *
+   * <p>This is the last code in the range available to user transactions, which AIDL also uses.
+   * It does not conflict with {@code ICrossProfileService} as the AIDL stub numbers its methods
+   * from {@link IBinder#FIRST_CALL_TRANSACTION} in declaration order, so would need over 16 million
+   * methods to reach it. It is handled before the stub in the generated service's {@code
+   * onTransact}.
+   */
+  public static final int TRANSACTION_CALL = IBinder.LAST_CALL_TRANSACTION;
+
+  /** The interface token written at the start of every direct call. */
+  public static final String DESCRIPTOR =
+      "com.google.android.enterprise.connectedapps.ICrossProfileService";
+
+  /** The response follows directly in the reply. */
+  public static final int RESPONSE_INLINE = 0;
+
+  /**
+   * The reply contains the first block of the response, which should be handled as a response to
+   * {@code ICrossProfileService#call}.
+   */
+  public static final int RESPONSE_IN_BLOCKS = 1;
+
+  /**
+   * The response is compressed, and all blocks must be fetched using {@code
+   * ICrossProfileService#fetchResponse}, starting with block 0.
+   */
+  public static final int RESPONSE_COMPRESSED = 2;
+
+  private DirectParcelCalls() {}
+
+  /**
+   * Returns {@code true} if {@code params} should be sent as a direct call.
+   *
+   * <p>Parameters which need more than one block, or which would be compressed, are sent using
+   * {@code ICrossProfileService#call}.
+   */
+  static boolean canCallDirectly(Parcel params) {
+    int numBytes = params.dataSize();
+    return numBytes < MAX_BYTES_PER_BLOCK && !PayloadCompression.wouldCompress(numBytes);
+  }
+
+  /**
+   * Write everything which precedes the parameters in a direct call.
+   *
+   * <p>The parameters should then be appended using {@link Parcel#appendFrom(Parcel, int, int)}.
+   */
+  public static void writeCallHeader(
+      Parcel data,
+      long callId,
+      long crossProfileTypeIdentifier,
+      int methodIdentifier,
+      @Nullable IInterface callback) {
+    data.writeInterfaceToken(DESCRIPTOR);
+    data.writeLong(callId);
+    data.writeLong(crossProfileTypeIdentifier);
+    data.writeInt(methodIdentifier);
+    data.writeStrongBinder(callback == null ? null : callback.asBinder());
+  }
+
+  /**
+   * Write the reply to a direct call.
+   *
+   * <p>{@code response} will not be recycled.
+   */
+  public static void writeResponse(
+      Parcel reply, long callId, Parcel response, ParcelCallReceiver parcelCallReceiver) {
+    int numBytes = response.dataSize();
+    if (numBytes < MAX_BYTES_PER_BLOCK) {
+      reply.writeInt(RESPONSE_INLINE);
+      reply.appendFrom(response, /* offset= */ 0, numBytes);
+      return;
+    }
+
+    // Direct calls are only made once the features they need have been negotiated
+    byte[] firstBlock =
+        parcelCallReceiver.prepareResponse(callId, response, /* negotiated= */ true);
+    if (firstBlock == null) {
+      reply.writeInt(RESPONSE_COMPRESSED);
+      return;
+    }
+    reply.writeInt(RESPONSE_IN_BLOCKS);
+    reply.writeByteArray(firstBlock);
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.internal;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An unmodifiable {@link List} whose elements are parsed on first access from a single
+ * length-delimited byte stream.
+ *
+ * <p>Each element in the stream is preceded by a varint containing one more than the length of the
+ * element in bytes. A varint of 0 represents a {@code null} element.
+ *
+ * <p>This is used by generated code to send lists of protos as a single byte array, rather than
+ * wrapping and writing each element separately.
+ *
+ * <p>This class is only for internal use by the SDK.
+ */
+public final class LengthDelimitedList<E> extends AbstractList<E> {
+
+  /** Parses a single element from a range of bytes. */
+  public interface ElementParser<E> {
+    E parse(byte[] bytes, int offset, int length) throws IOException;
+  }
+
+  private static final int NULL_ELEMENT = -1;
+
+  private final byte[] bytes;
+  private final int[] offsets;
+  private final int[] lengths;
+  private final ElementParser<E> parser;
+  private final Object[] parsedElements;
+  private final boolean[] isParsed;
+
+  /**
+   * Parse all {@code size} elements of {@code bytes} into a new {@link ArrayList}.
+   *
+   * @throws IllegalArgumentException if the bytes are not a valid stream of {@code size} elements
+   */
+  public static <E> List<E> parse(byte[] bytes, int size, ElementParser<E> parser) {
+    LengthDelimitedList<E> elements = new LengthDelimitedList<>(bytes, size, parser);
+    List<E> list = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      list.add(elements.parseElement(i));
+    }
+    return list;
+  }
+
+  /**
+   * Create a list of the {@code size} elements in {@code bytes}, each of which will be parsed when
+   * it is first accessed.
+   *
+   * <p>Elements which fail to parse will throw {@link IllegalArgumentException} when accessed.
+   *
+   * @throws IllegalArgumentException if the bytes are not a valid stream of {@code size} elements
+   */
+  public static <E> List<E> lazilyParse(byte[] bytes, int size, ElementParser<E> parser) {
+    return new LengthDelimitedList<>(bytes, size, parser);
+  }
+
+  private LengthDelimitedList(byte[] bytes, int size, ElementParser<E> parser) {
+    if (bytes == null || parser == null) {
+      throw new NullPointerException();
+    }
+    // Every element takes at least one byte, so this also avoids allocating for an invalid size
+    if (size < 0 || size > bytes.length) {
+      throw new IllegalArgumentException(
+          "Invalid size " + size + " for a stream of " + bytes.length + " bytes");
+    }
+    this.bytes = bytes;
+    this.parser = parser;
+    offsets = new int[size];
+    lengths = new int[size];
+    parsedElements = new Object[size];
+    isParsed = new boolean[size];
+
+    int position = 0;
+    for (int i = 0; i < size; i++) {
+      int value = 0;
+      int shift = 0;
+      byte b;
+      do {
+        if (position >= bytes.length || shift > 28) {
+          throw new IllegalArgumentException("Invalid length for element " + i);
+        }
+        b = bytes[position++];
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      if (value < 0) {
+        throw new IllegalArgumentException("Invalid length for element " + i);
+      }
+
+      offsets[i] = position;
+      lengths[i] = value - 1;
+      if (value != 0) {
+        if (lengths[i] > bytes.length - position) {
+          throw new IllegalArgumentException(
+              "Element "
+                  + i
+                  + " has length "
+                  + lengths[i]
+                  + " but only "
+                  + (bytes.length - position)
+                  + " bytes remain");
+        }
+        position += lengths[i];
+      }
+    }
+
+    if (position != bytes.length) {
+      throw new IllegalArgumentException(
+          "Expected " + bytes.length + " bytes for " + size + " elements but found " + position);
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public synchronized E get(int index) {
+    if (index < 0 || index >= offsets.length) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + offsets.length);
+    }
+    if (!isParsed[index]) {
+      parsedElements[index] = parseElement(index);
+      isParsed[index] = true;
+    }
+    return (E) parsedElements[index];
+  }
+
+  @Override
+  public int size() {
+    return offsets.length;
+  }
+
+  private E parseElement(int index) {
+    if (lengths[index] == NULL_ELEMENT) {
+      return null;
+    }
+    try {
+      return parser.parse(bytes, offsets[index], lengths[index]);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Could not parse element " + index, e);
+    }
+  }
+}
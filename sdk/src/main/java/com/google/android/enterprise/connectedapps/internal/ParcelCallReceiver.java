@@ -19,8 +19,12 @@ import android.os.Parcel;
 import com.google.android.enterprise.connectedapps.CrossProfileSender;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
  * Build up parcels over multiple calls and prepare responses.
@@ -29,9 +33,22 @@ import java.util.Map;
  * should be relayed to an instance of this class.
  */
 public final class ParcelCallReceiver {
+
+  /**
+   * Flag returned by {@code ICrossProfileService#getSupportedFeatures()} when the service accepts
+   * {@code ICrossProfileService#callWithCompression} with uncompressed parameters, and returns the
+   * response prepared by {@link #prepareResponse(long, Parcel, boolean)} without a status header.
+   *
+   * <p>This does not depend on whether compression is enabled.
+   */
+  public static final int FEATURE_HEADERLESS_RESPONSES = 4;
+
   private final Map<Long, byte[]> preparedCalls = new HashMap<>();
-  private final Map<Long, Integer> preparedCallParts = new HashMap<>();
+  // The sequence numbers (block IDs) of the blocks received for each prepared call
+  private final Map<Long, BitSet> preparedCallBlocks = new HashMap<>();
   private final Map<Long, byte[]> preparedResponses = new HashMap<>();
+  // The calls whose prepared responses were sent with a status header
+  private final Set<Long> headeredResponses = new HashSet<>();
 
   /**
    * Prepare a response to be returned by calls to {@link #getPreparedResponse(long, int)}.
@@ -41,17 +58,25 @@ public final class ParcelCallReceiver {
    * is a 1, then the following 4 bytes will be an {@link Integer} representing the total number of
    * bytes in the response.
    *
+   * <p>This is the format expected by callers using {@code ICrossProfileService#call}, which
+   * includes those generated by older versions of the SDK.
+   *
    * <p>The @{link Parcel} will not be recycled.</p>
    */
   public byte[] prepareResponse(long callId, Parcel responseParcel) {
     byte[] responseBytes = responseParcel.marshall();
 
     if (responseBytes.length <= CrossProfileSender.MAX_BYTES_PER_BLOCK) {
-      // Prepend with 0 to indicate the bytes are complete
-      return ByteUtilities.joinByteArrays(new byte[] {0}, responseBytes);
+      byte[] response = new byte[responseBytes.length + 1];
+      // 0 = the bytes are complete
+      response[0] = 0;
+      System.arraycopy(
+          responseBytes, /* srcPos= */ 0, response, /* destPos= */ 1, responseBytes.length);
+      return response;
     }
     // Record the bytes to be sent and send the first block
     preparedResponses.put(callId, responseBytes);
+    headeredResponses.add(callId);
     byte[] response = new byte[CrossProfileSender.MAX_BYTES_PER_BLOCK + 5];
     // 1 = has additional content
     response[0] = 1;
@@ -66,26 +91,76 @@ public final class ParcelCallReceiver {
     return response;
   }
 
+  /**
+   * Prepare a response to be returned by calls to {@link #getPreparedResponse(long, int)}.
+   *
+   * <p>If {@code negotiated} is {@code false}, this behaves the same as {@link
+   * #prepareResponse(long, Parcel)}.
+   *
+   * <p>Otherwise the caller has used a method which is only used once {@code
+   * ICrossProfileService#getSupportedFeatures} has shown that it is supported, so the response
+   * does not need to be readable by older versions of the SDK and has no status header. The {@code
+   * byte[]} returned is the first block of the marshalled response. If it contains fewer than
+   * {@link CrossProfileSender#MAX_BYTES_PER_BLOCK} bytes then it is the complete response.
+   * Otherwise, further blocks should be fetched using {@link #getPreparedResponse(long, int)} until
+   * a block with fewer than {@link CrossProfileSender#MAX_BYTES_PER_BLOCK} bytes is returned.
+   *
+   * <p>If {@code negotiated} is {@code true} and the response is compressed using {@link
+   * PayloadCompression}, then {@code null} is returned and all blocks of the compressed response
+   * should be fetched in the same way, starting with block 0.
+   *
+   * <p>The @{link Parcel} will not be recycled.</p>
+   */
+  public byte @Nullable [] prepareResponse(
+      long callId, Parcel responseParcel, boolean negotiated) {
+    if (!negotiated) {
+      return prepareResponse(callId, responseParcel);
+    }
+
+    byte[] responseBytes = responseParcel.marshall();
+
+    byte[] compressedBytes = PayloadCompression.maybeCompress(responseBytes);
+    if (compressedBytes != null) {
+      preparedResponses.put(callId, compressedBytes);
+      return null;
+    }
+
+    if (responseBytes.length < CrossProfileSender.MAX_BYTES_PER_BLOCK) {
+      // Returned as-is, there is no status header to prepend
+      return responseBytes;
+    }
+    // Record the bytes to be sent and send the first block
+    preparedResponses.put(callId, responseBytes);
+    return getPreparedResponse(callId, /* blockId= */ 0);
+  }
+
   /**
    * Prepare a call, storing one block of bytes for a call which will be completed with a call to
    * {@link #getPreparedCall(long, int, byte[])}.
+   *
+   * <p>Blocks may be prepared in any order. Preparing the same block more than once has no further
+   * effect.
+   *
+   * @throws IllegalStateException If {@code blockId} is outside of the {@code numBytes} being sent.
    */
   public void prepareCall(long callId, int blockId, int numBytes, byte[] paramBytes) {
+    if (blockId < 0
+        || (long) blockId * CrossProfileSender.MAX_BYTES_PER_BLOCK + paramBytes.length
+            > numBytes) {
+      throw new IllegalStateException(
+          "Block " + blockId + " is out of range for call " + callId + " of " + numBytes + " bytes");
+    }
     if (!preparedCalls.containsKey(callId)) {
       preparedCalls.put(callId, new byte[numBytes]);
-      preparedCallParts.put(callId, 0);
+      preparedCallBlocks.put(callId, new BitSet());
     }
     System.arraycopy(
         paramBytes,
         /* srcPos= */ 0,
         preparedCalls.get(callId),
         /* destPos= */ blockId * CrossProfileSender.MAX_BYTES_PER_BLOCK,
-        /* length= */ CrossProfileSender.MAX_BYTES_PER_BLOCK);
-    preparedCallParts.put(
-        callId,
-        preparedCallParts.get(callId)
-            + 1
-            + blockId); // +1 to have a difference when preparing the 0th block
+        /* length= */ paramBytes.length);
+    preparedCallBlocks.get(callId).set(blockId);
   }
 
   /**
@@ -101,13 +176,28 @@ public final class ParcelCallReceiver {
    *     missing.
    */
   public Parcel getPreparedCall(long callId, int blockId, byte[] paramBytes) {
+    return getPreparedCall(callId, blockId, paramBytes, /* paramBytesCompressed= */ false);
+  }
+
+  /**
+   * Fetch the full {@link Parcel} using bytes previously stored by calls to {@link
+   * #prepareCall(long, int, int, byte[])}, decompressing them if {@code paramBytesCompressed} is
+   * {@code true}.
+   *
+   * <p>The returned {@link Parcel} must be recycled after use.
+   *
+   * @throws IllegalStateException If this is not the only block, and any previous blocks are
+   *     missing.
+   * @see #getPreparedCall(long, int, byte[])
+   */
+  public Parcel getPreparedCall(
+      long callId, int blockId, byte[] paramBytes, boolean paramBytesCompressed) {
     if (blockId > 0) {
-      int expectedBlocks = 0;
-      for (int i = 0; i < blockId; i++) {
-        expectedBlocks += 1 + i;
-      }
-      if (!preparedCallParts.containsKey(callId)
-          || expectedBlocks != preparedCallParts.get(callId)) {
+      // Exactly the blocks before the final one must have been prepared
+      BitSet preparedBlocks = preparedCallBlocks.get(callId);
+      if (preparedBlocks == null
+          || preparedBlocks.nextClearBit(0) != blockId
+          || preparedBlocks.length() != blockId) {
         throw new IllegalStateException("Call " + callId + " not prepared");
       }
       byte[] fullParamBytes = preparedCalls.get(callId);
@@ -119,7 +209,11 @@ public final class ParcelCallReceiver {
           /* length= */ paramBytes.length);
       paramBytes = fullParamBytes;
       preparedCalls.remove(callId);
-      preparedCallParts.remove(callId);
+      preparedCallBlocks.remove(callId);
+    }
+
+    if (paramBytesCompressed) {
+      paramBytes = PayloadCompression.decompress(paramBytes);
     }
 
     Parcel parcel = Parcel.obtain(); // Recycled by caller
@@ -129,24 +223,25 @@ public final class ParcelCallReceiver {
   }
 
   /**
-   * Get a block from a response previously prepared with {@link #prepareResponse(long, Parcel)}.
+   * Get a block from a response previously prepared with {@link #prepareResponse(long, Parcel)} or
+   * {@link #prepareResponse(long, Parcel, boolean)}.
    *
    * <p>If this is the final block, then the prepared blocks will be dropped, and future calls to
    * this method will fail.
    */
   public byte[] getPreparedResponse(long callId, int blockId) {
     byte[] preparedBytes = preparedResponses.get(callId);
-    byte[] response =
-        Arrays.copyOfRange(
-            preparedBytes,
-            /* from= */ blockId * CrossProfileSender.MAX_BYTES_PER_BLOCK,
-            /* to= */ Math.min(
-                preparedBytes.length, (blockId + 1) * CrossProfileSender.MAX_BYTES_PER_BLOCK));
-    int numberOfBlocks =
-        (int) Math.ceil(preparedBytes.length * 1.0 / CrossProfileSender.MAX_BYTES_PER_BLOCK);
-    if (blockId == numberOfBlocks - 1) {
+    int from = blockId * CrossProfileSender.MAX_BYTES_PER_BLOCK;
+    int to = Math.min(preparedBytes.length, from + CrossProfileSender.MAX_BYTES_PER_BLOCK);
+    // Callers reading a status header know the total size, so never fetch the empty block which
+    // would otherwise follow a response of an exact number of blocks
+    boolean finalBlock =
+        to - from < CrossProfileSender.MAX_BYTES_PER_BLOCK
+            || (to == preparedBytes.length && headeredResponses.contains(callId));
+    if (finalBlock) {
       preparedResponses.remove(callId);
+      headeredResponses.remove(callId);
     }
-    return response;
+    return Arrays.copyOfRange(preparedBytes, from, to);
   }
 }
@@ -23,8 +23,12 @@ import android.os.TransactionTooLargeException;
 import android.util.Log;
 import com.google.android.enterprise.connectedapps.exceptions.UnavailableProfileException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.UUID;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
  * This represents a single action of (sending a {@link Parcel} and possibly fetching a response,
@@ -37,6 +41,11 @@ abstract class ParcelCallSender {
   private static final long RETRY_DELAY_MILLIS = 10;
   private static final int MAX_RETRIES = 10;
 
+  // Call identifiers only need to be unique among the calls in progress to a receiver. Starting at
+  // a random value makes it unlikely that calls from different processes to the same receiver will
+  // collide.
+  private static final AtomicLong nextCallIdentifier = new AtomicLong(new Random().nextLong());
+
   /**
    * The arguments passed to this should be passed to {@link ParcelCallReceiver#prepareCall(long,
    * int, int, byte[])}.
@@ -71,11 +80,41 @@ abstract class ParcelCallSender {
    */
   abstract byte[] call(long callId, int blockId, byte[] bytes) throws RemoteException;
 
-  private byte[] callAndRetry(long callId, int blockId, byte[] bytes, int retries)
+  /**
+   * Returns the {@link CompressingParcelCallSender} to be used to make calls, or {@code null} if
+   * {@link #call(long, int, byte[])} should be used.
+   *
+   * <p>This is used whenever the receiver returns responses without a status header, whether or not
+   * compression is enabled, and otherwise only if calls can be compressed.
+   */
+  private @Nullable CompressingParcelCallSender compressingSender() {
+    if (!(this instanceof CompressingParcelCallSender)) {
+      return null;
+    }
+    CompressingParcelCallSender compressingSender = (CompressingParcelCallSender) this;
+    return compressingSender.supportsHeaderlessResponses() || canCompress(compressingSender)
+        ? compressingSender
+        : null;
+  }
+
+  /** Returns {@code true} if compression is enabled and the receiver supports it. */
+  private static boolean canCompress(CompressingParcelCallSender compressingSender) {
+    return PayloadCompression.isEnabled() && compressingSender.supportsCompression();
+  }
+
+  private byte @Nullable [] callAndRetry(
+      long callId,
+      int blockId,
+      byte[] bytes,
+      @Nullable CompressingParcelCallSender compressingSender,
+      boolean bytesCompressed,
+      int retries)
       throws RemoteException {
     while (true) {
       try {
-        return call(callId, blockId, bytes);
+        return compressingSender != null
+            ? compressingSender.callWithCompression(callId, blockId, bytes, bytesCompressed)
+            : call(callId, blockId, bytes);
       } catch (TransactionTooLargeException e) {
         if (retries-- <= 0) {
           throw e;
@@ -91,6 +130,40 @@ abstract class ParcelCallSender {
     }
   }
 
+  /**
+   * Returns the {@link DirectParcelCallSender} to be used to make direct calls, or {@code null} if
+   * the receiver does not support them.
+   */
+  private @Nullable DirectParcelCallSender directSender() {
+    if (!(this instanceof DirectParcelCallSender)) {
+      return null;
+    }
+    DirectParcelCallSender directSender = (DirectParcelCallSender) this;
+    return directSender.supportsDirectCalls() ? directSender : null;
+  }
+
+  private static boolean callDirectAndRetry(
+      DirectParcelCallSender directSender, long callId, Parcel params, Parcel reply, int retries)
+      throws RemoteException {
+    while (true) {
+      try {
+        reply.setDataSize(0);
+        return directSender.callDirect(callId, params, reply);
+      } catch (TransactionTooLargeException e) {
+        if (retries-- <= 0) {
+          throw e;
+        }
+
+        try {
+          Thread.sleep(RETRY_DELAY_MILLIS);
+        } catch (InterruptedException ex) {
+          Log.w("ParcelCallSender", "Interrupted on direct call retry", ex);
+          // If we can't sleep we'll just try again immediately
+        }
+      }
+    }
+  }
+
   /**
    * The arguments passed to this should be passed to {@link
    * ParcelCallReceiver#getPreparedResponse(long, int)}.
@@ -121,6 +194,9 @@ abstract class ParcelCallSender {
    * Use the prepareCall(long, int, int, byte[])} and {@link #call(long, int, byte[])} methods to
    * make a call.
    *
+   * <p>Where the receiver supports it, parameters which fit in a single block are instead sent
+   * using {@link DirectParcelCallSender#callDirect(long, Parcel, Parcel)}.
+   *
    * <p>The returned {@link Parcel} must be recycled after use.
    *
    * <p>Returns {@code null} if the call does not return anything
@@ -128,36 +204,136 @@ abstract class ParcelCallSender {
    * @throws UnavailableProfileException if any call fails
    */
   public Parcel makeParcelCall(Parcel parcel) throws UnavailableProfileException {
-    long callIdentifier = UUID.randomUUID().getMostSignificantBits();
+    long callIdentifier = nextCallIdentifier.getAndIncrement();
+    if (!TraceUtilities.isEnabled()) {
+      return makeParcelCall(callIdentifier, parcel);
+    }
+
+    // The call identifier is included so this section can be matched to the section recorded by
+    // the receiver, which is in another process
+    TraceUtilities.beginSection("ParcelCallSender#makeParcelCall " + callIdentifier);
+    try {
+      return makeParcelCall(callIdentifier, parcel);
+    } finally {
+      TraceUtilities.endSection();
+    }
+  }
+
+  private Parcel makeParcelCall(long callIdentifier, Parcel parcel)
+      throws UnavailableProfileException {
+    DirectParcelCallSender directSender = directSender();
+    if (directSender != null && DirectParcelCalls.canCallDirectly(parcel)) {
+      Parcel reply = Parcel.obtain(); // Recycled by caller, or when the response is read
+      boolean handled;
+      try {
+        // Since we know the parameters are below the limit any errors will be temporary so we
+        // should retry
+        handled = callDirectAndRetry(directSender, callIdentifier, parcel, reply, MAX_RETRIES);
+      } catch (RemoteException e) {
+        reply.recycle();
+        throw new UnavailableProfileException("Could not access other profile", e);
+      }
+      if (handled) {
+        return readDirectResponse(callIdentifier, reply);
+      }
+      // The receiver doesn't recognise direct calls after all, so use the block based calls
+      reply.recycle();
+    }
+
+    return makeBlockParcelCall(callIdentifier, parcel);
+  }
+
+  /**
+   * Read the reply to a call made using {@link DirectParcelCallSender#callDirect(long, Parcel,
+   * Parcel)}, fetching any further blocks of the response.
+   *
+   * <p>{@code reply} is either returned, positioned at the start of the response, or recycled.
+   */
+  private Parcel readDirectResponse(long callIdentifier, Parcel reply)
+      throws UnavailableProfileException {
+    int status = reply.readInt();
+    if (status == DirectParcelCalls.RESPONSE_INLINE) {
+      // This may be empty (for example for asynchronous calls), in which case reading from it
+      // behaves as it would for an empty response parcel
+      return reply;
+    }
+
+    if (status == DirectParcelCalls.RESPONSE_IN_BLOCKS) {
+      byte[] firstBlock = reply.createByteArray();
+      reply.recycle();
+      return fetchResponseParcel(callIdentifier, firstBlock);
+    }
+
+    reply.recycle();
+    if (status == DirectParcelCalls.RESPONSE_COMPRESSED) {
+      return fetchCompressedResponseParcel(callIdentifier);
+    }
+    throw new IllegalStateException("Unknown direct call response status " + status);
+  }
+
+  private Parcel makeBlockParcelCall(long callIdentifier, Parcel parcel)
+      throws UnavailableProfileException {
     byte[] bytes = parcel.marshall();
+
+    CompressingParcelCallSender compressingSender = compressingSender();
+    boolean bytesCompressed = false;
+    if (compressingSender != null && canCompress(compressingSender)) {
+      byte[] compressedBytes = PayloadCompression.maybeCompress(bytes);
+      if (compressedBytes != null) {
+        bytes = compressedBytes;
+        bytesCompressed = true;
+      }
+    }
+
     try {
       int numberOfBlocks = (int) Math.ceil(bytes.length * 1.0 / MAX_BYTES_PER_BLOCK);
       int blockIdentifier = 0;
 
       if (numberOfBlocks > 1) {
-        byte[] block = new byte[MAX_BYTES_PER_BLOCK];
-
-        // Loop through all but the last one and send them over to be cached (retrying any failures)
-        while (blockIdentifier < numberOfBlocks - 1) {
-          System.arraycopy(
-              bytes, blockIdentifier * MAX_BYTES_PER_BLOCK, block, 0, MAX_BYTES_PER_BLOCK);
+        // Each block is copied before prepareCall returns, so a single pooled buffer can be reused
+        // for every block
+        byte[] block = BlockBufferPool.instance().acquire();
+        try {
+          // Loop through all but the last one and send them over to be cached (retrying any
+          // failures)
+          while (blockIdentifier < numberOfBlocks - 1) {
+            System.arraycopy(
+                bytes, blockIdentifier * MAX_BYTES_PER_BLOCK, block, 0, MAX_BYTES_PER_BLOCK);
 
-          // Since we know block size is below the limit any errors will be temporary so we should
-          // retry
-          prepareCallAndRetry(callIdentifier, blockIdentifier, bytes.length, block, MAX_RETRIES);
-          blockIdentifier++;
+            // Since we know block size is below the limit any errors will be temporary so we
+            // should retry
+            prepareCallAndRetry(callIdentifier, blockIdentifier, bytes.length, block, MAX_RETRIES);
+            blockIdentifier++;
+          }
+        } finally {
+          BlockBufferPool.instance().release(block);
         }
 
         bytes = Arrays.copyOfRange(bytes, blockIdentifier * MAX_BYTES_PER_BLOCK, bytes.length);
       }
 
       // Since we know block size is below the limit any errors will be temporary so we should retry
-      byte[] returnBytes = callAndRetry(callIdentifier, blockIdentifier, bytes, MAX_RETRIES);
+      byte[] returnBytes =
+          callAndRetry(
+              callIdentifier,
+              blockIdentifier,
+              bytes,
+              compressingSender,
+              bytesCompressed,
+              MAX_RETRIES);
+
+      if (returnBytes == null) {
+        // Compressed responses are always fetched separately
+        return fetchCompressedResponseParcel(callIdentifier);
+      }
 
       if (returnBytes.length == 0) {
         return null;
       }
 
+      if (compressingSender == null) {
+        return fetchHeaderedResponseParcel(callIdentifier, returnBytes);
+      }
       return fetchResponseParcel(callIdentifier, returnBytes);
     } catch (RemoteException e) {
       throw new UnavailableProfileException("Could not access other profile", e);
@@ -165,14 +341,17 @@ abstract class ParcelCallSender {
   }
 
   /**
-   * Use the {@link ParcelCallSender#prepareCall(long, int, int, byte[])} and {@link
-   * ParcelCallSender#fetchResponse(long, int)} methods to fetch a prepared response.
+   * Use the {@link ParcelCallSender#fetchResponse(long, int)} method to fetch any further blocks of
+   * a response to {@link #call(long, int, byte[])}.
+   *
+   * <p>The response begins with a status header, as described in {@link
+   * ParcelCallReceiver#prepareResponse(long, Parcel)}.
    *
    * <p>The returned {@link Parcel} must be recycled after use.
    *
    * @throws UnavailableProfileException if any call fails
    */
-  private Parcel fetchResponseParcel(long callIdentifier, byte[] returnBytes)
+  private Parcel fetchHeaderedResponseParcel(long callIdentifier, byte[] returnBytes)
       throws UnavailableProfileException {
 
     // returnBytes[0] is 0 if the bytes are complete, or 1 if we need to fetch more
@@ -183,7 +362,7 @@ abstract class ParcelCallSender {
       int totalBytes = ByteBuffer.wrap(returnBytes).getInt(/* index= */ 1);
 
       try {
-        returnBytes = fetchReturnBytes(totalBytes, callIdentifier, returnBytes);
+        returnBytes = fetchHeaderedReturnBytes(totalBytes, callIdentifier, returnBytes);
       } catch (RemoteException e) {
         throw new UnavailableProfileException("Could not access other profile", e);
       }
@@ -196,7 +375,7 @@ abstract class ParcelCallSender {
     return p;
   }
 
-  private byte[] fetchReturnBytes(int totalBytes, long callId, byte[] initialBytes)
+  private byte[] fetchHeaderedReturnBytes(int totalBytes, long callId, byte[] initialBytes)
       throws RemoteException {
     byte[] returnBytes = new byte[totalBytes];
 
@@ -222,4 +401,85 @@ abstract class ParcelCallSender {
     }
     return returnBytes;
   }
+
+  /**
+   * Use the {@link ParcelCallSender#fetchResponse(long, int)} method to fetch any further blocks of
+   * a response to {@link CompressingParcelCallSender#callWithCompression(long, int, byte[],
+   * boolean)} or {@link DirectParcelCallSender#callDirect(long, Parcel, Parcel)}.
+   *
+   * <p>These responses do not carry a status header, as both sides have negotiated the feature. A
+   * block containing exactly {@link
+   * com.google.android.enterprise.connectedapps.CrossProfileSender#MAX_BYTES_PER_BLOCK} bytes
+   * indicates that there are further blocks to fetch, and any shorter block (which may be empty)
+   * is the final block.
+   *
+   * <p>The returned {@link Parcel} must be recycled after use.
+   *
+   * @throws UnavailableProfileException if any call fails
+   */
+  private Parcel fetchResponseParcel(long callIdentifier, byte[] returnBytes)
+      throws UnavailableProfileException {
+    if (returnBytes.length == MAX_BYTES_PER_BLOCK) {
+      try {
+        returnBytes = fetchReturnBytes(callIdentifier, returnBytes);
+      } catch (RemoteException e) {
+        throw new UnavailableProfileException("Could not access other profile", e);
+      }
+    }
+    Parcel p = Parcel.obtain(); // Recycled by caller
+    p.unmarshall(returnBytes, /* offset= */ 0, /* length= */ returnBytes.length);
+    p.setDataPosition(0);
+    return p;
+  }
+
+  /**
+   * Use the {@link ParcelCallSender#fetchResponse(long, int)} method to fetch all blocks of a
+   * compressed response, and decompress it.
+   *
+   * <p>The returned {@link Parcel} must be recycled after use.
+   *
+   * @throws UnavailableProfileException if any call fails
+   */
+  private Parcel fetchCompressedResponseParcel(long callIdentifier)
+      throws UnavailableProfileException {
+    byte[] returnBytes;
+    try {
+      // Since we know block size is below the limit any errors will be temporary so we should retry
+      returnBytes = fetchResponseAndRetry(callIdentifier, /* blockId= */ 0, MAX_RETRIES);
+      if (returnBytes.length == MAX_BYTES_PER_BLOCK) {
+        returnBytes = fetchReturnBytes(callIdentifier, returnBytes);
+      }
+    } catch (RemoteException e) {
+      throw new UnavailableProfileException("Could not access other profile", e);
+    }
+    returnBytes = PayloadCompression.decompress(returnBytes);
+
+    Parcel p = Parcel.obtain(); // Recycled by caller
+    p.unmarshall(returnBytes, /* offset= */ 0, /* length= */ returnBytes.length);
+    p.setDataPosition(0);
+    return p;
+  }
+
+  private byte[] fetchReturnBytes(long callId, byte[] firstBlock) throws RemoteException {
+    List<byte[]> blocks = new ArrayList<>();
+    blocks.add(firstBlock);
+    int totalBytes = firstBlock.length;
+
+    byte[] block = firstBlock;
+    for (int blockId = 1; block.length == MAX_BYTES_PER_BLOCK; blockId++) {
+      // Since we know block size is below the limit any errors will be temporary so we should retry
+      block = fetchResponseAndRetry(callId, blockId, MAX_RETRIES);
+      blocks.add(block);
+      totalBytes += block.length;
+    }
+
+    // Each block is copied exactly once
+    byte[] returnBytes = new byte[totalBytes];
+    int offset = 0;
+    for (byte[] b : blocks) {
+      System.arraycopy(b, /* srcPos= */ 0, returnBytes, /* destPos= */ offset, b.length);
+      offset += b.length;
+    }
+    return returnBytes;
+  }
 }
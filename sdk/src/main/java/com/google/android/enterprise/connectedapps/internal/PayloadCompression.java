@@ -0,0 +1,172 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.internal;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Compression of marshalled call parameters and responses.
+ *
+ * <p>Compression is disabled by default. It is enabled by generated code when the processor is run
+ * with the {@code connectedapps.compressionThresholdBytes} option, and is then only used with
+ * services which report {@link #FEATURE_COMPRESSION} so that services generated by older versions
+ * of the SDK continue to work.
+ *
+ * <p>Compressed bytes are the 4 byte length of the uncompressed bytes followed by a zlib stream.
+ *
+ * <p>This class is only for internal use by the SDK.
+ */
+public final class PayloadCompression {
+
+  /**
+   * Flag returned by {@code ICrossProfileService#getSupportedFeatures()} when the service accepts
+   * compressed parameters and can return compressed responses.
+   */
+  public static final int FEATURE_COMPRESSION = 1;
+
+  /** All optional features supported by services generated with this version of the SDK. */
+  public static final int SUPPORTED_FEATURES =
+      FEATURE_COMPRESSION
+          | DirectParcelCalls.FEATURE_DIRECT_PARCEL_CALLS
+          | ParcelCallReceiver.FEATURE_HEADERLESS_RESPONSES;
+
+  private static final int HEADER_SIZE = 4;
+
+  // Deflate can not expand data by more than this factor, so a length header claiming more is not
+  // valid and is rejected before allocating a buffer for it
+  private static final int MAX_DEFLATE_RATIO = 1032;
+
+  private static volatile int thresholdBytes = 0;
+
+  private PayloadCompression() {}
+
+  /**
+   * Compress parameters and responses of at least {@code thresholdBytes} bytes, where supported.
+   *
+   * <p>This is called by generated code.
+   */
+  public static void enable(int thresholdBytes) {
+    if (thresholdBytes <= 0) {
+      throw new IllegalArgumentException("thresholdBytes must be positive");
+    }
+    PayloadCompression.thresholdBytes = thresholdBytes;
+  }
+
+  /** Disable compression. This is only used by tests. */
+  static void disable() {
+    thresholdBytes = 0;
+  }
+
+  /** Returns {@code true} if compression has been enabled. */
+  public static boolean isEnabled() {
+    return thresholdBytes > 0;
+  }
+
+  /** Returns {@code true} if {@code numBytes} bytes would be compressed, where supported. */
+  static boolean wouldCompress(int numBytes) {
+    int threshold = thresholdBytes;
+    return threshold > 0 && numBytes >= threshold;
+  }
+
+  /**
+   * Compress {@code bytes} if compression is enabled and there are at least as many bytes as the
+   * threshold.
+   *
+   * <p>Returns {@code null} if the bytes should not be compressed, or if compressing them would
+   * not make them smaller.
+   */
+  static byte @Nullable [] maybeCompress(byte[] bytes) {
+    int threshold = thresholdBytes;
+    if (threshold <= 0 || bytes.length < threshold) {
+      return null;
+    }
+    return compress(bytes);
+  }
+
+  /**
+   * Compress {@code bytes}.
+   *
+   * <p>Returns {@code null} if compressing them would not make them smaller.
+   */
+  static byte @Nullable [] compress(byte[] bytes) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(bytes);
+      deflater.finish();
+
+      // Anything which isn't smaller than the input is not worth sending compressed
+      byte[] output = new byte[bytes.length];
+      ByteBuffer.wrap(output).putInt(bytes.length);
+      int outputLength = HEADER_SIZE;
+      while (!deflater.finished() && outputLength < output.length) {
+        outputLength += deflater.deflate(output, outputLength, output.length - outputLength);
+      }
+      if (!deflater.finished()) {
+        return null;
+      }
+
+      byte[] compressed = new byte[outputLength];
+      System.arraycopy(output, 0, compressed, 0, outputLength);
+      return compressed;
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Decompress bytes returned by {@link #compress(byte[])}.
+   *
+   * @throws IllegalArgumentException if the bytes are not valid compressed bytes
+   */
+  static byte[] decompress(byte[] compressed) {
+    if (compressed.length < HEADER_SIZE) {
+      throw new IllegalArgumentException("Compressed bytes are missing the length header");
+    }
+    int length = ByteBuffer.wrap(compressed).getInt();
+    long maxLength = (long) (compressed.length - HEADER_SIZE) * MAX_DEFLATE_RATIO;
+    if (length < 0 || length > maxLength) {
+      throw new IllegalArgumentException(
+          "Invalid length header " + length + " for " + compressed.length + " compressed bytes");
+    }
+    byte[] bytes = new byte[length];
+
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(compressed, HEADER_SIZE, compressed.length - HEADER_SIZE);
+      int inflated = 0;
+      while (inflated < length && !inflater.finished()) {
+        int count = inflater.inflate(bytes, inflated, length - inflated);
+        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        inflated += count;
+      }
+      if (inflated != length) {
+        throw new IllegalArgumentException(
+            "Expected " + length + " bytes but decompressed " + inflated);
+      }
+      return bytes;
+    } catch (DataFormatException e) {
+      throw new IllegalArgumentException("Could not decompress bytes", e);
+    } finally {
+      inflater.end();
+    }
+  }
+}
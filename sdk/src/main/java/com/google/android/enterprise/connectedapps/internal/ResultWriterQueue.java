@@ -0,0 +1,283 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.internal;
+
+import android.os.Parcel;
+import android.util.Log;
+import com.google.android.enterprise.connectedapps.ICrossProfileCallback;
+import com.google.android.enterprise.connectedapps.exceptions.UnavailableProfileException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Sends the results of asynchronous calls back to the caller.
+ *
+ * <p>Results are written to an {@link ICrossProfileCallback} when a provider's future completes or
+ * a provider calls a callback. Sending a result is a oneway binder transaction, or several for
+ * large results, so it does not wait for the result to be handled. Each transaction still copies
+ * the result into the binder buffer, and is retried if the caller's buffer is full, so this can
+ * still take some time. By default it runs on whichever thread completed the future or called the
+ * callback.
+ *
+ * <p>When enabled, results are instead marshalled on that thread and then sent on a dedicated
+ * executor. At most {@link #MAX_BACKLOG} results wait to be sent. Once that many are waiting,
+ * further results are sent on the calling thread, which slows down whatever is producing them
+ * rather than dropping results or queueing without bound.
+ *
+ * <p>This is enabled by generated code when the processor is run with the {@code
+ * connectedapps.resultWriterThreads} option.
+ *
+ * <p>This class is only for internal use by the SDK. The metrics are public so that apps can log
+ * them.
+ */
+public final class ResultWriterQueue {
+
+  /** The number of results which can wait to be sent before results are sent inline. */
+  public static final int MAX_BACKLOG = 64;
+
+  private static final String LOG_TAG = "ResultWriterQueue";
+  private static final long THREAD_KEEP_ALIVE_SECONDS = 30;
+
+  private static final ResultWriterQueue instance = new ResultWriterQueue(MAX_BACKLOG);
+
+  private final int maxBacklog;
+  private volatile @Nullable Executor executor;
+  // The executor created by enableThreads. Guarded by this
+  private @Nullable ThreadPoolExecutor threadPoolExecutor;
+  private final AtomicInteger backlog = new AtomicInteger();
+  private final AtomicInteger maxObservedBacklog = new AtomicInteger();
+  private final AtomicLong sentCount = new AtomicLong();
+  private final AtomicLong inlineSentCount = new AtomicLong();
+  private volatile long lastQueueLatencyMillis = 0;
+  private final AtomicLong maxQueueLatencyMillis = new AtomicLong();
+
+  public static ResultWriterQueue instance() {
+    return instance;
+  }
+
+  ResultWriterQueue(int maxBacklog) {
+    if (maxBacklog <= 0) {
+      throw new IllegalArgumentException("maxBacklog must be positive");
+    }
+    this.maxBacklog = maxBacklog;
+  }
+
+  /**
+   * Send results using {@code threads} dedicated threads.
+   *
+   * <p>This is called by generated code.
+   */
+  public static void enable(int threads) {
+    instance.enableThreads(threads);
+  }
+
+  /** Send results on the calling thread. This is only used by tests. */
+  static void disable() {
+    instance.disableThreads();
+  }
+
+  /**
+   * Send results on a dedicated executor with at least {@code threads} threads.
+   *
+   * <p>Each generated dispatcher calls this when it is loaded, so it can be called several times
+   * with different counts. The first call creates the executor, and later calls only increase its
+   * number of threads, so results waiting on the first executor are never left behind.
+   */
+  synchronized void enableThreads(int threads) {
+    if (threads <= 0) {
+      throw new IllegalArgumentException("threads must be positive");
+    }
+    if (threadPoolExecutor == null) {
+      threadPoolExecutor =
+          new ThreadPoolExecutor(
+              threads,
+              threads,
+              THREAD_KEEP_ALIVE_SECONDS,
+              TimeUnit.SECONDS,
+              new LinkedBlockingQueue<>());
+      threadPoolExecutor.allowCoreThreadTimeOut(true);
+      setExecutor(threadPoolExecutor);
+    } else if (threads > threadPoolExecutor.getMaximumPoolSize()) {
+      // The maximum must be raised first as it can never be below the core size
+      threadPoolExecutor.setMaximumPoolSize(threads);
+      threadPoolExecutor.setCorePoolSize(threads);
+    }
+  }
+
+  synchronized void disableThreads() {
+    if (threadPoolExecutor != null) {
+      threadPoolExecutor.shutdown();
+      threadPoolExecutor = null;
+    }
+    setExecutor(null);
+  }
+
+  /** Return the number of threads results are sent on, or 0 if sent on the calling thread. */
+  synchronized int getThreadCount() {
+    return threadPoolExecutor == null ? 0 : threadPoolExecutor.getMaximumPoolSize();
+  }
+
+  /** Set the {@link Executor} used to send results, or {@code null} to send them inline. */
+  void setExecutor(@Nullable Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Send {@code parcel} as the result of the callback method with {@code methodIdentifier}.
+   *
+   * <p>{@code parcel} will be recycled once it has been sent.
+   */
+  public void sendResult(ICrossProfileCallback callback, int methodIdentifier, Parcel parcel) {
+    if (callback == null || parcel == null) {
+      throw new NullPointerException();
+    }
+    execute(() -> sendResultNow(callback, methodIdentifier, parcel));
+  }
+
+  /** Send {@code throwable} as the result of a call. */
+  public void sendException(ICrossProfileCallback callback, Throwable throwable) {
+    if (callback == null || throwable == null) {
+      throw new NullPointerException();
+    }
+    Parcel parcel = Parcel.obtain(); // Recycled once sent
+    ParcelUtilities.writeThrowableToParcel(parcel, throwable);
+    execute(() -> sendExceptionNow(callback, parcel));
+  }
+
+  private void execute(Runnable send) {
+    Executor executor = this.executor;
+    if (executor == null) {
+      send.run();
+      sentCount.incrementAndGet();
+      return;
+    }
+
+    int currentBacklog = backlog.incrementAndGet();
+    if (currentBacklog > maxBacklog) {
+      backlog.decrementAndGet();
+      sendInline(send);
+      return;
+    }
+    updateMax(maxObservedBacklog, currentBacklog);
+
+    long queuedNanos = System.nanoTime();
+    try {
+      executor.execute(
+          () -> {
+            recordQueueLatency(System.nanoTime() - queuedNanos);
+            try {
+              send.run();
+            } finally {
+              backlog.decrementAndGet();
+              sentCount.incrementAndGet();
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      backlog.decrementAndGet();
+      sendInline(send);
+    }
+  }
+
+  private void sendInline(Runnable send) {
+    inlineSentCount.incrementAndGet();
+    send.run();
+    sentCount.incrementAndGet();
+  }
+
+  private void recordQueueLatency(long queueLatencyNanos) {
+    long queueLatencyMillis = TimeUnit.NANOSECONDS.toMillis(queueLatencyNanos);
+    lastQueueLatencyMillis = queueLatencyMillis;
+    updateMax(maxQueueLatencyMillis, queueLatencyMillis);
+  }
+
+  private static void updateMax(AtomicInteger max, int value) {
+    int current;
+    while ((current = max.get()) < value && !max.compareAndSet(current, value)) {}
+  }
+
+  private static void updateMax(AtomicLong max, long value) {
+    long current;
+    while ((current = max.get()) < value && !max.compareAndSet(current, value)) {}
+  }
+
+  private static void sendResultNow(
+      ICrossProfileCallback callback, int methodIdentifier, Parcel parcel) {
+    try {
+      new CrossProfileCallbackParcelCallSender(callback, methodIdentifier).makeParcelCall(parcel);
+    } catch (UnavailableProfileException e) {
+      Log.e(LOG_TAG, "Connection was dropped before response");
+    } catch (RuntimeException e) {
+      Parcel exceptionParcel = Parcel.obtain(); // Recycled by sendExceptionNow
+      ParcelUtilities.writeThrowableToParcel(
+          exceptionParcel, new UnavailableProfileException("Error when writing result", e));
+      sendExceptionNow(callback, exceptionParcel);
+    } finally {
+      parcel.recycle();
+    }
+  }
+
+  private static void sendExceptionNow(ICrossProfileCallback callback, Parcel parcel) {
+    try {
+      new CrossProfileCallbackExceptionParcelCallSender(callback).makeParcelCall(parcel);
+    } catch (UnavailableProfileException e) {
+      Log.e(LOG_TAG, "Connection was dropped before response");
+    } finally {
+      parcel.recycle();
+    }
+  }
+
+  /** Return the number of results waiting to be sent, or being sent, on the executor. */
+  public int getBacklog() {
+    return backlog.get();
+  }
+
+  /** Return the largest value returned by {@link #getBacklog()} so far. */
+  public int getMaxBacklog() {
+    return maxObservedBacklog.get();
+  }
+
+  /** Return the number of results sent, including those sent inline. */
+  public long getSentCount() {
+    return sentCount.get();
+  }
+
+  /**
+   * Return the number of results sent on the calling thread because the backlog was full.
+   *
+   * <p>Results sent inline because this queue is not enabled are not included.
+   */
+  public long getInlineSentCount() {
+    return inlineSentCount.get();
+  }
+
+  /**
+   * Return the number of milliseconds the most recently started result waited before being sent.
+   */
+  public long getLastQueueLatencyMillis() {
+    return lastQueueLatencyMillis;
+  }
+
+  /** Return the longest time, in milliseconds, that a result has waited before being sent. */
+  public long getMaxQueueLatencyMillis() {
+    return maxQueueLatencyMillis.get();
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.internal;
+
+/**
+ * Per-thread scratch buffers used by generated code to serialize values before copying them into a
+ * {@code Parcel}.
+ *
+ * <p>A buffer returned by {@link #get(int)} is only valid until the next call to {@link #get(int)}
+ * on the same thread, so it must be copied (for example with {@code Parcel#writeByteArray(byte[],
+ * int, int)}) before anything else is serialized.
+ *
+ * <p>This class is only for internal use by the SDK.
+ */
+public final class ScratchBuffers {
+
+  /** Buffers larger than this are allocated for a single use and not kept. */
+  private static final int MAX_RETAINED_BYTES = 256 * 1024;
+
+  private static final ThreadLocal<byte[]> buffers = new ThreadLocal<>();
+
+  private ScratchBuffers() {}
+
+  /** Get a buffer of at least {@code minLength} bytes. The contents are undefined. */
+  public static byte[] get(int minLength) {
+    byte[] buffer = buffers.get();
+    if (buffer != null && buffer.length >= minLength) {
+      return buffer;
+    }
+
+    buffer = new byte[minLength];
+    if (minLength <= MAX_RETAINED_BYTES) {
+      buffers.set(buffer);
+    }
+    return buffer;
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.internal;
+
+import android.os.Process;
+import android.util.Log;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prepares a process to receive cross-profile calls before the first call arrives, and records
+ * how long the first call took.
+ *
+ * <p>Without warm-up, the first call received by a process constructs the provider classes and
+ * loads the generated classes used to dispatch calls, on the binder thread handling the call. When
+ * enabled, the generated service instead does this on a background thread when it is created.
+ *
+ * <p>Warm-up is enabled by generated code when the processor is run with the {@code
+ * connectedapps.warmUp} option. Each generated service warms up its own dispatcher, once per
+ * process. The latency of the first call is only recorded by dispatchers generated with this
+ * option, so calls to other services carry no extra cost.
+ *
+ * <p>This class is only for internal use by the SDK. The metrics are public so that apps can log
+ * them.
+ */
+public final class ServiceWarmUp {
+
+  private static final String LOG_TAG = "ServiceWarmUp";
+  private static final long NOT_RECORDED = -1;
+
+  private static final ServiceWarmUp instance =
+      new ServiceWarmUp(
+          warmUp -> {
+            Thread thread =
+                new Thread(
+                    () -> {
+                      Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                      warmUp.run();
+                    },
+                    "ConnectedAppsWarmUp");
+            thread.setDaemon(true);
+            thread.start();
+          });
+
+  private final Executor executor;
+  private final Set<Class<?>> startedDispatchers = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger runningWarmUps = new AtomicInteger();
+  private final AtomicLong warmUpNanos = new AtomicLong(NOT_RECORDED);
+  private final AtomicBoolean firstCallStarted = new AtomicBoolean();
+  private volatile long firstCallLatencyMicros = NOT_RECORDED;
+  private volatile boolean firstCallAfterWarmUp = false;
+
+  public static ServiceWarmUp instance() {
+    return instance;
+  }
+
+  ServiceWarmUp(Executor executor) {
+    if (executor == null) {
+      throw new NullPointerException();
+    }
+    this.executor = executor;
+  }
+
+  /**
+   * Run {@code warmUp} on a background thread, unless warm-up has already been started for {@code
+   * dispatcherClass} in this process.
+   *
+   * <p>This is called by generated code when a service is created. {@code warmUp} is expected to
+   * construct the providers and load the classes used by {@code dispatcherClass}. These are kept
+   * for the life of the process, so it is only run once per dispatcher even if the service is
+   * recreated.
+   */
+  public void start(Class<?> dispatcherClass, Runnable warmUp) {
+    if (dispatcherClass == null || warmUp == null) {
+      throw new NullPointerException();
+    }
+    // Counted as running first so that isWarmUpComplete() cannot briefly return true
+    runningWarmUps.incrementAndGet();
+    if (!startedDispatchers.add(dispatcherClass)) {
+      runningWarmUps.decrementAndGet();
+      return;
+    }
+    executor.execute(() -> run(warmUp));
+  }
+
+  private void run(Runnable warmUp) {
+    long startNanos = System.nanoTime();
+    try {
+      warmUp.run();
+    } catch (RuntimeException | LinkageError e) {
+      // The first call will construct anything which failed here, and report the error to the
+      // caller. LinkageError covers classes which fail to initialise or load, which must not kill
+      // the process from this background thread
+      Log.e(LOG_TAG, "Error warming up", e);
+    } finally {
+      long nanos = System.nanoTime() - startNanos;
+      warmUpNanos.accumulateAndGet(
+          nanos, (total, added) -> total == NOT_RECORDED ? added : total + added);
+      runningWarmUps.decrementAndGet();
+    }
+  }
+
+  /**
+   * Returns {@code true} the first time this is called in this process.
+   *
+   * <p>This is called by generated code at the start of each call. If it returns {@code true} then
+   * {@link #recordFirstCall(long)} must be called when the call completes.
+   */
+  public boolean isFirstCall() {
+    // Checked first so that later calls do not contend on the compareAndSet
+    if (firstCallStarted.get() || !firstCallStarted.compareAndSet(false, true)) {
+      return false;
+    }
+    firstCallAfterWarmUp = isWarmUpComplete();
+    return true;
+  }
+
+  /**
+   * Record that the first call took {@code latencyNanos}.
+   *
+   * <p>This is called by generated code.
+   */
+  public void recordFirstCall(long latencyNanos) {
+    firstCallLatencyMicros = TimeUnit.NANOSECONDS.toMicros(latencyNanos);
+  }
+
+  /**
+   * Returns {@code true} if warm-up has been started, and has finished for every dispatcher it was
+   * started for, whether or not it succeeded.
+   */
+  public boolean isWarmUpComplete() {
+    return !startedDispatchers.isEmpty() && runningWarmUps.get() == 0;
+  }
+
+  /**
+   * Returns the total time, in microseconds, that warm-up has taken for every dispatcher it has
+   * finished for, or -1 if it has not finished for any.
+   */
+  public long getWarmUpMicros() {
+    long nanos = warmUpNanos.get();
+    return nanos == NOT_RECORDED ? NOT_RECORDED : TimeUnit.NANOSECONDS.toMicros(nanos);
+  }
+
+  /**
+   * Returns the time, in microseconds, taken to handle the first call received by this process, or
+   * -1 if it has not finished.
+   *
+   * <p>This is measured from when the call is dispatched until its response is ready. It is only
+   * recorded by dispatchers generated with the {@code connectedapps.warmUp} option.
+   */
+  public long getFirstCallLatencyMicros() {
+    return firstCallLatencyMicros;
+  }
+
+  /**
+   * Returns {@code true} if warm-up had finished when the first call started.
+   *
+   * <p>If this is {@code false} while warm-up is enabled, then the first call arrived too soon to
+   * fully benefit from warm-up.
+   */
+  public boolean wasFirstCallAfterWarmUp() {
+    return firstCallAfterWarmUp;
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.internal;
+
+import android.os.Parcel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes each distinct string in a value to a {@link Parcel} once.
+ *
+ * <p>While a value is written with {@link #writeToParcel(Bundler, Parcel, Object, BundlerType,
+ * int)}, the first occurrence of each string written with {@link #writeString(Parcel, String)} is
+ * written in full, and later occurrences are written as the index of the first. When the value is
+ * read with {@link #readFromParcel(Bundler, Parcel, BundlerType)}, each occurrence is read as the
+ * same {@link String} instance.
+ *
+ * <p>Outside of these calls, or when writing to a different {@link Parcel}, {@link
+ * #writeString(Parcel, String)} and {@link #readString(Parcel)} are equivalent to {@link
+ * Parcel#writeString(String)} and {@link Parcel#readString()}.
+ *
+ * <p>This class is only for internal use by the SDK.
+ */
+public final class StringTable {
+
+  /** Written before a string which has not been written before. Other values are indices. */
+  private static final int NEW_STRING = -1;
+
+  private static final ThreadLocal<StringTable> currentTable = new ThreadLocal<>();
+
+  /** The number of tables in use on any thread, so strings can usually skip the lookup. */
+  private static final AtomicInteger tablesInUse = new AtomicInteger();
+
+  private final Parcel parcel;
+  private final Map<String, Integer> writtenStrings = new HashMap<>();
+  private final List<String> readStrings = new ArrayList<>();
+
+  private StringTable(Parcel parcel) {
+    this.parcel = parcel;
+  }
+
+  /**
+   * Write {@code value} to {@code parcel} using {@code bundler}, writing each distinct string once.
+   *
+   * <p>The value must be read with {@link #readFromParcel(Bundler, Parcel, BundlerType)}.
+   */
+  public static void writeToParcel(
+      Bundler bundler, Parcel parcel, Object value, BundlerType valueType, int flags) {
+    StringTable previousTable = begin(parcel);
+    try {
+      bundler.writeToParcel(parcel, value, valueType, flags);
+    } finally {
+      end(previousTable);
+    }
+  }
+
+  /** Read a value written by {@link #writeToParcel(Bundler, Parcel, Object, BundlerType, int)}. */
+  public static Object readFromParcel(Bundler bundler, Parcel parcel, BundlerType valueType) {
+    StringTable previousTable = begin(parcel);
+    try {
+      return bundler.readFromParcel(parcel, valueType);
+    } finally {
+      end(previousTable);
+    }
+  }
+
+  private static StringTable begin(Parcel parcel) {
+    StringTable previousTable = currentTable.get();
+    currentTable.set(new StringTable(parcel));
+    tablesInUse.incrementAndGet();
+    return previousTable;
+  }
+
+  private static void end(StringTable previousTable) {
+    tablesInUse.decrementAndGet();
+    if (previousTable == null) {
+      currentTable.remove();
+    } else {
+      currentTable.set(previousTable);
+    }
+  }
+
+  private static StringTable currentTable(Parcel parcel) {
+    if (tablesInUse.get() == 0) {
+      return null;
+    }
+    StringTable table = currentTable.get();
+    return table != null && table.parcel == parcel ? table : null;
+  }
+
+  /** Write {@code value} to {@code parcel}, as a reference if it has already been written. */
+  public static void writeString(Parcel parcel, String value) {
+    StringTable table = currentTable(parcel);
+    if (table == null) {
+      parcel.writeString(value);
+      return;
+    }
+
+    if (value == null) {
+      parcel.writeInt(NEW_STRING);
+      parcel.writeString(null);
+      return;
+    }
+
+    Integer index = table.writtenStrings.get(value);
+    if (index != null) {
+      parcel.writeInt(index);
+      return;
+    }
+
+    table.writtenStrings.put(value, table.writtenStrings.size());
+    parcel.writeInt(NEW_STRING);
+    parcel.writeString(value);
+  }
+
+  /** Read a string written by {@link #writeString(Parcel, String)}. */
+  public static String readString(Parcel parcel) {
+    StringTable table = currentTable(parcel);
+    if (table == null) {
+      return parcel.readString();
+    }
+
+    int index = parcel.readInt();
+    if (index != NEW_STRING) {
+      return table.readStrings.get(index);
+    }
+
+    String value = parcel.readString();
+    if (value != null) {
+      table.readStrings.add(value);
+    }
+    return value;
+  }
+}
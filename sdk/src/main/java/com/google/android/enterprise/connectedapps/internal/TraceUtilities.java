@@ -0,0 +1,104 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.internal;
+
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.os.Trace;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Emits {@link Trace} sections for cross-profile calls.
+ *
+ * <p>Tracing is disabled by default. It is enabled by generated code when the processor is run with
+ * the {@code connectedapps.tracing} option, so that builds without the option do not pay for
+ * building section names.
+ *
+ * <p>This class is only for internal use by the SDK.
+ */
+public final class TraceUtilities {
+
+  /** The maximum length of a section name accepted by {@link Trace#beginSection(String)}. */
+  private static final int MAX_SECTION_NAME_LENGTH = 127;
+
+  private static volatile boolean enabled = false;
+  private static final AtomicInteger nextCookie = new AtomicInteger();
+
+  private TraceUtilities() {}
+
+  /** Enable tracing within the SDK. This is called by generated code and cannot be undone. */
+  public static void enable() {
+    enabled = true;
+  }
+
+  /**
+   * Returns {@code true} if tracing has been enabled.
+   *
+   * <p>Callers should check this before building section names.
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Begin a synchronous section. Must be followed by {@link #endSection()} on the same thread. */
+  public static void beginSection(String sectionName) {
+    if (!enabled) {
+      return;
+    }
+    Trace.beginSection(truncate(sectionName));
+  }
+
+  /** End the most recent section begun using {@link #beginSection(String)} on this thread. */
+  public static void endSection() {
+    if (!enabled) {
+      return;
+    }
+    Trace.endSection();
+  }
+
+  /** Get a new cookie to be used with {@link #beginAsyncSection(String, int)}. */
+  public static int newCookie() {
+    return nextCookie.incrementAndGet();
+  }
+
+  /**
+   * Begin an asynchronous section, which can be ended on any thread by calling {@link
+   * #endAsyncSection(String, int)} with the same name and cookie.
+   *
+   * <p>This does nothing before Android Q.
+   */
+  public static void beginAsyncSection(String sectionName, int cookie) {
+    if (!enabled || VERSION.SDK_INT < VERSION_CODES.Q) {
+      return;
+    }
+    Trace.beginAsyncSection(truncate(sectionName), cookie);
+  }
+
+  /** End an asynchronous section begun using {@link #beginAsyncSection(String, int)}. */
+  public static void endAsyncSection(String sectionName, int cookie) {
+    if (!enabled || VERSION.SDK_INT < VERSION_CODES.Q) {
+      return;
+    }
+    Trace.endAsyncSection(truncate(sectionName), cookie);
+  }
+
+  private static String truncate(String sectionName) {
+    if (sectionName.length() <= MAX_SECTION_NAME_LENGTH) {
+      return sectionName;
+    }
+    return sectionName.substring(0, MAX_SECTION_NAME_LENGTH);
+  }
+}
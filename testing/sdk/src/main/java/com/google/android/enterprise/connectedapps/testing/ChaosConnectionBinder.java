@@ -0,0 +1,508 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.testing;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.ServiceConnection;
+import android.os.DeadObjectException;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.RemoteException;
+import android.os.TransactionTooLargeException;
+import com.google.android.enterprise.connectedapps.ConnectionBinder;
+import com.google.android.enterprise.connectedapps.annotations.AvailabilityRestrictions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link ConnectionBinder} which binds to a service in the same process, like {@link
+ * LoopbackConnectionBinder}, and injects faults and latency into binding and into every
+ * transaction.
+ *
+ * <p>This can be used to test how a connector behaves when the other profile is slow, flaky, or
+ * repeatedly becomes unavailable. It supports:
+ *
+ * <ul>
+ *   <li>Slow binds ({@link #setBindDelayMillis(long, long)}) and failed binds ({@link
+ *       #setBindFailureProbability(double)}, {@link #failNextBinds(int)}).
+ *   <li>Flapping availability ({@link #setAvailable(boolean)}).
+ *   <li>Transaction latency ({@link #setTransactionDelayMillis(long, long)}).
+ *   <li>Dropped transactions ({@link #setDeadObjectProbability(double)}).
+ *   <li>Storms of {@link TransactionTooLargeException} ({@link
+ *       #setTransactionTooLargeProbability(double, int)}).
+ *   <li>Death of the other profile's process ({@link #killProcess()}, {@link
+ *       #setProcessDeathProbability(double)}).
+ *   <li>Scripted faults for the next transactions ({@link #scriptTransactionFaults(Fault...)}).
+ * </ul>
+ *
+ * <p>Random faults are chosen using a seeded {@link Random}, so a run with the same seed and the
+ * same sequence of transactions injects the same faults. Transactions made concurrently may be
+ * ordered differently between runs.
+ *
+ * <p>Delays are real time, rather than Robolectric's clock, so that they show up in latency
+ * measurements and race with timeouts scheduled on a real executor. Transaction delays block the
+ * calling thread. Bind delays are scheduled on the {@link ScheduledExecutorService} passed to the
+ * constructor.
+ *
+ * <p>For example, using Robolectric:
+ *
+ * <pre>{@code
+ * IBinder service = Robolectric.setupService(MyConnector_Service.class).onBind(null);
+ * ChaosConnectionBinder binder = new ChaosConnectionBinder(service, scheduledExecutorService);
+ * binder.setTransactionDelayMillis(0, 20);
+ * binder.setDeadObjectProbability(0.01);
+ * MyConnector connector = GeneratedMyConnector.builder(context).setBinder(binder).build();
+ * }</pre>
+ */
+public final class ChaosConnectionBinder implements ConnectionBinder, LoopbackTransport {
+
+  /** A fault which can be scripted with {@link #scriptTransactionFaults(Fault...)}. */
+  public static final class Fault {
+    private enum Kind {
+      NONE,
+      DELAY,
+      DEAD_OBJECT,
+      TRANSACTION_TOO_LARGE,
+      PROCESS_DEATH
+    }
+
+    private static final Fault NONE = new Fault(Kind.NONE, 0);
+    private static final Fault DEAD_OBJECT = new Fault(Kind.DEAD_OBJECT, 0);
+    private static final Fault TRANSACTION_TOO_LARGE = new Fault(Kind.TRANSACTION_TOO_LARGE, 0);
+    private static final Fault PROCESS_DEATH = new Fault(Kind.PROCESS_DEATH, 0);
+
+    private final Kind kind;
+    private final long delayMillis;
+
+    private Fault(Kind kind, long delayMillis) {
+      this.kind = kind;
+      this.delayMillis = delayMillis;
+    }
+
+    /** Let the transaction through without injecting a fault. */
+    public static Fault none() {
+      return NONE;
+    }
+
+    /** Delay the transaction by {@code delayMillis}. */
+    public static Fault delay(long delayMillis) {
+      if (delayMillis < 0) {
+        throw new IllegalArgumentException("delayMillis must not be negative");
+      }
+      return new Fault(Kind.DELAY, delayMillis);
+    }
+
+    /** Fail the transaction with a {@link DeadObjectException}. */
+    public static Fault deadObject() {
+      return DEAD_OBJECT;
+    }
+
+    /** Fail the transaction with a {@link TransactionTooLargeException}. */
+    public static Fault transactionTooLarge() {
+      return TRANSACTION_TOO_LARGE;
+    }
+
+    /**
+     * Kill the other profile's process, failing the transaction with a {@link DeadObjectException}.
+     */
+    public static Fault processDeath() {
+      return PROCESS_DEATH;
+    }
+
+    @Override
+    public String toString() {
+      return kind == Kind.DELAY ? "DELAY(" + delayMillis + "ms)" : kind.toString();
+    }
+  }
+
+  private final IBinder service;
+  private final ScheduledExecutorService scheduledExecutorService;
+  private final Random random = new Random(0);
+
+  private volatile boolean available = true;
+  private volatile long minBindDelayMillis = 0;
+  private volatile long maxBindDelayMillis = 0;
+  private volatile double bindFailureProbability = 0;
+  private final AtomicInteger bindsToFail = new AtomicInteger();
+
+  private volatile long minTransactionDelayMillis = 0;
+  private volatile long maxTransactionDelayMillis = 0;
+  private volatile double deadObjectProbability = 0;
+  private volatile double transactionTooLargeProbability = 0;
+  private volatile int transactionTooLargeStormLength = 1;
+  private volatile double processDeathProbability = 0;
+  private volatile int maxTransactionBytes = LoopbackConnectionBinder.DEFAULT_MAX_TRANSACTION_BYTES;
+  private final AtomicInteger remainingTransactionTooLargeStorm = new AtomicInteger();
+  private final Queue<Fault> scriptedFaults = new ConcurrentLinkedQueue<>();
+
+  private final AtomicLong bindAttemptCount = new AtomicLong();
+  private final AtomicLong transactionCount = new AtomicLong();
+  private final AtomicLong injectedFaultCount = new AtomicLong();
+  private final AtomicLong processDeathCount = new AtomicLong();
+
+  // Guarded by this. Every service bound to since the process last died.
+  private final List<LoopbackCrossProfileService> liveServices = new ArrayList<>();
+  // Guarded by this
+  private ServiceConnection currentConnection;
+  // Guarded by this
+  private ComponentName currentComponentName;
+  // Guarded by this
+  private boolean isDying = false;
+  // Guarded by this. Connections made while the process was dying, delivered once it has died.
+  private final List<Runnable> deferredConnections = new ArrayList<>();
+
+  /**
+   * Create a {@link ChaosConnectionBinder} which binds to {@code service}.
+   *
+   * <p>Until configured, this behaves like a {@link LoopbackConnectionBinder}.
+   *
+   * @param service the binder returned by a generated {@code _Service}'s {@code onBind} method
+   * @param scheduledExecutorService used to deliver delayed binds
+   */
+  public ChaosConnectionBinder(IBinder service, ScheduledExecutorService scheduledExecutorService) {
+    if (service == null || scheduledExecutorService == null) {
+      throw new NullPointerException();
+    }
+    this.service = service;
+    this.scheduledExecutorService = scheduledExecutorService;
+  }
+
+  /** Set the seed used to choose random delays and faults. Defaults to 0. */
+  public void setSeed(long seed) {
+    random.setSeed(seed);
+  }
+
+  /**
+   * Delay each successful bind by a random time between {@code minDelayMillis} and {@code
+   * maxDelayMillis}, inclusive.
+   */
+  public void setBindDelayMillis(long minDelayMillis, long maxDelayMillis) {
+    checkRange(minDelayMillis, maxDelayMillis);
+    this.minBindDelayMillis = minDelayMillis;
+    this.maxBindDelayMillis = maxDelayMillis;
+  }
+
+  /** Fail each bind with the given probability, as if the other profile could not be bound to. */
+  public void setBindFailureProbability(double probability) {
+    this.bindFailureProbability = checkProbability(probability);
+  }
+
+  /** Fail the next {@code count} binds. */
+  public void failNextBinds(int count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("count must not be negative");
+    }
+    bindsToFail.set(count);
+  }
+
+  /**
+   * Set whether the other profile is available.
+   *
+   * <p>Making the other profile unavailable kills its process, and binding is not possible until
+   * it is made available again. Toggling this simulates the other profile being turned off and
+   * on.
+   */
+  public void setAvailable(boolean available) {
+    this.available = available;
+    if (!available) {
+      killProcess();
+    }
+  }
+
+  /** Return {@code true} if the other profile is available. */
+  public boolean isAvailable() {
+    return available;
+  }
+
+  /**
+   * Delay each transaction by a random time between {@code minDelayMillis} and {@code
+   * maxDelayMillis}, inclusive.
+   */
+  public void setTransactionDelayMillis(long minDelayMillis, long maxDelayMillis) {
+    checkRange(minDelayMillis, maxDelayMillis);
+    this.minTransactionDelayMillis = minDelayMillis;
+    this.maxTransactionDelayMillis = maxDelayMillis;
+  }
+
+  /**
+   * Fail each transaction with the given probability with a {@link DeadObjectException}, as if it
+   * had been dropped. The connection is not lost.
+   */
+  public void setDeadObjectProbability(double probability) {
+    this.deadObjectProbability = checkProbability(probability);
+  }
+
+  /**
+   * Start a storm of {@link TransactionTooLargeException} with the given probability.
+   *
+   * <p>A storm fails the transaction which started it and the following transactions, {@code
+   * stormLength} in total, as happens when the binder buffer shared by the process is exhausted.
+   */
+  public void setTransactionTooLargeProbability(double probability, int stormLength) {
+    if (stormLength <= 0) {
+      throw new IllegalArgumentException("stormLength must be positive");
+    }
+    this.transactionTooLargeProbability = checkProbability(probability);
+    this.transactionTooLargeStormLength = stormLength;
+  }
+
+  /** Kill the other profile's process during each transaction with the given probability. */
+  public void setProcessDeathProbability(double probability) {
+    this.processDeathProbability = checkProbability(probability);
+  }
+
+  /**
+   * Fail any transaction whose arguments or response are larger than {@code maxTransactionBytes}
+   * with a {@link TransactionTooLargeException}.
+   *
+   * <p>Defaults to {@link LoopbackConnectionBinder#DEFAULT_MAX_TRANSACTION_BYTES}.
+   */
+  public void setMaxTransactionBytes(int maxTransactionBytes) {
+    if (maxTransactionBytes <= 0) {
+      throw new IllegalArgumentException("maxTransactionBytes must be positive");
+    }
+    this.maxTransactionBytes = maxTransactionBytes;
+  }
+
+  /**
+   * Apply {@code faults} to the next transactions, one per transaction, in order.
+   *
+   * <p>Random faults and delays are not applied to transactions which have a scripted fault.
+   */
+  public void scriptTransactionFaults(Fault... faults) {
+    for (Fault fault : faults) {
+      if (fault == null) {
+        throw new NullPointerException();
+      }
+      scriptedFaults.add(fault);
+    }
+  }
+
+  /**
+   * Simulate the death of the other profile's process.
+   *
+   * <p>Death recipients are notified, the current connection receives {@link
+   * ServiceConnection#onServiceDisconnected(ComponentName)}, and all further transactions to
+   * services bound before this call fail with a {@link DeadObjectException}.
+   */
+  public void killProcess() {
+    List<LoopbackCrossProfileService> services;
+    ServiceConnection connection;
+    ComponentName componentName;
+    synchronized (this) {
+      if (liveServices.isEmpty()) {
+        return;
+      }
+      isDying = true;
+      services = new ArrayList<>(liveServices);
+      liveServices.clear();
+      connection = currentConnection;
+      componentName = currentComponentName;
+      currentConnection = null;
+      currentComponentName = null;
+    }
+    processDeathCount.incrementAndGet();
+    for (LoopbackCrossProfileService service : services) {
+      service.kill();
+    }
+    if (connection != null) {
+      connection.onServiceDisconnected(componentName);
+    }
+
+    List<Runnable> connections;
+    synchronized (this) {
+      isDying = false;
+      connections = new ArrayList<>(deferredConnections);
+      deferredConnections.clear();
+    }
+    for (Runnable deliverConnection : connections) {
+      deliverConnection.run();
+    }
+  }
+
+  /** Get the number of times {@link #tryBind} has been called. */
+  public long getBindAttemptCount() {
+    return bindAttemptCount.get();
+  }
+
+  /** Get the number of transactions which have been started, including those which failed. */
+  public long getTransactionCount() {
+    return transactionCount.get();
+  }
+
+  /** Get the number of delays and failures which have been injected, including scripted ones. */
+  public long getInjectedFaultCount() {
+    return injectedFaultCount.get();
+  }
+
+  /** Get the number of times the other profile's process has died. */
+  public long getProcessDeathCount() {
+    return processDeathCount.get();
+  }
+
+  @Override
+  public boolean tryBind(
+      Context context,
+      ComponentName bindToService,
+      ServiceConnection connection,
+      AvailabilityRestrictions availabilityRestrictions) {
+    bindAttemptCount.incrementAndGet();
+
+    if (!available) {
+      return false;
+    }
+    if (bindsToFail.getAndUpdate(count -> Math.max(count - 1, 0)) > 0
+        || random.nextDouble() < bindFailureProbability) {
+      injectedFaultCount.incrementAndGet();
+      return false;
+    }
+
+    LoopbackCrossProfileService loopbackService = new LoopbackCrossProfileService(this, service);
+    Runnable connect = () -> deliverConnection(bindToService, connection, loopbackService);
+
+    long delayMillis = randomBetween(minBindDelayMillis, maxBindDelayMillis);
+    if (delayMillis == 0) {
+      connect.run();
+    } else {
+      injectedFaultCount.incrementAndGet();
+      scheduledExecutorService.schedule(connect, delayMillis, TimeUnit.MILLISECONDS);
+    }
+    return true;
+  }
+
+  private void deliverConnection(
+      ComponentName bindToService,
+      ServiceConnection connection,
+      LoopbackCrossProfileService loopbackService) {
+    synchronized (this) {
+      if (!available) {
+        // The other profile became unavailable before the bind completed
+        return;
+      }
+      if (isDying) {
+        // Rebinding in response to the death must not overtake onServiceDisconnected, which
+        // would otherwise be delivered first on the main thread
+        deferredConnections.add(
+            () -> deliverConnection(bindToService, connection, loopbackService));
+        return;
+      }
+      liveServices.add(loopbackService);
+      currentConnection = connection;
+      currentComponentName = bindToService;
+    }
+    connection.onServiceConnected(bindToService, loopbackService);
+  }
+
+  @Override
+  public boolean bindingIsPossible(
+      Context context, AvailabilityRestrictions availabilityRestrictions) {
+    return available;
+  }
+
+  @Override
+  public boolean hasPermissionToBind(Context context) {
+    return true;
+  }
+
+  @Override
+  public void beforeTransaction(Parcel data) throws RemoteException {
+    transactionCount.incrementAndGet();
+
+    Fault fault = scriptedFaults.poll();
+    if (fault == null) {
+      fault = randomFault();
+    }
+    if (fault != Fault.NONE) {
+      injectedFaultCount.incrementAndGet();
+    }
+
+    switch (fault.kind) {
+      case NONE:
+        break;
+      case DELAY:
+        sleep(fault.delayMillis);
+        break;
+      case DEAD_OBJECT:
+        throw new DeadObjectException();
+      case TRANSACTION_TOO_LARGE:
+        throw new TransactionTooLargeException("Injected by ChaosConnectionBinder");
+      case PROCESS_DEATH:
+        killProcess();
+        throw new DeadObjectException();
+    }
+
+    LoopbackConnectionBinder.checkTransactionSize(data, maxTransactionBytes);
+  }
+
+  @Override
+  public void afterTransaction(Parcel reply) throws RemoteException {
+    LoopbackConnectionBinder.checkTransactionSize(reply, maxTransactionBytes);
+  }
+
+  private Fault randomFault() {
+    if (remainingTransactionTooLargeStorm.getAndUpdate(count -> Math.max(count - 1, 0)) > 0) {
+      return Fault.TRANSACTION_TOO_LARGE;
+    }
+    if (random.nextDouble() < processDeathProbability) {
+      return Fault.PROCESS_DEATH;
+    }
+    if (random.nextDouble() < deadObjectProbability) {
+      return Fault.DEAD_OBJECT;
+    }
+    if (random.nextDouble() < transactionTooLargeProbability) {
+      remainingTransactionTooLargeStorm.set(transactionTooLargeStormLength - 1);
+      return Fault.TRANSACTION_TOO_LARGE;
+    }
+    long delayMillis = randomBetween(minTransactionDelayMillis, maxTransactionDelayMillis);
+    return delayMillis == 0 ? Fault.NONE : new Fault(Fault.Kind.DELAY, delayMillis);
+  }
+
+  private long randomBetween(long min, long max) {
+    if (min == max) {
+      return min;
+    }
+    return min + (long) (random.nextDouble() * (max - min + 1));
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void checkRange(long minMillis, long maxMillis) {
+    if (minMillis < 0 || maxMillis < minMillis) {
+      throw new IllegalArgumentException("Delays must not be negative or decreasing");
+    }
+  }
+
+  private static double checkProbability(double probability) {
+    if (probability < 0 || probability > 1) {
+      throw new IllegalArgumentException("probability must be between 0 and 1");
+    }
+    return probability;
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.testing;
+
+import android.os.Binder;
+import android.os.IBinder;
+import android.os.IInterface;
+import android.os.Parcel;
+import android.os.RemoteException;
+
+/**
+ * A {@link Binder} which appears to be in another process.
+ *
+ * <p>As this never returns a local interface, AIDL generated {@code asInterface} methods wrap it
+ * in a proxy which marshals every call into a {@link Parcel}. Transactions are passed on to the
+ * wrapped binder, which unmarshals them.
+ */
+final class LoopbackBinder extends Binder {
+
+  private final LoopbackTransport transport;
+  private final IBinder target;
+
+  LoopbackBinder(LoopbackTransport transport, IBinder target) {
+    if (transport == null || target == null) {
+      throw new NullPointerException();
+    }
+    this.transport = transport;
+    this.target = target;
+  }
+
+  @Override
+  public IInterface queryLocalInterface(String descriptor) {
+    return null;
+  }
+
+  @Override
+  protected boolean onTransact(int code, Parcel data, Parcel reply, int flags)
+      throws RemoteException {
+    transport.beforeTransaction(data);
+    boolean result = target.transact(code, data, reply, flags);
+    transport.afterTransaction(reply);
+    return result;
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.testing;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.ServiceConnection;
+import android.os.DeadObjectException;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.os.TransactionTooLargeException;
+import com.google.android.enterprise.connectedapps.ConnectionBinder;
+import com.google.android.enterprise.connectedapps.annotations.AvailabilityRestrictions;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link ConnectionBinder} which binds to a service in the same process, while still serializing
+ * every call.
+ *
+ * <p>This allows the real cross-profile path, including the generated {@code _Bundler}, parcelable
+ * wrappers, and splitting of large calls into blocks, to be tested and benchmarked without a
+ * second profile.
+ *
+ * <p>Every transaction in either direction, including callbacks, is marshalled into a {@link
+ * Parcel} by the AIDL generated code and unmarshalled on the other side, as it would be by the
+ * binder driver. Transactions are run on the calling thread.
+ *
+ * <p>Transactions can be delayed with {@link #setTransactionLatencyMillis(long)}, limited in size
+ * with {@link #setMaxTransactionBytes(int)}, and failed with {@link #failNextTransactions(int)}.
+ *
+ * <p>To use this, pass the binder returned by the generated {@code _Service}'s {@code onBind} to
+ * the constructor, and pass this to the connector builder's {@code setBinder} method. For example,
+ * using Robolectric:
+ *
+ * <pre>{@code
+ * IBinder service = Robolectric.setupService(MyConnector_Service.class).onBind(null);
+ * MyConnector connector =
+ *     GeneratedMyConnector.builder(context)
+ *         .setBinder(new LoopbackConnectionBinder(service))
+ *         .build();
+ * }</pre>
+ */
+public final class LoopbackConnectionBinder implements ConnectionBinder, LoopbackTransport {
+
+  /** The size of the buffer the binder driver shares between all transactions in a process. */
+  public static final int DEFAULT_MAX_TRANSACTION_BYTES = 1024 * 1024;
+
+  private final LoopbackCrossProfileService loopbackService;
+  private volatile long transactionLatencyMillis = 0;
+  private volatile int maxTransactionBytes = DEFAULT_MAX_TRANSACTION_BYTES;
+  private final AtomicInteger transactionsToFail = new AtomicInteger();
+  private final AtomicLong transactionCount = new AtomicLong();
+
+  /**
+   * Create a {@link LoopbackConnectionBinder} which binds to {@code service}.
+   *
+   * @param service the binder returned by a generated {@code _Service}'s {@code onBind} method
+   */
+  public LoopbackConnectionBinder(IBinder service) {
+    if (service == null) {
+      throw new NullPointerException();
+    }
+    this.loopbackService = new LoopbackCrossProfileService(this, service);
+  }
+
+  /**
+   * Delay every transaction by {@code transactionLatencyMillis}.
+   *
+   * <p>A call which is split into multiple blocks, or which receives a callback, will be delayed
+   * once for each transaction.
+   */
+  public void setTransactionLatencyMillis(long transactionLatencyMillis) {
+    if (transactionLatencyMillis < 0) {
+      throw new IllegalArgumentException("transactionLatencyMillis must not be negative");
+    }
+    this.transactionLatencyMillis = transactionLatencyMillis;
+  }
+
+  /**
+   * Fail any transaction whose arguments or response are larger than {@code maxTransactionBytes}
+   * with a {@link TransactionTooLargeException}.
+   *
+   * <p>Defaults to {@link #DEFAULT_MAX_TRANSACTION_BYTES}.
+   */
+  public void setMaxTransactionBytes(int maxTransactionBytes) {
+    if (maxTransactionBytes <= 0) {
+      throw new IllegalArgumentException("maxTransactionBytes must be positive");
+    }
+    this.maxTransactionBytes = maxTransactionBytes;
+  }
+
+  /**
+   * Fail the next {@code count} transactions with a {@link DeadObjectException}, as if the other
+   * profile's process was not running.
+   */
+  public void failNextTransactions(int count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("count must not be negative");
+    }
+    transactionsToFail.set(count);
+  }
+
+  /** Get the number of transactions which have been started, including those which failed. */
+  public long getTransactionCount() {
+    return transactionCount.get();
+  }
+
+  @Override
+  public boolean tryBind(
+      Context context,
+      ComponentName bindToService,
+      ServiceConnection connection,
+      AvailabilityRestrictions availabilityRestrictions) {
+    connection.onServiceConnected(bindToService, loopbackService);
+    return true;
+  }
+
+  @Override
+  public boolean bindingIsPossible(
+      Context context, AvailabilityRestrictions availabilityRestrictions) {
+    return true;
+  }
+
+  @Override
+  public boolean hasPermissionToBind(Context context) {
+    return true;
+  }
+
+  @Override
+  public void beforeTransaction(Parcel data) throws RemoteException {
+    transactionCount.incrementAndGet();
+
+    if (transactionsToFail.getAndUpdate(count -> Math.max(count - 1, 0)) > 0) {
+      throw new DeadObjectException();
+    }
+    checkTransactionSize(data, maxTransactionBytes);
+
+    long latencyMillis = transactionLatencyMillis;
+    if (latencyMillis > 0) {
+      SystemClock.sleep(latencyMillis);
+    }
+  }
+
+  @Override
+  public void afterTransaction(Parcel reply) throws RemoteException {
+    checkTransactionSize(reply, maxTransactionBytes);
+  }
+
+  /**
+   * Throw a {@link TransactionTooLargeException} if {@code parcel} is larger than {@code
+   * maxTransactionBytes}.
+   */
+  static void checkTransactionSize(Parcel parcel, int maxTransactionBytes)
+      throws TransactionTooLargeException {
+    if (parcel != null && parcel.dataSize() > maxTransactionBytes) {
+      throw new TransactionTooLargeException(
+          "Transaction of " + parcel.dataSize() + " bytes exceeds " + maxTransactionBytes);
+    }
+  }
+}
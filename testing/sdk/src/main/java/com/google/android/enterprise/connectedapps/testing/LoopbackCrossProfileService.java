@@ -0,0 +1,195 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.testing;
+
+import android.os.DeadObjectException;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.RemoteException;
+import com.google.android.enterprise.connectedapps.ICrossProfileCallback;
+import com.google.android.enterprise.connectedapps.ICrossProfileService;
+import com.google.android.enterprise.connectedapps.internal.DirectParcelCalls;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@link ICrossProfileService} bound to by {@link LoopbackConnectionBinder}.
+ *
+ * <p>Calls are marshalled through a {@link LoopbackBinder} to the real service, and callbacks are
+ * marshalled through a {@link LoopbackBinder} back to the caller. This includes calls made using
+ * {@link DirectParcelCalls}.
+ *
+ * <p>Once {@link #kill()} has been called, all transactions fail with a {@link
+ * DeadObjectException}, as if the process hosting the service had died.
+ */
+final class LoopbackCrossProfileService extends ICrossProfileService.Stub {
+
+  private final LoopbackTransport transport;
+  private final IBinder serviceBinder;
+  private final ICrossProfileService service;
+  // Guarded by this
+  private final List<DeathRecipient> deathRecipients = new ArrayList<>();
+  private volatile boolean isDead = false;
+
+  LoopbackCrossProfileService(LoopbackTransport transport, IBinder service) {
+    this.transport = transport;
+    this.serviceBinder = new LoopbackBinder(transport, service);
+    this.service = ICrossProfileService.Stub.asInterface(serviceBinder);
+  }
+
+  /** Simulate the death of the process hosting this service, notifying any death recipients. */
+  void kill() {
+    List<DeathRecipient> recipients;
+    synchronized (this) {
+      if (isDead) {
+        return;
+      }
+      isDead = true;
+      recipients = new ArrayList<>(deathRecipients);
+      deathRecipients.clear();
+    }
+    for (DeathRecipient recipient : recipients) {
+      recipient.binderDied();
+    }
+  }
+
+  @Override
+  public boolean isBinderAlive() {
+    return !isDead;
+  }
+
+  @Override
+  public void linkToDeath(DeathRecipient recipient, int flags) {
+    synchronized (this) {
+      if (!isDead) {
+        deathRecipients.add(recipient);
+        return;
+      }
+    }
+    recipient.binderDied();
+  }
+
+  @Override
+  public boolean unlinkToDeath(DeathRecipient recipient, int flags) {
+    synchronized (this) {
+      return deathRecipients.remove(recipient);
+    }
+  }
+
+  private void checkAlive() throws DeadObjectException {
+    if (isDead) {
+      throw new DeadObjectException();
+    }
+  }
+
+  @Override
+  public void prepareCall(long callId, int blockId, int numBytes, byte[] params)
+      throws RemoteException {
+    checkAlive();
+    service.prepareCall(callId, blockId, numBytes, params);
+  }
+
+  @Override
+  public byte[] call(
+      long callId,
+      int blockId,
+      long crossProfileTypeIdentifier,
+      int methodIdentifier,
+      byte[] params,
+      ICrossProfileCallback callback)
+      throws RemoteException {
+    checkAlive();
+    return service.call(
+        callId,
+        blockId,
+        crossProfileTypeIdentifier,
+        methodIdentifier,
+        params,
+        wrapCallback(callback));
+  }
+
+  @Override
+  public byte[] fetchResponse(long callId, int blockId) throws RemoteException {
+    checkAlive();
+    return service.fetchResponse(callId, blockId);
+  }
+
+  @Override
+  public int getSupportedFeatures() throws RemoteException {
+    checkAlive();
+    return service.getSupportedFeatures();
+  }
+
+  @Override
+  public byte[] callWithCompression(
+      long callId,
+      int blockId,
+      long crossProfileTypeIdentifier,
+      int methodIdentifier,
+      byte[] params,
+      boolean paramsCompressed,
+      ICrossProfileCallback callback)
+      throws RemoteException {
+    checkAlive();
+    return service.callWithCompression(
+        callId,
+        blockId,
+        crossProfileTypeIdentifier,
+        methodIdentifier,
+        params,
+        paramsCompressed,
+        wrapCallback(callback));
+  }
+
+  @Override
+  public boolean onTransact(int code, Parcel data, Parcel reply, int flags)
+      throws RemoteException {
+    if (code != DirectParcelCalls.TRANSACTION_CALL) {
+      return super.onTransact(code, data, reply, flags);
+    }
+    checkAlive();
+
+    data.enforceInterface(DirectParcelCalls.DESCRIPTOR);
+    long callId = data.readLong();
+    long crossProfileTypeIdentifier = data.readLong();
+    int methodIdentifier = data.readInt();
+    ICrossProfileCallback callback =
+        ICrossProfileCallback.Stub.asInterface(data.readStrongBinder());
+
+    // Rewrite the header so that the callback is also wrapped
+    Parcel forwardedData = Parcel.obtain();
+    try {
+      DirectParcelCalls.writeCallHeader(
+          forwardedData,
+          callId,
+          crossProfileTypeIdentifier,
+          methodIdentifier,
+          wrapCallback(callback));
+      forwardedData.appendFrom(data, data.dataPosition(), data.dataAvail());
+      return serviceBinder.transact(code, forwardedData, reply, flags);
+    } finally {
+      forwardedData.recycle();
+    }
+  }
+
+  private ICrossProfileCallback wrapCallback(ICrossProfileCallback callback) {
+    if (callback == null) {
+      return null;
+    }
+    return ICrossProfileCallback.Stub.asInterface(
+        new LoopbackBinder(transport, callback.asBinder()));
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.testing;
+
+import android.os.Parcel;
+import android.os.RemoteException;
+
+/** Notified of each transaction made through a {@link LoopbackBinder}. */
+interface LoopbackTransport {
+
+  /**
+   * Called before {@code data} is delivered.
+   *
+   * @throws RemoteException to fail the transaction
+   */
+  void beforeTransaction(Parcel data) throws RemoteException;
+
+  /**
+   * Called before {@code reply} is returned.
+   *
+   * @throws RemoteException to fail the transaction
+   */
+  void afterTransaction(Parcel reply) throws RemoteException;
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.benchmark;
+
+import com.google.android.enterprise.connectedapps.annotations.CrossProfileConfiguration;
+
+/**
+ * Configuration for the benchmarks.
+ *
+ * <p>This generates the {@code _Service} which benchmarks of the full cross-profile path bind to.
+ */
+@CrossProfileConfiguration(providers = BenchmarkProvider.class)
+public abstract class BenchmarkApplication {
+
+  private BenchmarkApplication() {}
+}
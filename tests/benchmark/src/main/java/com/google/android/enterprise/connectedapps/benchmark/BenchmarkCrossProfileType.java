@@ -0,0 +1,116 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.benchmark;
+
+import android.graphics.Bitmap;
+import com.google.android.enterprise.connectedapps.annotations.CrossProfile;
+import com.google.android.enterprise.connectedapps.testapp.ParcelableObject;
+import com.google.android.enterprise.connectedapps.testapp.SerializableObject;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.Struct;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cross-profile type used by the benchmarks.
+ *
+ * <p>Each method exists so that the generated {@code _Bundler} and parcelable wrappers support the
+ * type being benchmarked.
+ */
+public final class BenchmarkCrossProfileType {
+
+  @CrossProfile
+  public int identityInt(int i) {
+    return i;
+  }
+
+  @CrossProfile
+  public ListenableFuture<Integer> identityIntAsync(int i) {
+    return Futures.immediateFuture(i);
+  }
+
+  @CrossProfile(idempotent = true)
+  public ListenableFuture<Integer> identityIntIdempotentAsync(int i) {
+    return Futures.immediateFuture(i);
+  }
+
+  @CrossProfile
+  public int countParameters(int i, long l, double d, boolean b, Integer boxed, String s) {
+    return 6;
+  }
+
+  @CrossProfile
+  public String identityString(String s) {
+    return s;
+  }
+
+  @CrossProfile
+  public Map<String, List<Integer>> identityNestedGeneric(Map<String, List<Integer>> m) {
+    return m;
+  }
+
+  @CrossProfile
+  public ParcelableObject identityParcelable(ParcelableObject p) {
+    return p;
+  }
+
+  @CrossProfile
+  public List<ParcelableObject> identityListOfParcelable(List<ParcelableObject> l) {
+    return l;
+  }
+
+  @CrossProfile
+  public SerializableObject identitySerializable(SerializableObject s) {
+    return s;
+  }
+
+  @CrossProfile
+  public SerializableNote identitySerializableNote(SerializableNote n) {
+    return n;
+  }
+
+  @CrossProfile
+  public CrossProfileParcelableNote identityCrossProfileParcelableNote(
+      CrossProfileParcelableNote n) {
+    return n;
+  }
+
+  @CrossProfile
+  public Struct identityProto(Struct s) {
+    return s;
+  }
+
+  @CrossProfile
+  public List<String> identityList(List<String> l) {
+    return l;
+  }
+
+  @CrossProfile
+  public Map<String, String> identityMap(Map<String, String> m) {
+    return m;
+  }
+
+  @CrossProfile(internStrings = true)
+  public List<String> identityListInterned(List<String> l) {
+    return l;
+  }
+
+  @CrossProfile
+  public Bitmap identityBitmap(Bitmap b) {
+    return b;
+  }
+}
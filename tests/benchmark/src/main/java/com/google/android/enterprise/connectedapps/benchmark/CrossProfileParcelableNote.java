@@ -0,0 +1,80 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.benchmark;
+
+import com.google.android.enterprise.connectedapps.annotations.CrossProfileParcelable;
+import java.util.List;
+
+/**
+ * The same data transfer object as {@link SerializableNote}, which is passed across profiles by
+ * writing each field.
+ */
+@CrossProfileParcelable
+public final class CrossProfileParcelableNote {
+
+  private final long id;
+  private final String title;
+  private final String body;
+  private final int priority;
+  private final boolean archived;
+  private final long modifiedTimeMillis;
+  private final List<String> tags;
+
+  public CrossProfileParcelableNote(
+      long id,
+      String title,
+      String body,
+      int priority,
+      boolean archived,
+      long modifiedTimeMillis,
+      List<String> tags) {
+    this.id = id;
+    this.title = title;
+    this.body = body;
+    this.priority = priority;
+    this.archived = archived;
+    this.modifiedTimeMillis = modifiedTimeMillis;
+    this.tags = tags;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public String getBody() {
+    return body;
+  }
+
+  public int getPriority() {
+    return priority;
+  }
+
+  public boolean isArchived() {
+    return archived;
+  }
+
+  public long getModifiedTimeMillis() {
+    return modifiedTimeMillis;
+  }
+
+  public List<String> getTags() {
+    return tags;
+  }
+}
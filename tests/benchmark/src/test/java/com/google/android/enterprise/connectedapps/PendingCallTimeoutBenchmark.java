@@ -0,0 +1,123 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps;
+
+import android.os.Build.VERSION_CODES;
+import com.google.android.enterprise.connectedapps.benchmark.BenchmarkRule;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Benchmarks the bookkeeping {@link CrossProfileSender} does for each in-flight async call.
+ *
+ * <p>Each operation completes a random in-flight call, cancelling its timeout and removing it from
+ * the pending calls, and then starts a new one. {@link #IN_FLIGHT_CALLS} calls are kept in flight.
+ *
+ * <p>The {@code scheduledFutureAndDeque} result measures a {@link ScheduledFuture} per call with
+ * calls tracked in a {@link ConcurrentLinkedDeque}, and {@code timeoutSchedulerAndTable} measures
+ * {@link TimeoutScheduler} with calls tracked in a map indexed by call ID.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(minSdk = VERSION_CODES.O)
+public class PendingCallTimeoutBenchmark {
+
+  private static final int IN_FLIGHT_CALLS = 10_000;
+  // Long enough that no timeouts run during the benchmark
+  private static final long TIMEOUT_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  /** An in-flight call which can be compared by identity, as CrossProfileSender's calls were. */
+  private static final class Call {
+    private final long id;
+    private ScheduledFuture<?> timeoutFuture;
+    private TimeoutScheduler.Timeout timeout;
+
+    private Call(long id) {
+      this.id = id;
+    }
+  }
+
+  @Rule public final BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+  private final ScheduledThreadPoolExecutor scheduledExecutorService =
+      new ScheduledThreadPoolExecutor(/* corePoolSize= */ 1);
+  private final Random random = new Random(/* seed= */ 0);
+  private final Call[] calls = new Call[IN_FLIGHT_CALLS];
+  private long nextCallId = 0;
+
+  @After
+  public void shutdownExecutor() {
+    scheduledExecutorService.shutdownNow();
+  }
+
+  @Test
+  public void completeAndStartCall() throws Exception {
+    ConcurrentLinkedDeque<Call> deque = new ConcurrentLinkedDeque<>();
+    for (int i = 0; i < IN_FLIGHT_CALLS; i++) {
+      calls[i] = startScheduledFutureCall(deque);
+    }
+    benchmarkRule.measure(
+        "scheduledFutureAndDeque",
+        () -> {
+          int index = random.nextInt(IN_FLIGHT_CALLS);
+          Call call = calls[index];
+          call.timeoutFuture.cancel(/* mayInterruptIfRunning= */ true);
+          deque.removeFirstOccurrence(call);
+          calls[index] = startScheduledFutureCall(deque);
+        });
+    scheduledExecutorService.getQueue().clear();
+
+    TimeoutScheduler timeoutScheduler = new TimeoutScheduler(scheduledExecutorService);
+    Map<Long, Call> table = new ConcurrentHashMap<>();
+    for (int i = 0; i < IN_FLIGHT_CALLS; i++) {
+      calls[i] = startTimeoutSchedulerCall(timeoutScheduler, table);
+    }
+    benchmarkRule.measure(
+        "timeoutSchedulerAndTable",
+        () -> {
+          int index = random.nextInt(IN_FLIGHT_CALLS);
+          Call call = calls[index];
+          call.timeout.cancel();
+          table.remove(call.id);
+          calls[index] = startTimeoutSchedulerCall(timeoutScheduler, table);
+        });
+  }
+
+  private Call startScheduledFutureCall(ConcurrentLinkedDeque<Call> deque) {
+    Call call = new Call(nextCallId++);
+    deque.add(call);
+    call.timeoutFuture =
+        scheduledExecutorService.schedule(() -> {}, TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    return call;
+  }
+
+  private Call startTimeoutSchedulerCall(TimeoutScheduler timeoutScheduler, Map<Long, Call> table) {
+    Call call = new Call(nextCallId++);
+    table.put(call.id, call);
+    call.timeout = timeoutScheduler.schedule(() -> {}, TIMEOUT_MILLIS);
+    return call;
+  }
+}
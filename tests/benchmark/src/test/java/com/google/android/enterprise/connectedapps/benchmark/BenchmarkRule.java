@@ -0,0 +1,146 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * Measures the throughput and allocation of benchmarked operations.
+ *
+ * <p>Each call to {@link #measure(String, Operation)} runs the operation repeatedly for a warmup
+ * period, and then for a measurement period, reporting operations per second and bytes allocated
+ * per operation on the calling thread.
+ *
+ * <p>Results are printed, and also written as CSV to {@code <resultsDir>/<TestClass>.csv} when the
+ * {@code connectedapps.benchmark.resultsDir} system property is set. The warmup and measurement
+ * periods can be changed using the {@code connectedapps.benchmark.warmupMillis} and {@code
+ * connectedapps.benchmark.measureMillis} system properties.
+ *
+ * <p>When run with Robolectric, framework classes such as {@link android.os.Parcel} are shadowed,
+ * so absolute numbers will differ from a device. Relative changes in SDK and generated code are
+ * still visible.
+ */
+public final class BenchmarkRule implements TestRule {
+
+  /** An operation to be benchmarked. */
+  public interface Operation {
+    void run() throws Exception;
+  }
+
+  private static final String RESULTS_DIR_PROPERTY = "connectedapps.benchmark.resultsDir";
+  private static final long DEFAULT_WARMUP_MILLIS = 500;
+  private static final long DEFAULT_MEASURE_MILLIS = 2000;
+
+  private final long warmupMillis =
+      Long.getLong("connectedapps.benchmark.warmupMillis", DEFAULT_WARMUP_MILLIS);
+  private final long measureMillis =
+      Long.getLong("connectedapps.benchmark.measureMillis", DEFAULT_MEASURE_MILLIS);
+  private final List<String> results = new ArrayList<>();
+  private Description description;
+
+  @Override
+  public Statement apply(Statement base, Description description) {
+    return new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        BenchmarkRule.this.description = description;
+        base.evaluate();
+        writeResults();
+      }
+    };
+  }
+
+  /**
+   * Benchmark {@code operation}.
+   *
+   * @param name Used to identify the result, and should be unique within the test method
+   */
+  public void measure(String name, Operation operation) throws Exception {
+    runFor(operation, warmupMillis);
+
+    long startAllocatedBytes = currentThreadAllocatedBytes();
+    long startNanos = System.nanoTime();
+    long operations = runFor(operation, measureMillis);
+    long elapsedNanos = System.nanoTime() - startNanos;
+    long allocatedBytes = currentThreadAllocatedBytes() - startAllocatedBytes;
+
+    double operationsPerSecond = operations * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    long bytesPerOperation = startAllocatedBytes < 0 ? -1 : allocatedBytes / operations;
+
+    String fullName = description.getMethodName() + "/" + name;
+    System.out.println(
+        String.format(
+            Locale.US,
+            "%s#%s: %,.1f ops/s, %,d B/op",
+            description.getTestClass().getSimpleName(),
+            fullName,
+            operationsPerSecond,
+            bytesPerOperation));
+    results.add(
+        String.format(Locale.US, "%s,%.1f,%d", fullName, operationsPerSecond, bytesPerOperation));
+  }
+
+  private static long runFor(Operation operation, long millis) throws Exception {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    long operations = 0;
+    do {
+      operation.run();
+      operations++;
+    } while (System.nanoTime() < deadline);
+    return operations;
+  }
+
+  /** Returns the number of bytes allocated by this thread, or -1 if this is not supported. */
+  private static long currentThreadAllocatedBytes() {
+    ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+      return -1;
+    }
+    return ((com.sun.management.ThreadMXBean) threadMXBean)
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private void writeResults() throws IOException {
+    String resultsDir = System.getProperty(RESULTS_DIR_PROPERTY);
+    if (resultsDir == null || results.isEmpty()) {
+      return;
+    }
+
+    File file = new File(resultsDir, description.getTestClass().getSimpleName() + ".csv");
+    file.getParentFile().mkdirs();
+    boolean isNewFile = !file.exists();
+    try (PrintWriter out = new PrintWriter(new FileWriter(file, /* append= */ true))) {
+      if (isNewFile) {
+        out.println("benchmark,opsPerSecond,bytesPerOp");
+      }
+      for (String result : results) {
+        out.println(result);
+      }
+    }
+  }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.benchmark;
+
+import android.os.Build.VERSION_CODES;
+import android.os.Parcel;
+import com.google.android.enterprise.connectedapps.internal.Bundler;
+import com.google.android.enterprise.connectedapps.internal.BundlerType;
+import com.google.android.enterprise.connectedapps.internal.StringTable;
+import com.google.android.enterprise.connectedapps.testapp.ParcelableObject;
+import com.google.android.enterprise.connectedapps.testapp.SerializableObject;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/** Benchmarks writing and reading values using a generated {@code _Bundler}. */
+@RunWith(RobolectricTestRunner.class)
+@Config(minSdk = VERSION_CODES.O)
+public class BundlerBenchmark {
+
+  private static final String SMALL_STRING = "Hello World";
+  private static final String LARGE_STRING = repeat("0123456789", 10_000);
+
+  @Rule public final BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+  private final Bundler bundler = new ProfileBenchmarkCrossProfileType_Bundler();
+
+  @Test
+  public void primitive() throws Exception {
+    measureRoundTrip("int", 42, BundlerType.of("java.lang.Integer"));
+  }
+
+  @Test
+  public void string() throws Exception {
+    measureRoundTrip("small", SMALL_STRING, BundlerType.of("java.lang.String"));
+    measureRoundTrip("large", LARGE_STRING, BundlerType.of("java.lang.String"));
+  }
+
+  @Test
+  public void nestedGeneric() throws Exception {
+    Map<String, List<Integer>> value = new HashMap<>();
+    for (int i = 0; i < 100; i++) {
+      List<Integer> list = new ArrayList<>();
+      for (int j = 0; j < 10; j++) {
+        list.add(j);
+      }
+      value.put("key" + i, list);
+    }
+
+    measureRoundTrip(
+        "map100OfList10",
+        value,
+        BundlerType.of(
+            "java.util.Map",
+            BundlerType.of("java.lang.String"),
+            BundlerType.of("java.util.List", BundlerType.of("java.lang.Integer"))));
+  }
+
+  @Test
+  public void parcelable() throws Exception {
+    measureRoundTrip(
+        "small",
+        new ParcelableObject(SMALL_STRING),
+        BundlerType.of("com.google.android.enterprise.connectedapps.testapp.ParcelableObject"));
+    measureRoundTrip(
+        "large",
+        new ParcelableObject(LARGE_STRING),
+        BundlerType.of("com.google.android.enterprise.connectedapps.testapp.ParcelableObject"));
+  }
+
+  @Test
+  public void listOfParcelable() throws Exception {
+    List<ParcelableObject> list = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      list.add(new ParcelableObject(SMALL_STRING));
+    }
+    BundlerType listType =
+        BundlerType.of(
+            "java.util.List",
+            BundlerType.of("com.google.android.enterprise.connectedapps.testapp.ParcelableObject"));
+
+    measureRoundTrip("size10000", list, listType);
+
+    System.out.println(
+        String.format(
+            Locale.US,
+            "BundlerBenchmark#listOfParcelable: size10000 %,d bytes",
+            parcelledSize(list, listType)));
+  }
+
+  @Test
+  public void repeatedStrings() throws Exception {
+    List<String> list = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      // Distinct instances, as they would be after being read from a database
+      list.add(new String("account" + (i % 20) + "@example.com"));
+    }
+    BundlerType listType = BundlerType.of("java.util.List", BundlerType.of("java.lang.String"));
+
+    measureRoundTrip("plain", list, listType);
+    measureInternedRoundTrip("interned", list, listType);
+
+    Parcel parcel = Parcel.obtain();
+    StringTable.writeToParcel(bundler, parcel, list, listType, /* flags= */ 0);
+    int internedSize = parcel.dataSize();
+    parcel.recycle();
+    System.out.println(
+        String.format(
+            Locale.US,
+            "BundlerBenchmark#repeatedStrings: plain %,d bytes, interned %,d bytes",
+            parcelledSize(list, listType),
+            internedSize));
+  }
+
+  @Test
+  public void serializable() throws Exception {
+    measureRoundTrip(
+        "small",
+        new SerializableObject(SMALL_STRING),
+        BundlerType.of("com.google.android.enterprise.connectedapps.testapp.SerializableObject"));
+    measureRoundTrip(
+        "large",
+        new SerializableObject(LARGE_STRING),
+        BundlerType.of("com.google.android.enterprise.connectedapps.testapp.SerializableObject"));
+  }
+
+  @Test
+  public void dataTransferObject() throws Exception {
+    List<String> tags = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      tags.add("tag" + i);
+    }
+
+    Object serializableNote =
+        new SerializableNote(
+            /* id= */ 1234,
+            SMALL_STRING,
+            SMALL_STRING,
+            /* priority= */ 2,
+            /* archived= */ false,
+            /* modifiedTimeMillis= */ 1600000000000L,
+            tags);
+    BundlerType serializableNoteType =
+        BundlerType.of("com.google.android.enterprise.connectedapps.benchmark.SerializableNote");
+    Object crossProfileParcelableNote =
+        new CrossProfileParcelableNote(
+            /* id= */ 1234,
+            SMALL_STRING,
+            SMALL_STRING,
+            /* priority= */ 2,
+            /* archived= */ false,
+            /* modifiedTimeMillis= */ 1600000000000L,
+            tags);
+    BundlerType crossProfileParcelableNoteType =
+        BundlerType.of(
+            "com.google.android.enterprise.connectedapps.benchmark.CrossProfileParcelableNote");
+
+    measureRoundTrip("serializable", serializableNote, serializableNoteType);
+    measureRoundTrip(
+        "crossProfileParcelable", crossProfileParcelableNote, crossProfileParcelableNoteType);
+
+    System.out.println(
+        String.format(
+            Locale.US,
+            "BundlerBenchmark#dataTransferObject: serializable %,d bytes, crossProfileParcelable"
+                + " %,d bytes",
+            parcelledSize(serializableNote, serializableNoteType),
+            parcelledSize(crossProfileParcelableNote, crossProfileParcelableNoteType)));
+  }
+
+  @Test
+  public void proto() throws Exception {
+    measureRoundTrip("small", createStruct(1), BundlerType.of("com.google.protobuf.Struct"));
+    measureRoundTrip("large", createStruct(1000), BundlerType.of("com.google.protobuf.Struct"));
+  }
+
+  private void measureRoundTrip(String name, Object value, BundlerType valueType)
+      throws Exception {
+    benchmarkRule.measure(
+        name,
+        () -> {
+          Parcel parcel = Parcel.obtain();
+          bundler.writeToParcel(parcel, value, valueType, /* flags= */ 0);
+          parcel.setDataPosition(0);
+          bundler.readFromParcel(parcel, valueType);
+          parcel.recycle();
+        });
+  }
+
+  private void measureInternedRoundTrip(String name, Object value, BundlerType valueType)
+      throws Exception {
+    benchmarkRule.measure(
+        name,
+        () -> {
+          Parcel parcel = Parcel.obtain();
+          StringTable.writeToParcel(bundler, parcel, value, valueType, /* flags= */ 0);
+          parcel.setDataPosition(0);
+          StringTable.readFromParcel(bundler, parcel, valueType);
+          parcel.recycle();
+        });
+  }
+
+  private int parcelledSize(Object value, BundlerType valueType) {
+    Parcel parcel = Parcel.obtain();
+    bundler.writeToParcel(parcel, value, valueType, /* flags= */ 0);
+    int size = parcel.dataSize();
+    parcel.recycle();
+    return size;
+  }
+
+  private static Struct createStruct(int numberOfFields) {
+    Struct.Builder struct = Struct.newBuilder();
+    for (int i = 0; i < numberOfFields; i++) {
+      struct.putFields("field" + i, Value.newBuilder().setStringValue(SMALL_STRING).build());
+    }
+    return struct.build();
+  }
+
+  private static String repeat(String s, int times) {
+    StringBuilder result = new StringBuilder(s.length() * times);
+    for (int i = 0; i < times; i++) {
+      result.append(s);
+    }
+    return result.toString();
+  }
+}
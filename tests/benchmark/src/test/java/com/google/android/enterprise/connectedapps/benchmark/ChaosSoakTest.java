@@ -0,0 +1,177 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.benchmark;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import android.content.Context;
+import android.os.Build.VERSION_CODES;
+import android.os.IBinder;
+import androidx.test.core.app.ApplicationProvider;
+import com.google.android.enterprise.connectedapps.CrossProfileConnector;
+import com.google.android.enterprise.connectedapps.CrossProfileConnector_Service;
+import com.google.android.enterprise.connectedapps.testing.ChaosConnectionBinder;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Soak tests of asynchronous cross-profile calls through a {@link ChaosConnectionBinder}.
+ *
+ * <p>Each test makes many calls while faults are injected, reporting the failure rate and tail
+ * latency. Calls use automatic connection management, so they exercise binding, rebinding,
+ * retries, and timeouts in {@code CrossProfileSender}.
+ *
+ * <p>Apart from the baseline, these only assert that every call completes. The reported failure
+ * rates and latencies are for comparison between changes.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(minSdk = VERSION_CODES.O)
+public class ChaosSoakTest {
+
+  private static final int RUNS = 500;
+  private static final int THREADS = 4;
+  // Longer than the default async call timeout, so a call which never completes is detected
+  private static final long CALL_TIMEOUT_SECONDS = 30;
+
+  @Rule public final SoakRule soakRule = new SoakRule();
+
+  private final Context context = ApplicationProvider.getApplicationContext();
+  private final ScheduledThreadPoolExecutor scheduledExecutorService =
+      new ScheduledThreadPoolExecutor(/* corePoolSize= */ 2);
+  private ChaosConnectionBinder binder;
+  private ProfileBenchmarkCrossProfileType benchmarkType;
+
+  @Before
+  public void setUp() {
+    IBinder service =
+        Robolectric.setupService(CrossProfileConnector_Service.class).onBind(/* intent= */ null);
+    binder = new ChaosConnectionBinder(service, scheduledExecutorService);
+    CrossProfileConnector connector =
+        CrossProfileConnector.builder(context)
+            .setScheduledExecutorService(scheduledExecutorService)
+            .setBinder(binder)
+            .build();
+    benchmarkType = ProfileBenchmarkCrossProfileType.create(connector);
+  }
+
+  @After
+  public void tearDown() {
+    scheduledExecutorService.shutdownNow();
+  }
+
+  @Test
+  public void baseline() throws Exception {
+    SoakRule.Result result = soak("async", RUNS);
+
+    assertThat(result.failureCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void transactionLatency() throws Exception {
+    binder.setTransactionDelayMillis(0, 10);
+
+    assertAllCompleted(soak("async", RUNS));
+  }
+
+  @Test
+  public void slowBinds() throws Exception {
+    binder.setBindDelayMillis(0, 200);
+    binder.setBindFailureProbability(0.2);
+
+    // Disconnect regularly so that calls have to wait for a new binding
+    ScheduledFuture<?> killer =
+        scheduledExecutorService.scheduleAtFixedRate(
+            binder::killProcess, 100, 100, MILLISECONDS);
+    try {
+      assertAllCompleted(soak("async", RUNS));
+    } finally {
+      killer.cancel(/* mayInterruptIfRunning= */ false);
+    }
+  }
+
+  @Test
+  public void droppedTransactions() throws Exception {
+    binder.setDeadObjectProbability(0.02);
+
+    assertAllCompleted(soak("async", RUNS));
+  }
+
+  @Test
+  public void transactionTooLargeStorms() throws Exception {
+    // Longer storms outlast the retries made for each transaction
+    binder.setTransactionTooLargeProbability(0.01, /* stormLength= */ 5);
+    assertAllCompleted(soak("shortStorms", RUNS));
+
+    binder.setTransactionTooLargeProbability(0.01, /* stormLength= */ 50);
+    assertAllCompleted(soak("longStorms", RUNS));
+  }
+
+  @Test
+  public void processDeath() throws Exception {
+    binder.setProcessDeathProbability(0.01);
+
+    assertAllCompleted(soak("async", RUNS));
+    assertAllCompleted(soak("idempotent", RUNS, /* idempotent= */ true));
+  }
+
+  @Test
+  public void flappingAvailability() throws Exception {
+    binder.setBindDelayMillis(0, 20);
+
+    ScheduledFuture<?> flapper =
+        scheduledExecutorService.scheduleAtFixedRate(
+            () -> binder.setAvailable(!binder.isAvailable()), 50, 50, MILLISECONDS);
+    try {
+      assertAllCompleted(soak("async", RUNS));
+      assertAllCompleted(soak("idempotent", RUNS, /* idempotent= */ true));
+    } finally {
+      flapper.cancel(/* mayInterruptIfRunning= */ false);
+    }
+  }
+
+  private SoakRule.Result soak(String name, int runs) throws InterruptedException {
+    return soak(name, runs, /* idempotent= */ false);
+  }
+
+  private SoakRule.Result soak(String name, int runs, boolean idempotent)
+      throws InterruptedException {
+    return soakRule.soak(
+        name,
+        runs,
+        THREADS,
+        () -> {
+          if (idempotent) {
+            benchmarkType.other().identityIntIdempotentAsync(42).get(CALL_TIMEOUT_SECONDS, SECONDS);
+          } else {
+            benchmarkType.other().identityIntAsync(42).get(CALL_TIMEOUT_SECONDS, SECONDS);
+          }
+        });
+  }
+
+  private static void assertAllCompleted(SoakRule.Result result) {
+    assertThat(result.failures()).doesNotContainKey("TimeoutException");
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.benchmark;
+
+import android.content.Context;
+import android.os.Build.VERSION_CODES;
+import android.os.IBinder;
+import androidx.test.core.app.ApplicationProvider;
+import com.google.android.enterprise.connectedapps.CrossProfileConnector;
+import com.google.android.enterprise.connectedapps.CrossProfileConnector_Service;
+import com.google.android.enterprise.connectedapps.internal.ServiceWarmUp;
+import com.google.android.enterprise.connectedapps.testing.LoopbackConnectionBinder;
+import java.util.Locale;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Measures the latency of the first cross-profile call received by a process.
+ *
+ * <p>The first call is slower than later calls as it constructs providers and loads the generated
+ * classes used to dispatch it. When the processor is run with {@code -Aconnectedapps.warmUp=true}
+ * the generated service does this on a background thread when it is created.
+ *
+ * <p>After creating the service this waits for up to {@code
+ * connectedapps.benchmark.warmUpWaitMillis} (default 1,000) for warm-up to complete, to model the
+ * time between the service being bound and the first call arriving, and then makes one call. It
+ * prints the latency seen by the caller and recorded by the receiving dispatcher. The dispatcher
+ * only records latency when warm-up is enabled, so the caller latency is used to compare modes.
+ *
+ * <p>The first call can only be measured once per process, so the benchmark build runs each test
+ * class in its own JVM. Run this once with and once without {@code
+ * -Pconnectedapps.benchmark.warmUp=true}, which passes the processor option, and with {@code
+ * -Pconnectedapps.benchmark.warmUpWaitMillis} to change the wait.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(minSdk = VERSION_CODES.O)
+public class FirstCallBenchmark {
+
+  private static final long WARM_UP_WAIT_MILLIS =
+      Long.getLong("connectedapps.benchmark.warmUpWaitMillis", 1000);
+
+  private final Context context = ApplicationProvider.getApplicationContext();
+  private final ScheduledThreadPoolExecutor scheduledExecutorService =
+      new ScheduledThreadPoolExecutor(/* corePoolSize= */ 1);
+  private CrossProfileConnector connector;
+
+  @After
+  public void disconnect() {
+    connector.stopManualConnectionManagement();
+    scheduledExecutorService.shutdownNow();
+  }
+
+  @Test
+  public void firstCall() throws Exception {
+    IBinder service =
+        Robolectric.setupService(CrossProfileConnector_Service.class).onBind(/* intent= */ null);
+    connector =
+        CrossProfileConnector.builder(context)
+            .setScheduledExecutorService(scheduledExecutorService)
+            .setBinder(new LoopbackConnectionBinder(service))
+            .build();
+    ProfileBenchmarkCrossProfileType benchmarkType =
+        ProfileBenchmarkCrossProfileType.create(connector);
+
+    // connect() cannot be used on the test thread as it is the UI thread
+    connector.startConnecting();
+    while (!connector.isConnected()) {
+      Thread.sleep(1);
+    }
+
+    // Without warm-up this always waits for the full time, so both modes wait for the same time
+    long waitUntilMillis = System.currentTimeMillis() + WARM_UP_WAIT_MILLIS;
+    while (!ServiceWarmUp.instance().isWarmUpComplete()
+        && System.currentTimeMillis() < waitUntilMillis) {
+      Thread.sleep(1);
+    }
+
+    long startNanos = System.nanoTime();
+    benchmarkType.other().identityInt(42);
+    long callerMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+
+    ServiceWarmUp serviceWarmUp = ServiceWarmUp.instance();
+    System.out.println(
+        String.format(
+            Locale.US,
+            "FirstCallBenchmark#firstCall/%s: caller %,d us, dispatcher %,d us (warm-up %,d us,"
+                + " completed before first call: %b)",
+            serviceWarmUp.isWarmUpComplete() ? "warmUp" : "noWarmUp",
+            callerMicros,
+            serviceWarmUp.getFirstCallLatencyMicros(),
+            serviceWarmUp.getWarmUpMicros(),
+            serviceWarmUp.wasFirstCallAfterWarmUp()));
+  }
+}
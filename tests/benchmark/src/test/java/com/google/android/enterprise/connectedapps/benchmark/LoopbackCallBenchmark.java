@@ -0,0 +1,110 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.benchmark;
+
+import android.content.Context;
+import android.os.Build.VERSION_CODES;
+import android.os.IBinder;
+import androidx.test.core.app.ApplicationProvider;
+import com.google.android.enterprise.connectedapps.CrossProfileConnector;
+import com.google.android.enterprise.connectedapps.CrossProfileConnector_Service;
+import com.google.android.enterprise.connectedapps.testing.LoopbackConnectionBinder;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Benchmarks synchronous cross-profile calls through {@link LoopbackConnectionBinder}.
+ *
+ * <p>Each operation is a full round trip through {@code CrossProfileSender}, the generated {@code
+ * _Service} and {@code _Dispatcher}, and the provided type, with all parameters and results
+ * serialized as they would be between profiles.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(minSdk = VERSION_CODES.O)
+public class LoopbackCallBenchmark {
+
+  private static final String SMALL_STRING = "Hello World";
+  private static final String LARGE_STRING = repeat("0123456789", 100_000);
+
+  @Rule public final BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+  private final Context context = ApplicationProvider.getApplicationContext();
+  private final ScheduledThreadPoolExecutor scheduledExecutorService =
+      new ScheduledThreadPoolExecutor(/* corePoolSize= */ 1);
+  private CrossProfileConnector connector;
+  private ProfileBenchmarkCrossProfileType benchmarkType;
+
+  @Before
+  public void connect() throws Exception {
+    IBinder service =
+        Robolectric.setupService(CrossProfileConnector_Service.class).onBind(/* intent= */ null);
+    connector =
+        CrossProfileConnector.builder(context)
+            .setScheduledExecutorService(scheduledExecutorService)
+            .setBinder(new LoopbackConnectionBinder(service))
+            .build();
+    benchmarkType = ProfileBenchmarkCrossProfileType.create(connector);
+
+    // connect() cannot be used on the test thread as it is the UI thread
+    connector.startConnecting();
+    while (!connector.isConnected()) {
+      Thread.sleep(1);
+    }
+  }
+
+  @After
+  public void disconnect() {
+    connector.stopManualConnectionManagement();
+    scheduledExecutorService.shutdownNow();
+  }
+
+  @Test
+  public void primitive() throws Exception {
+    benchmarkRule.measure("int", () -> benchmarkType.other().identityInt(42));
+  }
+
+  @Test
+  public void primitiveParameters() throws Exception {
+    benchmarkRule.measure(
+        "six",
+        () ->
+            benchmarkType
+                .other()
+                .countParameters(42, 42L, 4.2, true, /* boxed= */ 42, SMALL_STRING));
+  }
+
+  @Test
+  public void string() throws Exception {
+    benchmarkRule.measure("small", () -> benchmarkType.other().identityString(SMALL_STRING));
+    // Larger than a single block, so this is split into multiple transactions in each direction
+    benchmarkRule.measure("large", () -> benchmarkType.other().identityString(LARGE_STRING));
+  }
+
+  private static String repeat(String s, int times) {
+    StringBuilder builder = new StringBuilder(s.length() * times);
+    for (int i = 0; i < times; i++) {
+      builder.append(s);
+    }
+    return builder.toString();
+  }
+}
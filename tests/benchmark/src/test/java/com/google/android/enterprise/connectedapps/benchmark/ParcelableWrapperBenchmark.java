@@ -0,0 +1,102 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.benchmark;
+
+import android.graphics.Bitmap;
+import android.os.Build.VERSION_CODES;
+import android.os.Parcel;
+import com.google.android.enterprise.connectedapps.internal.Bundler;
+import com.google.android.enterprise.connectedapps.internal.BundlerType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Benchmarks the generated parcelable wrappers ({@code ParcelableList}, {@code ParcelableMap} and
+ * {@code ParcelableBitmap}).
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(minSdk = VERSION_CODES.O)
+public class ParcelableWrapperBenchmark {
+
+  private static final int[] COLLECTION_SIZES = {10, 1000};
+  private static final int[] BITMAP_SIZES = {64, 512};
+
+  @Rule public final BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+  private final Bundler bundler = new ProfileBenchmarkCrossProfileType_Bundler();
+
+  @Test
+  public void parcelableList() throws Exception {
+    for (int size : COLLECTION_SIZES) {
+      List<String> list = new ArrayList<>();
+      for (int i = 0; i < size; i++) {
+        list.add("value" + i);
+      }
+
+      measureRoundTrip(
+          "size" + size,
+          list,
+          BundlerType.of("java.util.List", BundlerType.of("java.lang.String")));
+    }
+  }
+
+  @Test
+  public void parcelableMap() throws Exception {
+    for (int size : COLLECTION_SIZES) {
+      Map<String, String> map = new HashMap<>();
+      for (int i = 0; i < size; i++) {
+        map.put("key" + i, "value" + i);
+      }
+
+      measureRoundTrip(
+          "size" + size,
+          map,
+          BundlerType.of(
+              "java.util.Map",
+              BundlerType.of("java.lang.String"),
+              BundlerType.of("java.lang.String")));
+    }
+  }
+
+  @Test
+  public void parcelableBitmap() throws Exception {
+    for (int size : BITMAP_SIZES) {
+      Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+
+      measureRoundTrip(size + "x" + size, bitmap, BundlerType.of("android.graphics.Bitmap"));
+    }
+  }
+
+  private void measureRoundTrip(String name, Object value, BundlerType valueType)
+      throws Exception {
+    benchmarkRule.measure(
+        name,
+        () -> {
+          Parcel parcel = Parcel.obtain();
+          bundler.writeToParcel(parcel, value, valueType, /* flags= */ 0);
+          parcel.setDataPosition(0);
+          bundler.readFromParcel(parcel, valueType);
+          parcel.recycle();
+        });
+  }
+}
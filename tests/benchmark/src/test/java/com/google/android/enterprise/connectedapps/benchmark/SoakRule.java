@@ -0,0 +1,228 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.benchmark;
+
+import com.google.android.enterprise.connectedapps.benchmark.BenchmarkRule.Operation;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * Measures the latency and failure rate of operations run many times, usually against a faulty
+ * connection.
+ *
+ * <p>Each call to {@link #soak(String, int, Operation)} runs the operation a fixed number of times
+ * across a number of threads, and reports the failure rate, the most common failures, and latency
+ * percentiles across all runs, including failed ones.
+ *
+ * <p>Results are printed, and also written as CSV to {@code <resultsDir>/<TestClass>.csv} when the
+ * {@code connectedapps.benchmark.resultsDir} system property is set. The number of runs can be
+ * scaled using the {@code connectedapps.benchmark.soakMultiplier} system property.
+ */
+public final class SoakRule implements TestRule {
+
+  /** The outcome of a call to {@link #soak(String, int, Operation)}. */
+  public static final class Result {
+    private final long[] latencyNanos;
+    private final Map<String, Integer> failures;
+    private final int failureCount;
+
+    private Result(long[] latencyNanos, Map<String, Integer> failures) {
+      this.latencyNanos = latencyNanos;
+      this.failures = failures;
+      int count = 0;
+      for (int value : failures.values()) {
+        count += value;
+      }
+      this.failureCount = count;
+    }
+
+    public int runs() {
+      return latencyNanos.length;
+    }
+
+    public int failureCount() {
+      return failureCount;
+    }
+
+    public double failureRate() {
+      return (double) failureCount / latencyNanos.length;
+    }
+
+    /** The number of failures of each exception type, keyed by the simple name of the type. */
+    public Map<String, Integer> failures() {
+      return Collections.unmodifiableMap(failures);
+    }
+
+    /** Get the latency at {@code percentile}, between 0 and 100, in milliseconds. */
+    public double latencyMillis(double percentile) {
+      int index = (int) Math.ceil(percentile / 100 * latencyNanos.length) - 1;
+      index = Math.max(0, Math.min(latencyNanos.length - 1, index));
+      return latencyNanos[index] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+  }
+
+  private static final String RESULTS_DIR_PROPERTY = "connectedapps.benchmark.resultsDir";
+
+  private final double multiplier =
+      Double.parseDouble(System.getProperty("connectedapps.benchmark.soakMultiplier", "1"));
+  private final List<String> results = new ArrayList<>();
+  private Description description;
+
+  @Override
+  public Statement apply(Statement base, Description description) {
+    return new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        SoakRule.this.description = description;
+        base.evaluate();
+        writeResults();
+      }
+    };
+  }
+
+  /**
+   * Run {@code operation} {@code runs} times on a single thread.
+   *
+   * @param name Used to identify the result, and should be unique within the test method
+   */
+  public Result soak(String name, int runs, Operation operation) throws InterruptedException {
+    return soak(name, runs, /* threads= */ 1, operation);
+  }
+
+  /**
+   * Run {@code operation} {@code runs} times, split across {@code threads} threads.
+   *
+   * <p>An exception thrown by {@code operation} is counted as a failure.
+   *
+   * @param name Used to identify the result, and should be unique within the test method
+   */
+  public Result soak(String name, int runs, int threads, Operation operation)
+      throws InterruptedException {
+    int scaledRuns = Math.max(threads, (int) (runs * multiplier));
+    long[] latencyNanos = new long[scaledRuns];
+    String[] failures = new String[scaledRuns];
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<?>> workers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      int firstRun = t;
+      workers.add(
+          executor.submit(
+              () -> {
+                for (int run = firstRun; run < scaledRuns; run += threads) {
+                  long startNanos = System.nanoTime();
+                  try {
+                    operation.run();
+                  } catch (Exception e) {
+                    failures[run] = rootCause(e).getClass().getSimpleName();
+                  }
+                  latencyNanos[run] = System.nanoTime() - startNanos;
+                }
+              }));
+    }
+    try {
+      for (Future<?> worker : workers) {
+        worker.get();
+      }
+    } catch (ExecutionException e) {
+      throw new AssertionError("Soak worker failed", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+
+    Map<String, Integer> failureCounts = new TreeMap<>();
+    for (String failure : failures) {
+      if (failure != null) {
+        failureCounts.merge(failure, 1, Integer::sum);
+      }
+    }
+    Arrays.sort(latencyNanos);
+    Result result = new Result(latencyNanos, failureCounts);
+    report(name, result);
+    return result;
+  }
+
+  private void report(String name, Result result) {
+    String fullName = description.getMethodName() + "/" + name;
+    System.out.println(
+        String.format(
+            Locale.US,
+            "%s#%s: %,d runs, %.2f%% failed %s, p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms",
+            description.getTestClass().getSimpleName(),
+            fullName,
+            result.runs(),
+            result.failureRate() * 100,
+            result.failures(),
+            result.latencyMillis(50),
+            result.latencyMillis(90),
+            result.latencyMillis(99),
+            result.latencyMillis(100)));
+    results.add(
+        String.format(
+            Locale.US,
+            "%s,%d,%.4f,%.3f,%.3f,%.3f,%.3f",
+            fullName,
+            result.runs(),
+            result.failureRate(),
+            result.latencyMillis(50),
+            result.latencyMillis(90),
+            result.latencyMillis(99),
+            result.latencyMillis(100)));
+  }
+
+  private static Throwable rootCause(Throwable throwable) {
+    while (throwable instanceof ExecutionException && throwable.getCause() != null) {
+      throwable = throwable.getCause();
+    }
+    return throwable;
+  }
+
+  private void writeResults() throws IOException {
+    String resultsDir = System.getProperty(RESULTS_DIR_PROPERTY);
+    if (resultsDir == null || results.isEmpty()) {
+      return;
+    }
+
+    File file = new File(resultsDir, description.getTestClass().getSimpleName() + ".csv");
+    file.getParentFile().mkdirs();
+    boolean isNewFile = !file.exists();
+    try (PrintWriter out = new PrintWriter(new FileWriter(file, /* append= */ true))) {
+      if (isNewFile) {
+        out.println("soak,runs,failureRate,p50Millis,p90Millis,p99Millis,maxMillis");
+      }
+      for (String result : results) {
+        out.println(result);
+      }
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.internal;
+
+import android.os.Build.VERSION_CODES;
+import android.os.Parcel;
+import com.google.android.enterprise.connectedapps.benchmark.BenchmarkRule;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Benchmarks {@link ParcelCallSender#makeParcelCall(Parcel)} and {@link ParcelCallReceiver}.
+ *
+ * <p>Calls are echoed back, so each operation splits the payload into blocks, reassembles it, and
+ * then does the same for the response.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(minSdk = VERSION_CODES.O)
+public class ParcelCallBenchmark {
+
+  private static final int[] PAYLOAD_SIZES = {100, 10_000, 250_000, 1_000_000, 4_000_000};
+
+  /** A {@link ParcelCallSender} which returns the parameters it is passed as the response. */
+  private static final class EchoParcelCallSender extends ParcelCallSender {
+
+    private final ParcelCallReceiver parcelCallReceiver = new ParcelCallReceiver();
+
+    @Override
+    void prepareCall(long callId, int blockId, int totalBytes, byte[] bytes) {
+      parcelCallReceiver.prepareCall(callId, blockId, totalBytes, bytes);
+    }
+
+    @Override
+    byte[] call(long callId, int blockId, byte[] bytes) {
+      Parcel parcel = parcelCallReceiver.getPreparedCall(callId, blockId, bytes);
+      byte[] response = parcelCallReceiver.prepareResponse(callId, parcel);
+      parcel.recycle();
+      return response;
+    }
+
+    @Override
+    byte[] fetchResponse(long callId, int blockId) {
+      return parcelCallReceiver.getPreparedResponse(callId, blockId);
+    }
+  }
+
+  @Rule public final BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+  private final EchoParcelCallSender parcelCallSender = new EchoParcelCallSender();
+  private final Parcel params = Parcel.obtain();
+
+  @After
+  public void recycleParams() {
+    params.recycle();
+  }
+
+  @Test
+  public void makeParcelCall() throws Exception {
+    for (int payloadSize : PAYLOAD_SIZES) {
+      params.setDataSize(0);
+      params.writeByteArray(new byte[payloadSize]);
+
+      benchmarkRule.measure(
+          payloadSize + "B", () -> parcelCallSender.makeParcelCall(params).recycle());
+    }
+  }
+}
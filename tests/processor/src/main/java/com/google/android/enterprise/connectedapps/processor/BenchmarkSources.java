@@ -0,0 +1,131 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.processor;
+
+import static com.google.android.enterprise.connectedapps.processor.TestUtilities.CROSS_PROFILE_QUALIFIED_NAME;
+import static com.google.android.enterprise.connectedapps.processor.TestUtilities.NOTES_PACKAGE;
+
+import com.google.testing.compile.JavaFileObjects;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates the sources compiled by {@link ProcessorBenchmark} and {@link SharedBundlerBenchmark}.
+ *
+ * <p>The sources are abstract parcelables {@code Parcelable0} to {@code ParcelableN}, cross-profile
+ * types {@code Type0} to {@code TypeN} whose methods use a mix of primitives, strings, collections
+ * and parcelables, a {@code BenchmarkProvider} providing every type and a {@code
+ * BenchmarkConfiguration} using that provider, all in {@link #PACKAGE}.
+ */
+final class BenchmarkSources {
+
+  static final String PACKAGE = NOTES_PACKAGE + ".benchmark";
+
+  private static final List<String> PARAMETER_TYPES =
+      Arrays.asList(
+          "int",
+          "String",
+          "java.util.List<String>",
+          "java.util.Map<String, Integer>",
+          "java.util.List<Parcelable%d>",
+          "Parcelable%d",
+          "String[]",
+          "java.util.Optional<Parcelable%d>");
+
+  private BenchmarkSources() {}
+
+  /**
+   * Create the sources for {@code types} cross-profile types, each with {@code methods}
+   * cross-profile methods, using {@code parcelableTypes} parcelables.
+   */
+  static List<JavaFileObject> create(int parcelableTypes, int types, int methods) {
+    List<JavaFileObject> sources = new ArrayList<>();
+
+    for (int i = 0; i < parcelableTypes; i++) {
+      sources.add(
+          JavaFileObjects.forSourceLines(
+              PACKAGE + ".Parcelable" + i,
+              "package " + PACKAGE + ";",
+              "public abstract class Parcelable" + i + " implements android.os.Parcelable {",
+              "}"));
+    }
+
+    List<String> providerLines = new ArrayList<>();
+    providerLines.add("package " + PACKAGE + ";");
+    providerLines.add(
+        "import com.google.android.enterprise.connectedapps.annotations.CrossProfileProvider;");
+    providerLines.add("public final class BenchmarkProvider {");
+
+    for (int i = 0; i < types; i++) {
+      sources.add(createCrossProfileType(i, methods, parcelableTypes));
+      providerLines.add("  @CrossProfileProvider");
+      providerLines.add("  public Type" + i + " provideType" + i + "() {");
+      providerLines.add("    return new Type" + i + "();");
+      providerLines.add("  }");
+    }
+    providerLines.add("}");
+    sources.add(
+        JavaFileObjects.forSourceLines(
+            PACKAGE + ".BenchmarkProvider", providerLines.toArray(new String[0])));
+
+    sources.add(
+        JavaFileObjects.forSourceLines(
+            PACKAGE + ".BenchmarkConfiguration",
+            "package " + PACKAGE + ";",
+            "import com.google.android.enterprise.connectedapps.annotations"
+                + ".CrossProfileConfiguration;",
+            "@CrossProfileConfiguration(providers = BenchmarkProvider.class)",
+            "public abstract class BenchmarkConfiguration {",
+            "}"));
+
+    return sources;
+  }
+
+  private static JavaFileObject createCrossProfileType(
+      int typeIndex, int methods, int parcelableTypes) {
+    List<String> lines = new ArrayList<>();
+    lines.add("package " + PACKAGE + ";");
+    lines.add("import " + CROSS_PROFILE_QUALIFIED_NAME + ";");
+    lines.add("public final class Type" + typeIndex + " {");
+
+    for (int i = 0; i < methods; i++) {
+      int parcelableIndex = (typeIndex + i) % parcelableTypes;
+      String returnType = parameterType(typeIndex + i, parcelableIndex);
+      String parameterType = parameterType(typeIndex + i + 1, parcelableIndex);
+      lines.add("  @CrossProfile");
+      lines.add(
+          "  public " + returnType + " method" + i + "(" + parameterType + " a, int b) {");
+      lines.add("    return " + defaultValue(returnType) + ";");
+      lines.add("  }");
+    }
+
+    lines.add("}");
+    return JavaFileObjects.forSourceLines(
+        PACKAGE + ".Type" + typeIndex, lines.toArray(new String[0]));
+  }
+
+  private static String parameterType(int index, int parcelableIndex) {
+    return String.format(
+        Locale.US, PARAMETER_TYPES.get(index % PARAMETER_TYPES.size()), parcelableIndex);
+  }
+
+  private static String defaultValue(String type) {
+    return type.equals("int") ? "0" : "null";
+  }
+}
@@ -18,6 +18,7 @@ package com.google.android.enterprise.connectedapps.processor;
 import static com.google.android.enterprise.connectedapps.processor.TestUtilities.NOTES_PACKAGE;
 import static com.google.android.enterprise.connectedapps.processor.TestUtilities.annotatedNotesCrossProfileType;
 import static com.google.android.enterprise.connectedapps.processor.TestUtilities.annotatedNotesProvider;
+import static com.google.common.truth.Truth.assertThat;
 import static com.google.testing.compile.CompilationSubject.assertThat;
 import static com.google.testing.compile.Compiler.javac;
 
@@ -25,6 +26,9 @@ import com.google.android.enterprise.connectedapps.processor.annotationdiscovery
 import com.google.android.enterprise.connectedapps.processor.annotationdiscovery.AnnotationPrinter;
 import com.google.android.enterprise.connectedapps.processor.annotationdiscovery.AnnotationStrings;
 import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import java.io.IOException;
+import javax.tools.JavaFileObject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
@@ -33,6 +37,8 @@ import org.junit.runners.Parameterized.Parameters;
 @RunWith(Parameterized.class)
 public class BundlerTest {
 
+  private static final String SHARED_PREFIX = NOTES_PACKAGE + ".Notes";
+
   private final AnnotationPrinter annotationPrinter;
 
   public BundlerTest(AnnotationPrinter annotationPrinter) {
@@ -70,4 +76,330 @@ public class BundlerTest {
         .contentsAsUtf8String()
         .contains("ProfileNotesType_Bundler implements Bundler");
   }
+
+  @Test
+  public void listOfProtos_isWrittenAsSingleStream() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(annotatedNotesProvider(annotationPrinter), notesTypeWithListOfProtos());
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Bundler")
+        .contentsAsUtf8String()
+        .contains("NotesType_TestProtoWrapper.writeListToParcel(parcel, (List) value);");
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Bundler")
+        .contentsAsUtf8String()
+        .contains("return NotesType_TestProtoWrapper.readListFromParcel(parcel);");
+  }
+
+  @Test
+  public void lazyProtoListsEnabled_listOfProtosIsParsedLazily() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .withOptions("-A" + ProcessorConfiguration.LAZY_PROTO_LISTS_OPTION + "=true")
+            .compile(annotatedNotesProvider(annotationPrinter), notesTypeWithListOfProtos());
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".NotesType_TestProtoWrapper")
+        .contentsAsUtf8String()
+        .contains("LengthDelimitedList.lazilyParse(");
+  }
+
+  @Test
+  public void lazyProtoListsNotEnabled_listOfProtosIsParsedEagerly() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(annotatedNotesProvider(annotationPrinter), notesTypeWithListOfProtos());
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".NotesType_TestProtoWrapper")
+        .contentsAsUtf8String()
+        .contains("LengthDelimitedList.parse(");
+  }
+
+  @Test
+  public void finalParcelable_isWrittenWithItsCreator() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(
+                annotatedNotesProvider(annotationPrinter),
+                notesTypeWithParcelable(),
+                parcelableNote(/* isFinal= */ true));
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Bundler")
+        .contentsAsUtf8String()
+        .contains("parcel.writeTypedObject((" + NOTES_PACKAGE + ".ParcelableNote) value, flags);");
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Bundler")
+        .contentsAsUtf8String()
+        .contains("parcel.readTypedObject(" + NOTES_PACKAGE + ".ParcelableNote.CREATOR);");
+  }
+
+  @Test
+  public void nonFinalParcelable_isWrittenWithItsClassName() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(
+                annotatedNotesProvider(annotationPrinter),
+                notesTypeWithParcelable(),
+                parcelableNote(/* isFinal= */ false));
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Bundler")
+        .contentsAsUtf8String()
+        .contains("parcel.writeParcelable((" + NOTES_PACKAGE + ".ParcelableNote) value, flags);");
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Bundler")
+        .contentsAsUtf8String()
+        .doesNotContain("ParcelableNote.CREATOR");
+  }
+
+  @Test
+  public void generatedParcelableWrapper_isWrittenWithItsCreator() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(annotatedNotesProvider(annotationPrinter), notesTypeWithList());
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Bundler")
+        .contentsAsUtf8String()
+        .contains("parcel.writeTypedObject(" + NOTES_PACKAGE + ".NotesType_ParcelableList.of(");
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Bundler")
+        .contentsAsUtf8String()
+        .contains("parcel.readTypedObject(" + NOTES_PACKAGE + ".NotesType_ParcelableList.CREATOR)");
+  }
+
+  @Test
+  public void sharedBundlerEnabled_generatesOneBundlerForAllTypes() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .withOptions("-A" + ProcessorConfiguration.SHARED_BUNDLER_OPTION + "=" + SHARED_PREFIX)
+            .compile(notesAndCalendarProvider(), notesTypeWithList(), calendarTypeWithList());
+
+    assertThat(compilation).succeeded();
+    assertThat(compilation)
+        .generatedSourceFile(SHARED_PREFIX + "_Bundler")
+        .contentsAsUtf8String()
+        .contains("Notes_Bundler implements Bundler");
+    assertThat(
+            compilation
+                .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Bundler")
+                .isPresent())
+        .isFalse();
+    assertThat(
+            compilation
+                .generatedSourceFile(NOTES_PACKAGE + ".ProfileCalendarType_Bundler")
+                .isPresent())
+        .isFalse();
+  }
+
+  @Test
+  public void sharedBundlerEnabled_typesUseSharedBundler() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .withOptions("-A" + ProcessorConfiguration.SHARED_BUNDLER_OPTION + "=" + SHARED_PREFIX)
+            .compile(notesAndCalendarProvider(), notesTypeWithList(), calendarTypeWithList());
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Internal")
+        .contentsAsUtf8String()
+        .contains("new Notes_Bundler()");
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileCalendarType_Internal")
+        .contentsAsUtf8String()
+        .contains("new Notes_Bundler()");
+  }
+
+  @Test
+  public void sharedBundlerEnabled_generatesOneCopyOfEachWrapper() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .withOptions("-A" + ProcessorConfiguration.SHARED_BUNDLER_OPTION + "=" + SHARED_PREFIX)
+            .compile(notesAndCalendarProvider(), notesTypeWithList(), calendarTypeWithList());
+
+    assertThat(compilation).generatedSourceFile(SHARED_PREFIX + "_ParcelableList");
+    assertThat(
+            compilation
+                .generatedSourceFile(NOTES_PACKAGE + ".NotesType_ParcelableList")
+                .isPresent())
+        .isFalse();
+    assertThat(
+            compilation
+                .generatedSourceFile(NOTES_PACKAGE + ".CalendarType_ParcelableList")
+                .isPresent())
+        .isFalse();
+  }
+
+  @Test
+  public void sharedBundlerEnabled_eachTypeIsHandledOnce() throws IOException {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .withOptions("-A" + ProcessorConfiguration.SHARED_BUNDLER_OPTION + "=" + SHARED_PREFIX)
+            .compile(notesAndCalendarProvider(), notesTypeWithList(), calendarTypeWithList());
+
+    String bundler =
+        compilation
+            .generatedSourceFile(SHARED_PREFIX + "_Bundler")
+            .get()
+            .getCharContent(/* ignoreEncodingErrors= */ true)
+            .toString();
+    assertThat(countOccurrences(bundler, "Notes_ParcelableList.of(")).isEqualTo(1);
+  }
+
+  @Test
+  public void sharedBundlerOptionInvalid_generatesBundlerPerType() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .withOptions("-A" + ProcessorConfiguration.SHARED_BUNDLER_OPTION + "=" + NOTES_PACKAGE)
+            .compile(notesAndCalendarProvider(), notesTypeWithList(), calendarTypeWithList());
+
+    assertThat(compilation).generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Bundler");
+    assertThat(compilation).generatedSourceFile(NOTES_PACKAGE + ".ProfileCalendarType_Bundler");
+  }
+
+  @Test
+  public void sharedBundlerOptionInvalid_hasWarning() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .withOptions("-A" + ProcessorConfiguration.SHARED_BUNDLER_OPTION + "=" + NOTES_PACKAGE)
+            .compile(notesAndCalendarProvider(), notesTypeWithList(), calendarTypeWithList());
+
+    assertThat(compilation)
+        .hadWarningContaining(
+            "Ignoring -A" + ProcessorConfiguration.SHARED_BUNDLER_OPTION + "=" + NOTES_PACKAGE);
+  }
+
+  @Test
+  public void sharedBundlerOptionValid_hasNoWarning() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .withOptions("-A" + ProcessorConfiguration.SHARED_BUNDLER_OPTION + "=" + SHARED_PREFIX)
+            .compile(notesAndCalendarProvider(), notesTypeWithList(), calendarTypeWithList());
+
+    assertThat(compilation).succeededWithoutWarnings();
+  }
+
+  private static int countOccurrences(String string, String substring) {
+    int count = 0;
+    for (int i = string.indexOf(substring); i != -1; i = string.indexOf(substring, i + 1)) {
+      count++;
+    }
+    return count;
+  }
+
+  private JavaFileObject notesAndCalendarProvider() {
+    return JavaFileObjects.forSourceLines(
+        NOTES_PACKAGE + ".NotesProvider",
+        "package " + NOTES_PACKAGE + ";",
+        "import " + annotationPrinter.crossProfileProviderQualifiedName() + ";",
+        "public final class NotesProvider {",
+        annotationPrinter.crossProfileProviderAsAnnotation(),
+        "  public NotesType provideNotesType() {",
+        "    return new NotesType();",
+        "  }",
+        annotationPrinter.crossProfileProviderAsAnnotation(),
+        "  public CalendarType provideCalendarType() {",
+        "    return new CalendarType();",
+        "  }",
+        "}");
+  }
+
+  private JavaFileObject notesTypeWithList() {
+    return JavaFileObjects.forSourceLines(
+        NOTES_PACKAGE + ".NotesType",
+        "package " + NOTES_PACKAGE + ";",
+        "import " + annotationPrinter.crossProfileQualifiedName() + ";",
+        "import java.util.List;",
+        "public final class NotesType {",
+        annotationPrinter.crossProfileAsAnnotation(),
+        "  public List<String> refreshNotes(List<String> notes) {",
+        "    return notes;",
+        "  }",
+        "}");
+  }
+
+  private JavaFileObject calendarTypeWithList() {
+    return JavaFileObjects.forSourceLines(
+        NOTES_PACKAGE + ".CalendarType",
+        "package " + NOTES_PACKAGE + ";",
+        "import " + annotationPrinter.crossProfileQualifiedName() + ";",
+        "import java.util.List;",
+        "public final class CalendarType {",
+        annotationPrinter.crossProfileAsAnnotation(),
+        "  public List<Integer> refreshEvents(List<Integer> events, String name) {",
+        "    return events;",
+        "  }",
+        "}");
+  }
+
+  private JavaFileObject notesTypeWithParcelable() {
+    return JavaFileObjects.forSourceLines(
+        NOTES_PACKAGE + ".NotesType",
+        "package " + NOTES_PACKAGE + ";",
+        "import " + annotationPrinter.crossProfileQualifiedName() + ";",
+        "public final class NotesType {",
+        annotationPrinter.crossProfileAsAnnotation(),
+        "  public ParcelableNote refreshNote(ParcelableNote note) {",
+        "    return note;",
+        "  }",
+        "}");
+  }
+
+  private static JavaFileObject parcelableNote(boolean isFinal) {
+    return JavaFileObjects.forSourceLines(
+        NOTES_PACKAGE + ".ParcelableNote",
+        "package " + NOTES_PACKAGE + ";",
+        "import android.os.Parcel;",
+        "import android.os.Parcelable;",
+        "public " + (isFinal ? "final " : "") + "class ParcelableNote implements Parcelable {",
+        "  public static final Creator<ParcelableNote> CREATOR =",
+        "      new Creator<ParcelableNote>() {",
+        "        @Override",
+        "        public ParcelableNote createFromParcel(Parcel in) {",
+        "          return new ParcelableNote();",
+        "        }",
+        "        @Override",
+        "        public ParcelableNote[] newArray(int size) {",
+        "          return new ParcelableNote[size];",
+        "        }",
+        "      };",
+        "  @Override",
+        "  public int describeContents() {",
+        "    return 0;",
+        "  }",
+        "  @Override",
+        "  public void writeToParcel(Parcel dest, int flags) {}",
+        "}");
+  }
+
+  private JavaFileObject notesTypeWithListOfProtos() {
+    return JavaFileObjects.forSourceLines(
+        NOTES_PACKAGE + ".NotesType",
+        "package " + NOTES_PACKAGE + ";",
+        "import " + annotationPrinter.crossProfileQualifiedName() + ";",
+        "import com.google.protos.connectedappssdk.TestProtoOuterClass.TestProto;",
+        "import java.util.List;",
+        "public final class NotesType {",
+        annotationPrinter.crossProfileAsAnnotation(),
+        "  public List<TestProto> refreshNotes(List<TestProto> notes) {",
+        "    return notes;",
+        "  }",
+        "}");
+  }
 }
@@ -0,0 +1,470 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.processor;
+
+import static com.google.android.enterprise.connectedapps.processor.TestUtilities.NOTES_PACKAGE;
+import static com.google.android.enterprise.connectedapps.processor.TestUtilities.annotatedNotesProvider;
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+
+import com.google.android.enterprise.connectedapps.processor.annotationdiscovery.AnnotationFinder;
+import com.google.android.enterprise.connectedapps.processor.annotationdiscovery.AnnotationPrinter;
+import com.google.android.enterprise.connectedapps.processor.annotationdiscovery.AnnotationStrings;
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import javax.tools.JavaFileObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+@RunWith(Parameterized.class)
+public class CrossProfileParcelableTest {
+
+  private static final String CROSS_PROFILE_PARCELABLE_QUALIFIED_NAME =
+      "com.google.android.enterprise.connectedapps.annotations.CrossProfileParcelable";
+  private static final String NOT_CLASS_ERROR =
+      "Only classes may be annotated @CrossProfileParcelable";
+  private static final String GENERIC_ERROR =
+      "Classes annotated @CrossProfileParcelable can not be generic";
+  private static final String NO_ACCESSOR_ERROR =
+      "Private fields of classes annotated @CrossProfileParcelable must have a non-private getX(),"
+          + " isX() or x() method";
+  private static final String NO_CREATOR_ERROR =
+      "Classes annotated @CrossProfileParcelable must have a non-private constructor, or if"
+          + " abstract a static method, which takes each property in order: (java.lang.String"
+          + " title, int count)";
+  private static final String SUPERCLASS_ERROR =
+      "Classes annotated @CrossProfileParcelable must not extend any class other than Object";
+  private static final String UNSUPPORTED_TYPE_ERROR =
+      "The type " + NOTES_PACKAGE + ".Note cannot be";
+
+  private static final JavaFileObject NOTE =
+      JavaFileObjects.forSourceLines(
+          NOTES_PACKAGE + ".Note",
+          "package " + NOTES_PACKAGE + ";",
+          "import " + CROSS_PROFILE_PARCELABLE_QUALIFIED_NAME + ";",
+          "import java.io.Serializable;",
+          "import java.util.List;",
+          "@CrossProfileParcelable",
+          "public final class Note implements Serializable {",
+          "  private final String title;",
+          "  private final int count;",
+          "  final boolean archived;",
+          "  private final List<String> tags;",
+          "  private transient int hashCode;",
+          "  public Note(String title, int count, boolean archived, List<String> tags) {",
+          "    this.title = title;",
+          "    this.count = count;",
+          "    this.archived = archived;",
+          "    this.tags = tags;",
+          "  }",
+          "  public String getTitle() {",
+          "    return title;",
+          "  }",
+          "  public int count() {",
+          "    return count;",
+          "  }",
+          "  public List<String> getTags() {",
+          "    return tags;",
+          "  }",
+          "}");
+
+  private static final JavaFileObject ABSTRACT_NOTE =
+      JavaFileObjects.forSourceLines(
+          NOTES_PACKAGE + ".AbstractNote",
+          "package " + NOTES_PACKAGE + ";",
+          "import " + CROSS_PROFILE_PARCELABLE_QUALIFIED_NAME + ";",
+          "@CrossProfileParcelable",
+          "public abstract class AbstractNote {",
+          "  public abstract String title();",
+          "  public abstract java.util.Set<Long> ids();",
+          "  static AbstractNote create(String title, java.util.Set<Long> ids) {",
+          "    return null;",
+          "  }",
+          "}");
+
+  private static final JavaFileObject BOXED_NOTE =
+      JavaFileObjects.forSourceLines(
+          NOTES_PACKAGE + ".BoxedNote",
+          "package " + NOTES_PACKAGE + ";",
+          "import " + CROSS_PROFILE_PARCELABLE_QUALIFIED_NAME + ";",
+          "@CrossProfileParcelable",
+          "public final class BoxedNote {",
+          "  private final Integer count;",
+          "  public BoxedNote(Integer count) {",
+          "    this.count = count;",
+          "  }",
+          "  public Integer getCount() {",
+          "    return count;",
+          "  }",
+          "}");
+
+  private final AnnotationPrinter annotationPrinter;
+
+  public CrossProfileParcelableTest(AnnotationPrinter annotationPrinter) {
+    this.annotationPrinter = annotationPrinter;
+  }
+
+  @Parameters(name = "{0}")
+  public static Iterable<AnnotationStrings> getAnnotationPrinters() {
+    return AnnotationFinder.annotationStrings();
+  }
+
+  @Test
+  public void crossProfileParcelable_generatesWrapper() {
+    Compilation compilation = javac().withProcessors(new Processor()).compile(NOTE);
+
+    assertThat(compilation).succeededWithoutWarnings();
+    assertThat(compilation).generatedSourceFile(NOTES_PACKAGE + ".Note_ParcelableWrapper");
+  }
+
+  @Test
+  public void crossProfileParcelable_writesStringsAndPrimitivesDirectly() {
+    Compilation compilation = javac().withProcessors(new Processor()).compile(NOTE);
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".Note_ParcelableWrapper")
+        .contentsAsUtf8String()
+        .contains("dest.writeString(value.getTitle());");
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".Note_ParcelableWrapper")
+        .contentsAsUtf8String()
+        .contains("dest.writeInt(value.count());");
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".Note_ParcelableWrapper")
+        .contentsAsUtf8String()
+        .contains("dest.writeInt(value.archived ? 1 : 0);");
+  }
+
+  @Test
+  public void crossProfileParcelable_writesOtherPropertiesUsingBundler() {
+    Compilation compilation = javac().withProcessors(new Processor()).compile(NOTE);
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".Note_ParcelableWrapper")
+        .contentsAsUtf8String()
+        .contains(
+            "private static final BundlerType TAGS_TYPE = BundlerType.of(\"java.util.List\","
+                + " BundlerType.of(\"java.lang.String\"));");
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".Note_ParcelableWrapper")
+        .contentsAsUtf8String()
+        .contains("bundler.writeToParcel(dest, value.getTags(), TAGS_TYPE, flags);");
+  }
+
+  @Test
+  public void crossProfileParcelable_boxedPrimitive_writesNullMarker() {
+    Compilation compilation = javac().withProcessors(new Processor()).compile(BOXED_NOTE);
+
+    assertThat(compilation).succeededWithoutWarnings();
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".BoxedNote_ParcelableWrapper")
+        .contentsAsUtf8String()
+        .contains("if (value.getCount() == null) {");
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".BoxedNote_ParcelableWrapper")
+        .contentsAsUtf8String()
+        .contains("in.readInt() == NULL ? null : in.readInt()");
+  }
+
+  @Test
+  public void crossProfileParcelable_doesNotWriteTransientFields() {
+    Compilation compilation = javac().withProcessors(new Processor()).compile(NOTE);
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".Note_ParcelableWrapper")
+        .contentsAsUtf8String()
+        .doesNotContain("hashCode");
+  }
+
+  @Test
+  public void crossProfileParcelable_readsUsingConstructor() {
+    Compilation compilation = javac().withProcessors(new Processor()).compile(NOTE);
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".Note_ParcelableWrapper")
+        .contentsAsUtf8String()
+        .contains("return new Note(");
+  }
+
+  @Test
+  public void abstractCrossProfileParcelable_readsUsingStaticMethod() {
+    Compilation compilation = javac().withProcessors(new Processor()).compile(ABSTRACT_NOTE);
+
+    assertThat(compilation).succeededWithoutWarnings();
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".AbstractNote_ParcelableWrapper")
+        .contentsAsUtf8String()
+        .contains("return AbstractNote.create(");
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".AbstractNote_ParcelableWrapper")
+        .contentsAsUtf8String()
+        .contains("bundler.writeToParcel(dest, value.ids(), IDS_TYPE, flags);");
+  }
+
+  @Test
+  public void crossProfileParcelableParameter_usesWrapperRatherThanSerializable() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(
+                annotatedNotesProvider(annotationPrinter), notesTypeWithNoteParameter(), NOTE);
+
+    assertThat(compilation).succeededWithoutWarnings();
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Bundler")
+        .contentsAsUtf8String()
+        .contains(NOTES_PACKAGE + ".Note_ParcelableWrapper.writeValueToParcel(this,");
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Bundler")
+        .contentsAsUtf8String()
+        .doesNotContain("writeSerializable");
+  }
+
+  @Test
+  public void crossProfileParcelableParameter_doesNotWriteBundlerWithEachValue() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(
+                annotatedNotesProvider(annotationPrinter), notesTypeWithNoteParameter(), NOTE);
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Bundler")
+        .contentsAsUtf8String()
+        .contains(NOTES_PACKAGE + ".Note_ParcelableWrapper.readValueFromParcel(this,");
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Bundler")
+        .contentsAsUtf8String()
+        .doesNotContain("Note_ParcelableWrapper.CREATOR");
+  }
+
+  @Test
+  public void crossProfileParcelableParameter_bundlerSupportsPropertyTypes() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(
+                annotatedNotesProvider(annotationPrinter), notesTypeWithNoteParameter(), NOTE);
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Bundler")
+        .contentsAsUtf8String()
+        .contains("\"java.util.List\"");
+  }
+
+  @Test
+  public void crossProfileParcelable_referencesItself_compiles() {
+    JavaFileObject node =
+        JavaFileObjects.forSourceLines(
+            NOTES_PACKAGE + ".Note",
+            "package " + NOTES_PACKAGE + ";",
+            "import " + CROSS_PROFILE_PARCELABLE_QUALIFIED_NAME + ";",
+            "import java.util.List;",
+            "@CrossProfileParcelable",
+            "public final class Note {",
+            "  final String title;",
+            "  final List<Note> children;",
+            "  public Note(String title, List<Note> children) {",
+            "    this.title = title;",
+            "    this.children = children;",
+            "  }",
+            "}");
+
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(
+                annotatedNotesProvider(annotationPrinter), notesTypeWithNoteParameter(), node);
+
+    assertThat(compilation).succeededWithoutWarnings();
+  }
+
+  @Test
+  public void crossProfileParcelable_unsupportedPropertyType_hasError() {
+    JavaFileObject note =
+        JavaFileObjects.forSourceLines(
+            NOTES_PACKAGE + ".Note",
+            "package " + NOTES_PACKAGE + ";",
+            "import " + CROSS_PROFILE_PARCELABLE_QUALIFIED_NAME + ";",
+            "@CrossProfileParcelable",
+            "public final class Note {",
+            "  final String title;",
+            "  final Object owner;",
+            "  public Note(String title, Object owner) {",
+            "    this.title = title;",
+            "    this.owner = owner;",
+            "  }",
+            "}");
+
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(
+                annotatedNotesProvider(annotationPrinter), notesTypeWithNoteParameter(), note);
+
+    assertThat(compilation).hadErrorContaining(UNSUPPORTED_TYPE_ERROR);
+  }
+
+  @Test
+  public void crossProfileParcelable_isInterface_hasError() {
+    JavaFileObject note =
+        JavaFileObjects.forSourceLines(
+            NOTES_PACKAGE + ".Note",
+            "package " + NOTES_PACKAGE + ";",
+            "import " + CROSS_PROFILE_PARCELABLE_QUALIFIED_NAME + ";",
+            "@CrossProfileParcelable",
+            "public interface Note {",
+            "  String title();",
+            "}");
+
+    Compilation compilation = javac().withProcessors(new Processor()).compile(note);
+
+    assertThat(compilation).hadErrorContaining(NOT_CLASS_ERROR).inFile(note);
+  }
+
+  @Test
+  public void abstractCrossProfileParcelable_toBuilder_isNotAProperty() {
+    JavaFileObject note =
+        JavaFileObjects.forSourceLines(
+            NOTES_PACKAGE + ".Note",
+            "package " + NOTES_PACKAGE + ";",
+            "import " + CROSS_PROFILE_PARCELABLE_QUALIFIED_NAME + ";",
+            "@CrossProfileParcelable",
+            "public abstract class Note {",
+            "  public abstract String title();",
+            "  public abstract Builder toBuilder();",
+            "  static Note create(String title) {",
+            "    return null;",
+            "  }",
+            "  public abstract static class Builder {",
+            "    public abstract Builder setTitle(String title);",
+            "    public abstract Note build();",
+            "  }",
+            "}");
+
+    Compilation compilation = javac().withProcessors(new Processor()).compile(note);
+
+    assertThat(compilation).succeededWithoutWarnings();
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".Note_ParcelableWrapper")
+        .contentsAsUtf8String()
+        .doesNotContain("toBuilder");
+  }
+
+  @Test
+  public void crossProfileParcelable_extendsClass_hasError() {
+    JavaFileObject baseNote =
+        JavaFileObjects.forSourceLines(
+            NOTES_PACKAGE + ".BaseNote",
+            "package " + NOTES_PACKAGE + ";",
+            "public class BaseNote {",
+            "  final String owner = \"owner\";",
+            "}");
+    JavaFileObject note =
+        JavaFileObjects.forSourceLines(
+            NOTES_PACKAGE + ".Note",
+            "package " + NOTES_PACKAGE + ";",
+            "import " + CROSS_PROFILE_PARCELABLE_QUALIFIED_NAME + ";",
+            "@CrossProfileParcelable",
+            "public final class Note extends BaseNote {",
+            "  final String title;",
+            "  public Note(String title) {",
+            "    this.title = title;",
+            "  }",
+            "}");
+
+    Compilation compilation = javac().withProcessors(new Processor()).compile(baseNote, note);
+
+    assertThat(compilation).hadErrorContaining(SUPERCLASS_ERROR).inFile(note);
+  }
+
+  @Test
+  public void crossProfileParcelable_isGeneric_hasError() {
+    JavaFileObject note =
+        JavaFileObjects.forSourceLines(
+            NOTES_PACKAGE + ".Note",
+            "package " + NOTES_PACKAGE + ";",
+            "import " + CROSS_PROFILE_PARCELABLE_QUALIFIED_NAME + ";",
+            "@CrossProfileParcelable",
+            "public final class Note<T> {",
+            "  final T value;",
+            "  public Note(T value) {",
+            "    this.value = value;",
+            "  }",
+            "}");
+
+    Compilation compilation = javac().withProcessors(new Processor()).compile(note);
+
+    assertThat(compilation).hadErrorContaining(GENERIC_ERROR).inFile(note);
+  }
+
+  @Test
+  public void crossProfileParcelable_privateFieldWithoutAccessor_hasError() {
+    JavaFileObject note =
+        JavaFileObjects.forSourceLines(
+            NOTES_PACKAGE + ".Note",
+            "package " + NOTES_PACKAGE + ";",
+            "import " + CROSS_PROFILE_PARCELABLE_QUALIFIED_NAME + ";",
+            "@CrossProfileParcelable",
+            "public final class Note {",
+            "  private final String title;",
+            "  public Note(String title) {",
+            "    this.title = title;",
+            "  }",
+            "}");
+
+    Compilation compilation = javac().withProcessors(new Processor()).compile(note);
+
+    assertThat(compilation).hadErrorContaining(NO_ACCESSOR_ERROR).inFile(note);
+  }
+
+  @Test
+  public void crossProfileParcelable_noMatchingConstructor_hasError() {
+    JavaFileObject note =
+        JavaFileObjects.forSourceLines(
+            NOTES_PACKAGE + ".Note",
+            "package " + NOTES_PACKAGE + ";",
+            "import " + CROSS_PROFILE_PARCELABLE_QUALIFIED_NAME + ";",
+            "@CrossProfileParcelable",
+            "public final class Note {",
+            "  final String title;",
+            "  final int count;",
+            "  public Note(int count, String title) {",
+            "    this.title = title;",
+            "    this.count = count;",
+            "  }",
+            "}");
+
+    Compilation compilation = javac().withProcessors(new Processor()).compile(note);
+
+    assertThat(compilation).hadErrorContaining(NO_CREATOR_ERROR).inFile(note);
+  }
+
+  private JavaFileObject notesTypeWithNoteParameter() {
+    return JavaFileObjects.forSourceLines(
+        NOTES_PACKAGE + ".NotesType",
+        "package " + NOTES_PACKAGE + ";",
+        "import " + annotationPrinter.crossProfileQualifiedName() + ";",
+        "public final class NotesType {",
+        annotationPrinter.crossProfileAsAnnotation(),
+        "  public Note addNote(Note note) {",
+        "    return note;",
+        "  }",
+        "}");
+  }
+}
@@ -60,6 +60,8 @@ public class CrossProfileTest {
           + " @CROSS_PROFILE_CALLBACK_ANNOTATION must return void";
   private static final String METHOD_ISSTATIC_ERROR =
       "@CROSS_PROFILE_ANNOTATION annotations on methods can not specify isStatic";
+  private static final String METHOD_BITMAP_ENCODING_ERROR =
+      "@CROSS_PROFILE_ANNOTATION annotations on methods can not specify a bitmap encoding";
   private static final String METHOD_CONNECTOR_ERROR =
       "@CROSS_PROFILE_ANNOTATION annotations on methods can not specify a connector";
   private static final String METHOD_PARCELABLE_WRAPPERS_ERROR =
@@ -1695,4 +1697,314 @@ public class CrossProfileTest {
         .hadErrorContaining(formatErrorMessage(METHOD_ISSTATIC_ERROR, annotationStrings))
         .inFile(notesType);
   }
+
+  @Test
+  public void specifyBitmapEncodingOnMethodAnnotation_hasError() {
+    JavaFileObject notesType =
+        JavaFileObjects.forSourceLines(
+            NOTES_PACKAGE + ".NotesType",
+            "package " + NOTES_PACKAGE + ";",
+            "import " + annotationStrings.crossProfileQualifiedName() + ";",
+            "import com.google.android.enterprise.connectedapps.annotations.BitmapEncoding;",
+            "public final class NotesType {",
+            annotationStrings.crossProfileAsAnnotation("bitmapEncoding=BitmapEncoding.PNG"),
+            "  public void refreshNotes() {",
+            "  }",
+            "}");
+
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(notesType, annotatedNotesProvider(annotationStrings));
+
+    assertThat(compilation)
+        .hadErrorContaining(formatErrorMessage(METHOD_BITMAP_ENCODING_ERROR, annotationStrings))
+        .inFile(notesType);
+  }
+
+  @Test
+  public void specifyBitmapEncodingOnTypeAnnotation_generatedBitmapWrapperUsesEncoding() {
+    JavaFileObject notesType =
+        JavaFileObjects.forSourceLines(
+            NOTES_PACKAGE + ".NotesType",
+            "package " + NOTES_PACKAGE + ";",
+            "import " + annotationStrings.crossProfileQualifiedName() + ";",
+            "import android.graphics.Bitmap;",
+            "import com.google.android.enterprise.connectedapps.annotations.BitmapEncoding;",
+            annotationStrings.crossProfileAsAnnotation("bitmapEncoding=BitmapEncoding.PNG"),
+            "public final class NotesType {",
+            annotationStrings.crossProfileAsAnnotation(),
+            "  public void refreshNotes(Bitmap bitmap) {",
+            "  }",
+            "}");
+
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(notesType, annotatedNotesProvider(annotationStrings));
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".NotesType_ParcelableBitmap")
+        .contentsAsUtf8String()
+        .contains("WRITE_ENCODING = ENCODING_PNG;");
+  }
+
+  @Test
+  public void specifyPriorityOnMethodAnnotation_asyncCallUsesPriority() {
+    JavaFileObject notesType =
+        JavaFileObjects.forSourceLines(
+            NOTES_PACKAGE + ".NotesType",
+            "package " + NOTES_PACKAGE + ";",
+            "import " + annotationStrings.crossProfileQualifiedName() + ";",
+            "import com.google.android.enterprise.connectedapps.annotations.CallPriority;",
+            "import com.google.common.util.concurrent.ListenableFuture;",
+            "public final class NotesType {",
+            annotationStrings.crossProfileAsAnnotation("priority=CallPriority.HIGH"),
+            "  public ListenableFuture<Void> refreshNotes() {",
+            "    return null;",
+            "  }",
+            "}");
+
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(notesType, annotatedNotesProvider(annotationStrings));
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_OtherProfile")
+        .contentsAsUtf8String()
+        .contains("CallPriority.HIGH)");
+  }
+
+  @Test
+  public void specifyPriorityOnTypeAnnotation_asyncCallUsesPriority() {
+    JavaFileObject notesType =
+        JavaFileObjects.forSourceLines(
+            NOTES_PACKAGE + ".NotesType",
+            "package " + NOTES_PACKAGE + ";",
+            "import " + annotationStrings.crossProfileQualifiedName() + ";",
+            "import com.google.android.enterprise.connectedapps.annotations.CallPriority;",
+            "import com.google.common.util.concurrent.ListenableFuture;",
+            annotationStrings.crossProfileAsAnnotation("priority=CallPriority.LOW"),
+            "public final class NotesType {",
+            annotationStrings.crossProfileAsAnnotation(),
+            "  public ListenableFuture<Void> refreshNotes() {",
+            "    return null;",
+            "  }",
+            "}");
+
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(notesType, annotatedNotesProvider(annotationStrings));
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_OtherProfile")
+        .contentsAsUtf8String()
+        .contains("CallPriority.LOW)");
+  }
+
+  @Test
+  public void priorityNotSpecified_asyncCallUsesNormalPriority() {
+    JavaFileObject notesType =
+        JavaFileObjects.forSourceLines(
+            NOTES_PACKAGE + ".NotesType",
+            "package " + NOTES_PACKAGE + ";",
+            "import " + annotationStrings.crossProfileQualifiedName() + ";",
+            "import com.google.common.util.concurrent.ListenableFuture;",
+            "public final class NotesType {",
+            annotationStrings.crossProfileAsAnnotation(),
+            "  public ListenableFuture<Void> refreshNotes() {",
+            "    return null;",
+            "  }",
+            "}");
+
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(notesType, annotatedNotesProvider(annotationStrings));
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_OtherProfile")
+        .contentsAsUtf8String()
+        .contains("CallPriority.NORMAL)");
+  }
+
+  @Test
+  public void specifyIdempotentOnMethodAnnotation_asyncCallRetriesOnReconnect() {
+    JavaFileObject notesType =
+        JavaFileObjects.forSourceLines(
+            NOTES_PACKAGE + ".NotesType",
+            "package " + NOTES_PACKAGE + ";",
+            "import " + annotationStrings.crossProfileQualifiedName() + ";",
+            "import com.google.common.util.concurrent.ListenableFuture;",
+            "public final class NotesType {",
+            annotationStrings.crossProfileAsAnnotation("idempotent=true"),
+            "  public ListenableFuture<Void> refreshNotes() {",
+            "    return null;",
+            "  }",
+            "}");
+
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(notesType, annotatedNotesProvider(annotationStrings));
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_OtherProfile")
+        .contentsAsUtf8String()
+        .contains("/* retryOnReconnect= */ true)");
+  }
+
+  @Test
+  public void specifyIdempotentOnTypeAnnotation_asyncCallRetriesOnReconnect() {
+    JavaFileObject notesType =
+        JavaFileObjects.forSourceLines(
+            NOTES_PACKAGE + ".NotesType",
+            "package " + NOTES_PACKAGE + ";",
+            "import " + annotationStrings.crossProfileQualifiedName() + ";",
+            "import com.google.common.util.concurrent.ListenableFuture;",
+            annotationStrings.crossProfileAsAnnotation("idempotent=true"),
+            "public final class NotesType {",
+            annotationStrings.crossProfileAsAnnotation(),
+            "  public ListenableFuture<Void> refreshNotes() {",
+            "    return null;",
+            "  }",
+            "}");
+
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(notesType, annotatedNotesProvider(annotationStrings));
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_OtherProfile")
+        .contentsAsUtf8String()
+        .contains("/* retryOnReconnect= */ true)");
+  }
+
+  @Test
+  public void idempotentNotSpecified_asyncCallDoesNotRetryOnReconnect() {
+    JavaFileObject notesType =
+        JavaFileObjects.forSourceLines(
+            NOTES_PACKAGE + ".NotesType",
+            "package " + NOTES_PACKAGE + ";",
+            "import " + annotationStrings.crossProfileQualifiedName() + ";",
+            "import com.google.common.util.concurrent.ListenableFuture;",
+            "public final class NotesType {",
+            annotationStrings.crossProfileAsAnnotation(),
+            "  public ListenableFuture<Void> refreshNotes() {",
+            "    return null;",
+            "  }",
+            "}");
+
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(notesType, annotatedNotesProvider(annotationStrings));
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_OtherProfile")
+        .contentsAsUtf8String()
+        .doesNotContain("retryOnReconnect");
+  }
+
+  @Test
+  public void specifyInternStringsOnMethodAnnotation_valuesAreWrittenWithStringTable() {
+    JavaFileObject notesType =
+        JavaFileObjects.forSourceLines(
+            NOTES_PACKAGE + ".NotesType",
+            "package " + NOTES_PACKAGE + ";",
+            "import " + annotationStrings.crossProfileQualifiedName() + ";",
+            "import java.util.List;",
+            "public final class NotesType {",
+            annotationStrings.crossProfileAsAnnotation("internStrings=true"),
+            "  public List<String> refreshNotes(List<String> notes) {",
+            "    return notes;",
+            "  }",
+            "}");
+
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(notesType, annotatedNotesProvider(annotationStrings));
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Internal")
+        .contentsAsUtf8String()
+        .contains("StringTable.writeToParcel(bundler, params, notes,");
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Internal")
+        .contentsAsUtf8String()
+        .contains("StringTable.readFromParcel(bundler, params,");
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Internal")
+        .contentsAsUtf8String()
+        .contains("StringTable.writeToParcel(bundler, returnParcel, returnValue,");
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_OtherProfile")
+        .contentsAsUtf8String()
+        .contains("StringTable.readFromParcel(internalCrossProfileClass.bundler(), returnParcel,");
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Bundler")
+        .contentsAsUtf8String()
+        .contains("StringTable.writeString(parcel, (String) value);");
+  }
+
+  @Test
+  public void specifyInternStringsOnTypeAnnotation_valuesAreWrittenWithStringTable() {
+    JavaFileObject notesType =
+        JavaFileObjects.forSourceLines(
+            NOTES_PACKAGE + ".NotesType",
+            "package " + NOTES_PACKAGE + ";",
+            "import " + annotationStrings.crossProfileQualifiedName() + ";",
+            "import java.util.List;",
+            annotationStrings.crossProfileAsAnnotation("internStrings=true"),
+            "public final class NotesType {",
+            annotationStrings.crossProfileAsAnnotation(),
+            "  public List<String> refreshNotes(List<String> notes) {",
+            "    return notes;",
+            "  }",
+            "}");
+
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(notesType, annotatedNotesProvider(annotationStrings));
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Internal")
+        .contentsAsUtf8String()
+        .contains("StringTable.writeToParcel(bundler, returnParcel, returnValue,");
+  }
+
+  @Test
+  public void internStringsNotSpecified_stringTableIsNotUsed() {
+    JavaFileObject notesType =
+        JavaFileObjects.forSourceLines(
+            NOTES_PACKAGE + ".NotesType",
+            "package " + NOTES_PACKAGE + ";",
+            "import " + annotationStrings.crossProfileQualifiedName() + ";",
+            "import java.util.List;",
+            "public final class NotesType {",
+            annotationStrings.crossProfileAsAnnotation(),
+            "  public List<String> refreshNotes(List<String> notes) {",
+            "    return notes;",
+            "  }",
+            "}");
+
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(notesType, annotatedNotesProvider(annotationStrings));
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Internal")
+        .contentsAsUtf8String()
+        .doesNotContain("StringTable");
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Bundler")
+        .contentsAsUtf8String()
+        .doesNotContain("StringTable");
+  }
 }
@@ -107,4 +107,167 @@ public class DispatcherTest {
 
     assertThat(compilation).generatedSourceFile("com.google.android.CustomConnector_Dispatcher");
   }
+
+  @Test
+  public void tracingEnabled_dispatcherCallIsTraced() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .withOptions("-A" + ProcessorConfiguration.TRACING_OPTION + "=true")
+            .compile(
+                annotatedNotesConfigurationWithNotesProvider(annotationPrinter),
+                annotatedNotesProvider(annotationPrinter),
+                annotatedNotesCrossProfileType(annotationPrinter));
+
+    assertThat(compilation)
+        .generatedSourceFile(
+            "com.google.android.enterprise.connectedapps.CrossProfileConnector_Service_Dispatcher")
+        .contentsAsUtf8String()
+        .contains(
+            "TraceUtilities.beginSection(\"CrossProfileConnector_Service_Dispatcher#call \" +"
+                + " crossProfileTypeIdentifier + \":\" + methodIdentifier + \" \" + callId);");
+  }
+
+  @Test
+  public void tracingNotEnabled_dispatcherCallIsNotTraced() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(
+                annotatedNotesConfigurationWithNotesProvider(annotationPrinter),
+                annotatedNotesProvider(annotationPrinter),
+                annotatedNotesCrossProfileType(annotationPrinter));
+
+    assertThat(compilation)
+        .generatedSourceFile(
+            "com.google.android.enterprise.connectedapps.CrossProfileConnector_Service_Dispatcher")
+        .contentsAsUtf8String()
+        .doesNotContain("TraceUtilities");
+  }
+
+  @Test
+  public void compressionThresholdSet_dispatcherEnablesCompression() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .withOptions("-A" + ProcessorConfiguration.COMPRESSION_THRESHOLD_OPTION + "=1000")
+            .compile(
+                annotatedNotesConfigurationWithNotesProvider(annotationPrinter),
+                annotatedNotesProvider(annotationPrinter),
+                annotatedNotesCrossProfileType(annotationPrinter));
+
+    assertThat(compilation)
+        .generatedSourceFile(
+            "com.google.android.enterprise.connectedapps.CrossProfileConnector_Service_Dispatcher")
+        .contentsAsUtf8String()
+        .contains("PayloadCompression.enable(1000);");
+  }
+
+  @Test
+  public void compressionThresholdNotSet_dispatcherDoesNotEnableCompression() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(
+                annotatedNotesConfigurationWithNotesProvider(annotationPrinter),
+                annotatedNotesProvider(annotationPrinter),
+                annotatedNotesCrossProfileType(annotationPrinter));
+
+    assertThat(compilation)
+        .generatedSourceFile(
+            "com.google.android.enterprise.connectedapps.CrossProfileConnector_Service_Dispatcher")
+        .contentsAsUtf8String()
+        .doesNotContain("PayloadCompression.enable");
+  }
+
+  @Test
+  public void resultWriterThreadsSet_dispatcherEnablesResultWriterQueue() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .withOptions("-A" + ProcessorConfiguration.RESULT_WRITER_THREADS_OPTION + "=2")
+            .compile(
+                annotatedNotesConfigurationWithNotesProvider(annotationPrinter),
+                annotatedNotesProvider(annotationPrinter),
+                annotatedNotesCrossProfileType(annotationPrinter));
+
+    assertThat(compilation)
+        .generatedSourceFile(
+            "com.google.android.enterprise.connectedapps.CrossProfileConnector_Service_Dispatcher")
+        .contentsAsUtf8String()
+        .contains("ResultWriterQueue.enable(2);");
+  }
+
+  @Test
+  public void resultWriterThreadsNotSet_dispatcherDoesNotEnableResultWriterQueue() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(
+                annotatedNotesConfigurationWithNotesProvider(annotationPrinter),
+                annotatedNotesProvider(annotationPrinter),
+                annotatedNotesCrossProfileType(annotationPrinter));
+
+    assertThat(compilation)
+        .generatedSourceFile(
+            "com.google.android.enterprise.connectedapps.CrossProfileConnector_Service_Dispatcher")
+        .contentsAsUtf8String()
+        .doesNotContain("ResultWriterQueue.enable");
+  }
+
+  @Test
+  public void dispatcher_warmUpWarmsUpProviders() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(
+                annotatedNotesConfigurationWithNotesProvider(annotationPrinter),
+                annotatedNotesProvider(annotationPrinter),
+                annotatedNotesCrossProfileType(annotationPrinter));
+
+    assertThat(compilation)
+        .generatedSourceFile(
+            "com.google.android.enterprise.connectedapps.CrossProfileConnector_Service_Dispatcher")
+        .contentsAsUtf8String()
+        .contains("Profile_NotesProvider_Internal.instance().warmUp(applicationContext);");
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".Profile_NotesProvider_Internal")
+        .contentsAsUtf8String()
+        .contains("ProfileNotesType_Internal.instance();");
+  }
+
+  @Test
+  public void warmUpEnabled_dispatcherRecordsFirstCallLatency() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .withOptions("-A" + ProcessorConfiguration.WARM_UP_OPTION + "=true")
+            .compile(
+                annotatedNotesConfigurationWithNotesProvider(annotationPrinter),
+                annotatedNotesProvider(annotationPrinter),
+                annotatedNotesCrossProfileType(annotationPrinter));
+
+    assertThat(compilation)
+        .generatedSourceFile(
+            "com.google.android.enterprise.connectedapps.CrossProfileConnector_Service_Dispatcher")
+        .contentsAsUtf8String()
+        .contains("ServiceWarmUp.instance().recordFirstCall(");
+  }
+
+  @Test
+  public void warmUpNotEnabled_dispatcherDoesNotRecordFirstCallLatency() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(
+                annotatedNotesConfigurationWithNotesProvider(annotationPrinter),
+                annotatedNotesProvider(annotationPrinter),
+                annotatedNotesCrossProfileType(annotationPrinter));
+
+    assertThat(compilation)
+        .generatedSourceFile(
+            "com.google.android.enterprise.connectedapps.CrossProfileConnector_Service_Dispatcher")
+        .contentsAsUtf8String()
+        .doesNotContain("ServiceWarmUp");
+  }
 }
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.processor;
+
+import static com.google.android.enterprise.connectedapps.processor.TestUtilities.NOTES_PACKAGE;
+import static com.google.android.enterprise.connectedapps.processor.TestUtilities.annotatedNotesConfigurationWithNotesProvider;
+import static com.google.android.enterprise.connectedapps.processor.TestUtilities.annotatedNotesCrossProfileType;
+import static com.google.android.enterprise.connectedapps.processor.TestUtilities.annotatedNotesProvider;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toSet;
+
+import com.google.android.enterprise.connectedapps.processor.annotationdiscovery.AnnotationFinder;
+import com.google.android.enterprise.connectedapps.processor.annotationdiscovery.AnnotationPrinter;
+import com.google.android.enterprise.connectedapps.processor.annotationdiscovery.AnnotationStrings;
+import com.google.common.io.Resources;
+import com.google.testing.compile.Compilation;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+@RunWith(Parameterized.class)
+public class IncrementalProcessingTest {
+
+  private static final String DISPATCHER_NAME =
+      "com.google.android.enterprise.connectedapps.CrossProfileConnector_Service_Dispatcher";
+
+  /** Runs {@link Processor}, recording the originating elements of each generated source file. */
+  private static final class RecordingProcessor extends AbstractProcessor {
+    final Map<String, Set<String>> originatingElements = new HashMap<>();
+    private final Processor processor = new Processor();
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+      super.init(processingEnv);
+      Filer filer = processingEnv.getFiler();
+      Filer recordingFiler =
+          proxy(
+              Filer.class,
+              filer,
+              (method, args) -> {
+                if (method.getName().equals("createSourceFile")) {
+                  originatingElements.put(
+                      args[0].toString(),
+                      Arrays.stream((Element[]) args[1])
+                          .map(e -> ((TypeElement) e).getQualifiedName().toString())
+                          .collect(toSet()));
+                }
+              });
+      processor.init(
+          proxy(
+              ProcessingEnvironment.class,
+              processingEnv,
+              (method, args) -> {},
+              "getFiler",
+              recordingFiler));
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+      return processor.getSupportedAnnotationTypes();
+    }
+
+    @Override
+    public Set<String> getSupportedOptions() {
+      return processor.getSupportedOptions();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+      return processor.getSupportedSourceVersion();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+      return processor.process(annotations, roundEnv);
+    }
+  }
+
+  private interface MethodListener {
+    void onCall(Method method, Object[] args);
+  }
+
+  private static <T> T proxy(Class<T> type, T delegate, MethodListener listener) {
+    return proxy(type, delegate, listener, /* overriddenMethod= */ null, /* override= */ null);
+  }
+
+  private static <T> T proxy(
+      Class<T> type, T delegate, MethodListener listener, String overriddenMethod, Object override) {
+    return type.cast(
+        Proxy.newProxyInstance(
+            type.getClassLoader(),
+            new Class<?>[] {type},
+            (proxy, method, args) -> {
+              listener.onCall(method, args);
+              if (method.getName().equals(overriddenMethod)) {
+                return override;
+              }
+              try {
+                return method.invoke(delegate, args);
+              } catch (InvocationTargetException e) {
+                throw e.getCause();
+              }
+            }));
+  }
+
+  private final AnnotationPrinter annotationPrinter;
+
+  public IncrementalProcessingTest(AnnotationPrinter annotationPrinter) {
+    this.annotationPrinter = annotationPrinter;
+  }
+
+  @Parameters(name = "{0}")
+  public static Iterable<AnnotationStrings> getAnnotationPrinters() {
+    return AnnotationFinder.annotationStrings();
+  }
+
+  @Test
+  public void declaresAggregatingIncrementalProcessor() throws IOException {
+    String declaration =
+        Resources.toString(
+            Resources.getResource(
+                Processor.class, "/META-INF/gradle/incremental.annotation.processors"),
+            UTF_8);
+
+    assertThat(declaration.trim()).isEqualTo(Processor.class.getName() + ",aggregating");
+  }
+
+  @Test
+  public void generatedSourceFiles_allHaveOriginatingElements() {
+    RecordingProcessor processor = new RecordingProcessor();
+
+    Compilation compilation =
+        javac()
+            .withProcessors(processor)
+            .compile(
+                annotatedNotesConfigurationWithNotesProvider(annotationPrinter),
+                annotatedNotesProvider(annotationPrinter),
+                annotatedNotesCrossProfileType(annotationPrinter));
+
+    assertThat(compilation).succeededWithoutWarnings();
+    assertThat(processor.originatingElements).isNotEmpty();
+    processor.originatingElements.forEach(
+        (generatedClass, elements) ->
+            assertWithMessage(generatedClass).that(elements).isNotEmpty());
+  }
+
+  @Test
+  public void dispatcher_originatesFromConfigurationAndProviders() {
+    RecordingProcessor processor = new RecordingProcessor();
+
+    javac()
+        .withProcessors(processor)
+        .compile(
+            annotatedNotesConfigurationWithNotesProvider(annotationPrinter),
+            annotatedNotesProvider(annotationPrinter),
+            annotatedNotesCrossProfileType(annotationPrinter));
+
+    assertThat(processor.originatingElements.get(DISPATCHER_NAME))
+        .containsAtLeast(NOTES_PACKAGE + ".NotesConfiguration", NOTES_PACKAGE + ".NotesProvider");
+  }
+}
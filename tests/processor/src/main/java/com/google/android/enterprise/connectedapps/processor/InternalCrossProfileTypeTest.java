@@ -25,6 +25,8 @@ import com.google.android.enterprise.connectedapps.processor.annotationdiscovery
 import com.google.android.enterprise.connectedapps.processor.annotationdiscovery.AnnotationPrinter;
 import com.google.android.enterprise.connectedapps.processor.annotationdiscovery.AnnotationStrings;
 import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import javax.tools.JavaFileObject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
@@ -100,4 +102,66 @@ public class InternalCrossProfileTypeTest {
         .contentsAsUtf8String()
         .contains("static ProfileNotesType_Internal instance()");
   }
+
+  @Test
+  public void internalClass_directlyWrittenParameters_writtenAndReadWithoutBundler() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(annotatedNotesProvider(annotationPrinter), notesTypeWithParameters());
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Internal")
+        .contentsAsUtf8String()
+        .contains("params.writeInt(count);");
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Internal")
+        .contentsAsUtf8String()
+        .contains("String title = params.readString();");
+  }
+
+  @Test
+  public void internalClass_otherParameters_useBundlerTypeConstant() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(annotatedNotesProvider(annotationPrinter), notesTypeWithParameters());
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Internal")
+        .contentsAsUtf8String()
+        .contains(
+            "private static final BundlerType METHOD0_PARAMETER2_TYPE = BundlerType.of("
+                + "\"java.util.List\", BundlerType.of(\"java.lang.String\"));");
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_Internal")
+        .contentsAsUtf8String()
+        .contains("bundler.writeToParcel(params, tags, METHOD0_PARAMETER2_TYPE, /* flags= */ 0);");
+  }
+
+  @Test
+  public void otherProfileClass_writesParametersUsingInternalClass() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(annotatedNotesProvider(annotationPrinter), notesTypeWithParameters());
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_OtherProfile")
+        .contentsAsUtf8String()
+        .contains("ProfileNotesType_Internal.writeParameters0(params, count, title, tags);");
+  }
+
+  private JavaFileObject notesTypeWithParameters() {
+    return JavaFileObjects.forSourceLines(
+        NOTES_PACKAGE + ".NotesType",
+        "package " + NOTES_PACKAGE + ";",
+        "import " + annotationPrinter.crossProfileQualifiedName() + ";",
+        "import java.util.List;",
+        "public final class NotesType {",
+        annotationPrinter.crossProfileAsAnnotation(),
+        "  public void addNotes(int count, String title, List<String> tags) {",
+        "  }",
+        "}");
+  }
 }
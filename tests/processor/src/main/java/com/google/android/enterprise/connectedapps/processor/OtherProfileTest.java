@@ -87,4 +87,21 @@ public class OtherProfileTest {
         .contains(
             "public ProfileNotesType_OtherProfile(ProfileConnector connector)");
   }
+
+  @Test
+  public void tracingEnabled_otherProfileMethodsAreTraced() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .withOptions("-A" + ProcessorConfiguration.TRACING_OPTION + "=true")
+            .compile(
+                annotatedNotesProvider(annotationPrinter),
+                annotatedNotesCrossProfileType(annotationPrinter));
+
+    assertThat(compilation)
+        .generatedSourceFile(NOTES_PACKAGE + ".ProfileNotesType_OtherProfile")
+        .contentsAsUtf8String()
+        .contains(
+            "TraceUtilities.beginSection(\"ProfileNotesType_OtherProfile#refreshNotes\");");
+  }
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.processor;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+
+import com.google.testing.compile.Compilation;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import javax.tools.JavaFileObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Measures the time taken by {@link Processor} for a large codebase.
+ *
+ * <p>The input is {@code connectedapps.benchmark.processorTypes} cross-profile types (default
+ * 1,000), each with {@code connectedapps.benchmark.processorMethods} cross-profile methods (default
+ * 20), all provided by a single configuration. Methods use a mix of primitives, strings,
+ * collections and parcelables so that type analysis is exercised.
+ *
+ * <p>Compilation runs with {@code -proc:only} so that only annotation processing is measured. The
+ * time spent in {@link Processor#process} is printed for each of {@code
+ * connectedapps.benchmark.processorIterations} runs (default 3), after a warmup run.
+ *
+ * <p>This is not run with the processor tests as it takes some time.
+ */
+@RunWith(JUnit4.class)
+public class ProcessorBenchmark {
+
+  private static final int PARCELABLE_TYPES = 50;
+
+  private static final int TYPES = Integer.getInteger("connectedapps.benchmark.processorTypes", 1000);
+  private static final int METHODS =
+      Integer.getInteger("connectedapps.benchmark.processorMethods", 20);
+  private static final int ITERATIONS =
+      Integer.getInteger("connectedapps.benchmark.processorIterations", 3);
+
+  /** Records the time spent processing by the wrapped {@link Processor}. */
+  private static final class TimingProcessor extends AbstractProcessor {
+    private final Processor processor = new Processor();
+    long processingNanos = 0;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+      super.init(processingEnv);
+      processor.init(processingEnv);
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+      return processor.getSupportedAnnotationTypes();
+    }
+
+    @Override
+    public Set<String> getSupportedOptions() {
+      return processor.getSupportedOptions();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+      return processor.getSupportedSourceVersion();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+      long startNanos = System.nanoTime();
+      try {
+        return processor.process(annotations, roundEnv);
+      } finally {
+        processingNanos += System.nanoTime() - startNanos;
+      }
+    }
+  }
+
+  @Test
+  public void largeCodebase() {
+    List<JavaFileObject> sources = BenchmarkSources.create(PARCELABLE_TYPES, TYPES, METHODS);
+
+    process(sources); // Warmup
+    for (int i = 0; i < ITERATIONS; i++) {
+      long startNanos = System.nanoTime();
+      long processingNanos = process(sources);
+      long wallNanos = System.nanoTime() - startNanos;
+
+      System.out.println(
+          String.format(
+              Locale.US,
+              "ProcessorBenchmark#largeCodebase/%dx%d: processing %,d ms, total %,d ms",
+              TYPES,
+              METHODS,
+              TimeUnit.NANOSECONDS.toMillis(processingNanos),
+              TimeUnit.NANOSECONDS.toMillis(wallNanos)));
+    }
+  }
+
+  private static long process(List<JavaFileObject> sources) {
+    TimingProcessor processor = new TimingProcessor();
+    Compilation compilation =
+        javac().withProcessors(processor).withOptions("-proc:only").compile(sources);
+    assertThat(compilation).succeeded();
+    return processor.processingNanos;
+  }
+}
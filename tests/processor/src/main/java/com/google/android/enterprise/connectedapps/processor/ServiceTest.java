@@ -81,6 +81,40 @@ public class ServiceTest {
         .contains("CrossProfileConnector_Service extends Service");
   }
 
+  @Test
+  public void serviceClass_reportsSupportedFeatures() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(
+                annotatedNotesConfigurationWithNotesProvider(annotationPrinter),
+                annotatedNotesProvider(annotationPrinter),
+                annotatedNotesCrossProfileType(annotationPrinter));
+
+    assertThat(compilation)
+        .generatedSourceFile(
+            "com.google.android.enterprise.connectedapps.CrossProfileConnector_Service")
+        .contentsAsUtf8String()
+        .contains("return PayloadCompression.SUPPORTED_FEATURES;");
+  }
+
+  @Test
+  public void serviceClass_handlesDirectCalls() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(
+                annotatedNotesConfigurationWithNotesProvider(annotationPrinter),
+                annotatedNotesProvider(annotationPrinter),
+                annotatedNotesCrossProfileType(annotationPrinter));
+
+    assertThat(compilation)
+        .generatedSourceFile(
+            "com.google.android.enterprise.connectedapps.CrossProfileConnector_Service")
+        .contentsAsUtf8String()
+        .contains("dispatcher.callDirect(getApplicationContext(), data, reply);");
+  }
+
   @Test
   public void serviceClass_specifiedAlternativeClass_extendsAlternativeServiceClass() {
     JavaFileObject serviceBaseClass =
@@ -162,4 +196,41 @@ public class ServiceTest {
         .contentsAsUtf8String()
         .contains("CustomConnector extends Service");
   }
+
+  @Test
+  public void warmUpEnabled_serviceStartsWarmUp() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .withOptions("-A" + ProcessorConfiguration.WARM_UP_OPTION + "=true")
+            .compile(
+                annotatedNotesConfigurationWithNotesProvider(annotationPrinter),
+                annotatedNotesProvider(annotationPrinter),
+                annotatedNotesCrossProfileType(annotationPrinter));
+
+    assertThat(compilation)
+        .generatedSourceFile(
+            "com.google.android.enterprise.connectedapps.CrossProfileConnector_Service")
+        .contentsAsUtf8String()
+        .contains(
+            "ServiceWarmUp.instance().start(CrossProfileConnector_Service_Dispatcher.class, () ->"
+                + " CrossProfileConnector_Service_Dispatcher.warmUp(");
+  }
+
+  @Test
+  public void warmUpNotEnabled_serviceDoesNotWarmUp() {
+    Compilation compilation =
+        javac()
+            .withProcessors(new Processor())
+            .compile(
+                annotatedNotesConfigurationWithNotesProvider(annotationPrinter),
+                annotatedNotesProvider(annotationPrinter),
+                annotatedNotesCrossProfileType(annotationPrinter));
+
+    assertThat(compilation)
+        .generatedSourceFile(
+            "com.google.android.enterprise.connectedapps.CrossProfileConnector_Service")
+        .contentsAsUtf8String()
+        .doesNotContain("ServiceWarmUp");
+  }
 }
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.processor;
+
+import static com.google.android.enterprise.connectedapps.processor.BenchmarkSources.PACKAGE;
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+
+import com.google.common.io.ByteStreams;
+import com.google.testing.compile.Compilation;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.tools.JavaFileObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Compares the code generated with and without {@link
+ * ProcessorConfiguration#SHARED_BUNDLER_OPTION}.
+ *
+ * <p>The input is {@code connectedapps.benchmark.bundlerTypes} cross-profile types (default 100),
+ * each with {@code connectedapps.benchmark.bundlerMethods} cross-profile methods (default 10), using
+ * a mix of primitives, strings, collections and parcelables.
+ *
+ * <p>For each mode this prints the number of classes and methods generated, which approximates the
+ * dex method count as each generated method becomes one dex method, and the time taken to load,
+ * link and instantiate the bundler for every cross-profile type in a new class loader, which is the
+ * class-load cost paid on the first call to each type. The time is the median of {@code
+ * connectedapps.benchmark.bundlerIterations} runs (default 20).
+ *
+ * <p>This is not run with the processor tests as it takes some time.
+ */
+@RunWith(JUnit4.class)
+public class SharedBundlerBenchmark {
+
+  private static final String SHARED_PREFIX = PACKAGE + ".Benchmark";
+  private static final int PARCELABLE_TYPES = 20;
+
+  private static final int TYPES = Integer.getInteger("connectedapps.benchmark.bundlerTypes", 100);
+  private static final int METHODS =
+      Integer.getInteger("connectedapps.benchmark.bundlerMethods", 10);
+  private static final int ITERATIONS =
+      Integer.getInteger("connectedapps.benchmark.bundlerIterations", 20);
+
+  /** Loads classes from the output of a {@link Compilation}. */
+  private static final class CompiledClassLoader extends ClassLoader {
+    private final Map<String, byte[]> classes;
+
+    CompiledClassLoader(Map<String, byte[]> classes) {
+      super(SharedBundlerBenchmark.class.getClassLoader());
+      this.classes = classes;
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+      byte[] bytes = classes.get(name);
+      if (bytes == null) {
+        throw new ClassNotFoundException(name);
+      }
+      return defineClass(name, bytes, 0, bytes.length);
+    }
+  }
+
+  @Test
+  public void generatedCode() throws Exception {
+    List<JavaFileObject> sources = BenchmarkSources.create(PARCELABLE_TYPES, TYPES, METHODS);
+
+    measure("perType", compile(sources), /* sharedBundler= */ false);
+    measure(
+        "shared",
+        compile(sources, "-A" + ProcessorConfiguration.SHARED_BUNDLER_OPTION + "=" + SHARED_PREFIX),
+        /* sharedBundler= */ true);
+  }
+
+  private static Map<String, byte[]> compile(List<JavaFileObject> sources, String... options)
+      throws IOException {
+    Compilation compilation =
+        javac().withProcessors(new Processor()).withOptions((Object[]) options).compile(sources);
+    assertThat(compilation).succeeded();
+
+    Map<String, byte[]> classes = new HashMap<>();
+    for (JavaFileObject file : compilation.generatedFiles()) {
+      if (file.getKind() != JavaFileObject.Kind.CLASS) {
+        continue;
+      }
+      try (InputStream in = file.openInputStream()) {
+        classes.put(className(file), ByteStreams.toByteArray(in));
+      }
+    }
+    return classes;
+  }
+
+  private static String className(JavaFileObject classFile) {
+    String path = classFile.toUri().getPath();
+    path = path.substring(path.indexOf("/CLASS_OUTPUT/") + "/CLASS_OUTPUT/".length());
+    return path.substring(0, path.length() - ".class".length()).replace('/', '.');
+  }
+
+  private static void measure(String mode, Map<String, byte[]> classes, boolean sharedBundler)
+      throws Exception {
+    int generatedClasses = 0;
+    int generatedMethods = 0;
+    int bundlerClasses = 0;
+    int bundlerMethods = 0;
+    long generatedBytes = 0;
+
+    CompiledClassLoader classLoader = new CompiledClassLoader(classes);
+    for (Map.Entry<String, byte[]> compiledClass : classes.entrySet()) {
+      if (isInput(compiledClass.getKey())) {
+        continue;
+      }
+      Class<?> clazz = Class.forName(compiledClass.getKey(), /* initialize= */ false, classLoader);
+      int methods = clazz.getDeclaredMethods().length + clazz.getDeclaredConstructors().length;
+      generatedClasses++;
+      generatedMethods += methods;
+      generatedBytes += compiledClass.getValue().length;
+      if (isBundlerOrWrapper(compiledClass.getKey())) {
+        bundlerClasses++;
+        bundlerMethods += methods;
+      }
+    }
+
+    long[] loadNanos = new long[ITERATIONS];
+    for (int i = 0; i < ITERATIONS; i++) {
+      loadNanos[i] = loadBundlers(new CompiledClassLoader(classes), sharedBundler);
+    }
+    Arrays.sort(loadNanos);
+
+    System.out.println(
+        String.format(
+            Locale.US,
+            "SharedBundlerBenchmark#generatedCode/%dx%d/%s: %,d generated classes with %,d methods"
+                + " (%,d bytes), of which bundlers and wrappers %,d classes with %,d methods;"
+                + " loading all bundlers %,d us",
+            TYPES,
+            METHODS,
+            mode,
+            generatedClasses,
+            generatedMethods,
+            generatedBytes,
+            bundlerClasses,
+            bundlerMethods,
+            TimeUnit.NANOSECONDS.toMicros(loadNanos[ITERATIONS / 2])));
+  }
+
+  /** Load and instantiate the bundler used by each cross-profile type, as its first call would. */
+  private static long loadBundlers(ClassLoader classLoader, boolean sharedBundler)
+      throws Exception {
+    long startNanos = System.nanoTime();
+    for (int i = 0; i < TYPES; i++) {
+      String bundlerName =
+          sharedBundler ? SHARED_PREFIX + "_Bundler" : PACKAGE + ".ProfileType" + i + "_Bundler";
+      Class.forName(bundlerName, /* initialize= */ true, classLoader)
+          .getDeclaredConstructor()
+          .newInstance();
+    }
+    return System.nanoTime() - startNanos;
+  }
+
+  private static boolean isInput(String className) {
+    String simpleName = className.substring(className.lastIndexOf('.') + 1);
+    return simpleName.matches("(Type|Parcelable)[0-9]+")
+        || simpleName.equals("BenchmarkProvider")
+        || simpleName.equals("BenchmarkConfiguration");
+  }
+
+  private static boolean isBundlerOrWrapper(String className) {
+    // Includes nested classes, such as the CREATOR of a wrapper
+    String simpleName = className.substring(className.lastIndexOf('.') + 1).split("\\$")[0];
+    return simpleName.endsWith("_Bundler")
+        || simpleName.contains("_Parcelable")
+        || simpleName.contains("Wrapper");
+  }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps;
+
+import static com.google.android.enterprise.connectedapps.SharedTestUtilities.INTERACT_ACROSS_USERS;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Intent;
+import android.os.Build.VERSION_CODES;
+import android.os.UserHandle;
+import android.os.UserManager;
+import androidx.test.core.app.ApplicationProvider;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowUserManager.UserState;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(minSdk = VERSION_CODES.O)
+public class AbstractUserConnectorTest {
+
+  private static final int WORK_USER_ID = 10;
+  private static final int SECONDARY_USER_ID = 11;
+  private static final int STOPPED_USER_ID = 12;
+
+  private final Application context = ApplicationProvider.getApplicationContext();
+  private final UserManager userManager = context.getSystemService(UserManager.class);
+  private final TestScheduledExecutorService scheduledExecutorService =
+      new TestScheduledExecutorService();
+  private final RobolectricTestUtilities testUtilities =
+      new RobolectricTestUtilities(context, scheduledExecutorService);
+  private final TestConnectionListener connectionListener = new TestConnectionListener();
+  private final UserHandle workUser = SharedTestUtilities.getUserHandleForUserId(WORK_USER_ID);
+  private final UserHandle secondaryUser =
+      SharedTestUtilities.getUserHandleForUserId(SECONDARY_USER_ID);
+  private final UserHandle stoppedUser =
+      SharedTestUtilities.getUserHandleForUserId(STOPPED_USER_ID);
+
+  private AbstractUserConnector connector;
+
+  @Before
+  public void setUp() {
+    testUtilities.initTests();
+    testUtilities.setBinding(new TestService(), CrossUserConnector.class.getName());
+    testUtilities.createWorkUser();
+    testUtilities.turnOnWorkProfile();
+    testUtilities.setRunningOnPersonalProfile();
+    testUtilities.setRequestsPermissions(INTERACT_ACROSS_USERS);
+    testUtilities.grantPermissions(INTERACT_ACROSS_USERS);
+    shadowOf(userManager).addUser(SECONDARY_USER_ID, "Secondary User", /* flags= */ 0);
+    shadowOf(userManager).setUserState(secondaryUser, UserState.STATE_RUNNING_UNLOCKED);
+    shadowOf(userManager).addUser(STOPPED_USER_ID, "Stopped User", /* flags= */ 0);
+    shadowOf(userManager).setUserState(stoppedUser, UserState.STATE_SHUTDOWN);
+
+    connector =
+        (AbstractUserConnector)
+            CrossUserConnector.builder(context)
+                .setScheduledExecutorService(scheduledExecutorService)
+                .build();
+  }
+
+  @Test
+  public void crossProfileSender_sameUser_returnsSameSender() {
+    assertThat(connector.crossProfileSender(workUser))
+        .isSameInstanceAs(connector.crossProfileSender(workUser));
+  }
+
+  @Test
+  public void crossProfileSender_differentUsers_returnsDifferentSenders() {
+    assertThat(connector.crossProfileSender(workUser))
+        .isNotSameInstanceAs(connector.crossProfileSender(secondaryUser));
+  }
+
+  @Test
+  public void isAvailable_userIsRunning_returnsTrue() {
+    assertThat(connector.isAvailable(secondaryUser)).isTrue();
+  }
+
+  @Test
+  public void isAvailable_userIsNotRunning_returnsFalse() {
+    assertThat(connector.isAvailable(stoppedUser)).isFalse();
+  }
+
+  @Test
+  public void startConnecting_connectsOnlyToThatUser() {
+    connector.startConnecting(workUser);
+    testUtilities.advanceTimeBySeconds(1);
+
+    assertThat(connector.isConnected(workUser)).isTrue();
+    assertThat(connector.isConnected(secondaryUser)).isFalse();
+  }
+
+  @Test
+  public void startConnecting_multipleUsers_connectsToAvailableUsers() {
+    connector.startConnecting(Arrays.asList(workUser, secondaryUser, stoppedUser));
+    testUtilities.advanceTimeBySeconds(1);
+
+    assertThat(connector.connectedUsers()).containsExactly(workUser, secondaryUser);
+  }
+
+  @Test
+  public void registerConnectionListener_onlyNotifiedForThatUser() {
+    connector.registerConnectionListener(workUser, connectionListener);
+
+    connector.startConnecting(secondaryUser);
+    testUtilities.advanceTimeBySeconds(1);
+    assertThat(connectionListener.connectionChangedCount()).isEqualTo(0);
+
+    connector.startConnecting(workUser);
+    testUtilities.advanceTimeBySeconds(1);
+    assertThat(connectionListener.connectionChangedCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void idleConnection_isEvicted() {
+    CrossProfileSender sender = connector.crossProfileSender(workUser);
+
+    testUtilities.advanceTimeBySeconds(
+        (int) AbstractUserConnector.IDLE_CONNECTION_EVICTION_SECONDS * 2 + 1);
+
+    assertThat(connector.crossProfileSender(workUser)).isNotSameInstanceAs(sender);
+  }
+
+  @Test
+  public void manuallyManagedConnection_isNotEvicted() {
+    connector.startConnecting(workUser);
+    CrossProfileSender sender = connector.crossProfileSender(workUser);
+
+    testUtilities.advanceTimeBySeconds(
+        (int) AbstractUserConnector.IDLE_CONNECTION_EVICTION_SECONDS * 2 + 1);
+
+    assertThat(connector.crossProfileSender(workUser)).isSameInstanceAs(sender);
+  }
+
+  @Test
+  public void connectionWithListener_isNotEvicted() {
+    connector.registerConnectionListener(workUser, connectionListener);
+    CrossProfileSender sender = connector.crossProfileSender(workUser);
+
+    testUtilities.advanceTimeBySeconds(
+        (int) AbstractUserConnector.IDLE_CONNECTION_EVICTION_SECONDS * 2 + 1);
+
+    assertThat(connector.crossProfileSender(workUser)).isSameInstanceAs(sender);
+  }
+
+  @Test
+  public void callEachUser_onlyCallsConnectedUsers() {
+    connector.startConnecting(workUser);
+    testUtilities.advanceTimeBySeconds(1);
+
+    Map<UserHandle, Integer> results =
+        connector.callEachUser(
+            Arrays.asList(workUser, secondaryUser), UserHandle::getIdentifier);
+
+    assertThat(results).containsExactly(workUser, WORK_USER_ID);
+  }
+
+  @Test
+  public void callEachUser_callsUsersConcurrently() {
+    connector.startConnecting(Arrays.asList(workUser, secondaryUser));
+    testUtilities.advanceTimeBySeconds(1);
+    // Each call waits for the other to start, so this only completes if they run at the same time
+    CyclicBarrier bothCallsStarted = new CyclicBarrier(2);
+
+    Map<UserHandle, Integer> results =
+        connector.callEachUser(
+            Arrays.asList(workUser, secondaryUser),
+            userHandle -> {
+              try {
+                bothCallsStarted.await(10, TimeUnit.SECONDS);
+              } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+                throw new IllegalStateException(e);
+              }
+              return userHandle.getIdentifier();
+            });
+
+    assertThat(results).containsExactly(workUser, WORK_USER_ID, secondaryUser, SECONDARY_USER_ID);
+  }
+
+  @Test
+  public void callEachUser_callThrowsRuntimeException_rethrows() {
+    connector.startConnecting(Arrays.asList(workUser, secondaryUser));
+    testUtilities.advanceTimeBySeconds(1);
+
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            connector.callEachUser(
+                Arrays.asList(workUser, secondaryUser),
+                userHandle -> {
+                  if (userHandle.equals(secondaryUser)) {
+                    throw new IllegalStateException();
+                  }
+                  return userHandle.getIdentifier();
+                }));
+  }
+
+  @Test
+  public void crossProfileSender_registersAvailabilityReceiver() {
+    connector.crossProfileSender(workUser);
+
+    assertThat(availabilityReceivers()).hasSize(1);
+  }
+
+  @Test
+  public void allConnectionsEvicted_unregistersAvailabilityReceiver() {
+    connector.crossProfileSender(workUser);
+
+    testUtilities.advanceTimeBySeconds(
+        (int) AbstractUserConnector.IDLE_CONNECTION_EVICTION_SECONDS * 2 + 1);
+
+    assertThat(availabilityReceivers()).isEmpty();
+  }
+
+  @Test
+  public void connectionCreatedAfterEviction_registersAvailabilityReceiverAgain() {
+    connector.crossProfileSender(workUser);
+    testUtilities.advanceTimeBySeconds(
+        (int) AbstractUserConnector.IDLE_CONNECTION_EVICTION_SECONDS * 2 + 1);
+
+    connector.crossProfileSender(workUser);
+
+    assertThat(availabilityReceivers()).hasSize(1);
+  }
+
+  @Test
+  public void connectionCreatedAfterEviction_isEvictedAgain() {
+    connector.crossProfileSender(workUser);
+    testUtilities.advanceTimeBySeconds(
+        (int) AbstractUserConnector.IDLE_CONNECTION_EVICTION_SECONDS * 2 + 1);
+    CrossProfileSender sender = connector.crossProfileSender(workUser);
+
+    testUtilities.advanceTimeBySeconds(
+        (int) AbstractUserConnector.IDLE_CONNECTION_EVICTION_SECONDS * 2 + 1);
+
+    assertThat(connector.crossProfileSender(workUser)).isNotSameInstanceAs(sender);
+  }
+
+  private List<BroadcastReceiver> availabilityReceivers() {
+    // Only the connector listens for user changes; each sender listens for profile changes
+    return shadowOf(context).getReceiversForIntent(new Intent(Intent.ACTION_USER_FOREGROUND));
+  }
+}
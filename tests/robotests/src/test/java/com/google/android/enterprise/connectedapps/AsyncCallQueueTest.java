@@ -0,0 +1,125 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.android.enterprise.connectedapps.annotations.CallPriority;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class AsyncCallQueueTest {
+
+  private final AsyncCallQueue<String> unboundedQueue =
+      new AsyncCallQueue<>(Integer.MAX_VALUE, QueueFullPolicy.REJECT_NEW_CALL);
+
+  @Test
+  public void construct_nonPositiveMaxSize_throwsIllegalArgumentException() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new AsyncCallQueue<String>(0, QueueFullPolicy.REJECT_NEW_CALL));
+  }
+
+  @Test
+  public void poll_returnsHigherPrioritiesFirst() {
+    unboundedQueue.add("low", CallPriority.LOW);
+    unboundedQueue.add("normal", CallPriority.NORMAL);
+    unboundedQueue.add("high", CallPriority.HIGH);
+
+    assertThat(unboundedQueue.poll()).isEqualTo("high");
+    assertThat(unboundedQueue.poll()).isEqualTo("normal");
+    assertThat(unboundedQueue.poll()).isEqualTo("low");
+    assertThat(unboundedQueue.poll()).isNull();
+  }
+
+  @Test
+  public void poll_samePriority_returnsInOrderAdded() {
+    unboundedQueue.add("first", CallPriority.NORMAL);
+    unboundedQueue.add("second", CallPriority.NORMAL);
+
+    assertThat(unboundedQueue.poll()).isEqualTo("first");
+    assertThat(unboundedQueue.poll()).isEqualTo("second");
+  }
+
+  @Test
+  public void add_defaultPriority_isTreatedAsNormal() {
+    unboundedQueue.add("default", CallPriority.DEFAULT);
+
+    assertThat(unboundedQueue.size(CallPriority.NORMAL)).isEqualTo(1);
+  }
+
+  @Test
+  public void addFirst_returnsElementBeforeOthersOfSamePriority() {
+    unboundedQueue.add("second", CallPriority.NORMAL);
+    unboundedQueue.addFirst("first", CallPriority.NORMAL);
+
+    assertThat(unboundedQueue.poll()).isEqualTo("first");
+  }
+
+  @Test
+  public void size_returnsSizeOfEachPriority() {
+    unboundedQueue.add("a", CallPriority.HIGH);
+    unboundedQueue.add("b", CallPriority.LOW);
+    unboundedQueue.add("c", CallPriority.LOW);
+
+    assertThat(unboundedQueue.size(CallPriority.HIGH)).isEqualTo(1);
+    assertThat(unboundedQueue.size(CallPriority.NORMAL)).isEqualTo(0);
+    assertThat(unboundedQueue.size(CallPriority.LOW)).isEqualTo(2);
+  }
+
+  @Test
+  public void size_returnsSizeOfAllPriorities() {
+    unboundedQueue.add("a", CallPriority.HIGH);
+    unboundedQueue.add("b", CallPriority.LOW);
+    unboundedQueue.add("c", CallPriority.LOW);
+
+    assertThat(unboundedQueue.size()).isEqualTo(3);
+  }
+
+  @Test
+  public void add_full_rejectNewCall_returnsNewElement() {
+    AsyncCallQueue<String> queue = new AsyncCallQueue<>(1, QueueFullPolicy.REJECT_NEW_CALL);
+    queue.add("low", CallPriority.LOW);
+
+    assertThat(queue.add("high", CallPriority.HIGH)).isEqualTo("high");
+    assertThat(queue.poll()).isEqualTo("low");
+  }
+
+  @Test
+  public void add_full_shedLowestPriority_returnsOldestLowestPriorityElement() {
+    AsyncCallQueue<String> queue =
+        new AsyncCallQueue<>(3, QueueFullPolicy.SHED_LOWEST_PRIORITY_CALL);
+    queue.add("normal", CallPriority.NORMAL);
+    queue.add("low1", CallPriority.LOW);
+    queue.add("low2", CallPriority.LOW);
+
+    assertThat(queue.add("high", CallPriority.HIGH)).isEqualTo("low1");
+    assertThat(queue.size(CallPriority.HIGH)).isEqualTo(1);
+    assertThat(queue.size(CallPriority.LOW)).isEqualTo(1);
+  }
+
+  @Test
+  public void add_full_shedLowestPriority_noLowerPriority_returnsNewElement() {
+    AsyncCallQueue<String> queue =
+        new AsyncCallQueue<>(1, QueueFullPolicy.SHED_LOWEST_PRIORITY_CALL);
+    queue.add("normal", CallPriority.NORMAL);
+
+    assertThat(queue.add("other", CallPriority.NORMAL)).isEqualTo("other");
+  }
+}
@@ -19,6 +19,7 @@ import static com.google.android.enterprise.connectedapps.RobolectricTestUtiliti
 import static com.google.android.enterprise.connectedapps.RobolectricTestUtilities.TEST_SERVICE_CLASS_NAME;
 import static com.google.android.enterprise.connectedapps.SharedTestUtilities.INTERACT_ACROSS_USERS;
 import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.junit.Assert.assertThrows;
 import static org.robolectric.Shadows.shadowOf;
 import static org.robolectric.annotation.LooperMode.Mode.LEGACY;
@@ -28,17 +29,24 @@ import android.app.admin.DevicePolicyManager;
 import android.content.ComponentName;
 import android.os.Build.VERSION_CODES;
 import android.os.Parcel;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import androidx.test.core.app.ApplicationProvider;
 import com.google.android.enterprise.connectedapps.annotations.AvailabilityRestrictions;
+import com.google.android.enterprise.connectedapps.annotations.CallPriority;
 import com.google.android.enterprise.connectedapps.exceptions.UnavailableProfileException;
 import com.google.common.collect.ImmutableList;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowLooper;
 
 @LooperMode(LEGACY)
 @RunWith(RobolectricTestRunner.class)
@@ -470,6 +478,550 @@ public class CrossProfileSenderTest {
     assertThat(availabilityListener.availabilityChangedCount()).isEqualTo(1);
   }
 
+  @Test
+  public void callAsync_queueIsFull_failsNewCall() {
+    CrossProfileSender boundedSender =
+        createBoundedSender(/* maxQueuedAsyncCalls= */ 1, QueueFullPolicy.REJECT_NEW_CALL);
+    TestLocalCallback firstCallback = new TestLocalCallback();
+    TestLocalCallback secondCallback = new TestLocalCallback();
+
+    boundedSender.callAsync(
+        /* crossProfileTypeIdentifier= */ 0,
+        /* methodIdentifier= */ 0,
+        Parcel.obtain(),
+        firstCallback,
+        /* timeoutMillis= */ 1000);
+    boundedSender.callAsync(
+        /* crossProfileTypeIdentifier= */ 0,
+        /* methodIdentifier= */ 0,
+        Parcel.obtain(),
+        secondCallback,
+        /* timeoutMillis= */ 1000);
+
+    assertThat(firstCallback.exceptionCount).isEqualTo(0);
+    assertThat(secondCallback.exceptionCount).isEqualTo(1);
+    assertThat(boundedSender.getQueuedAsyncCallCount(CallPriority.NORMAL)).isEqualTo(1);
+  }
+
+  @Test
+  public void callAsync_queueIsFull_shedLowestPriority_failsLowerPriorityCall() {
+    CrossProfileSender boundedSender =
+        createBoundedSender(
+            /* maxQueuedAsyncCalls= */ 1, QueueFullPolicy.SHED_LOWEST_PRIORITY_CALL);
+    TestLocalCallback lowPriorityCallback = new TestLocalCallback();
+    TestLocalCallback highPriorityCallback = new TestLocalCallback();
+
+    boundedSender.callAsync(
+        /* crossProfileTypeIdentifier= */ 0,
+        /* methodIdentifier= */ 0,
+        Parcel.obtain(),
+        lowPriorityCallback,
+        /* timeoutMillis= */ 1000,
+        CallPriority.LOW);
+    boundedSender.callAsync(
+        /* crossProfileTypeIdentifier= */ 0,
+        /* methodIdentifier= */ 0,
+        Parcel.obtain(),
+        highPriorityCallback,
+        /* timeoutMillis= */ 1000,
+        CallPriority.HIGH);
+
+    assertThat(lowPriorityCallback.exceptionCount).isEqualTo(1);
+    assertThat(highPriorityCallback.exceptionCount).isEqualTo(0);
+    assertThat(boundedSender.getQueuedAsyncCallCount(CallPriority.HIGH)).isEqualTo(1);
+    assertThat(boundedSender.getQueuedAsyncCallCount(CallPriority.LOW)).isEqualTo(0);
+  }
+
+  @Test
+  public void callAsync_callbackExecutorSet_deliversExceptionOnCallbackExecutor() {
+    QueueingExecutor callbackExecutor = new QueueingExecutor();
+    CrossProfileSender boundedSender =
+        createBoundedSender(
+            /* maxQueuedAsyncCalls= */ 1, QueueFullPolicy.REJECT_NEW_CALL, callbackExecutor);
+    TestLocalCallback callback = new TestLocalCallback();
+    boundedSender.callAsync(
+        /* crossProfileTypeIdentifier= */ 0,
+        /* methodIdentifier= */ 0,
+        Parcel.obtain(),
+        new TestLocalCallback(),
+        /* timeoutMillis= */ 1000);
+
+    boundedSender.callAsync(
+        /* crossProfileTypeIdentifier= */ 0,
+        /* methodIdentifier= */ 0,
+        Parcel.obtain(),
+        callback,
+        /* timeoutMillis= */ 1000);
+
+    assertThat(callback.exceptionCount).isEqualTo(0);
+    callbackExecutor.runAll();
+    assertThat(callback.exceptionCount).isEqualTo(1);
+  }
+
+  @Test
+  public void callAsync_asyncSendExecutorSet_sendsOnAsyncSendExecutor() {
+    QueueingExecutor asyncSendExecutor = new QueueingExecutor();
+    CrossProfileSender parallelSender =
+        createParallelSender(asyncSendExecutor, /* maxParallelAsyncSends= */ 1);
+    parallelSender.startManuallyBinding();
+
+    parallelSender.callAsync(
+        /* crossProfileTypeIdentifier= */ 1,
+        /* methodIdentifier= */ 0,
+        Parcel.obtain(),
+        new TestLocalCallback(),
+        /* timeoutMillis= */ 1000);
+
+    assertThat(testService.lastCall()).isNull();
+    asyncSendExecutor.runAll();
+    assertThat(testService.lastCall().getCrossProfileTypeIdentifier()).isEqualTo(1);
+  }
+
+  @Test
+  public void callAsync_multipleQueuedCalls_sendsUpToMaxParallelAsyncSendsAtOnce() {
+    QueueingExecutor asyncSendExecutor = new QueueingExecutor();
+    CrossProfileSender parallelSender =
+        createParallelSender(asyncSendExecutor, /* maxParallelAsyncSends= */ 2);
+    parallelSender.startManuallyBinding();
+
+    for (int i = 0; i < 3; i++) {
+      parallelSender.callAsync(
+          /* crossProfileTypeIdentifier= */ 0,
+          /* methodIdentifier= */ 0,
+          Parcel.obtain(),
+          new TestLocalCallback(),
+          /* timeoutMillis= */ 1000);
+    }
+
+    assertThat(asyncSendExecutor.queuedTaskCount()).isEqualTo(2);
+    asyncSendExecutor.runAll();
+    assertThat(parallelSender.getQueuedAsyncCallCount(CallPriority.NORMAL)).isEqualTo(0);
+  }
+
+  @Test
+  public void callAsync_singleQueuedCall_startsOneSendTask() {
+    QueueingExecutor asyncSendExecutor = new QueueingExecutor();
+    CrossProfileSender parallelSender =
+        createParallelSender(asyncSendExecutor, /* maxParallelAsyncSends= */ 2);
+    parallelSender.startManuallyBinding();
+
+    parallelSender.callAsync(
+        /* crossProfileTypeIdentifier= */ 0,
+        /* methodIdentifier= */ 0,
+        Parcel.obtain(),
+        new TestLocalCallback(),
+        /* timeoutMillis= */ 1000);
+
+    assertThat(asyncSendExecutor.queuedTaskCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void callAsync_resultReceived_deliversResultOnResultExecutor() throws Exception {
+    QueueingExecutor resultExecutor = new QueueingExecutor();
+    CrossProfileSender resultSender = createSenderWithResultExecutor(resultExecutor);
+    resultSender.startManuallyBinding();
+    TestLocalCallback callback = new TestLocalCallback();
+    resultSender.callAsync(
+        /* crossProfileTypeIdentifier= */ 0,
+        /* methodIdentifier= */ 0,
+        Parcel.obtain(),
+        callback,
+        /* timeoutMillis= */ 1000);
+
+    testService
+        .lastCall()
+        .callback()
+        .onResult(
+            /* callId= */ 0, /* blockId= */ 0, /* methodIdentifier= */ 0, /* params= */ new byte[0]);
+
+    assertThat(callback.resultCount).isEqualTo(0);
+    resultExecutor.runAll();
+    assertThat(callback.resultCount).isEqualTo(1);
+  }
+
+  @Test
+  public void callAsync_resultMissingBlocks_deliversException() throws Exception {
+    QueueingExecutor resultExecutor = new QueueingExecutor();
+    CrossProfileSender resultSender = createSenderWithResultExecutor(resultExecutor);
+    resultSender.startManuallyBinding();
+    TestLocalCallback callback = new TestLocalCallback();
+    resultSender.callAsync(
+        /* crossProfileTypeIdentifier= */ 0,
+        /* methodIdentifier= */ 0,
+        Parcel.obtain(),
+        callback,
+        /* timeoutMillis= */ 1000);
+
+    // Blocks 0 and 1 were never prepared
+    testService
+        .lastCall()
+        .callback()
+        .onResult(
+            /* callId= */ 0, /* blockId= */ 2, /* methodIdentifier= */ 0, /* params= */ new byte[0]);
+    resultExecutor.runAll();
+
+    assertThat(callback.resultCount).isEqualTo(0);
+    assertThat(callback.exceptionCount).isEqualTo(1);
+  }
+
+  @Test
+  public void serviceDies_failsOngoingAsyncCalls() {
+    sender.startManuallyBinding();
+    TestLocalCallback callback = new TestLocalCallback();
+    sender.callAsync(
+        /* crossProfileTypeIdentifier= */ 0,
+        /* methodIdentifier= */ 0,
+        Parcel.obtain(),
+        callback,
+        /* timeoutMillis= */ 1000);
+
+    testService.simulateDeath();
+
+    assertThat(callback.exceptionCount).isEqualTo(1);
+  }
+
+  @Test
+  public void serviceDies_rebinds() {
+    sender.startManuallyBinding();
+
+    testService.simulateDeath();
+
+    assertThat(sender.isBound()).isTrue();
+    assertThat(sender.getServiceDeathCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void serviceDies_recordsHandlingTime() {
+    sender.startManuallyBinding();
+
+    testService.simulateDeath();
+
+    assertThat(sender.getLastServiceDeathHandlingMillis()).isAtLeast(0);
+  }
+
+  @Test
+  public void serviceDies_afterUnbind_doesNothing() {
+    sender.startManuallyBinding();
+    sender.unbind();
+
+    testService.simulateDeath();
+
+    assertThat(sender.getServiceDeathCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void serviceDies_retryableOngoingAsyncCall_isSentAgain() throws Exception {
+    sender.startManuallyBinding();
+    TestLocalCallback callback = new TestLocalCallback();
+    callRetryableAsync(callback, /* timeoutMillis= */ 1000);
+
+    testService.simulateDeath();
+    runScheduledRetry(/* timeoutMillis= */ 1000);
+
+    assertThat(callback.exceptionCount).isEqualTo(0);
+    assertThat(testService.callCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void serviceDisconnects_retryableOngoingAsyncCall_isSentAgain() throws Exception {
+    sender.startManuallyBinding();
+    TestLocalCallback callback = new TestLocalCallback();
+    callRetryableAsync(callback, /* timeoutMillis= */ 1000);
+
+    testUtilities.simulateDisconnectingServiceConnection();
+    runScheduledRetry(/* timeoutMillis= */ 1000);
+
+    assertThat(callback.exceptionCount).isEqualTo(0);
+    assertThat(testService.callCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void serviceDies_retryableOngoingAsyncCall_usedAllAttempts_failsCall() throws Exception {
+    sender.startManuallyBinding();
+    TestLocalCallback callback = new TestLocalCallback();
+    callRetryableAsync(callback, /* timeoutMillis= */ 10_000);
+
+    for (int i = 1; i < CrossProfileSender.MAX_ASYNC_CALL_ATTEMPTS; i++) {
+      testService.simulateDeath();
+      runScheduledRetry(/* timeoutMillis= */ 10_000);
+    }
+    assertThat(callback.exceptionCount).isEqualTo(0);
+    testService.simulateDeath();
+
+    assertThat(callback.exceptionCount).isEqualTo(1);
+    assertThat(testService.callCount()).isEqualTo(CrossProfileSender.MAX_ASYNC_CALL_ATTEMPTS);
+  }
+
+  @Test
+  public void connectionLostDuringSend_retryableAsyncCall_isSentOnReconnect() {
+    sender.startManuallyBinding();
+    TestLocalCallback callback = new TestLocalCallback();
+    testService.dieOnNextCall();
+    callRetryableAsync(callback, /* timeoutMillis= */ 1000);
+    assertThat(testService.callCount()).isEqualTo(0);
+
+    testService.simulateDeath();
+
+    assertThat(callback.exceptionCount).isEqualTo(0);
+    assertThat(testService.callCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void connectionLostDuringSend_retryableAsyncCall_doesNotUseAnAttempt() throws Exception {
+    sender.startManuallyBinding();
+    TestLocalCallback callback = new TestLocalCallback();
+    testService.dieOnNextCall();
+    callRetryableAsync(callback, /* timeoutMillis= */ 10_000);
+    testService.simulateDeath();
+
+    for (int i = 1; i < CrossProfileSender.MAX_ASYNC_CALL_ATTEMPTS; i++) {
+      testService.simulateDeath();
+      runScheduledRetry(/* timeoutMillis= */ 10_000);
+    }
+
+    assertThat(callback.exceptionCount).isEqualTo(0);
+    assertThat(testService.callCount()).isEqualTo(CrossProfileSender.MAX_ASYNC_CALL_ATTEMPTS);
+  }
+
+  @Test
+  public void connectionLostDuringSend_retryableAsyncCall_deadlineStartsWhenSent() {
+    sender.startManuallyBinding();
+    TestLocalCallback callback = new TestLocalCallback();
+    testService.dieOnNextCall();
+    callRetryableAsync(callback, /* timeoutMillis= */ 1000);
+    SystemClock.setCurrentTimeMillis(SystemClock.elapsedRealtime() + 1000);
+    testService.simulateDeath();
+
+    testService.simulateDeath();
+
+    assertThat(callback.exceptionCount).isEqualTo(0);
+  }
+
+  @Test
+  public void sendFailsWithoutLosingConnection_asyncCall_failsCall() {
+    sender.startManuallyBinding();
+    TestLocalCallback callback = new TestLocalCallback();
+    testService.failNextCall();
+
+    sender.callAsync(
+        /* crossProfileTypeIdentifier= */ 0,
+        /* methodIdentifier= */ 0,
+        Parcel.obtain(),
+        callback,
+        /* timeoutMillis= */ 1000);
+
+    assertThat(callback.exceptionCount).isEqualTo(1);
+    assertThat(testService.callCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void sendFailsWithoutLosingConnection_retryableAsyncCall_isSentAgain() throws Exception {
+    sender.startManuallyBinding();
+    TestLocalCallback callback = new TestLocalCallback();
+    testService.failNextCall();
+    callRetryableAsync(callback, /* timeoutMillis= */ 1000);
+    assertThat(testService.callCount()).isEqualTo(0);
+
+    scheduledExecutorService.advanceTimeBy(
+        CrossProfileSender.RETRY_BASE_DELAY_MILLIS, MILLISECONDS);
+
+    assertThat(callback.exceptionCount).isEqualTo(0);
+    assertThat(testService.callCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void serviceDies_retryableOngoingAsyncCall_pastDeadline_failsCall() {
+    sender.startManuallyBinding();
+    TestLocalCallback callback = new TestLocalCallback();
+    callRetryableAsync(callback, /* timeoutMillis= */ 1000);
+
+    SystemClock.setCurrentTimeMillis(SystemClock.elapsedRealtime() + 1000);
+    testService.simulateDeath();
+
+    assertThat(callback.exceptionCount).isEqualTo(1);
+  }
+
+  @Test
+  public void serviceDies_retryableOngoingAsyncCall_retryDelayStartsOnReconnect() throws Exception {
+    sender.startManuallyBinding();
+    TestLocalCallback callback = new TestLocalCallback();
+    callRetryableAsync(callback, /* timeoutMillis= */ 10_000);
+    // Stop the binding completing so that the connection stays lost
+    ShadowLooper.pauseMainLooper();
+    testService.simulateDeath();
+    runScheduledRetry(/* timeoutMillis= */ 10_000);
+
+    ShadowLooper.unPauseMainLooper();
+
+    assertThat(testService.callCount()).isEqualTo(1);
+    scheduledExecutorService.advanceTimeBy(
+        CrossProfileSender.RETRY_BASE_DELAY_MILLIS, MILLISECONDS);
+    assertThat(testService.callCount()).isEqualTo(2);
+    assertThat(callback.exceptionCount).isEqualTo(0);
+  }
+
+  @Test
+  public void serviceDies_retryableOngoingAsyncCall_pastDeadlineWhenRetried_failsWithoutSending()
+      throws Exception {
+    sender.startManuallyBinding();
+    TestLocalCallback callback = new TestLocalCallback();
+    callRetryableAsync(callback, /* timeoutMillis= */ 1000);
+    testService.simulateDeath();
+
+    SystemClock.setCurrentTimeMillis(SystemClock.elapsedRealtime() + 1000);
+    runScheduledRetry(/* timeoutMillis= */ 1000);
+
+    assertThat(callback.exceptionCount).isEqualTo(1);
+    assertThat(testService.callCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void unbind_retryableOngoingAsyncCall_failsCall() {
+    sender.startManuallyBinding();
+    TestLocalCallback callback = new TestLocalCallback();
+    callRetryableAsync(callback, /* timeoutMillis= */ 1000);
+
+    sender.unbind();
+
+    assertThat(callback.exceptionCount).isEqualTo(1);
+  }
+
+  @Test
+  public void isIdle_retryPending_returnsFalse() {
+    sender.startManuallyBinding();
+    callRetryableAsync(new TestLocalCallback(), /* timeoutMillis= */ 1000);
+
+    testService.simulateDeath();
+
+    assertThat(sender.isIdle()).isFalse();
+  }
+
+  @Test
+  public void getLastServiceDeathHandlingMillis_serviceHasNotDied_returnsNegativeOne() {
+    sender.startManuallyBinding();
+
+    assertThat(sender.getLastServiceDeathHandlingMillis()).isEqualTo(-1);
+  }
+
+  /** An {@link Executor} which runs tasks only when {@link #runAll()} is called. */
+  private static final class QueueingExecutor implements Executor {
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+    @Override
+    public void execute(Runnable task) {
+      tasks.add(task);
+    }
+
+    int queuedTaskCount() {
+      return tasks.size();
+    }
+
+    void runAll() {
+      while (!tasks.isEmpty()) {
+        tasks.remove().run();
+      }
+    }
+  }
+
+  private static final class TestLocalCallback implements LocalCallback {
+    int resultCount = 0;
+    int exceptionCount = 0;
+
+    @Override
+    public void onResult(int methodIdentifier, Parcel params) {
+      resultCount++;
+    }
+
+    @Override
+    public void onException(Parcel exception) {
+      exceptionCount++;
+    }
+  }
+
+  private void callRetryableAsync(LocalCallback callback, long timeoutMillis) {
+    sender.callAsync(
+        /* crossProfileTypeIdentifier= */ 0,
+        /* methodIdentifier= */ 0,
+        Parcel.obtain(),
+        callback,
+        timeoutMillis,
+        CallPriority.NORMAL,
+        /* retryOnReconnect= */ true);
+  }
+
+  /**
+   * Run a retry scheduled after the connection was lost.
+   *
+   * <p>{@link TestScheduledExecutorService} runs tasks in the order they were scheduled, so the
+   * lost attempt's timeout must be passed before the retry will run.
+   */
+  private void runScheduledRetry(long timeoutMillis) throws Exception {
+    scheduledExecutorService.advanceTimeBy(timeoutMillis, MILLISECONDS);
+  }
+
+  private CrossProfileSender createBoundedSender(
+      int maxQueuedAsyncCalls, QueueFullPolicy queueFullPolicy) {
+    return createBoundedSender(
+        maxQueuedAsyncCalls, queueFullPolicy, /* callbackExecutor= */ null);
+  }
+
+  private CrossProfileSender createBoundedSender(
+      int maxQueuedAsyncCalls,
+      QueueFullPolicy queueFullPolicy,
+      @Nullable Executor callbackExecutor) {
+    // Stop the binding completing so that calls stay queued
+    ShadowLooper.pauseMainLooper();
+    return new CrossProfileSender(
+        context,
+        TEST_SERVICE_CLASS_NAME,
+        new DefaultProfileBinder(),
+        connectionListener,
+        availabilityListener,
+        scheduledExecutorService,
+        AvailabilityRestrictions.DEFAULT,
+        maxQueuedAsyncCalls,
+        queueFullPolicy,
+        /* asyncSendExecutor= */ scheduledExecutorService,
+        /* maxParallelAsyncSends= */ 1,
+        callbackExecutor,
+        /* resultExecutor= */ callbackExecutor == null ? scheduledExecutorService : callbackExecutor);
+  }
+
+  private CrossProfileSender createParallelSender(
+      Executor asyncSendExecutor, int maxParallelAsyncSends) {
+    return new CrossProfileSender(
+        context,
+        TEST_SERVICE_CLASS_NAME,
+        new DefaultProfileBinder(),
+        connectionListener,
+        availabilityListener,
+        scheduledExecutorService,
+        AvailabilityRestrictions.DEFAULT,
+        /* maxQueuedAsyncCalls= */ Integer.MAX_VALUE,
+        QueueFullPolicy.REJECT_NEW_CALL,
+        asyncSendExecutor,
+        maxParallelAsyncSends,
+        /* callbackExecutor= */ null,
+        /* resultExecutor= */ scheduledExecutorService);
+  }
+
+  private CrossProfileSender createSenderWithResultExecutor(Executor resultExecutor) {
+    return new CrossProfileSender(
+        context,
+        TEST_SERVICE_CLASS_NAME,
+        new DefaultProfileBinder(),
+        connectionListener,
+        availabilityListener,
+        scheduledExecutorService,
+        AvailabilityRestrictions.DEFAULT,
+        /* maxQueuedAsyncCalls= */ Integer.MAX_VALUE,
+        QueueFullPolicy.REJECT_NEW_CALL,
+        /* asyncSendExecutor= */ scheduledExecutorService,
+        /* maxParallelAsyncSends= */ 1,
+        /* callbackExecutor= */ null,
+        resultExecutor);
+  }
+
   private void initWithDpcBinding() {
     shadowOf(devicePolicyManager)
         .setBindDeviceAdminTargetUsers(ImmutableList.of(getWorkUserHandle()));
@@ -112,6 +112,17 @@ public class TestScheduledExecutorService extends AbstractExecutorService implem
     }
   }
 
+  /** The number of scheduled tasks which have been cancelled and not yet reached their delay. */
+  public int cancelledTaskCount() {
+    int cancelledTasks = 0;
+    for (SimpleScheduledFuture<?> future : executeQueue) {
+      if (future.isCancelled()) {
+        cancelledTasks++;
+      }
+    }
+    return cancelledTasks;
+  }
+
   private static class SimpleScheduledFuture<T> implements ScheduledFuture<T> {
 
     private final Callable<T> callable;
@@ -15,9 +15,9 @@
  */
 package com.google.android.enterprise.connectedapps;
 
+import android.os.DeadObjectException;
 import android.os.Parcel;
 import android.os.RemoteException;
-import com.google.android.enterprise.connectedapps.internal.ByteUtilities;
 import com.google.auto.value.AutoValue;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
@@ -45,12 +45,63 @@ public class TestService extends ICrossProfileService.Stub {
   }
 
   private LoggedCrossProfileMethodCall lastCall;
+  private int callCount = 0;
   private Parcel responseParcel = Parcel.obtain(); // Recycled in #setResponseParcel
+  @Nullable private DeathRecipient deathRecipient;
+  private boolean isAlive = true;
+  private boolean dieOnNextCall = false;
+  private boolean failNextCall = false;
 
   LoggedCrossProfileMethodCall lastCall() {
     return lastCall;
   }
 
+  /** The number of calls made to this service. */
+  int callCount() {
+    return callCount;
+  }
+
+  /** Notify the most recently linked {@link DeathRecipient} that this service has died. */
+  void simulateDeath() {
+    if (deathRecipient != null) {
+      deathRecipient.binderDied();
+    }
+  }
+
+  /**
+   * Make the next call to this service fail as if the service died while it was being sent.
+   *
+   * <p>Calls fail until the service is bound again.
+   */
+  void dieOnNextCall() {
+    dieOnNextCall = true;
+  }
+
+  /** Make the next call to this service fail without the service dying. */
+  void failNextCall() {
+    failNextCall = true;
+  }
+
+  @Override
+  public boolean isBinderAlive() {
+    return isAlive;
+  }
+
+  @Override
+  public void linkToDeath(DeathRecipient recipient, int flags) {
+    deathRecipient = recipient;
+    isAlive = true;
+  }
+
+  @Override
+  public boolean unlinkToDeath(DeathRecipient recipient, int flags) {
+    if (deathRecipient != recipient) {
+      return false;
+    }
+    deathRecipient = null;
+    return true;
+  }
+
   /**
    * Set the parcel to be returned from a call to this service.
    *
@@ -73,6 +124,17 @@ public class TestService extends ICrossProfileService.Stub {
       byte[] paramsBytes,
       ICrossProfileCallback callback)
       throws RemoteException {
+    if (dieOnNextCall) {
+      dieOnNextCall = false;
+      isAlive = false;
+    }
+    if (!isAlive) {
+      throw new DeadObjectException();
+    }
+    if (failNextCall) {
+      failNextCall = false;
+      throw new RemoteException("Transaction failed");
+    }
 
     Parcel parcel = Parcel.obtain(); // Recycled by this method on next call
     parcel.unmarshall(paramsBytes, 0, paramsBytes.length);
@@ -82,21 +144,38 @@ public class TestService extends ICrossProfileService.Stub {
       lastCall.getParams().recycle();
     }
 
+    callCount++;
     lastCall =
         LoggedCrossProfileMethodCall.create(
             crossProfileTypeIdentifier, methodIdentifier, parcel, callback);
 
-    byte[] parcelBytes = responseParcel.marshall();
-    return prepareResponse(parcelBytes);
-  }
-
-  private static byte[] prepareResponse(byte[] parcelBytes) {
     // This doesn't deal with large responses.
-    return ByteUtilities.joinByteArrays(new byte[] {0}, parcelBytes);
+    byte[] parcelBytes = responseParcel.marshall();
+    byte[] response = new byte[parcelBytes.length + 1];
+    // Prepend with 0 to indicate the bytes are complete
+    System.arraycopy(parcelBytes, 0, response, 1, parcelBytes.length);
+    return response;
   }
 
   @Override
   public byte[] fetchResponse(long callId, int blockId) {
     return null;
   }
+
+  @Override
+  public int getSupportedFeatures() {
+    return 0;
+  }
+
+  @Override
+  public byte[] callWithCompression(
+      long callId,
+      int blockId,
+      long crossProfileTypeIdentifier,
+      int methodIdentifier,
+      byte[] paramsBytes,
+      boolean paramsCompressed,
+      ICrossProfileCallback callback) {
+    throw new UnsupportedOperationException();
+  }
 }
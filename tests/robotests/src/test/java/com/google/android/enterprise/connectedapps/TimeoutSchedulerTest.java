@@ -0,0 +1,226 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertThrows;
+
+import android.os.Build.VERSION_CODES;
+import android.os.SystemClock;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(minSdk = VERSION_CODES.O)
+public class TimeoutSchedulerTest {
+
+  private static final long COARSE_GRANULARITY_MILLIS = 100;
+
+  private final TestScheduledExecutorService scheduledExecutorService =
+      new TestScheduledExecutorService();
+  private final TimeoutScheduler timeoutScheduler =
+      new TimeoutScheduler(scheduledExecutorService, /* granularityMillis= */ 1);
+  private final TimeoutScheduler coarseTimeoutScheduler =
+      new TimeoutScheduler(scheduledExecutorService, COARSE_GRANULARITY_MILLIS);
+  private final TimeoutScheduler defaultTimeoutScheduler =
+      new TimeoutScheduler(scheduledExecutorService);
+  private final AtomicInteger runCount = new AtomicInteger();
+
+  @Test
+  public void construct_nonPositiveGranularity_throwsIllegalArgumentException() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new TimeoutScheduler(scheduledExecutorService, /* granularityMillis= */ 0));
+  }
+
+  @Test
+  public void schedule_nullTask_throwsNullPointerException() {
+    assertThrows(
+        NullPointerException.class,
+        () -> timeoutScheduler.schedule(/* task= */ null, /* delayMillis= */ 1000));
+  }
+
+  @Test
+  public void schedule_doesNotRunEarly() throws Exception {
+    timeoutScheduler.schedule(runCount::incrementAndGet, /* delayMillis= */ 1000);
+
+    scheduledExecutorService.advanceTimeBy(999, MILLISECONDS);
+
+    assertThat(runCount.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void schedule_runsAfterDelay() throws Exception {
+    timeoutScheduler.schedule(runCount::incrementAndGet, /* delayMillis= */ 1000);
+
+    scheduledExecutorService.advanceTimeBy(1000, MILLISECONDS);
+
+    assertThat(runCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void schedule_sameDeadline_sharesScheduledTask() throws Exception {
+    timeoutScheduler.schedule(runCount::incrementAndGet, /* delayMillis= */ 1000);
+    timeoutScheduler.schedule(runCount::incrementAndGet, /* delayMillis= */ 1000);
+
+    assertThat(timeoutScheduler.scheduledBucketCount()).isEqualTo(1);
+    scheduledExecutorService.advanceTimeBy(1000, MILLISECONDS);
+    assertThat(runCount.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void schedule_deadlinesWithinGranularity_sharesScheduledTask() {
+    long millisToNextBucket =
+        COARSE_GRANULARITY_MILLIS - SystemClock.elapsedRealtime() % COARSE_GRANULARITY_MILLIS;
+
+    coarseTimeoutScheduler.schedule(
+        runCount::incrementAndGet, /* delayMillis= */ 1000 + millisToNextBucket + 10);
+    coarseTimeoutScheduler.schedule(
+        runCount::incrementAndGet, /* delayMillis= */ 1000 + millisToNextBucket + 90);
+
+    assertThat(coarseTimeoutScheduler.scheduledBucketCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void schedule_coarseGranularity_runsWithinOneGranularityOfDelay() throws Exception {
+    coarseTimeoutScheduler.schedule(runCount::incrementAndGet, /* delayMillis= */ 1050);
+
+    scheduledExecutorService.advanceTimeBy(1049, MILLISECONDS);
+    assertThat(runCount.get()).isEqualTo(0);
+    scheduledExecutorService.advanceTimeBy(COARSE_GRANULARITY_MILLIS, MILLISECONDS);
+    assertThat(runCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void schedule_defaultGranularity_runsWithinOneGranularityOfDelay() throws Exception {
+    defaultTimeoutScheduler.schedule(runCount::incrementAndGet, /* delayMillis= */ 1000);
+
+    scheduledExecutorService.advanceTimeBy(999, MILLISECONDS);
+    assertThat(runCount.get()).isEqualTo(0);
+    scheduledExecutorService.advanceTimeBy(
+        TimeoutScheduler.DEFAULT_GRANULARITY_MILLIS, MILLISECONDS);
+    assertThat(runCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void schedule_defaultGranularity_deadlinesWithinGranularity_sharesScheduledTask() {
+    long millisToNextBucket =
+        TimeoutScheduler.DEFAULT_GRANULARITY_MILLIS
+            - SystemClock.elapsedRealtime() % TimeoutScheduler.DEFAULT_GRANULARITY_MILLIS;
+
+    defaultTimeoutScheduler.schedule(
+        runCount::incrementAndGet, /* delayMillis= */ 1000 + millisToNextBucket + 1);
+    defaultTimeoutScheduler.schedule(
+        runCount::incrementAndGet,
+        /* delayMillis= */ 1000 + millisToNextBucket + TimeoutScheduler.DEFAULT_GRANULARITY_MILLIS);
+
+    assertThat(defaultTimeoutScheduler.scheduledBucketCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void cancel_doesNotRun() throws Exception {
+    TimeoutScheduler.Timeout timeout =
+        timeoutScheduler.schedule(runCount::incrementAndGet, /* delayMillis= */ 1000);
+
+    timeout.cancel();
+    scheduledExecutorService.advanceTimeBy(1000, MILLISECONDS);
+
+    assertThat(runCount.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void cancel_otherTimeoutWithSameDeadline_stillRuns() throws Exception {
+    TimeoutScheduler.Timeout timeout =
+        timeoutScheduler.schedule(runCount::incrementAndGet, /* delayMillis= */ 1000);
+    timeoutScheduler.schedule(runCount::incrementAndGet, /* delayMillis= */ 1000);
+
+    timeout.cancel();
+    scheduledExecutorService.advanceTimeBy(1000, MILLISECONDS);
+
+    assertThat(runCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void cancel_lastTimeoutInBucket_cancelsScheduledTask() {
+    TimeoutScheduler.Timeout timeout =
+        timeoutScheduler.schedule(runCount::incrementAndGet, /* delayMillis= */ 1000);
+
+    timeout.cancel();
+
+    assertThat(timeoutScheduler.scheduledBucketCount()).isEqualTo(0);
+    assertThat(scheduledExecutorService.cancelledTaskCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void cancel_otherTimeoutsInBucket_doesNotCancelScheduledTask() {
+    TimeoutScheduler.Timeout timeout =
+        timeoutScheduler.schedule(runCount::incrementAndGet, /* delayMillis= */ 1000);
+    timeoutScheduler.schedule(runCount::incrementAndGet, /* delayMillis= */ 1000);
+
+    timeout.cancel();
+
+    assertThat(timeoutScheduler.scheduledBucketCount()).isEqualTo(1);
+    assertThat(scheduledExecutorService.cancelledTaskCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void schedule_afterBucketCancelled_runs() throws Exception {
+    timeoutScheduler.schedule(runCount::incrementAndGet, /* delayMillis= */ 1000).cancel();
+
+    timeoutScheduler.schedule(runCount::incrementAndGet, /* delayMillis= */ 1000);
+    scheduledExecutorService.advanceTimeBy(1000, MILLISECONDS);
+
+    assertThat(runCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void cancel_afterRunning_doesNothing() throws Exception {
+    TimeoutScheduler.Timeout timeout =
+        timeoutScheduler.schedule(runCount::incrementAndGet, /* delayMillis= */ 1000);
+    scheduledExecutorService.advanceTimeBy(1000, MILLISECONDS);
+
+    timeout.cancel();
+
+    assertThat(runCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void run_taskThrows_otherTimeoutsInBucketStillRun() throws Exception {
+    timeoutScheduler.schedule(
+        () -> {
+          throw new IllegalStateException("Thrown by timeout");
+        },
+        /* delayMillis= */ 1000);
+    timeoutScheduler.schedule(runCount::incrementAndGet, /* delayMillis= */ 1000);
+
+    scheduledExecutorService.advanceTimeBy(1000, MILLISECONDS);
+
+    assertThat(runCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void run_removesScheduledTask() throws Exception {
+    timeoutScheduler.schedule(runCount::incrementAndGet, /* delayMillis= */ 1000);
+
+    scheduledExecutorService.advanceTimeBy(1000, MILLISECONDS);
+
+    assertThat(timeoutScheduler.scheduledBucketCount()).isEqualTo(0);
+  }
+}
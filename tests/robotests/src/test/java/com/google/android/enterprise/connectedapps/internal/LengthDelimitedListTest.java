@@ -0,0 +1,174 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.internal;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertThrows;
+
+import android.os.Build.VERSION_CODES;
+import com.google.android.enterprise.connectedapps.internal.LengthDelimitedList.ElementParser;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(minSdk = VERSION_CODES.O)
+public class LengthDelimitedListTest {
+
+  private static final String LONG_STRING = repeat("a", 300); // Needs a multi-byte varint
+
+  private static class CountingStringParser implements ElementParser<String> {
+    int parseCount = 0;
+
+    @Override
+    public String parse(byte[] bytes, int offset, int length) throws IOException {
+      parseCount++;
+      if (length > 0 && bytes[offset] == '!') {
+        throw new IOException("Invalid element");
+      }
+      return new String(bytes, offset, length, UTF_8);
+    }
+  }
+
+  private final CountingStringParser parser = new CountingStringParser();
+
+  @Test
+  public void parse_returnsAllElements() {
+    byte[] bytes = encode("a", "", LONG_STRING);
+
+    assertThat(LengthDelimitedList.parse(bytes, 3, parser))
+        .containsExactly("a", "", LONG_STRING)
+        .inOrder();
+  }
+
+  @Test
+  public void parse_nullElement_returnsNull() {
+    byte[] bytes = encode("a", null, "b");
+
+    assertThat(LengthDelimitedList.parse(bytes, 3, parser))
+        .containsExactly("a", null, "b")
+        .inOrder();
+  }
+
+  @Test
+  public void parse_tooFewBytes_throwsIllegalArgumentException() {
+    byte[] bytes = encode("a", "b");
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> LengthDelimitedList.parse(Arrays.copyOf(bytes, bytes.length - 1), 2, parser));
+  }
+
+  @Test
+  public void parse_tooManyBytes_throwsIllegalArgumentException() {
+    byte[] bytes = encode("a", "b");
+
+    assertThrows(IllegalArgumentException.class, () -> LengthDelimitedList.parse(bytes, 1, parser));
+  }
+
+  @Test
+  public void parse_negativeSize_throwsIllegalArgumentException() {
+    byte[] bytes = encode("a");
+
+    assertThrows(
+        IllegalArgumentException.class, () -> LengthDelimitedList.parse(bytes, -1, parser));
+  }
+
+  @Test
+  public void parse_sizeLargerThanBytes_throwsIllegalArgumentException() {
+    byte[] bytes = encode("a");
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> LengthDelimitedList.parse(bytes, Integer.MAX_VALUE, parser));
+  }
+
+  @Test
+  public void parse_elementLengthPastEndOfBytes_throwsIllegalArgumentException() {
+    // A varint of Integer.MAX_VALUE, followed by a single byte
+    byte[] bytes = new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 0x01};
+
+    assertThrows(IllegalArgumentException.class, () -> LengthDelimitedList.parse(bytes, 2, parser));
+  }
+
+  @Test
+  public void parse_elementFailsToParse_throwsIllegalArgumentException() {
+    byte[] bytes = encode("a", "!");
+
+    assertThrows(IllegalArgumentException.class, () -> LengthDelimitedList.parse(bytes, 2, parser));
+  }
+
+  @Test
+  public void lazilyParse_doesNotParseUntilAccessed() {
+    byte[] bytes = encode("a", "b", "c");
+
+    List<String> list = LengthDelimitedList.lazilyParse(bytes, 3, parser);
+
+    assertThat(list).hasSize(3);
+    assertThat(parser.parseCount).isEqualTo(0);
+  }
+
+  @Test
+  public void lazilyParse_get_onlyParsesAccessedElementOnce() {
+    byte[] bytes = encode("a", "b", "c");
+    List<String> list = LengthDelimitedList.lazilyParse(bytes, 3, parser);
+
+    assertThat(list.get(1)).isEqualTo("b");
+    assertThat(list.get(1)).isEqualTo("b");
+    assertThat(parser.parseCount).isEqualTo(1);
+  }
+
+  @Test
+  public void lazilyParse_isUnmodifiable() {
+    List<String> list = LengthDelimitedList.lazilyParse(encode("a"), 1, parser);
+
+    assertThrows(UnsupportedOperationException.class, () -> list.add("b"));
+  }
+
+  /** Encode each string as a varint of its length + 1 followed by its bytes. */
+  private static byte[] encode(String... strings) {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    for (String string : strings) {
+      if (string == null) {
+        output.write(0);
+        continue;
+      }
+      byte[] bytes = string.getBytes(UTF_8);
+      int value = bytes.length + 1;
+      while ((value & ~0x7F) != 0) {
+        output.write((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      output.write(value);
+      output.write(bytes, 0, bytes.length);
+    }
+    return output.toByteArray();
+  }
+
+  private static String repeat(String s, int times) {
+    StringBuilder stringBuilder = new StringBuilder(s.length() * times);
+    for (int i = 0; i < times; i++) {
+      stringBuilder.append(s);
+    }
+    return stringBuilder.toString();
+  }
+}
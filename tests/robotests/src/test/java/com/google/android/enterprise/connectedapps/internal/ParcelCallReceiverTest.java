@@ -0,0 +1,143 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.internal;
+
+import static com.google.android.enterprise.connectedapps.CrossProfileSender.MAX_BYTES_PER_BLOCK;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.os.Parcel;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class ParcelCallReceiverTest {
+
+  private static final long CALL_ID = 1;
+  private static final byte[] PAYLOAD = new byte[MAX_BYTES_PER_BLOCK * 2];
+
+  static {
+    new Random(/* seed= */ 1).nextBytes(PAYLOAD);
+  }
+
+  private final ParcelCallReceiver parcelCallReceiver = new ParcelCallReceiver();
+  // The payload marshalled into three blocks, the last of which is partial
+  private final byte[] marshalledBytes = marshall(PAYLOAD);
+
+  @Test
+  public void getPreparedCall_blocksPreparedInOrder_returnsFullParcel() {
+    prepareBlock(/* blockId= */ 0);
+    prepareBlock(/* blockId= */ 1);
+
+    Parcel parcel = parcelCallReceiver.getPreparedCall(CALL_ID, /* blockId= */ 2, finalBlock());
+
+    assertThat(parcel.createByteArray()).isEqualTo(PAYLOAD);
+    parcel.recycle();
+  }
+
+  @Test
+  public void getPreparedCall_blocksPreparedOutOfOrder_returnsFullParcel() {
+    prepareBlock(/* blockId= */ 1);
+    prepareBlock(/* blockId= */ 0);
+
+    Parcel parcel = parcelCallReceiver.getPreparedCall(CALL_ID, /* blockId= */ 2, finalBlock());
+
+    assertThat(parcel.createByteArray()).isEqualTo(PAYLOAD);
+    parcel.recycle();
+  }
+
+  @Test
+  public void getPreparedCall_blockPreparedTwice_returnsFullParcel() {
+    prepareBlock(/* blockId= */ 0);
+    prepareBlock(/* blockId= */ 1);
+    prepareBlock(/* blockId= */ 1);
+
+    Parcel parcel = parcelCallReceiver.getPreparedCall(CALL_ID, /* blockId= */ 2, finalBlock());
+
+    assertThat(parcel.createByteArray()).isEqualTo(PAYLOAD);
+    parcel.recycle();
+  }
+
+  @Test
+  public void getPreparedCall_blockMissing_throwsIllegalStateException() {
+    prepareBlock(/* blockId= */ 1);
+
+    assertThrows(
+        IllegalStateException.class,
+        () -> parcelCallReceiver.getPreparedCall(CALL_ID, /* blockId= */ 2, finalBlock()));
+  }
+
+  @Test
+  public void getPreparedCall_noBlocksPrepared_throwsIllegalStateException() {
+    assertThrows(
+        IllegalStateException.class,
+        () -> parcelCallReceiver.getPreparedCall(CALL_ID, /* blockId= */ 2, finalBlock()));
+  }
+
+  @Test
+  public void getPreparedCall_finalBlockAlsoPrepared_throwsIllegalStateException() {
+    prepareBlock(/* blockId= */ 0);
+    prepareBlock(/* blockId= */ 1);
+    parcelCallReceiver.prepareCall(
+        CALL_ID, /* blockId= */ 2, marshalledBytes.length, finalBlock());
+
+    assertThrows(
+        IllegalStateException.class,
+        () -> parcelCallReceiver.getPreparedCall(CALL_ID, /* blockId= */ 2, finalBlock()));
+  }
+
+  @Test
+  public void prepareCall_blockOutOfRange_throwsIllegalStateException() {
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            parcelCallReceiver.prepareCall(
+                CALL_ID, /* blockId= */ 3, marshalledBytes.length, block(/* blockId= */ 0)));
+  }
+
+  @Test
+  public void prepareCall_negativeBlockId_throwsIllegalStateException() {
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            parcelCallReceiver.prepareCall(
+                CALL_ID, /* blockId= */ -1, marshalledBytes.length, block(/* blockId= */ 0)));
+  }
+
+  private void prepareBlock(int blockId) {
+    parcelCallReceiver.prepareCall(CALL_ID, blockId, marshalledBytes.length, block(blockId));
+  }
+
+  private byte[] block(int blockId) {
+    int from = blockId * MAX_BYTES_PER_BLOCK;
+    return Arrays.copyOfRange(marshalledBytes, from, from + MAX_BYTES_PER_BLOCK);
+  }
+
+  private byte[] finalBlock() {
+    return Arrays.copyOfRange(marshalledBytes, 2 * MAX_BYTES_PER_BLOCK, marshalledBytes.length);
+  }
+
+  private static byte[] marshall(byte[] payload) {
+    Parcel parcel = Parcel.obtain();
+    parcel.writeByteArray(payload);
+    byte[] bytes = parcel.marshall();
+    parcel.recycle();
+    return bytes;
+  }
+}
@@ -15,6 +15,7 @@
  */
 package com.google.android.enterprise.connectedapps.internal;
 
+import static com.google.android.enterprise.connectedapps.CrossProfileSender.MAX_BYTES_PER_BLOCK;
 import static com.google.android.enterprise.connectedapps.StringUtilities.randomString;
 import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertThrows;
@@ -23,6 +24,8 @@ import android.os.Parcel;
 import android.os.RemoteException;
 import android.os.TransactionTooLargeException;
 import com.google.android.enterprise.connectedapps.exceptions.UnavailableProfileException;
+import java.util.Arrays;
+import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
@@ -30,11 +33,21 @@ import org.robolectric.RobolectricTestRunner;
 @RunWith(RobolectricTestRunner.class)
 public class ParcelCallSenderTest {
 
-  static class TestParcelCallSender extends ParcelCallSender {
+  static class TestParcelCallSender extends ParcelCallSender
+      implements CompressingParcelCallSender, DirectParcelCallSender {
 
     int failPrepareCalls = 0;
     int failCalls = 0;
     int failFetchResponse = 0;
+    boolean supportsCompression = false;
+    boolean supportsDirectCalls = false;
+    boolean supportsHeaderlessResponses = false;
+    boolean recognisesDirectCalls = true;
+    Parcel directCallResponse = null;
+    int preparedBlocks = 0;
+    int directCalls = 0;
+    int headerlessCalls = 0;
+    int compressedCalls = 0;
 
     private final ParcelCallReceiver parcelCallReceiver = new ParcelCallReceiver();
 
@@ -46,6 +59,7 @@ public class ParcelCallSenderTest {
       }
 
       parcelCallReceiver.prepareCall(callId, blockId, totalBytes, bytes);
+      preparedBlocks++;
     }
 
     @Override
@@ -58,6 +72,54 @@ public class ParcelCallSenderTest {
           callId, parcelCallReceiver.getPreparedCall(callId, blockId, bytes));
     }
 
+    @Override
+    public boolean supportsCompression() {
+      return supportsCompression;
+    }
+
+    @Override
+    public boolean supportsHeaderlessResponses() {
+      return supportsHeaderlessResponses;
+    }
+
+    @Override
+    public byte[] callWithCompression(
+        long callId, int blockId, byte[] bytes, boolean bytesCompressed) throws RemoteException {
+      if (failCalls-- > 0) {
+        throw new TransactionTooLargeException();
+      }
+      headerlessCalls++;
+      if (bytesCompressed) {
+        compressedCalls++;
+      }
+
+      return parcelCallReceiver.prepareResponse(
+          callId,
+          parcelCallReceiver.getPreparedCall(callId, blockId, bytes, bytesCompressed),
+          /* negotiated= */ true);
+    }
+
+    @Override
+    public boolean supportsDirectCalls() {
+      return supportsDirectCalls;
+    }
+
+    @Override
+    public boolean callDirect(long callId, Parcel params, Parcel reply) throws RemoteException {
+      if (failCalls-- > 0) {
+        throw new TransactionTooLargeException();
+      }
+      if (!recognisesDirectCalls) {
+        return false;
+      }
+      directCalls++;
+
+      Parcel response = directCallResponse == null ? params : directCallResponse;
+      DirectParcelCalls.writeResponse(reply, callId, response, parcelCallReceiver);
+      reply.setDataPosition(0);
+      return true;
+    }
+
     @Override
     byte[] fetchResponse(long callId, int blockId) throws RemoteException {
       if (failFetchResponse-- > 0) {
@@ -72,8 +134,262 @@ public class ParcelCallSenderTest {
   private static final String LARGE_STRING = randomString(1500000); // 3Mb
   private static final Parcel LARGE_PARCEL = Parcel.obtain();
 
+  private static final String LARGE_COMPRESSIBLE_STRING = repeat("0123456789", 150000); // 3Mb
+  private static final Parcel LARGE_COMPRESSIBLE_PARCEL = Parcel.obtain();
+
   static {
     LARGE_PARCEL.writeString(LARGE_STRING);
+    LARGE_COMPRESSIBLE_PARCEL.writeString(LARGE_COMPRESSIBLE_STRING);
+  }
+
+  @After
+  public void disableCompression() {
+    PayloadCompression.disable();
+  }
+
+  @Test
+  public void makeParcelCall_smallParcel_returnsResponse() throws UnavailableProfileException {
+    Parcel parcel = Parcel.obtain();
+    parcel.writeString("Hello World");
+
+    assertThat(parcelCallSender.makeParcelCall(parcel).readString()).isEqualTo("Hello World");
+    parcel.recycle();
+  }
+
+  @Test
+  public void makeParcelCall_largeParcel_returnsResponse() throws UnavailableProfileException {
+    assertThat(parcelCallSender.makeParcelCall(LARGE_PARCEL).readString()).isEqualTo(LARGE_STRING);
+  }
+
+  @Test
+  public void makeParcelCall_compressionEnabledAndSupported_returnsResponse()
+      throws UnavailableProfileException {
+    PayloadCompression.enable(/* thresholdBytes= */ 1000);
+    parcelCallSender.supportsCompression = true;
+
+    assertThat(parcelCallSender.makeParcelCall(LARGE_COMPRESSIBLE_PARCEL).readString())
+        .isEqualTo(LARGE_COMPRESSIBLE_STRING);
+  }
+
+  @Test
+  public void makeParcelCall_compressionEnabledAndSupported_sendsFewerBlocks()
+      throws UnavailableProfileException {
+    PayloadCompression.enable(/* thresholdBytes= */ 1000);
+    parcelCallSender.supportsCompression = true;
+
+    parcelCallSender.makeParcelCall(LARGE_COMPRESSIBLE_PARCEL);
+
+    assertThat(parcelCallSender.preparedBlocks).isEqualTo(0);
+  }
+
+  @Test
+  public void makeParcelCall_compressionEnabledButNotSupported_doesNotCompress()
+      throws UnavailableProfileException {
+    PayloadCompression.enable(/* thresholdBytes= */ 1000);
+
+    assertThat(parcelCallSender.makeParcelCall(LARGE_COMPRESSIBLE_PARCEL).readString())
+        .isEqualTo(LARGE_COMPRESSIBLE_STRING);
+    assertThat(parcelCallSender.preparedBlocks).isGreaterThan(0);
+  }
+
+  @Test
+  public void makeParcelCall_compressionEnabled_smallParcel_returnsResponse()
+      throws UnavailableProfileException {
+    PayloadCompression.enable(/* thresholdBytes= */ 1000);
+    parcelCallSender.supportsCompression = true;
+    Parcel parcel = Parcel.obtain();
+    parcel.writeString("Hello World");
+
+    assertThat(parcelCallSender.makeParcelCall(parcel).readString()).isEqualTo("Hello World");
+    parcel.recycle();
+  }
+
+  @Test
+  public void makeParcelCall_headerlessResponsesSupported_compressionDisabled_usesHeaderlessCall()
+      throws UnavailableProfileException {
+    parcelCallSender.supportsHeaderlessResponses = true;
+    Parcel parcel = Parcel.obtain();
+    parcel.writeString("Hello World");
+
+    assertThat(parcelCallSender.makeParcelCall(parcel).readString()).isEqualTo("Hello World");
+    assertThat(parcelCallSender.headerlessCalls).isEqualTo(1);
+    parcel.recycle();
+  }
+
+  @Test
+  public void makeParcelCall_headerlessResponsesSupported_largeParcel_returnsResponse()
+      throws UnavailableProfileException {
+    parcelCallSender.supportsHeaderlessResponses = true;
+
+    assertThat(parcelCallSender.makeParcelCall(LARGE_PARCEL).readString()).isEqualTo(LARGE_STRING);
+    assertThat(parcelCallSender.headerlessCalls).isEqualTo(1);
+  }
+
+  @Test
+  public void makeParcelCall_headerlessResponsesSupported_compressionNotSupported_doesNotCompress()
+      throws UnavailableProfileException {
+    PayloadCompression.enable(/* thresholdBytes= */ 1000);
+    parcelCallSender.supportsHeaderlessResponses = true;
+
+    assertThat(parcelCallSender.makeParcelCall(LARGE_COMPRESSIBLE_PARCEL).readString())
+        .isEqualTo(LARGE_COMPRESSIBLE_STRING);
+    assertThat(parcelCallSender.compressedCalls).isEqualTo(0);
+  }
+
+  @Test
+  public void makeParcelCall_headerlessResponsesNotSupported_compressionDisabled_usesCall()
+      throws UnavailableProfileException {
+    parcelCallSender.supportsCompression = true;
+    Parcel parcel = Parcel.obtain();
+    parcel.writeString("Hello World");
+
+    assertThat(parcelCallSender.makeParcelCall(parcel).readString()).isEqualTo("Hello World");
+    assertThat(parcelCallSender.headerlessCalls).isEqualTo(0);
+    parcel.recycle();
+  }
+
+  @Test
+  public void makeParcelCall_directCallsSupported_smallParcel_makesSingleDirectCall()
+      throws UnavailableProfileException {
+    parcelCallSender.supportsDirectCalls = true;
+    Parcel parcel = Parcel.obtain();
+    parcel.writeString("Hello World");
+
+    assertThat(parcelCallSender.makeParcelCall(parcel).readString()).isEqualTo("Hello World");
+    assertThat(parcelCallSender.directCalls).isEqualTo(1);
+    parcel.recycle();
+  }
+
+  @Test
+  public void makeParcelCall_directCallsSupported_largeParcel_doesNotMakeDirectCall()
+      throws UnavailableProfileException {
+    parcelCallSender.supportsDirectCalls = true;
+
+    assertThat(parcelCallSender.makeParcelCall(LARGE_PARCEL).readString()).isEqualTo(LARGE_STRING);
+    assertThat(parcelCallSender.directCalls).isEqualTo(0);
+  }
+
+  @Test
+  public void makeParcelCall_directCallsSupported_wouldCompress_doesNotMakeDirectCall()
+      throws UnavailableProfileException {
+    PayloadCompression.enable(/* thresholdBytes= */ 10);
+    parcelCallSender.supportsDirectCalls = true;
+    parcelCallSender.supportsCompression = true;
+    Parcel parcel = Parcel.obtain();
+    parcel.writeString("Hello World");
+
+    assertThat(parcelCallSender.makeParcelCall(parcel).readString()).isEqualTo("Hello World");
+    assertThat(parcelCallSender.directCalls).isEqualTo(0);
+    parcel.recycle();
+  }
+
+  @Test
+  public void makeParcelCall_directCallsSupported_largeResponse_returnsResponse()
+      throws UnavailableProfileException {
+    parcelCallSender.supportsDirectCalls = true;
+    parcelCallSender.directCallResponse = LARGE_PARCEL;
+    Parcel parcel = Parcel.obtain();
+    parcel.writeString("Hello World");
+
+    assertThat(parcelCallSender.makeParcelCall(parcel).readString()).isEqualTo(LARGE_STRING);
+    assertThat(parcelCallSender.directCalls).isEqualTo(1);
+    parcel.recycle();
+  }
+
+  @Test
+  public void makeParcelCall_directCallsSupported_largeCompressedResponse_returnsResponse()
+      throws UnavailableProfileException {
+    PayloadCompression.enable(/* thresholdBytes= */ 1000);
+    parcelCallSender.supportsDirectCalls = true;
+    parcelCallSender.supportsCompression = true;
+    parcelCallSender.directCallResponse = LARGE_COMPRESSIBLE_PARCEL;
+    Parcel parcel = Parcel.obtain();
+    parcel.writeString("Hello World");
+
+    assertThat(parcelCallSender.makeParcelCall(parcel).readString())
+        .isEqualTo(LARGE_COMPRESSIBLE_STRING);
+    parcel.recycle();
+  }
+
+  @Test
+  public void makeParcelCall_directCallNotRecognised_returnsResponse()
+      throws UnavailableProfileException {
+    parcelCallSender.supportsDirectCalls = true;
+    parcelCallSender.recognisesDirectCalls = false;
+    Parcel parcel = Parcel.obtain();
+    parcel.writeString("Hello World");
+
+    assertThat(parcelCallSender.makeParcelCall(parcel).readString()).isEqualTo("Hello World");
+    parcel.recycle();
+  }
+
+  @Test
+  public void makeParcelCall_directCallHasError_retriesUntilSuccess()
+      throws UnavailableProfileException {
+    parcelCallSender.supportsDirectCalls = true;
+    parcelCallSender.failCalls = 5;
+    Parcel parcel = Parcel.obtain();
+    parcel.writeString("Hello World");
+
+    assertThat(parcelCallSender.makeParcelCall(parcel).readString()).isEqualTo("Hello World");
+    assertThat(parcelCallSender.directCalls).isEqualTo(1);
+    parcel.recycle();
+  }
+
+  @Test
+  public void makeParcelCall_directCallHasError_failsAfter10Retries() {
+    parcelCallSender.supportsDirectCalls = true;
+    parcelCallSender.failCalls = 11;
+    Parcel parcel = Parcel.obtain();
+    parcel.writeString("Hello World");
+
+    assertThrows(UnavailableProfileException.class, () -> parcelCallSender.makeParcelCall(parcel));
+    parcel.recycle();
+  }
+
+  @Test
+  public void prepareResponse_negotiated_fitsInSingleBlock_returnsMarshalledParcel() {
+    ParcelCallReceiver parcelCallReceiver = new ParcelCallReceiver();
+    Parcel parcel = Parcel.obtain();
+    parcel.writeString("Hello World");
+
+    assertThat(parcelCallReceiver.prepareResponse(/* callId= */ 1, parcel, /* negotiated= */ true))
+        .isEqualTo(parcel.marshall());
+    parcel.recycle();
+  }
+
+  @Test
+  public void prepareResponse_fitsInSingleBlock_beginsWithCompleteStatus() {
+    ParcelCallReceiver parcelCallReceiver = new ParcelCallReceiver();
+    Parcel parcel = Parcel.obtain();
+    parcel.writeString("Hello World");
+    byte[] marshalledParcel = parcel.marshall();
+
+    byte[] response = parcelCallReceiver.prepareResponse(/* callId= */ 1, parcel);
+
+    assertThat(response[0]).isEqualTo(0);
+    assertThat(Arrays.copyOfRange(response, 1, response.length)).isEqualTo(marshalledParcel);
+    parcel.recycle();
+  }
+
+  @Test
+  public void makeParcelCall_responseIsExactNumberOfBlocks_returnsResponse()
+      throws UnavailableProfileException {
+    Parcel parcel = parcelOfExactlyTwoBlocks();
+
+    assertThat(parcelCallSender.makeParcelCall(parcel).marshall()).isEqualTo(parcel.marshall());
+    parcel.recycle();
+  }
+
+  @Test
+  public void makeParcelCall_negotiated_responseIsExactNumberOfBlocks_returnsResponse()
+      throws UnavailableProfileException {
+    PayloadCompression.enable(/* thresholdBytes= */ Integer.MAX_VALUE);
+    parcelCallSender.supportsCompression = true;
+    Parcel parcel = parcelOfExactlyTwoBlocks();
+
+    assertThat(parcelCallSender.makeParcelCall(parcel).marshall()).isEqualTo(parcel.marshall());
+    parcel.recycle();
   }
 
   @Test
@@ -122,4 +438,30 @@ public class ParcelCallSenderTest {
     assertThrows(
         UnavailableProfileException.class, () -> parcelCallSender.makeParcelCall(LARGE_PARCEL));
   }
+
+  /** Returns a {@link Parcel} which marshalls to exactly two blocks. */
+  private static Parcel parcelOfExactlyTwoBlocks() {
+    int targetBytes = 2 * MAX_BYTES_PER_BLOCK;
+    Parcel parcel = Parcel.obtain();
+    int arrayLength = targetBytes;
+    // The overhead of writing an array depends on the Parcel implementation
+    for (int attempt = 0; attempt < 10; attempt++) {
+      parcel.setDataSize(0);
+      parcel.writeByteArray(new byte[arrayLength]);
+      int marshalledBytes = parcel.marshall().length;
+      if (marshalledBytes == targetBytes) {
+        return parcel;
+      }
+      arrayLength -= marshalledBytes - targetBytes;
+    }
+    throw new AssertionError("Could not create a parcel of " + targetBytes + " bytes");
+  }
+
+  private static String repeat(String s, int times) {
+    StringBuilder stringBuilder = new StringBuilder(s.length() * times);
+    for (int i = 0; i < times; i++) {
+      stringBuilder.append(s);
+    }
+    return stringBuilder.toString();
+  }
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.internal;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.os.Build.VERSION_CODES;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(minSdk = VERSION_CODES.O)
+public class PayloadCompressionTest {
+
+  private static final byte[] COMPRESSIBLE_BYTES = new byte[10000];
+  private static final byte[] INCOMPRESSIBLE_BYTES = new byte[10000];
+
+  static {
+    new Random(/* seed= */ 1).nextBytes(INCOMPRESSIBLE_BYTES);
+  }
+
+  @After
+  public void disableCompression() {
+    PayloadCompression.disable();
+  }
+
+  @Test
+  public void compress_compressibleBytes_isSmaller() {
+    assertThat(PayloadCompression.compress(COMPRESSIBLE_BYTES).length)
+        .isLessThan(COMPRESSIBLE_BYTES.length);
+  }
+
+  @Test
+  public void compress_incompressibleBytes_returnsNull() {
+    assertThat(PayloadCompression.compress(INCOMPRESSIBLE_BYTES)).isNull();
+  }
+
+  @Test
+  public void decompress_returnsOriginalBytes() {
+    byte[] compressed = PayloadCompression.compress(COMPRESSIBLE_BYTES);
+
+    assertThat(PayloadCompression.decompress(compressed)).isEqualTo(COMPRESSIBLE_BYTES);
+  }
+
+  @Test
+  public void decompress_maximallyCompressedBytes_returnsOriginalBytes() {
+    byte[] bytes = new byte[1_000_000];
+    byte[] compressed = PayloadCompression.compress(bytes);
+
+    assertThat(PayloadCompression.decompress(compressed)).isEqualTo(bytes);
+  }
+
+  @Test
+  public void decompress_negativeLength_throwsIllegalArgumentException() {
+    byte[] compressed = PayloadCompression.compress(COMPRESSIBLE_BYTES);
+    ByteBuffer.wrap(compressed).putInt(-1);
+
+    assertThrows(IllegalArgumentException.class, () -> PayloadCompression.decompress(compressed));
+  }
+
+  @Test
+  public void decompress_lengthTooLargeForCompressedBytes_throwsIllegalArgumentException() {
+    byte[] compressed = PayloadCompression.compress(COMPRESSIBLE_BYTES);
+    ByteBuffer.wrap(compressed).putInt(Integer.MAX_VALUE);
+
+    assertThrows(IllegalArgumentException.class, () -> PayloadCompression.decompress(compressed));
+  }
+
+  @Test
+  public void decompress_invalidBytes_throwsIllegalArgumentException() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> PayloadCompression.decompress(new byte[] {0, 0, 0, 10, 1, 2, 3}));
+  }
+
+  @Test
+  public void maybeCompress_notEnabled_returnsNull() {
+    assertThat(PayloadCompression.maybeCompress(COMPRESSIBLE_BYTES)).isNull();
+  }
+
+  @Test
+  public void maybeCompress_belowThreshold_returnsNull() {
+    PayloadCompression.enable(COMPRESSIBLE_BYTES.length + 1);
+
+    assertThat(PayloadCompression.maybeCompress(COMPRESSIBLE_BYTES)).isNull();
+  }
+
+  @Test
+  public void maybeCompress_atThreshold_compresses() {
+    PayloadCompression.enable(COMPRESSIBLE_BYTES.length);
+
+    assertThat(PayloadCompression.maybeCompress(COMPRESSIBLE_BYTES)).isNotNull();
+  }
+
+  @Test
+  public void enable_nonPositiveThreshold_throwsIllegalArgumentException() {
+    assertThrows(IllegalArgumentException.class, () -> PayloadCompression.enable(0));
+  }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.internal;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertThrows;
+
+import android.os.Parcel;
+import com.google.android.enterprise.connectedapps.LocalCallback;
+import com.google.android.enterprise.connectedapps.TestICrossProfileCallback;
+import com.google.android.enterprise.connectedapps.exceptions.UnavailableProfileException;
+import com.google.android.enterprise.connectedapps.testapp.types.ProfileTestCrossProfileType_Bundler;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class ResultWriterQueueTest {
+
+  private static final int METHOD_IDENTIFIER = 3;
+  private static final String STRING = "Hello World";
+
+  private static final class RecordingLocalCallback implements LocalCallback {
+    int results = 0;
+    int methodIdentifier = -1;
+    String result;
+    Throwable exception;
+    Thread resultThread;
+    boolean throwOnResult = false;
+
+    @Override
+    public void onResult(int methodIdentifier, Parcel params) {
+      if (throwOnResult) {
+        throw new IllegalStateException("Could not receive result");
+      }
+      results++;
+      this.methodIdentifier = methodIdentifier;
+      result = params.readString();
+      resultThread = Thread.currentThread();
+    }
+
+    @Override
+    public void onException(Parcel exception) {
+      this.exception = ParcelUtilities.readThrowableFromParcel(exception);
+    }
+  }
+
+  private static final class ManualExecutor implements Executor {
+    final Queue<Runnable> tasks = new ArrayDeque<>();
+
+    @Override
+    public void execute(Runnable task) {
+      tasks.add(task);
+    }
+
+    void runAll() {
+      Runnable task;
+      while ((task = tasks.poll()) != null) {
+        task.run();
+      }
+    }
+  }
+
+  private final RecordingLocalCallback localCallback = new RecordingLocalCallback();
+  private final TestICrossProfileCallback callback = new TestICrossProfileCallback(localCallback);
+  private final ManualExecutor executor = new ManualExecutor();
+  private final ResultWriterQueue resultWriterQueue = new ResultWriterQueue(/* maxBacklog= */ 2);
+
+  @After
+  public void disableResultWriterQueue() {
+    ResultWriterQueue.disable();
+  }
+
+  @Test
+  public void construct_nonPositiveMaxBacklog_throwsIllegalArgumentException() {
+    assertThrows(IllegalArgumentException.class, () -> new ResultWriterQueue(/* maxBacklog= */ 0));
+  }
+
+  @Test
+  public void enable_nonPositiveThreads_throwsIllegalArgumentException() {
+    assertThrows(IllegalArgumentException.class, () -> ResultWriterQueue.enable(/* threads= */ 0));
+  }
+
+  @Test
+  public void enableThreads_setsThreadCount() {
+    resultWriterQueue.enableThreads(/* threads= */ 2);
+
+    assertThat(resultWriterQueue.getThreadCount()).isEqualTo(2);
+    resultWriterQueue.disableThreads();
+  }
+
+  @Test
+  public void enableThreads_calledAgainWithFewerThreads_keepsThreadCount() {
+    resultWriterQueue.enableThreads(/* threads= */ 3);
+
+    resultWriterQueue.enableThreads(/* threads= */ 1);
+
+    assertThat(resultWriterQueue.getThreadCount()).isEqualTo(3);
+    resultWriterQueue.disableThreads();
+  }
+
+  @Test
+  public void enableThreads_calledAgainWithMoreThreads_increasesThreadCount() {
+    resultWriterQueue.enableThreads(/* threads= */ 1);
+
+    resultWriterQueue.enableThreads(/* threads= */ 3);
+
+    assertThat(resultWriterQueue.getThreadCount()).isEqualTo(3);
+    resultWriterQueue.disableThreads();
+  }
+
+  @Test
+  public void enableThreads_calledAgain_resultsQueuedBeforeAreStillSent() throws Exception {
+    resultWriterQueue.enableThreads(/* threads= */ 1);
+    CountDownLatch firstResultSending = new CountDownLatch(1);
+    CountDownLatch canFinishFirstResult = new CountDownLatch(1);
+    resultWriterQueue.sendResult(
+        new TestICrossProfileCallback(
+            new LocalCallback() {
+              @Override
+              public void onResult(int methodIdentifier, Parcel params) {
+                firstResultSending.countDown();
+                try {
+                  canFinishFirstResult.await();
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+              }
+
+              @Override
+              public void onException(Parcel exception) {}
+            }),
+        METHOD_IDENTIFIER,
+        stringParcel(STRING));
+    firstResultSending.await(10, SECONDS);
+    resultWriterQueue.sendResult(callback, METHOD_IDENTIFIER, stringParcel(STRING));
+
+    resultWriterQueue.enableThreads(/* threads= */ 2);
+    canFinishFirstResult.countDown();
+
+    long deadlineMillis = System.currentTimeMillis() + 10_000;
+    while (resultWriterQueue.getSentCount() < 2 && System.currentTimeMillis() < deadlineMillis) {
+      Thread.sleep(1);
+    }
+    assertThat(resultWriterQueue.getSentCount()).isEqualTo(2);
+    assertThat(localCallback.result).isEqualTo(STRING);
+    resultWriterQueue.disableThreads();
+  }
+
+  @Test
+  public void sendResult_noExecutor_sendsOnCallingThread() {
+    resultWriterQueue.sendResult(callback, METHOD_IDENTIFIER, stringParcel(STRING));
+
+    assertThat(localCallback.result).isEqualTo(STRING);
+    assertThat(localCallback.methodIdentifier).isEqualTo(METHOD_IDENTIFIER);
+    assertThat(localCallback.resultThread).isEqualTo(Thread.currentThread());
+    assertThat(resultWriterQueue.getSentCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void sendResult_withExecutor_sendsOnExecutor() {
+    resultWriterQueue.setExecutor(executor);
+
+    resultWriterQueue.sendResult(callback, METHOD_IDENTIFIER, stringParcel(STRING));
+
+    assertThat(localCallback.results).isEqualTo(0);
+    assertThat(resultWriterQueue.getBacklog()).isEqualTo(1);
+    executor.runAll();
+    assertThat(localCallback.result).isEqualTo(STRING);
+    assertThat(resultWriterQueue.getBacklog()).isEqualTo(0);
+    assertThat(resultWriterQueue.getSentCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void sendResult_backlogFull_sendsOnCallingThread() {
+    resultWriterQueue.setExecutor(executor);
+    resultWriterQueue.sendResult(callback, METHOD_IDENTIFIER, stringParcel(STRING));
+    resultWriterQueue.sendResult(callback, METHOD_IDENTIFIER, stringParcel(STRING));
+
+    resultWriterQueue.sendResult(callback, METHOD_IDENTIFIER, stringParcel(STRING));
+
+    assertThat(localCallback.results).isEqualTo(1);
+    assertThat(resultWriterQueue.getInlineSentCount()).isEqualTo(1);
+    assertThat(resultWriterQueue.getMaxBacklog()).isEqualTo(2);
+    executor.runAll();
+    assertThat(localCallback.results).isEqualTo(3);
+  }
+
+  @Test
+  public void sendResult_executorRejects_sendsOnCallingThread() {
+    resultWriterQueue.setExecutor(
+        task -> {
+          throw new RejectedExecutionException();
+        });
+
+    resultWriterQueue.sendResult(callback, METHOD_IDENTIFIER, stringParcel(STRING));
+
+    assertThat(localCallback.result).isEqualTo(STRING);
+    assertThat(resultWriterQueue.getBacklog()).isEqualTo(0);
+    assertThat(resultWriterQueue.getInlineSentCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void sendResult_recordsQueueLatency() throws Exception {
+    resultWriterQueue.setExecutor(executor);
+    resultWriterQueue.sendResult(callback, METHOD_IDENTIFIER, stringParcel(STRING));
+
+    Thread.sleep(20);
+    executor.runAll();
+
+    assertThat(resultWriterQueue.getLastQueueLatencyMillis()).isAtLeast(20);
+    assertThat(resultWriterQueue.getMaxQueueLatencyMillis()).isAtLeast(20);
+  }
+
+  @Test
+  public void sendResult_sendFails_sendsException() {
+    localCallback.throwOnResult = true;
+
+    resultWriterQueue.sendResult(callback, METHOD_IDENTIFIER, stringParcel(STRING));
+
+    assertThat(localCallback.exception).isInstanceOf(UnavailableProfileException.class);
+  }
+
+  @Test
+  public void sendException_withExecutor_sendsExceptionOnExecutor() {
+    resultWriterQueue.setExecutor(executor);
+
+    resultWriterQueue.sendException(callback, new IllegalStateException("Failed"));
+
+    assertThat(localCallback.exception).isNull();
+    executor.runAll();
+    assertThat(localCallback.exception).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void crossProfileFutureResultWriter_enabled_sendsResultOnExecutor() {
+    ResultWriterQueue.instance().setExecutor(executor);
+    CrossProfileFutureResultWriter<String> resultWriter =
+        new CrossProfileFutureResultWriter<>(
+            callback,
+            new ProfileTestCrossProfileType_Bundler(),
+            BundlerType.of("java.lang.String"));
+
+    resultWriter.onSuccess(STRING);
+
+    assertThat(localCallback.results).isEqualTo(0);
+    executor.runAll();
+    assertThat(localCallback.result).isEqualTo(STRING);
+  }
+
+  private static Parcel stringParcel(String value) {
+    Parcel parcel = Parcel.obtain();
+    parcel.writeString(value);
+    return parcel;
+  }
+}
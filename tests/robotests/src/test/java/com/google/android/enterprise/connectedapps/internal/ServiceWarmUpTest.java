@@ -0,0 +1,196 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.internal;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class ServiceWarmUpTest {
+
+  private static final class ManualExecutor implements Executor {
+    final Queue<Runnable> tasks = new ArrayDeque<>();
+
+    @Override
+    public void execute(Runnable task) {
+      tasks.add(task);
+    }
+
+    void runAll() {
+      Runnable task;
+      while ((task = tasks.poll()) != null) {
+        task.run();
+      }
+    }
+  }
+
+  private static final class FirstDispatcher {}
+
+  private static final class SecondDispatcher {}
+
+  private final ManualExecutor executor = new ManualExecutor();
+  private final ServiceWarmUp serviceWarmUp = new ServiceWarmUp(executor);
+  private int warmUpRuns = 0;
+
+  @Test
+  public void start_runsWarmUpOnExecutor() {
+    serviceWarmUp.start(FirstDispatcher.class, () -> warmUpRuns++);
+
+    assertThat(warmUpRuns).isEqualTo(0);
+    executor.runAll();
+    assertThat(warmUpRuns).isEqualTo(1);
+  }
+
+  @Test
+  public void start_calledTwiceForSameDispatcher_onlyRunsWarmUpOnce() {
+    serviceWarmUp.start(FirstDispatcher.class, () -> warmUpRuns++);
+    serviceWarmUp.start(FirstDispatcher.class, () -> warmUpRuns++);
+    executor.runAll();
+
+    assertThat(warmUpRuns).isEqualTo(1);
+  }
+
+  @Test
+  public void start_differentDispatchers_runsEachWarmUp() {
+    serviceWarmUp.start(FirstDispatcher.class, () -> warmUpRuns++);
+    serviceWarmUp.start(SecondDispatcher.class, () -> warmUpRuns++);
+    executor.runAll();
+
+    assertThat(warmUpRuns).isEqualTo(2);
+  }
+
+  @Test
+  public void start_nullDispatcherClass_throwsNullPointerException() {
+    assertThrows(NullPointerException.class, () -> serviceWarmUp.start(null, () -> {}));
+  }
+
+  @Test
+  public void start_nullWarmUp_throwsNullPointerException() {
+    assertThrows(
+        NullPointerException.class, () -> serviceWarmUp.start(FirstDispatcher.class, null));
+  }
+
+  @Test
+  public void isWarmUpComplete_beforeWarmUpRuns_returnsFalse() {
+    serviceWarmUp.start(FirstDispatcher.class, () -> warmUpRuns++);
+
+    assertThat(serviceWarmUp.isWarmUpComplete()).isFalse();
+    assertThat(serviceWarmUp.getWarmUpMicros()).isEqualTo(-1);
+  }
+
+  @Test
+  public void isWarmUpComplete_afterWarmUpRuns_returnsTrue() {
+    serviceWarmUp.start(FirstDispatcher.class, () -> warmUpRuns++);
+    executor.runAll();
+
+    assertThat(serviceWarmUp.isWarmUpComplete()).isTrue();
+    assertThat(serviceWarmUp.getWarmUpMicros()).isAtLeast(0);
+  }
+
+  @Test
+  public void isWarmUpComplete_notStarted_returnsFalse() {
+    assertThat(serviceWarmUp.isWarmUpComplete()).isFalse();
+  }
+
+  @Test
+  public void isWarmUpComplete_anotherDispatcherStillWarmingUp_returnsFalse() {
+    serviceWarmUp.start(FirstDispatcher.class, () -> warmUpRuns++);
+    executor.runAll();
+    serviceWarmUp.start(SecondDispatcher.class, () -> warmUpRuns++);
+
+    assertThat(serviceWarmUp.isWarmUpComplete()).isFalse();
+    assertThat(serviceWarmUp.getWarmUpMicros()).isAtLeast(0);
+  }
+
+  @Test
+  public void isWarmUpComplete_warmUpThrows_returnsTrue() {
+    serviceWarmUp.start(
+        FirstDispatcher.class,
+        () -> {
+          throw new IllegalStateException("Could not construct provider");
+        });
+    executor.runAll();
+
+    assertThat(serviceWarmUp.isWarmUpComplete()).isTrue();
+  }
+
+  @Test
+  public void isWarmUpComplete_warmUpFailsClassInitialization_returnsTrue() {
+    serviceWarmUp.start(
+        FirstDispatcher.class,
+        () -> {
+          throw new ExceptionInInitializerError("Could not initialize provider");
+        });
+    executor.runAll();
+
+    assertThat(serviceWarmUp.isWarmUpComplete()).isTrue();
+  }
+
+  @Test
+  public void isFirstCall_onlyReturnsTrueOnce() {
+    assertThat(serviceWarmUp.isFirstCall()).isTrue();
+    assertThat(serviceWarmUp.isFirstCall()).isFalse();
+    assertThat(serviceWarmUp.isFirstCall()).isFalse();
+  }
+
+  @Test
+  public void recordFirstCall_recordsLatency() {
+    serviceWarmUp.isFirstCall();
+    serviceWarmUp.recordFirstCall(TimeUnit.MILLISECONDS.toNanos(3));
+
+    assertThat(serviceWarmUp.getFirstCallLatencyMicros()).isEqualTo(3000);
+  }
+
+  @Test
+  public void getFirstCallLatencyMicros_noCall_returnsNegative() {
+    assertThat(serviceWarmUp.getFirstCallLatencyMicros()).isEqualTo(-1);
+  }
+
+  @Test
+  public void wasFirstCallAfterWarmUp_firstCallAfterWarmUp_returnsTrue() {
+    serviceWarmUp.start(FirstDispatcher.class, () -> warmUpRuns++);
+    executor.runAll();
+
+    serviceWarmUp.isFirstCall();
+
+    assertThat(serviceWarmUp.wasFirstCallAfterWarmUp()).isTrue();
+  }
+
+  @Test
+  public void wasFirstCallAfterWarmUp_firstCallBeforeWarmUpCompletes_returnsFalse() {
+    serviceWarmUp.start(FirstDispatcher.class, () -> warmUpRuns++);
+
+    serviceWarmUp.isFirstCall();
+    executor.runAll();
+
+    assertThat(serviceWarmUp.wasFirstCallAfterWarmUp()).isFalse();
+  }
+
+  @Test
+  public void wasFirstCallAfterWarmUp_noWarmUp_returnsFalse() {
+    serviceWarmUp.isFirstCall();
+
+    assertThat(serviceWarmUp.wasFirstCallAfterWarmUp()).isFalse();
+  }
+}
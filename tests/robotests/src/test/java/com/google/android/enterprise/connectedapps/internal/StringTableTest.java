@@ -0,0 +1,112 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.internal;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.os.Parcel;
+import com.google.android.enterprise.connectedapps.testapp.types.ProfileTestCrossProfileType_Bundler;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class StringTableTest {
+
+  private static final BundlerType LIST_OF_STRING_TYPE =
+      BundlerType.of("java.util.List", BundlerType.of("java.lang.String"));
+
+  // Uses StringTable for strings as TestCrossProfileType has methods which intern strings
+  private final Bundler bundler = new ProfileTestCrossProfileType_Bundler();
+  private final Parcel parcel = Parcel.obtain();
+
+  @After
+  public void tearDown() {
+    parcel.recycle();
+  }
+
+  @Test
+  public void writeString_noTable_writesString() {
+    StringTable.writeString(parcel, "value");
+    parcel.setDataPosition(0);
+
+    assertThat(parcel.readString()).isEqualTo("value");
+  }
+
+  @Test
+  public void readString_noTable_readsString() {
+    parcel.writeString("value");
+    parcel.setDataPosition(0);
+
+    assertThat(StringTable.readString(parcel)).isEqualTo("value");
+  }
+
+  @Test
+  public void readFromParcel_readsValueWrittenByWriteToParcel() {
+    List<String> list = Arrays.asList("a", "b", "a", null, "b", null);
+
+    StringTable.writeToParcel(bundler, parcel, list, LIST_OF_STRING_TYPE, /* flags= */ 0);
+    parcel.setDataPosition(0);
+
+    assertThat(StringTable.readFromParcel(bundler, parcel, LIST_OF_STRING_TYPE)).isEqualTo(list);
+  }
+
+  @Test
+  public void readFromParcel_repeatedStrings_readsSameInstance() {
+    List<String> list = Arrays.asList(new String("value"), new String("value"));
+
+    StringTable.writeToParcel(bundler, parcel, list, LIST_OF_STRING_TYPE, /* flags= */ 0);
+    parcel.setDataPosition(0);
+    List<?> readList = (List<?>) StringTable.readFromParcel(bundler, parcel, LIST_OF_STRING_TYPE);
+
+    assertThat(readList.get(1)).isSameInstanceAs(readList.get(0));
+  }
+
+  @Test
+  public void writeToParcel_repeatedStrings_isSmallerThanWritingEachString() {
+    List<String> list = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      list.add("application/vnd.google-apps.document");
+    }
+    Parcel plainParcel = Parcel.obtain();
+
+    bundler.writeToParcel(plainParcel, list, LIST_OF_STRING_TYPE, /* flags= */ 0);
+    StringTable.writeToParcel(bundler, parcel, list, LIST_OF_STRING_TYPE, /* flags= */ 0);
+
+    assertThat(parcel.dataSize()).isLessThan(plainParcel.dataSize() / 4);
+    plainParcel.recycle();
+  }
+
+  @Test
+  public void writeToParcel_throws_laterStringsAreWrittenWithoutTable() {
+    BundlerType unsupportedType = BundlerType.of("java.lang.Thread");
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            StringTable.writeToParcel(
+                bundler, parcel, new Thread(), unsupportedType, /* flags= */ 0));
+
+    StringTable.writeString(parcel, "value");
+    parcel.setDataPosition(0);
+
+    assertThat(parcel.readString()).isEqualTo("value");
+  }
+}
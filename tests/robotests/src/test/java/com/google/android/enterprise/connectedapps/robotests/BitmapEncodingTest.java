@@ -0,0 +1,196 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.robotests;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.graphics.Bitmap;
+import android.os.Build.VERSION_CODES;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.DisplayMetrics;
+import com.google.android.enterprise.connectedapps.testapp.types.PngBitmapCrossProfileType_ParcelableBitmap;
+import com.google.android.enterprise.connectedapps.testapp.types.TestCrossProfileType_ParcelableBitmap;
+import com.google.android.enterprise.connectedapps.testapp.types.WebpLosslessBitmapCrossProfileType_ParcelableBitmap;
+import com.google.android.enterprise.connectedapps.testapp.types.WebpLossyBitmapCrossProfileType_ParcelableBitmap;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/** Round-trips bitmaps through the wrapper generated for each {@code BitmapEncoding}. */
+@RunWith(RobolectricTestRunner.class)
+@Config(minSdk = VERSION_CODES.O)
+public class BitmapEncodingTest {
+
+  private static final int[] BITMAP_PIXELS = {
+    0xFF000000, 0xFFFF0000, 0xFF00FF00, 0xFF0000FF, 0xFFFFFFFF, 0xFF000000, 0xFFFF0000, 0xFF00FF00,
+    0xFF0000FF
+  };
+  private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G'};
+
+  private final Bitmap argb8888Bitmap =
+      Bitmap.createBitmap(BITMAP_PIXELS, 3, 3, Bitmap.Config.ARGB_8888);
+  private final Bitmap rgb565Bitmap = Bitmap.createBitmap(3, 3, Bitmap.Config.RGB_565);
+  private final Bitmap alpha8Bitmap = Bitmap.createBitmap(3, 3, Bitmap.Config.ALPHA_8);
+
+  @Test
+  public void uncompressed_preservesPixels() {
+    Bitmap bitmap = uncompressedRoundTrip(argb8888Bitmap);
+
+    assertThat(getBitmapPixels(bitmap)).isEqualTo(BITMAP_PIXELS);
+  }
+
+  // Robolectric can only copy the pixel buffers of bitmaps with 4 bytes per pixel, so other configs
+  // are only covered by the compressed encodings
+  @Test
+  public void uncompressed_preservesConfig() {
+    assertPreservesConfigAndSize(argb8888Bitmap, uncompressedRoundTrip(argb8888Bitmap));
+  }
+
+  @Test
+  public void uncompressed_nullConfig_isReadAsArgb8888() {
+    Bitmap bitmap = Bitmap.createBitmap(BITMAP_PIXELS, 3, 3, Bitmap.Config.ARGB_8888);
+    bitmap.setConfig(null);
+
+    Bitmap received = uncompressedRoundTrip(bitmap);
+
+    assertThat(received.getConfig()).isEqualTo(Bitmap.Config.ARGB_8888);
+    assertThat(received.getWidth()).isEqualTo(3);
+    assertThat(received.getHeight()).isEqualTo(3);
+  }
+
+  @Test
+  public void uncompressed_unknownConfig_throwsIllegalArgumentException() {
+    Parcel parcel = Parcel.obtain();
+    parcel.writeInt(0); // encoding
+    parcel.writeInt(Bitmap.Config.values().length); // config
+    parcel.setDataPosition(0);
+
+    try {
+      assertThrows(
+          IllegalArgumentException.class,
+          () -> TestCrossProfileType_ParcelableBitmap.CREATOR.createFromParcel(parcel));
+    } finally {
+      parcel.recycle();
+    }
+  }
+
+  @Test
+  public void png_preservesConfigs() {
+    assertPreservesConfigAndSize(argb8888Bitmap, pngRoundTrip(argb8888Bitmap));
+    assertPreservesConfigAndSize(rgb565Bitmap, pngRoundTrip(rgb565Bitmap));
+    assertPreservesConfigAndSize(alpha8Bitmap, pngRoundTrip(alpha8Bitmap));
+  }
+
+  @Test
+  public void webpLossless_preservesConfigs() {
+    assertPreservesConfigAndSize(argb8888Bitmap, webpLosslessRoundTrip(argb8888Bitmap));
+    assertPreservesConfigAndSize(rgb565Bitmap, webpLosslessRoundTrip(rgb565Bitmap));
+    assertPreservesConfigAndSize(alpha8Bitmap, webpLosslessRoundTrip(alpha8Bitmap));
+  }
+
+  @Test
+  @Config(maxSdk = VERSION_CODES.P)
+  public void webpLossless_beforeQ_sendsPng() {
+    Parcel parcel = Parcel.obtain();
+    WebpLosslessBitmapCrossProfileType_ParcelableBitmap.of(null, null, argb8888Bitmap)
+        .writeToParcel(parcel, /* flags= */ 0);
+    parcel.setDataPosition(0);
+
+    parcel.readInt(); // encoding
+    parcel.readInt(); // config
+    parcel.readInt(); // density
+    byte[] compressed = parcel.createByteArray();
+    parcel.recycle();
+
+    assertThat(Arrays.copyOf(compressed, PNG_SIGNATURE.length)).isEqualTo(PNG_SIGNATURE);
+  }
+
+  @Test
+  public void webpLossy_preservesConfigs() {
+    assertPreservesConfigAndSize(argb8888Bitmap, webpLossyRoundTrip(argb8888Bitmap));
+    assertPreservesConfigAndSize(rgb565Bitmap, webpLossyRoundTrip(rgb565Bitmap));
+    assertPreservesConfigAndSize(alpha8Bitmap, webpLossyRoundTrip(alpha8Bitmap));
+  }
+
+  @Test
+  public void compressed_preservesDensity() {
+    argb8888Bitmap.setDensity(DisplayMetrics.DENSITY_XHIGH);
+
+    assertThat(pngRoundTrip(argb8888Bitmap).getDensity()).isEqualTo(DisplayMetrics.DENSITY_XHIGH);
+  }
+
+  @Test
+  public void compressed_nullBitmap_isNull() {
+    assertThat(pngRoundTrip(null)).isNull();
+    assertThat(webpLosslessRoundTrip(null)).isNull();
+    assertThat(webpLossyRoundTrip(null)).isNull();
+  }
+
+  private static Bitmap uncompressedRoundTrip(Bitmap bitmap) {
+    return writeAndRead(
+            TestCrossProfileType_ParcelableBitmap.of(null, null, bitmap),
+            TestCrossProfileType_ParcelableBitmap.CREATOR)
+        .get();
+  }
+
+  private static Bitmap pngRoundTrip(Bitmap bitmap) {
+    return writeAndRead(
+            PngBitmapCrossProfileType_ParcelableBitmap.of(null, null, bitmap),
+            PngBitmapCrossProfileType_ParcelableBitmap.CREATOR)
+        .get();
+  }
+
+  private static Bitmap webpLosslessRoundTrip(Bitmap bitmap) {
+    return writeAndRead(
+            WebpLosslessBitmapCrossProfileType_ParcelableBitmap.of(null, null, bitmap),
+            WebpLosslessBitmapCrossProfileType_ParcelableBitmap.CREATOR)
+        .get();
+  }
+
+  private static Bitmap webpLossyRoundTrip(Bitmap bitmap) {
+    return writeAndRead(
+            WebpLossyBitmapCrossProfileType_ParcelableBitmap.of(null, null, bitmap),
+            WebpLossyBitmapCrossProfileType_ParcelableBitmap.CREATOR)
+        .get();
+  }
+
+  private static <T extends Parcelable> T writeAndRead(T wrapper, Parcelable.Creator<T> creator) {
+    Parcel parcel = Parcel.obtain();
+    try {
+      wrapper.writeToParcel(parcel, /* flags= */ 0);
+      parcel.setDataPosition(0);
+      return creator.createFromParcel(parcel);
+    } finally {
+      parcel.recycle();
+    }
+  }
+
+  private static void assertPreservesConfigAndSize(Bitmap sent, Bitmap received) {
+    assertThat(received.getConfig()).isEqualTo(sent.getConfig());
+    assertThat(received.getWidth()).isEqualTo(sent.getWidth());
+    assertThat(received.getHeight()).isEqualTo(sent.getHeight());
+  }
+
+  private static int[] getBitmapPixels(Bitmap bitmap) {
+    int[] pixels = new int[bitmap.getHeight() * bitmap.getWidth()];
+    bitmap.getPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+    return pixels;
+  }
+}
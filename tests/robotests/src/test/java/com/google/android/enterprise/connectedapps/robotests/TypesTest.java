@@ -24,6 +24,7 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.os.Build.VERSION_CODES;
 import android.os.IBinder;
+import android.util.DisplayMetrics;
 import android.util.Pair;
 import androidx.test.core.app.ApplicationProvider;
 import com.google.android.enterprise.connectedapps.RobolectricTestUtilities;
@@ -31,6 +32,7 @@ import com.google.android.enterprise.connectedapps.TestCustomWrapperCallbackList
 import com.google.android.enterprise.connectedapps.TestExceptionCallbackListener;
 import com.google.android.enterprise.connectedapps.TestScheduledExecutorService;
 import com.google.android.enterprise.connectedapps.exceptions.UnavailableProfileException;
+import com.google.android.enterprise.connectedapps.testapp.CrossProfileParcelableObject;
 import com.google.android.enterprise.connectedapps.testapp.CustomWrapper;
 import com.google.android.enterprise.connectedapps.testapp.CustomWrapper2;
 import com.google.android.enterprise.connectedapps.testapp.ParcelableObject;
@@ -51,6 +53,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import org.junit.Before;
@@ -89,6 +92,10 @@ public class TypesTest {
   private static final List<List<String>> listOfListOfString = ImmutableList.of(listOfString);
   private static final List<ParcelableObject> listOfParcelable = ImmutableList.of(PARCELABLE);
   private static final List<SerializableObject> listOfSerializable = ImmutableList.of(SERIALIZABLE);
+  private static final CrossProfileParcelableObject CROSS_PROFILE_PARCELABLE =
+      new CrossProfileParcelableObject("test", 1, 2, ImmutableList.of("a", "b"));
+  private static final List<CrossProfileParcelableObject> listOfCrossProfileParcelable =
+      Arrays.asList(CROSS_PROFILE_PARCELABLE, null);
   private static final ImmutableMap<String, String> IMMUTABLE_MAP_STRING_TO_STRING =
       ImmutableMap.of(STRING, STRING);
   private static final Set<String> setOfString = ImmutableSet.of(STRING);
@@ -317,6 +324,85 @@ public class TypesTest {
         .isEqualTo(SERIALIZABLE);
   }
 
+  @Test
+  public void crossProfileParcelableReturnTypeAndArgument_bothWork()
+      throws UnavailableProfileException {
+    assertThat(
+            senderProvider
+                .provide(context, testProfileConnector)
+                .identityCrossProfileParcelableObjectMethod(CROSS_PROFILE_PARCELABLE))
+        .isEqualTo(CROSS_PROFILE_PARCELABLE);
+  }
+
+  @Test
+  public void crossProfileParcelableReturnTypeAndArgument_null_bothWork()
+      throws UnavailableProfileException {
+    assertThat(
+            senderProvider
+                .provide(context, testProfileConnector)
+                .identityCrossProfileParcelableObjectMethod(null))
+        .isNull();
+  }
+
+  @Test
+  public void crossProfileParcelableReturnTypeAndArgument_nullProperties_bothWork()
+      throws UnavailableProfileException {
+    CrossProfileParcelableObject nullProperties =
+        new CrossProfileParcelableObject(
+            /* value= */ null, /* count= */ 1, /* boxedCount= */ null, /* tags= */ null);
+
+    assertThat(
+            senderProvider
+                .provide(context, testProfileConnector)
+                .identityCrossProfileParcelableObjectMethod(nullProperties))
+        .isEqualTo(nullProperties);
+  }
+
+  @Test
+  public void parcelableWrapperOfCrossProfileParcelableTypeAndArgument_bothWork()
+      throws UnavailableProfileException {
+    assertThat(
+            senderProvider
+                .provide(context, testProfileConnector)
+                .identityListOfCrossProfileParcelableMethod(listOfCrossProfileParcelable))
+        .isEqualTo(listOfCrossProfileParcelable);
+  }
+
+  @Test
+  public void internedStrings_listOfStringsTypeAndArgument_bothWork()
+      throws UnavailableProfileException {
+    List<String> repeatedStrings = Arrays.asList(STRING, STRING, null, "other", STRING);
+
+    assertThat(
+            senderProvider
+                .provide(context, testProfileConnector)
+                .identityListOfStringsInternedMethod(repeatedStrings))
+        .isEqualTo(repeatedStrings);
+  }
+
+  @Test
+  public void internedStrings_mapTypeAndArgument_bothWork() throws UnavailableProfileException {
+    Map<String, List<String>> map =
+        ImmutableMap.of("a", ImmutableList.of("a", STRING), STRING, ImmutableList.of("a", STRING));
+
+    assertThat(
+            senderProvider.provide(context, testProfileConnector).identityMapInternedMethod(map))
+        .isEqualTo(map);
+  }
+
+  @Test
+  public void internedStrings_crossProfileParcelableTypeAndArgument_bothWork()
+      throws UnavailableProfileException {
+    List<CrossProfileParcelableObject> list =
+        Arrays.asList(CROSS_PROFILE_PARCELABLE, CROSS_PROFILE_PARCELABLE, null);
+
+    assertThat(
+            senderProvider
+                .provide(context, testProfileConnector)
+                .identityListOfCrossProfileParcelableInternedMethod(list))
+        .isEqualTo(list);
+  }
+
   @Test
   public void parcelableWrapperOfParcelableTypeAndArgument_bothWork()
       throws UnavailableProfileException {
@@ -627,6 +713,16 @@ public class TypesTest {
     assertThat(getBitmapPixels(returnBitmap)).isEqualTo(BITMAP_PIXELS);
   }
 
+  @Test
+  public void bitmapDensity_isPreserved() throws UnavailableProfileException {
+    bitmap.setDensity(DisplayMetrics.DENSITY_XHIGH);
+
+    Bitmap returnBitmap =
+        senderProvider.provide(context, testProfileConnector).identityBitmapMethod(bitmap);
+
+    assertThat(returnBitmap.getDensity()).isEqualTo(DisplayMetrics.DENSITY_XHIGH);
+  }
+
   @Test
   public void nullBitmap_works() throws UnavailableProfileException {
     assertThat(senderProvider.provide(context, testProfileConnector).identityBitmapMethod(null))
@@ -0,0 +1,330 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.testing;
+
+import static com.google.android.enterprise.connectedapps.StringUtilities.randomString;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.app.Application;
+import android.os.Build.VERSION_CODES;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.RemoteException;
+import androidx.test.core.app.ApplicationProvider;
+import com.google.android.enterprise.connectedapps.TestExceptionCallbackListener;
+import com.google.android.enterprise.connectedapps.TestScheduledExecutorService;
+import com.google.android.enterprise.connectedapps.TestStringCallbackListenerImpl;
+import com.google.android.enterprise.connectedapps.exceptions.UnavailableProfileException;
+import com.google.android.enterprise.connectedapps.testapp.configuration.TestApplication;
+import com.google.android.enterprise.connectedapps.testapp.connector.TestProfileConnector;
+import com.google.android.enterprise.connectedapps.testapp.types.ProfileTestCrossProfileType;
+import com.google.android.enterprise.connectedapps.testing.ChaosConnectionBinder.Fault;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(minSdk = VERSION_CODES.O)
+public class ChaosConnectionBinderTest {
+
+  private static final String STRING = "String";
+
+  private final Application context = ApplicationProvider.getApplicationContext();
+  private final TestScheduledExecutorService scheduledExecutorService =
+      new TestScheduledExecutorService();
+  private final TestStringCallbackListenerImpl stringCallbackListener =
+      new TestStringCallbackListenerImpl();
+  private final TestExceptionCallbackListener exceptionCallbackListener =
+      new TestExceptionCallbackListener();
+  private IBinder service;
+  private ChaosConnectionBinder chaosConnectionBinder;
+  private TestProfileConnector testProfileConnector;
+  private ProfileTestCrossProfileType profileTestCrossProfileType;
+
+  @Before
+  public void setUp() {
+    service = Robolectric.setupService(TestApplication.getService()).onBind(/* intent= */ null);
+    chaosConnectionBinder = new ChaosConnectionBinder(service, scheduledExecutorService);
+    testProfileConnector =
+        TestProfileConnector.create(context, scheduledExecutorService, chaosConnectionBinder);
+    profileTestCrossProfileType = ProfileTestCrossProfileType.create(testProfileConnector);
+  }
+
+  @Test
+  public void construct_nullService_throwsNullPointerException() {
+    assertThrows(
+        NullPointerException.class,
+        () -> new ChaosConnectionBinder(/* service= */ null, scheduledExecutorService));
+  }
+
+  @Test
+  public void noFaults_synchronousCall_returnsResult() throws Exception {
+    testProfileConnector.startConnecting();
+
+    assertThat(profileTestCrossProfileType.other().identityStringMethod(STRING)).isEqualTo(STRING);
+    assertThat(chaosConnectionBinder.getInjectedFaultCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void failNextBinds_doesNotConnect() {
+    chaosConnectionBinder.failNextBinds(1);
+
+    testProfileConnector.startConnecting();
+
+    assertThat(testProfileConnector.isConnected()).isFalse();
+    assertThat(chaosConnectionBinder.getBindAttemptCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void failNextBinds_connectsOnRetry() throws Exception {
+    chaosConnectionBinder.failNextBinds(1);
+    testProfileConnector.startConnecting();
+
+    scheduledExecutorService.advanceTimeBy(1, TimeUnit.MINUTES);
+
+    assertThat(testProfileConnector.isConnected()).isTrue();
+    assertThat(chaosConnectionBinder.getBindAttemptCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void setBindFailureProbability_one_doesNotConnect() {
+    chaosConnectionBinder.setBindFailureProbability(1);
+
+    testProfileConnector.startConnecting();
+
+    assertThat(testProfileConnector.isConnected()).isFalse();
+  }
+
+  @Test
+  public void setBindDelayMillis_connectsAfterDelay() throws Exception {
+    chaosConnectionBinder.setBindDelayMillis(100, 100);
+    testProfileConnector.startConnecting();
+    assertThat(testProfileConnector.isConnected()).isFalse();
+
+    scheduledExecutorService.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+    assertThat(testProfileConnector.isConnected()).isTrue();
+  }
+
+  @Test
+  public void setBindDelayMillis_minGreaterThanMax_throwsIllegalArgumentException() {
+    assertThrows(
+        IllegalArgumentException.class, () -> chaosConnectionBinder.setBindDelayMillis(10, 5));
+  }
+
+  @Test
+  public void setAvailable_false_disconnects() {
+    testProfileConnector.startConnecting();
+
+    chaosConnectionBinder.setAvailable(false);
+
+    assertThat(testProfileConnector.isConnected()).isFalse();
+    assertThat(testProfileConnector.isAvailable()).isFalse();
+  }
+
+  @Test
+  public void setAvailable_trueAfterFalse_reconnects() throws Exception {
+    testProfileConnector.startConnecting();
+    chaosConnectionBinder.setAvailable(false);
+
+    chaosConnectionBinder.setAvailable(true);
+    scheduledExecutorService.advanceTimeBy(1, TimeUnit.MINUTES);
+
+    assertThat(testProfileConnector.isConnected()).isTrue();
+  }
+
+  @Test
+  public void killProcess_rebinds() {
+    testProfileConnector.startConnecting();
+
+    chaosConnectionBinder.killProcess();
+
+    assertThat(chaosConnectionBinder.getProcessDeathCount()).isEqualTo(1);
+    assertThat(chaosConnectionBinder.getBindAttemptCount()).isEqualTo(2);
+    assertThat(testProfileConnector.isConnected()).isTrue();
+  }
+
+  @Test
+  public void killProcess_notConnected_doesNothing() {
+    chaosConnectionBinder.killProcess();
+
+    assertThat(chaosConnectionBinder.getProcessDeathCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void scriptTransactionFaults_deadObject_throwsUnavailableProfileException() {
+    testProfileConnector.startConnecting();
+
+    chaosConnectionBinder.scriptTransactionFaults(Fault.deadObject());
+
+    assertThrows(
+        UnavailableProfileException.class,
+        () -> profileTestCrossProfileType.other().identityStringMethod(STRING));
+  }
+
+  @Test
+  public void scriptTransactionFaults_deadObject_laterCallSucceeds() throws Exception {
+    testProfileConnector.startConnecting();
+    chaosConnectionBinder.scriptTransactionFaults(Fault.deadObject());
+    assertThrows(
+        UnavailableProfileException.class,
+        () -> profileTestCrossProfileType.other().identityStringMethod(STRING));
+
+    assertThat(profileTestCrossProfileType.other().identityStringMethod(STRING)).isEqualTo(STRING);
+    assertThat(testProfileConnector.isConnected()).isTrue();
+  }
+
+  @Test
+  public void scriptTransactionFaults_deadObject_asyncCall_deliversException() {
+    testProfileConnector.startConnecting();
+
+    chaosConnectionBinder.scriptTransactionFaults(Fault.deadObject());
+    profileTestCrossProfileType
+        .other()
+        .asyncIdentityStringMethod(STRING, stringCallbackListener, exceptionCallbackListener);
+
+    assertThat(exceptionCallbackListener.lastException)
+        .isInstanceOf(UnavailableProfileException.class);
+    assertThat(stringCallbackListener.callbackMethodCalls).isEqualTo(0);
+  }
+
+  @Test
+  public void scriptTransactionFaults_shortTransactionTooLargeStorm_isRetried() throws Exception {
+    testProfileConnector.startConnecting();
+
+    chaosConnectionBinder.scriptTransactionFaults(
+        Fault.transactionTooLarge(), Fault.transactionTooLarge());
+
+    assertThat(profileTestCrossProfileType.other().identityStringMethod(STRING)).isEqualTo(STRING);
+    assertThat(chaosConnectionBinder.getInjectedFaultCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void scriptTransactionFaults_longTransactionTooLargeStorm_throwsException() {
+    testProfileConnector.startConnecting();
+
+    Fault[] storm = new Fault[50];
+    for (int i = 0; i < storm.length; i++) {
+      storm[i] = Fault.transactionTooLarge();
+    }
+    chaosConnectionBinder.scriptTransactionFaults(storm);
+
+    assertThrows(
+        UnavailableProfileException.class,
+        () -> profileTestCrossProfileType.other().identityStringMethod(STRING));
+  }
+
+  @Test
+  public void scriptTransactionFaults_processDeath_rebinds() {
+    testProfileConnector.startConnecting();
+
+    chaosConnectionBinder.scriptTransactionFaults(Fault.processDeath());
+
+    assertThrows(
+        UnavailableProfileException.class,
+        () -> profileTestCrossProfileType.other().identityStringMethod(STRING));
+    assertThat(chaosConnectionBinder.getProcessDeathCount()).isEqualTo(1);
+    assertThat(chaosConnectionBinder.getBindAttemptCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void scriptTransactionFaults_none_doesNotInjectFault() throws Exception {
+    testProfileConnector.startConnecting();
+    chaosConnectionBinder.setDeadObjectProbability(1);
+
+    chaosConnectionBinder.scriptTransactionFaults(Fault.none(), Fault.none(), Fault.none());
+
+    assertThat(profileTestCrossProfileType.other().identityStringMethod(STRING)).isEqualTo(STRING);
+  }
+
+  @Test
+  public void setDeadObjectProbability_one_throwsUnavailableProfileException() {
+    testProfileConnector.startConnecting();
+
+    chaosConnectionBinder.setDeadObjectProbability(1);
+
+    assertThrows(
+        UnavailableProfileException.class,
+        () -> profileTestCrossProfileType.other().identityStringMethod(STRING));
+  }
+
+  @Test
+  public void setDeadObjectProbability_outOfRange_throwsIllegalArgumentException() {
+    assertThrows(
+        IllegalArgumentException.class, () -> chaosConnectionBinder.setDeadObjectProbability(1.5));
+  }
+
+  @Test
+  public void setProcessDeathProbability_one_throwsUnavailableProfileException() {
+    testProfileConnector.startConnecting();
+
+    chaosConnectionBinder.setProcessDeathProbability(1);
+
+    assertThrows(
+        UnavailableProfileException.class,
+        () -> profileTestCrossProfileType.other().identityStringMethod(STRING));
+    assertThat(chaosConnectionBinder.getProcessDeathCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void setMaxTransactionBytes_callIsLarger_throwsUnavailableProfileException() {
+    testProfileConnector.startConnecting();
+
+    chaosConnectionBinder.setMaxTransactionBytes(100);
+
+    assertThrows(
+        UnavailableProfileException.class,
+        () -> profileTestCrossProfileType.other().identityStringMethod(randomString(1000)));
+  }
+
+  @Test
+  public void setSeed_sameSeed_injectsSameFaults() {
+    ChaosConnectionBinder otherChaosConnectionBinder =
+        new ChaosConnectionBinder(service, scheduledExecutorService);
+    chaosConnectionBinder.setSeed(5);
+    otherChaosConnectionBinder.setSeed(5);
+    chaosConnectionBinder.setDeadObjectProbability(0.5);
+    otherChaosConnectionBinder.setDeadObjectProbability(0.5);
+
+    assertThat(transactionOutcomes(chaosConnectionBinder, 50))
+        .isEqualTo(transactionOutcomes(otherChaosConnectionBinder, 50));
+  }
+
+  private static List<Boolean> transactionOutcomes(ChaosConnectionBinder binder, int count) {
+    List<Boolean> outcomes = new ArrayList<>();
+    Parcel parcel = Parcel.obtain();
+    try {
+      for (int i = 0; i < count; i++) {
+        try {
+          binder.beforeTransaction(parcel);
+          outcomes.add(true);
+        } catch (RemoteException e) {
+          outcomes.add(false);
+        }
+      }
+    } finally {
+      parcel.recycle();
+    }
+    return outcomes;
+  }
+}
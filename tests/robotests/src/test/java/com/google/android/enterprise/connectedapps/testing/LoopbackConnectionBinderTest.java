@@ -0,0 +1,194 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.testing;
+
+import static com.google.android.enterprise.connectedapps.StringUtilities.randomString;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.app.Application;
+import android.os.Build.VERSION_CODES;
+import android.os.IBinder;
+import android.os.SystemClock;
+import androidx.test.core.app.ApplicationProvider;
+import com.google.android.enterprise.connectedapps.TestExceptionCallbackListener;
+import com.google.android.enterprise.connectedapps.TestScheduledExecutorService;
+import com.google.android.enterprise.connectedapps.TestStringCallbackListenerImpl;
+import com.google.android.enterprise.connectedapps.exceptions.UnavailableProfileException;
+import com.google.android.enterprise.connectedapps.testapp.configuration.TestApplication;
+import com.google.android.enterprise.connectedapps.testapp.connector.TestProfileConnector;
+import com.google.android.enterprise.connectedapps.testapp.types.ProfileTestCrossProfileType;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(minSdk = VERSION_CODES.O)
+public class LoopbackConnectionBinderTest {
+
+  private static final String SMALL_STRING = "String";
+  private static final String LARGE_STRING = randomString(1500000); // 3Mb
+
+  private final Application context = ApplicationProvider.getApplicationContext();
+  private final TestScheduledExecutorService scheduledExecutorService =
+      new TestScheduledExecutorService();
+  private final TestStringCallbackListenerImpl stringCallbackListener =
+      new TestStringCallbackListenerImpl();
+  private final TestExceptionCallbackListener exceptionCallbackListener =
+      new TestExceptionCallbackListener();
+  private LoopbackConnectionBinder loopbackConnectionBinder;
+  private TestProfileConnector testProfileConnector;
+  private ProfileTestCrossProfileType profileTestCrossProfileType;
+
+  @Before
+  public void setUp() {
+    IBinder service =
+        Robolectric.setupService(TestApplication.getService()).onBind(/* intent= */ null);
+    loopbackConnectionBinder = new LoopbackConnectionBinder(service);
+    testProfileConnector =
+        TestProfileConnector.create(context, scheduledExecutorService, loopbackConnectionBinder);
+    profileTestCrossProfileType = ProfileTestCrossProfileType.create(testProfileConnector);
+  }
+
+  @Test
+  public void construct_nullService_throwsNullPointerException() {
+    assertThrows(NullPointerException.class, () -> new LoopbackConnectionBinder(null));
+  }
+
+  @Test
+  public void startConnecting_isConnected() {
+    testProfileConnector.startConnecting();
+
+    assertThat(testProfileConnector.isConnected()).isTrue();
+  }
+
+  @Test
+  public void synchronousCall_returnsResult() throws Exception {
+    testProfileConnector.startConnecting();
+
+    assertThat(profileTestCrossProfileType.other().identityStringMethod(SMALL_STRING))
+        .isEqualTo(SMALL_STRING);
+  }
+
+  @Test
+  public void synchronousCall_smallMessage_isSentInSingleTransaction() throws Exception {
+    testProfileConnector.startConnecting();
+    // The first call also asks the service which features it supports
+    profileTestCrossProfileType.other().identityStringMethod(SMALL_STRING);
+    long transactionCountBeforeCall = loopbackConnectionBinder.getTransactionCount();
+
+    assertThat(profileTestCrossProfileType.other().identityStringMethod(SMALL_STRING))
+        .isEqualTo(SMALL_STRING);
+    assertThat(loopbackConnectionBinder.getTransactionCount() - transactionCountBeforeCall)
+        .isEqualTo(1);
+  }
+
+  @Test
+  public void synchronousCall_largeMessage_isSentInMultipleTransactions() throws Exception {
+    testProfileConnector.startConnecting();
+    long transactionCountBeforeCall = loopbackConnectionBinder.getTransactionCount();
+
+    assertThat(profileTestCrossProfileType.other().identityStringMethod(LARGE_STRING))
+        .isEqualTo(LARGE_STRING);
+    assertThat(loopbackConnectionBinder.getTransactionCount() - transactionCountBeforeCall)
+        .isGreaterThan(2);
+  }
+
+  @Test
+  public void asyncCall_resultIsDeliveredThroughCallback() {
+    testProfileConnector.startConnecting();
+
+    profileTestCrossProfileType
+        .other()
+        .asyncIdentityStringMethod(SMALL_STRING, stringCallbackListener, exceptionCallbackListener);
+
+    assertThat(stringCallbackListener.stringCallbackValue).isEqualTo(SMALL_STRING);
+  }
+
+  @Test
+  public void asyncCall_largeMessage_resultIsDeliveredThroughCallback() {
+    testProfileConnector.startConnecting();
+
+    profileTestCrossProfileType
+        .other()
+        .asyncIdentityStringMethod(LARGE_STRING, stringCallbackListener, exceptionCallbackListener);
+
+    assertThat(stringCallbackListener.stringCallbackValue).isEqualTo(LARGE_STRING);
+  }
+
+  @Test
+  public void failNextTransactions_synchronousCall_throwsUnavailableProfileException() {
+    testProfileConnector.startConnecting();
+
+    loopbackConnectionBinder.failNextTransactions(1);
+
+    assertThrows(
+        UnavailableProfileException.class,
+        () -> profileTestCrossProfileType.other().identityStringMethod(SMALL_STRING));
+  }
+
+  @Test
+  public void failNextTransactions_laterCall_succeeds() throws Exception {
+    testProfileConnector.startConnecting();
+    loopbackConnectionBinder.failNextTransactions(1);
+    assertThrows(
+        UnavailableProfileException.class,
+        () -> profileTestCrossProfileType.other().identityStringMethod(SMALL_STRING));
+
+    assertThat(profileTestCrossProfileType.other().identityStringMethod(SMALL_STRING))
+        .isEqualTo(SMALL_STRING);
+  }
+
+  @Test
+  public void setMaxTransactionBytes_callIsLarger_throwsUnavailableProfileException() {
+    testProfileConnector.startConnecting();
+
+    loopbackConnectionBinder.setMaxTransactionBytes(1000);
+
+    assertThrows(
+        UnavailableProfileException.class,
+        () -> profileTestCrossProfileType.other().identityStringMethod(randomString(1000)));
+  }
+
+  @Test
+  public void setMaxTransactionBytes_nonPositive_throwsIllegalArgumentException() {
+    assertThrows(
+        IllegalArgumentException.class, () -> loopbackConnectionBinder.setMaxTransactionBytes(0));
+  }
+
+  @Test
+  public void setTransactionLatencyMillis_delaysEachTransaction() throws Exception {
+    testProfileConnector.startConnecting();
+    loopbackConnectionBinder.setTransactionLatencyMillis(100);
+    long transactionCountBeforeCall = loopbackConnectionBinder.getTransactionCount();
+    long startMillis = SystemClock.elapsedRealtime();
+
+    profileTestCrossProfileType.other().identityStringMethod(SMALL_STRING);
+
+    long transactions = loopbackConnectionBinder.getTransactionCount() - transactionCountBeforeCall;
+    assertThat(SystemClock.elapsedRealtime() - startMillis).isAtLeast(transactions * 100);
+  }
+
+  @Test
+  public void setTransactionLatencyMillis_negative_throwsIllegalArgumentException() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> loopbackConnectionBinder.setTransactionLatencyMillis(-1));
+  }
+}
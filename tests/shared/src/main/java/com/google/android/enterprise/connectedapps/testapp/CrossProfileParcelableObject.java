@@ -0,0 +1,73 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.enterprise.connectedapps.testapp;
+
+import com.google.android.enterprise.connectedapps.annotations.CrossProfileParcelable;
+import java.util.List;
+import java.util.Objects;
+
+@CrossProfileParcelable
+public final class CrossProfileParcelableObject {
+
+  private final String value;
+  private final int count;
+  private final Integer boxedCount;
+  private final List<String> tags;
+
+  public String value() {
+    return value;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public Integer getBoxedCount() {
+    return boxedCount;
+  }
+
+  public List<String> getTags() {
+    return tags;
+  }
+
+  public CrossProfileParcelableObject(
+      String value, int count, Integer boxedCount, List<String> tags) {
+    this.value = value;
+    this.count = count;
+    this.boxedCount = boxedCount;
+    this.tags = tags;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    CrossProfileParcelableObject that = (CrossProfileParcelableObject) o;
+    return count == that.count
+        && Objects.equals(value, that.value)
+        && Objects.equals(boxedCount, that.boxedCount)
+        && Objects.equals(tags, that.tags);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(value, count, boxedCount, tags);
+  }
+}
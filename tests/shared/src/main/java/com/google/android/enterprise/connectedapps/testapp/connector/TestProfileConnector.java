@@ -16,6 +16,7 @@
 package com.google.android.enterprise.connectedapps.testapp.connector;
 
 import android.content.Context;
+import com.google.android.enterprise.connectedapps.ConnectionBinder;
 import com.google.android.enterprise.connectedapps.ProfileConnector;
 import com.google.android.enterprise.connectedapps.annotations.CustomProfileConnector;
 import com.google.android.enterprise.connectedapps.annotations.CustomProfileConnector.ProfileType;
@@ -40,4 +41,14 @@ public interface TestProfileConnector extends ProfileConnector {
         .setScheduledExecutorService(scheduledExecutorService)
         .build();
   }
+
+  static TestProfileConnector create(
+      Context context,
+      ScheduledExecutorService scheduledExecutorService,
+      ConnectionBinder binder) {
+    return GeneratedTestProfileConnector.builder(context)
+        .setScheduledExecutorService(scheduledExecutorService)
+        .setBinder(binder)
+        .build();
+  }
 }
@@ -25,6 +25,7 @@ import android.util.Pair;
 import com.google.android.enterprise.connectedapps.annotations.CrossProfile;
 import com.google.android.enterprise.connectedapps.testapp.CustomRuntimeException;
 import com.google.android.enterprise.connectedapps.testapp.CustomWrapper;
+import com.google.android.enterprise.connectedapps.testapp.CrossProfileParcelableObject;
 import com.google.android.enterprise.connectedapps.testapp.CustomWrapper2;
 import com.google.android.enterprise.connectedapps.testapp.NonSimpleCallbackListener;
 import com.google.android.enterprise.connectedapps.testapp.NotReallySerializableObject;
@@ -414,6 +415,35 @@ public class TestCrossProfileType {
     return l;
   }
 
+  @CrossProfile
+  public CrossProfileParcelableObject identityCrossProfileParcelableObjectMethod(
+      CrossProfileParcelableObject c) {
+    return c;
+  }
+
+  @CrossProfile
+  public List<CrossProfileParcelableObject> identityListOfCrossProfileParcelableMethod(
+      List<CrossProfileParcelableObject> l) {
+    return l;
+  }
+
+  @CrossProfile(internStrings = true)
+  public List<String> identityListOfStringsInternedMethod(List<String> l) {
+    return l;
+  }
+
+  @CrossProfile(internStrings = true)
+  public Map<String, List<String>> identityMapInternedMethod(
+      Map<String, List<String>> m) {
+    return m;
+  }
+
+  @CrossProfile(internStrings = true)
+  public List<CrossProfileParcelableObject> identityListOfCrossProfileParcelableInternedMethod(
+      List<CrossProfileParcelableObject> l) {
+    return l;
+  }
+
   @CrossProfile
   public List<SerializableObject> identityParcelableWrapperOfSerializableMethod(
       List<SerializableObject> l) {
@@ -17,7 +17,13 @@ package com.google.android.enterprise.connectedapps.testapp.types;
 
 import com.google.android.enterprise.connectedapps.annotations.CrossProfileProvider;
 
-@CrossProfileProvider(staticTypes = {NonInstantiableTestCrossProfileType.class})
+@CrossProfileProvider(
+    staticTypes = {
+      NonInstantiableTestCrossProfileType.class,
+      PngBitmapCrossProfileType.class,
+      WebpLosslessBitmapCrossProfileType.class,
+      WebpLossyBitmapCrossProfileType.class
+    })
 public class TestProvider {
 
   @CrossProfileProvider